@@ -0,0 +1,29 @@
+package com.example.biz;
+
+import org.apache.catalina.connector.Connector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 設定 biz.unix-socket.path 時，額外開啟一個監聽 Unix domain socket 的 Tomcat Connector，
+ * 供同 Pod 的 MCP Sidecar 透過共享 emptyDir 連線 (TCP 8080 維持不變，供 probe 與 Service 使用)。
+ */
+@Configuration
+@ConditionalOnProperty("biz.unix-socket.path")
+public class UnixSocketConfig implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    @Value("${biz.unix-socket.path}")
+    private String socketPath;
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+        connector.setProperty("unixDomainSocketPath", socketPath);
+        // sidecar 容器可能以不同使用者執行
+        connector.setProperty("unixDomainSocketPathPermissions", "rw-rw-rw-");
+        factory.addAdditionalTomcatConnectors(connector);
+    }
+}
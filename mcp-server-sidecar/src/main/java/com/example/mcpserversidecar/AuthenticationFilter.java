@@ -1,5 +1,11 @@
 package com.example.mcpserversidecar;
 
+import com.example.mcpserversidecar.service.ToolViews;
+import com.example.mcpserversidecar.util.RequestKeys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
@@ -8,21 +14,131 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 import reactor.util.context.Context;
 
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 將 Authorization 與呼叫者身分放入 Reactor Context，供工具呼叫轉發與速率限制使用。
+ * 啟用 mcp.auth.jwt.enabled 時，/mcp 請求的 Bearer JWT 先由 {@link JwtVerifier} 驗證，無效者直接回應 401。
+ * 呼叫者可見的工具集合 ({@link ToolViews}) 也在此決定一次，供 tools/list 與 tools/call 查表。
+ */
 @Component
+@Order(AuthenticationFilter.ORDER)
 public class AuthenticationFilter implements WebFilter {
 
+    /**
+     * 排在其他 /mcp WebFilter (例如 ToolsListFilter) 之前
+     */
+    public static final int ORDER = 0;
+
     public static final String AUTH_TOKEN_KEY = "X-MCP-Auth-Token";
 
+    /**
+     * 呼叫者身分 (速率限制的依據)：已驗證的 JWT claim、Authorization 雜湊，或無 Authorization 時的來源 IP
+     */
+    public static final String PRINCIPAL_KEY = "X-MCP-Principal";
+
+    /**
+     * 已驗證的 JWT claims (Map&lt;String, Object&gt;)；未啟用驗證時不存在
+     */
+    public static final String CLAIMS_KEY = "X-MCP-Claims";
+
+    /**
+     * 呼叫者可見的工具集合 (ToolViews.ToolView)
+     */
+    public static final String VIEW_KEY = "X-MCP-Tool-View";
+
+    private static final String MCP_PATH = "/mcp";
+
+    private final JwtVerifier jwtVerifier;
+    private final ToolViews toolViews;
+    private final String principalClaim;
+
+    /**
+     * @param principalClaim 以已驗證 JWT 的哪個 claim (例如 sub) 作為呼叫者身分；留空則使用 Authorization 雜湊。
+     *                       未經簽章驗證的 claim 可任意偽造以分散速率額度，因此必須啟用 mcp.auth.jwt.enabled
+     */
+    public AuthenticationFilter(JwtVerifier jwtVerifier, ToolViews toolViews,
+            @Value("${mcp.rate-limit.principal-claim:}") String principalClaim) {
+        if (!principalClaim.isEmpty() && !jwtVerifier.isEnabled()) {
+            throw new IllegalStateException("設定 mcp.rate-limit.principal-claim 時必須啟用 mcp.auth.jwt.enabled");
+        }
+        this.jwtVerifier = jwtVerifier;
+        this.toolViews = toolViews;
+        this.principalClaim = principalClaim;
+    }
+
     @Override
     @NonNull
     public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
         String authHeader = exchange.getRequest().getHeaders().getFirst("Authorization");
+        boolean verify = jwtVerifier.isEnabled() && exchange.getRequest().getPath().value().startsWith(MCP_PATH);
 
         if (authHeader != null) {
-            return chain.filter(exchange)
-                    .contextWrite(Context.of(AUTH_TOKEN_KEY, authHeader));
+            String identity = RequestKeys.authIdentity(authHeader);
+            if (!verify) {
+                // 未經簽章驗證的 Token 不讀 claim，一律以 Authorization 雜湊區分呼叫者
+                return chain.filter(exchange)
+                        .contextWrite(context(exchange, authHeader, "token:" + identity, null));
+            }
+            return jwtVerifier.verify(authHeader, identity)
+                    .flatMap(verification -> {
+                        if (!verification.valid()) {
+                            return unauthorized(exchange, verification.error());
+                        }
+                        return chain.filter(exchange)
+                                .contextWrite(context(exchange, authHeader,
+                                        principalOf(verification.claims(), identity), verification.claims()));
+                    });
         }
 
-        return chain.filter(exchange);
+        if (verify && jwtVerifier.isRequired()) {
+            return unauthorized(exchange, null);
+        }
+        InetSocketAddress remote = exchange.getRequest().getRemoteAddress();
+        String principal = remote != null && remote.getAddress() != null
+                ? "ip:" + remote.getAddress().getHostAddress()
+                : "anonymous";
+        return chain.filter(exchange)
+                .contextWrite(context(exchange, null, principal, null));
+    }
+
+    /**
+     * @param authHeader 原始 Authorization；未帶時為 null
+     * @param claims     已驗證的 JWT claims；未驗證時為 null
+     */
+    private Context context(ServerWebExchange exchange, String authHeader, String principal,
+            Map<String, Object> claims) {
+        Map<String, Object> entries = new HashMap<>(8);
+        entries.put(PRINCIPAL_KEY, principal);
+        if (authHeader != null) {
+            entries.put(AUTH_TOKEN_KEY, authHeader);
+        }
+        if (claims != null) {
+            entries.put(CLAIMS_KEY, claims);
+        }
+        entries.put(VIEW_KEY, toolViews.resolve(claims,
+                exchange.getRequest().getHeaders().getFirst(toolViews.clientHeader())));
+        return Context.of(entries);
+    }
+
+    /**
+     * RFC 6750：缺少 Token 時只回 Bearer challenge，Token 無效時附上 invalid_token 與原因
+     */
+    private static Mono<Void> unauthorized(ServerWebExchange exchange, String error) {
+        String challenge = error == null
+                ? "Bearer"
+                : "Bearer error=\"invalid_token\", error_description=\"" + error + "\"";
+        exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+        exchange.getResponse().getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, challenge);
+        return exchange.getResponse().setComplete();
+    }
+
+    private String principalOf(Map<String, Object> claims, String identity) {
+        if (!principalClaim.isEmpty() && claims.get(principalClaim) instanceof String claim && !claim.isEmpty()) {
+            return principalClaim + ":" + claim;
+        }
+        return "token:" + identity;
     }
 }
@@ -0,0 +1,71 @@
+package com.example.mcpserversidecar;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * mcp.backends.&lt;name&gt;.*：同一個 MCP 端點前方的多個上游服務，各自有規格 URL、連線池、逾時與 Authorization 轉發設定。
+ *
+ * 未設定任何後端時以 target.api.* 建立單一後端 "biz"；個別屬性未設定時沿用對應的 target.api.* 值。
+ * 後端順序即設定順序，第一個後端為預設後端 (mcp-mapping.json 頂層的 mappings/backend 區塊屬於它)。
+ */
+@ConfigurationProperties(prefix = "mcp")
+public record BackendProperties(Map<String, Backend> backends) {
+
+    public BackendProperties {
+        backends = backends != null ? backends : Collections.emptyMap();
+    }
+
+    /**
+     * @param url                  base URL，可為 unix:/path/to/service.sock
+     * @param specPath             OpenAPI 規格路徑 (預設 /v3/api-docs)
+     * @param forwardAuthorization 是否轉發 MCP client 的 Authorization header (預設 true)
+     * @param toolPrefix           加在此後端所有工具名稱前的前綴
+     * @param loadBalancer         閘道模式：在多個上游實例間負載平衡 (此時 url 只決定 Host 以外的預設值)
+     */
+    public record Backend(
+            String url,
+            String specPath,
+            Boolean forwardAuthorization,
+            String toolPrefix,
+            Duration connectTimeout,
+            Duration responseTimeout,
+            String unixFallbackUrl,
+            Boolean http2,
+            Pool pool,
+            LoadBalancer loadBalancer) {
+    }
+
+    public record Pool(
+            Integer maxConnections,
+            Integer pendingAcquireMaxCount,
+            Duration pendingAcquireTimeout,
+            Duration maxIdleTime,
+            Duration maxLifeTime) {
+    }
+
+    /**
+     * 上游實例清單 (endpoints 或 dns 擇一) 與被動剔除設定，未設定的值見 EndpointBalancer
+     *
+     * @param endpoints 固定的實例 base URL，例如 http://10.0.0.1:8080
+     * @param dns       定期解析的 host:port (例如 k8s headless Service)，每個 A/AAAA 記錄為一個實例
+     */
+    public record LoadBalancer(
+            List<String> endpoints,
+            String dns,
+            Duration dnsRefreshInterval,
+            Integer ejectAfterFailures,
+            Duration ejectDuration,
+            Duration maxEjectDuration,
+            String probePath,
+            Duration probeInterval) {
+
+        public boolean isEnabled() {
+            return (endpoints != null && !endpoints.isEmpty()) || (dns != null && !dns.isBlank());
+        }
+    }
+}
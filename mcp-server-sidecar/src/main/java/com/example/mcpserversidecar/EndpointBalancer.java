@@ -0,0 +1,391 @@
+package com.example.mcpserversidecar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 閘道模式下同一後端多個上游實例 (例如多個 biz replica) 之間的用戶端負載平衡。
+ *
+ * 以 power-of-two-choices 隨機取兩個可用實例，選成本較低者；成本為回應延遲的 EWMA 乘上 (進行中請求數 + 1)，
+ * 較慢或較忙的實例自然分到較少請求。實例清單為固定清單，或定期解析的 DNS 名稱 (例如 k8s headless Service)。
+ *
+ * 被動剔除：連續 eject-after-failures 次連線失敗或 502/503/504 的實例暫時移出可選清單，
+ * 剔除期滿後以 HEAD probe-path 主動探測，回應非 5xx 即恢復；短時間內再次被剔除時剔除時間加倍
+ * (上限 max-eject-duration)。所有實例皆被剔除時退回在全部實例間選擇，避免完全無法呼叫。
+ *
+ * 以 ExchangeFilterFunction 套用在後端的 WebClient 上，請求 URL 的 scheme/host/port 改寫為選中的實例；
+ * 重試與 hedge 的每次嘗試都會重新選擇實例。
+ */
+public class EndpointBalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(EndpointBalancer.class);
+
+    private static final double EWMA_ALPHA = 0.3;
+
+    /**
+     * 失敗的呼叫以此延遲計入 EWMA，避免快速失敗的實例因延遲低而被優先選擇
+     */
+    private static final long FAILURE_PENALTY_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private static final int DEFAULT_EJECT_AFTER_FAILURES = 5;
+    private static final Duration DEFAULT_EJECT_DURATION = Duration.ofSeconds(10);
+    private static final Duration DEFAULT_MAX_EJECT_DURATION = Duration.ofMinutes(5);
+    private static final Duration DEFAULT_PROBE_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_DNS_REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+    /**
+     * 單一上游實例的負載與健康狀態
+     */
+    static final class Endpoint {
+
+        final URI uri;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final LongAdder requests = new LongAdder();
+        volatile double ewmaNanos;
+        volatile boolean ejected;
+        volatile long ejectedUntil;
+        volatile boolean probing;
+        /**
+         * 近期被剔除的次數 (決定剔除時間倍數)，與 lastEjectedAt 只在 EndpointBalancer 的鎖內修改
+         */
+        int ejections;
+        long lastEjectedAt;
+
+        Endpoint(URI uri, double ewmaNanos) {
+            this.uri = uri;
+            this.ewmaNanos = ewmaNanos;
+        }
+
+        synchronized void observe(long nanos) {
+            ewmaNanos = ewmaNanos == 0 ? nanos : ewmaNanos + EWMA_ALPHA * (nanos - ewmaNanos);
+        }
+
+        double cost() {
+            return (ewmaNanos + 1) * (inFlight.get() + 1);
+        }
+    }
+
+    private final String backendName;
+    private final HttpClient httpClient;
+    private final String probePath;
+    private final int ejectAfterFailures;
+    private final Duration ejectDuration;
+    private final Duration maxEjectDuration;
+    private final String dnsHost;
+    private final int dnsPort;
+    private final Disposable.Composite tasks = Disposables.composite();
+
+    private volatile List<Endpoint> endpoints = List.of();
+    /**
+     * 未被剔除的實例；實例清單或健康狀態變更時重建
+     */
+    private volatile List<Endpoint> available = List.of();
+
+    /**
+     * @param defaultProbePath 未設定 probe-path 時使用 (後端的 OpenAPI 規格路徑)
+     */
+    public EndpointBalancer(String backendName, BackendProperties.LoadBalancer config, String defaultProbePath,
+            HttpClient httpClient) {
+        this.backendName = backendName;
+        this.httpClient = httpClient;
+        this.probePath = config.probePath() != null ? config.probePath() : defaultProbePath;
+        this.ejectAfterFailures = config.ejectAfterFailures() != null
+                ? config.ejectAfterFailures() : DEFAULT_EJECT_AFTER_FAILURES;
+        this.ejectDuration = config.ejectDuration() != null ? config.ejectDuration() : DEFAULT_EJECT_DURATION;
+        this.maxEjectDuration = config.maxEjectDuration() != null
+                ? config.maxEjectDuration() : DEFAULT_MAX_EJECT_DURATION;
+
+        if (config.dns() != null && !config.dns().isBlank()) {
+            URI dns = URI.create("http://" + config.dns());
+            this.dnsHost = dns.getHost();
+            this.dnsPort = dns.getPort() > 0 ? dns.getPort() : 80;
+            resolve();
+            Duration refresh = config.dnsRefreshInterval() != null
+                    ? config.dnsRefreshInterval() : DEFAULT_DNS_REFRESH_INTERVAL;
+            tasks.add(Flux.interval(refresh, refresh, Schedulers.boundedElastic())
+                    .subscribe(tick -> resolve()));
+        } else {
+            this.dnsHost = null;
+            this.dnsPort = 0;
+            update(config.endpoints().stream().map(URI::create).toList());
+        }
+
+        Duration probeInterval = config.probeInterval() != null ? config.probeInterval() : DEFAULT_PROBE_INTERVAL;
+        tasks.add(Flux.interval(probeInterval, probeInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> probeEjected())
+                .subscribe());
+    }
+
+    /**
+     * 套用在後端 WebClient 上的負載平衡 filter
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> Mono.defer(() -> {
+            Endpoint endpoint = choose();
+            if (endpoint == null) {
+                return Mono.error(new WebClientRequestException(
+                        new ConnectException("後端 " + backendName + " 沒有可用的上游實例"),
+                        request.method(), request.url(), request.headers()));
+            }
+            URI target = UriComponentsBuilder.fromUri(request.url())
+                    .scheme(endpoint.uri.getScheme())
+                    .host(endpoint.uri.getHost())
+                    .port(endpoint.uri.getPort())
+                    .build(true)
+                    .toUri();
+            ClientRequest routed = ClientRequest.from(request).url(target).build();
+
+            endpoint.inFlight.incrementAndGet();
+            endpoint.requests.increment();
+            Call call = new Call(endpoint, System.nanoTime());
+            // 回應 Header 到達時 body 仍在傳輸：進行中請求數與延遲樣本在 body 結束 (完成、錯誤或取消) 時才結算，
+            // 串流大型 body 的實例不會被誤判為閒置
+            return next.exchange(routed)
+                    .map(response -> {
+                        call.responded = true;
+                        int status = response.statusCode().value();
+                        boolean failed = status == 502 || status == 503 || status == 504;
+                        return response.mutate()
+                                .body(body -> body
+                                        .doOnComplete(() -> call.complete(failed))
+                                        .doOnError(e -> call.complete(true))
+                                        .doOnCancel(call::release))
+                                .build();
+                    })
+                    .doOnError(e -> call.complete(true))
+                    .doOnCancel(() -> {
+                        // 回應已交出後的取消不代表呼叫結束，由 body 結算
+                        if (!call.responded) {
+                            call.release();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 一次經由負載平衡的呼叫；進行中請求數只釋放一次
+     */
+    private final class Call {
+
+        private final Endpoint endpoint;
+        private final long start;
+        private final AtomicBoolean done = new AtomicBoolean();
+        volatile boolean responded;
+
+        Call(Endpoint endpoint, long start) {
+            this.endpoint = endpoint;
+            this.start = start;
+        }
+
+        /**
+         * 回應 body 結束或呼叫失敗：釋放進行中請求並計入延遲樣本
+         */
+        void complete(boolean failed) {
+            if (done.compareAndSet(false, true)) {
+                endpoint.inFlight.decrementAndGet();
+                if (failed) {
+                    recordFailure(endpoint, System.nanoTime() - start);
+                } else {
+                    recordSuccess(endpoint, System.nanoTime() - start);
+                }
+            }
+        }
+
+        /**
+         * 呼叫被取消 (例如 hedge 的另一次嘗試先完成)：只釋放進行中請求，不計入延遲樣本
+         */
+        void release() {
+            if (done.compareAndSet(false, true)) {
+                endpoint.inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * power-of-two-choices：隨機取兩個可用實例，選成本較低者
+     */
+    Endpoint choose() {
+        List<Endpoint> candidates = available;
+        if (candidates.isEmpty()) {
+            // 全部被剔除時仍需嘗試，由各實例自行回應成功或失敗
+            candidates = endpoints;
+        }
+        int size = candidates.size();
+        if (size <= 1) {
+            return size == 0 ? null : candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = candidates.get(first);
+        Endpoint b = candidates.get(second);
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    private void recordSuccess(Endpoint endpoint, long nanos) {
+        endpoint.observe(nanos);
+        endpoint.consecutiveFailures.set(0);
+    }
+
+    private void recordFailure(Endpoint endpoint, long nanos) {
+        endpoint.observe(Math.max(nanos, FAILURE_PENALTY_NANOS));
+        if (endpoint.consecutiveFailures.incrementAndGet() >= ejectAfterFailures) {
+            eject(endpoint);
+        }
+    }
+
+    private synchronized void eject(Endpoint endpoint) {
+        long now = System.nanoTime();
+        if (endpoint.ejected && now < endpoint.ejectedUntil) {
+            return;
+        }
+        // 距上次剔除已超過最長剔除時間，視為新的故障重新計算倍數
+        if (endpoint.ejections > 0 && now - endpoint.lastEjectedAt > maxEjectDuration.toNanos()) {
+            endpoint.ejections = 0;
+        }
+        endpoint.ejections++;
+        long duration = Math.min(ejectDuration.toNanos() << Math.min(endpoint.ejections - 1, 20),
+                maxEjectDuration.toNanos());
+        endpoint.lastEjectedAt = now;
+        endpoint.ejectedUntil = now + duration;
+        if (!endpoint.ejected) {
+            endpoint.ejected = true;
+            log.warn("後端 {} 的上游實例 {} 連續失敗 {} 次，暫時剔除 {} ms",
+                    backendName, endpoint.uri, endpoint.consecutiveFailures.get(), duration / 1_000_000);
+            refreshAvailable();
+        }
+    }
+
+    private synchronized void reinstate(Endpoint endpoint) {
+        if (!endpoint.ejected) {
+            return;
+        }
+        endpoint.ejected = false;
+        endpoint.consecutiveFailures.set(0);
+        // 恢復後以目前可用實例的平均延遲重新起算，避免沿用失敗懲罰而分不到流量
+        endpoint.ewmaNanos = averageEwma(available);
+        log.info("後端 {} 的上游實例 {} 探測成功，恢復接收請求", backendName, endpoint.uri);
+        refreshAvailable();
+    }
+
+    private void refreshAvailable() {
+        available = endpoints.stream().filter(endpoint -> !endpoint.ejected).toList();
+    }
+
+    /**
+     * 剔除期滿的實例以 HEAD 探測，回應非 5xx 即恢復，否則延長剔除
+     */
+    private Mono<Void> probeEjected() {
+        long now = System.nanoTime();
+        return Flux.fromIterable(endpoints)
+                .filter(endpoint -> endpoint.ejected && !endpoint.probing && now >= endpoint.ejectedUntil)
+                .flatMap(endpoint -> {
+                    endpoint.probing = true;
+                    return httpClient.head()
+                            .uri(endpoint.uri + probePath)
+                            .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                            .map(status -> status < 500)
+                            .onErrorReturn(false)
+                            .doOnNext(healthy -> {
+                                if (healthy) {
+                                    reinstate(endpoint);
+                                } else {
+                                    eject(endpoint);
+                                }
+                            })
+                            .doFinally(signal -> endpoint.probing = false);
+                })
+                .then();
+    }
+
+    /**
+     * 解析 DNS 名稱並更新實例清單；解析失敗時保留目前清單
+     */
+    private void resolve() {
+        try {
+            List<URI> uris = new ArrayList<>();
+            for (InetAddress address : InetAddress.getAllByName(dnsHost)) {
+                String host = address instanceof Inet6Address
+                        ? "[" + address.getHostAddress() + "]"
+                        : address.getHostAddress();
+                uris.add(URI.create("http://" + host + ":" + dnsPort));
+            }
+            update(uris);
+        } catch (UnknownHostException e) {
+            log.warn("無法解析後端 {} 的 DNS 名稱 {}，沿用目前的 {} 個上游實例: {}",
+                    backendName, dnsHost, endpoints.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 更新實例清單；既有實例保留其延遲與健康狀態，新實例以目前平均延遲起算
+     */
+    synchronized void update(List<URI> uris) {
+        Map<URI, Endpoint> current = new LinkedHashMap<>();
+        endpoints.forEach(endpoint -> current.put(endpoint.uri, endpoint));
+        double initialEwma = averageEwma(endpoints);
+        List<Endpoint> next = new ArrayList<>(uris.size());
+        for (URI uri : uris) {
+            Endpoint existing = current.get(uri);
+            next.add(existing != null ? existing : new Endpoint(uri, initialEwma));
+        }
+        if (next.size() != endpoints.size() || !current.keySet().containsAll(uris)) {
+            log.info("後端 {} 的上游實例: {}", backendName, uris);
+        }
+        endpoints = List.copyOf(next);
+        refreshAvailable();
+    }
+
+    private static double averageEwma(List<Endpoint> endpoints) {
+        return endpoints.stream().mapToDouble(endpoint -> endpoint.ewmaNanos).average().orElse(0);
+    }
+
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("uri", endpoint.uri.toString());
+            state.put("inFlight", endpoint.inFlight.get());
+            state.put("requests", endpoint.requests.sum());
+            state.put("latencyEwmaMs", Math.round(endpoint.ewmaNanos / 1_000_000));
+            state.put("consecutiveFailures", endpoint.consecutiveFailures.get());
+            state.put("ejected", endpoint.ejected);
+            stats.add(state);
+        }
+        return stats;
+    }
+
+    public void dispose() {
+        tasks.dispose();
+    }
+}
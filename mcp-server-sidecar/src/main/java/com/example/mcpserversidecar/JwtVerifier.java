@@ -0,0 +1,411 @@
+package com.example.mcpserversidecar;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在 /mcp 入口驗證 Bearer JWT 的簽章與有效期間，無效的 Token 不必等 biz 拒絕。
+ *
+ * 公鑰來自 mcp.auth.jwt.jwks-location (file:、classpath: 或 https: 的 JWKS)，每隔 refresh-interval 於背景重新載入；
+ * Token 的 kid 不在目前的金鑰組中時 (例如 IdP 輪替金鑰) 立即重新載入一次 (最多每 30 秒一次)。
+ * 支援 RS256/384/512 與 ES256/384/512。
+ *
+ * 驗證成功的結果依 Token 雜湊快取於有上限的 Caffeine 快取，常見情況只需一次查詢與有效期限比較；
+ * 失敗結果另存於較小、較短 TTL 的快取，大量無效 Token 不會擠掉有效 Token。"token not yet valid" 不快取，
+ * Token 到了 nbf 即可使用。金鑰組變更時清空兩個快取。
+ *
+ * JWKS 的載入 (含啟動時的第一次) 在背景執行，http(s) 位置有連線與讀取逾時，IdP 無回應不會卡住啟動；
+ * 快取未命中時的簽章驗證也在 boundedElastic 執行，不佔用 event loop。
+ */
+@Component
+public class JwtVerifier {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtVerifier.class);
+
+    private static final Base64.Decoder BASE64URL = Base64.getUrlDecoder();
+    private static final long MIN_KEY_MISS_REFRESH_NANOS = Duration.ofSeconds(30).toNanos();
+    private static final String NOT_YET_VALID = "token not yet valid";
+
+    private final ObjectMapper objectMapper;
+    private final ResourceLoader resourceLoader;
+    private final boolean enabled;
+    private final boolean required;
+    private final String jwksLocation;
+    private final String issuer;
+    private final String audience;
+    private final Duration clockSkew;
+    private final Duration refreshInterval;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Cache<String, Verification> verified;
+    private final Cache<String, Verification> invalid;
+
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private final AtomicLong lastKeyMissRefresh = new AtomicLong(System.nanoTime() - MIN_KEY_MISS_REFRESH_NANOS);
+    private volatile Disposable refreshTask;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder verifications = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * 驗證結果；valid 為 false 時 error 為固定的原因文字 (會原樣放進 WWW-Authenticate，不含 Token 內容)
+     *
+     * @param expiresAt exp claim (epoch 秒)
+     */
+    public record Verification(boolean valid, String error, long expiresAt, Map<String, Object> claims) {
+
+        static Verification invalid(String error) {
+            return new Verification(false, error, Long.MAX_VALUE, Collections.emptyMap());
+        }
+    }
+
+    public JwtVerifier(ObjectMapper objectMapper, ResourceLoader resourceLoader,
+            @Value("${mcp.auth.jwt.enabled:false}") boolean enabled,
+            @Value("${mcp.auth.jwt.required:true}") boolean required,
+            @Value("${mcp.auth.jwt.jwks-location:}") String jwksLocation,
+            @Value("${mcp.auth.jwt.issuer:}") String issuer,
+            @Value("${mcp.auth.jwt.audience:}") String audience,
+            @Value("${mcp.auth.jwt.clock-skew:30s}") Duration clockSkew,
+            @Value("${mcp.auth.jwt.refresh-interval:5m}") Duration refreshInterval,
+            @Value("${mcp.auth.jwt.cache-size:10000}") long cacheSize,
+            @Value("${mcp.auth.jwt.cache-ttl:5m}") Duration cacheTtl,
+            @Value("${mcp.auth.jwt.invalid-cache-size:1000}") long invalidCacheSize,
+            @Value("${mcp.auth.jwt.invalid-cache-ttl:30s}") Duration invalidCacheTtl,
+            @Value("${mcp.auth.jwt.jwks-connect-timeout:2s}") Duration connectTimeout,
+            @Value("${mcp.auth.jwt.jwks-read-timeout:5s}") Duration readTimeout) {
+        this.objectMapper = objectMapper;
+        this.resourceLoader = resourceLoader;
+        this.enabled = enabled;
+        this.required = required;
+        this.jwksLocation = jwksLocation;
+        this.issuer = issuer;
+        this.audience = audience;
+        this.clockSkew = clockSkew;
+        this.refreshInterval = refreshInterval;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .build();
+        this.invalid = Caffeine.newBuilder()
+                .maximumSize(invalidCacheSize)
+                .expireAfterWrite(invalidCacheTtl)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 啟用驗證時，/mcp 請求是否必須帶 Authorization
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (jwksLocation.isBlank()) {
+            throw new IllegalStateException("mcp.auth.jwt.enabled=true 時必須設定 mcp.auth.jwt.jwks-location");
+        }
+        // 第一次載入也在背景執行，不阻塞啟動；載入前到達的 Token 因找不到 kid 會觸發一次重新載入
+        refreshTask = (refreshInterval.isZero()
+                        ? Flux.just(0L).subscribeOn(Schedulers.boundedElastic())
+                        : Flux.interval(Duration.ZERO, refreshInterval, Schedulers.boundedElastic()))
+                .subscribe(tick -> refresh());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+    }
+
+    /**
+     * 重新載入 JWKS；金鑰組變更時清空驗證快取。失敗時保留目前的金鑰組
+     *
+     * @return 是否載入成功
+     */
+    public synchronized boolean refresh() {
+        try (InputStream in = open(resourceLoader.getResource(jwksLocation))) {
+            Map<String, PublicKey> loaded = parseJwks(objectMapper.readTree(in));
+            if (loaded.isEmpty()) {
+                log.warn("JWKS {} 沒有可用的簽章公鑰，保留目前的 {} 把金鑰", jwksLocation, keys.size());
+                return false;
+            }
+            if (!loaded.equals(keys)) {
+                log.info("已載入 JWKS {}: {} 把金鑰 {}", jwksLocation, loaded.size(), loaded.keySet());
+                keys = loaded;
+                verified.invalidateAll();
+                invalid.invalidateAll();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("載入 JWKS {} 失敗: {}", jwksLocation, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * http(s) 位置以明確的連線與讀取逾時開啟，其餘 (file:、classpath:) 直接讀取
+     */
+    private InputStream open(Resource resource) throws IOException {
+        if (!resource.isFile() && resource.getURL().getProtocol().startsWith("http")) {
+            URLConnection connection = resource.getURL().openConnection();
+            connection.setConnectTimeout((int) connectTimeout.toMillis());
+            connection.setReadTimeout((int) readTimeout.toMillis());
+            return connection.getInputStream();
+        }
+        return resource.getInputStream();
+    }
+
+    /**
+     * 驗證 Authorization Header；快取未命中時在 boundedElastic 解析並驗證簽章
+     *
+     * @param identity Token 的雜湊 (RequestKeys.authIdentity)，作為快取鍵
+     */
+    public Mono<Verification> verify(String authHeader, String identity) {
+        Verification cached = verified.getIfPresent(identity);
+        if (cached == null) {
+            cached = invalid.getIfPresent(identity);
+        }
+        if (cached != null) {
+            cacheHits.increment();
+            return Mono.just(checkExpiry(cached));
+        }
+        return Mono.fromCallable(() -> {
+                    Verification result = verifyNow(authHeader);
+                    if (result == null) {
+                        // kid 不在目前的金鑰組中：重新載入一次後再驗證
+                        long last = lastKeyMissRefresh.get();
+                        long now = System.nanoTime();
+                        if (now - last >= MIN_KEY_MISS_REFRESH_NANOS
+                                && lastKeyMissRefresh.compareAndSet(last, now)) {
+                            refresh();
+                        }
+                        result = verifyNow(authHeader);
+                    }
+                    return record(identity, result != null ? result : Verification.invalid("unknown signing key"));
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Verification record(String identity, Verification result) {
+        verifications.increment();
+        if (result.valid()) {
+            verified.put(identity, result);
+        } else if (!NOT_YET_VALID.equals(result.error())) {
+            invalid.put(identity, result);
+        }
+        return checkExpiry(result);
+    }
+
+    private Verification checkExpiry(Verification result) {
+        if (result.valid() && result.expiresAt() + clockSkew.toSeconds() < System.currentTimeMillis() / 1000) {
+            result = Verification.invalid("token expired");
+        }
+        if (!result.valid()) {
+            rejected.increment();
+        }
+        return result;
+    }
+
+    /**
+     * 解析並驗證 Token；找不到對應 kid 的公鑰時回傳 null
+     */
+    private Verification verifyNow(String authHeader) {
+        if (!authHeader.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return Verification.invalid("not a bearer token");
+        }
+        String token = authHeader.substring(7).trim();
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (second < 0 || token.indexOf('.', second + 1) >= 0) {
+            return Verification.invalid("malformed token");
+        }
+        try {
+            JsonNode header = objectMapper.readTree(BASE64URL.decode(token.substring(0, first)));
+            String alg = header.path("alg").asText();
+            String algorithm = signatureAlgorithm(alg);
+            if (algorithm == null) {
+                // alg 來自未驗證的 Token，不放進回應 Header
+                log.debug("不支援的 JWT alg: {}", alg);
+                return Verification.invalid("unsupported alg");
+            }
+            PublicKey key = keyFor(header.path("kid").asText(null), alg);
+            if (key == null) {
+                return null;
+            }
+            Signature signature = Signature.getInstance(algorithm);
+            signature.initVerify(key);
+            signature.update(token.substring(0, second).getBytes(StandardCharsets.US_ASCII));
+            if (!signature.verify(BASE64URL.decode(token.substring(second + 1)))) {
+                return Verification.invalid("invalid signature");
+            }
+            Map<String, Object> claims = objectMapper.readValue(BASE64URL.decode(token.substring(first + 1, second)),
+                    new TypeReference<>() {
+                    });
+            return checkClaims(claims);
+        } catch (IOException | IllegalArgumentException | GeneralSecurityException e) {
+            return Verification.invalid("malformed token");
+        }
+    }
+
+    private Verification checkClaims(Map<String, Object> claims) {
+        long now = System.currentTimeMillis() / 1000;
+        long skew = clockSkew.toSeconds();
+        if (!(claims.get("exp") instanceof Number exp)) {
+            return Verification.invalid("missing exp");
+        }
+        if (exp.longValue() + skew < now) {
+            return Verification.invalid("token expired");
+        }
+        if (claims.get("nbf") instanceof Number nbf && nbf.longValue() - skew > now) {
+            return Verification.invalid(NOT_YET_VALID);
+        }
+        if (!issuer.isEmpty() && !issuer.equals(claims.get("iss"))) {
+            return Verification.invalid("unexpected issuer");
+        }
+        if (!audience.isEmpty()) {
+            Object aud = claims.get("aud");
+            boolean matches = aud instanceof List<?> list ? list.contains(audience) : audience.equals(aud);
+            if (!matches) {
+                return Verification.invalid("unexpected audience");
+            }
+        }
+        return new Verification(true, null, exp.longValue(), Collections.unmodifiableMap(claims));
+    }
+
+    /**
+     * 依 kid 取得公鑰；Token 未帶 kid 時使用金鑰組中唯一一把同類型的金鑰
+     */
+    private PublicKey keyFor(String kid, String alg) {
+        Map<String, PublicKey> current = keys;
+        if (kid != null) {
+            return current.get(kid);
+        }
+        String type = alg.startsWith("ES") ? "EC" : "RSA";
+        List<PublicKey> candidates = current.values().stream()
+                .filter(key -> key.getAlgorithm().equals(type))
+                .toList();
+        return candidates.size() == 1 ? candidates.get(0) : null;
+    }
+
+    private static String signatureAlgorithm(String alg) {
+        return switch (alg) {
+            case "RS256" -> "SHA256withRSA";
+            case "RS384" -> "SHA384withRSA";
+            case "RS512" -> "SHA512withRSA";
+            // JWS 的 ECDSA 簽章為 r || s 原始格式 (IEEE P1363)，不是 DER
+            case "ES256" -> "SHA256withECDSAinP1363Format";
+            case "ES384" -> "SHA384withECDSAinP1363Format";
+            case "ES512" -> "SHA512withECDSAinP1363Format";
+            default -> null;
+        };
+    }
+
+    /**
+     * 解析 JWKS 中的 RSA 與 EC 簽章公鑰 (略過 use=enc 與無法解析的項目)；沒有 kid 的金鑰以序號命名
+     */
+    static Map<String, PublicKey> parseJwks(JsonNode jwks) {
+        Map<String, PublicKey> result = new LinkedHashMap<>();
+        int index = 0;
+        for (JsonNode jwk : jwks.path("keys")) {
+            index++;
+            if ("enc".equals(jwk.path("use").asText())) {
+                continue;
+            }
+            String kid = jwk.path("kid").asText("#" + index);
+            try {
+                PublicKey key = switch (jwk.path("kty").asText()) {
+                    case "RSA" -> KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                            unsigned(jwk.path("n").asText()), unsigned(jwk.path("e").asText())));
+                    case "EC" -> ecKey(jwk);
+                    default -> null;
+                };
+                if (key != null) {
+                    result.put(kid, key);
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("略過無法解析的 JWK {}: {}", kid, e.toString());
+            }
+        }
+        return result;
+    }
+
+    private static PublicKey ecKey(JsonNode jwk) throws GeneralSecurityException {
+        String curve = switch (jwk.path("crv").asText()) {
+            case "P-256" -> "secp256r1";
+            case "P-384" -> "secp384r1";
+            case "P-521" -> "secp521r1";
+            default -> throw new IllegalArgumentException("不支援的曲線 " + jwk.path("crv").asText());
+        };
+        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(curve));
+        ECPoint point = new ECPoint(unsigned(jwk.path("x").asText()), unsigned(jwk.path("y").asText()));
+        return KeyFactory.getInstance("EC")
+                .generatePublic(new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+    }
+
+    private static BigInteger unsigned(String base64url) {
+        return new BigInteger(1, BASE64URL.decode(base64url));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("keys", List.copyOf(keys.keySet()));
+        stats.put("cachedTokens", verified.estimatedSize());
+        stats.put("cachedInvalidTokens", invalid.estimatedSize());
+        stats.put("cacheHits", cacheHits.sum());
+        stats.put("verifications", verifications.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.AdaptiveConcurrencyLimiter;
+import com.example.mcpserversidecar.service.InFlightCoalescer;
+import com.example.mcpserversidecar.service.OpenApiScannerService;
+import com.example.mcpserversidecar.service.ToolCatalogLoader;
+import com.example.mcpserversidecar.service.ToolListCache;
+import com.example.mcpserversidecar.service.ToolResilience;
+import com.example.mcpserversidecar.service.ToolResultCursors;
+import com.example.mcpserversidecar.service.ToolRateLimiter;
+import com.example.mcpserversidecar.service.ToolResponseCache;
+import com.example.mcpserversidecar.service.ToolRetryExecutor;
+import com.example.mcpserversidecar.service.ToolViews;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator 端點 /actuator/mcptools：GET 輸出 MCP 工具管線的執行統計，POST 觸發工具目錄重新掃描。
+ */
+@Component
+@Endpoint(id = "mcptools")
+public class McpToolsEndpoint {
+
+    private final ToolResponseCache responseCache;
+    private final InFlightCoalescer coalescer;
+    private final ToolResilience resilience;
+    private final ToolRetryExecutor retryExecutor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ToolRateLimiter rateLimiter;
+    private final ToolCatalogLoader catalogLoader;
+    private final OpenApiScannerService scannerService;
+    private final JwtVerifier jwtVerifier;
+    private final ToolListCache toolListCache;
+    private final ToolViews toolViews;
+    private final ToolResultCursors resultCursors;
+
+    public McpToolsEndpoint(ToolResponseCache responseCache, InFlightCoalescer coalescer,
+            ToolResilience resilience, ToolRetryExecutor retryExecutor, AdaptiveConcurrencyLimiter concurrencyLimiter,
+            ToolRateLimiter rateLimiter, ToolCatalogLoader catalogLoader, OpenApiScannerService scannerService,
+            JwtVerifier jwtVerifier, ToolListCache toolListCache, ToolViews toolViews,
+            ToolResultCursors resultCursors) {
+        this.responseCache = responseCache;
+        this.coalescer = coalescer;
+        this.resilience = resilience;
+        this.retryExecutor = retryExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = rateLimiter;
+        this.catalogLoader = catalogLoader;
+        this.scannerService = scannerService;
+        this.jwtVerifier = jwtVerifier;
+        this.toolListCache = toolListCache;
+        this.toolViews = toolViews;
+        this.resultCursors = resultCursors;
+    }
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cache", responseCache.stats());
+        stats.put("coalescing", coalescer.stats());
+        stats.put("resilience", resilience.stats());
+        stats.put("retries", retryExecutor.stats());
+        stats.put("concurrency", concurrencyLimiter.stats());
+        stats.put("rateLimit", rateLimiter.stats());
+        stats.put("auth", jwtVerifier.stats());
+        stats.put("catalog", catalogLoader.status());
+        stats.put("backends", scannerService.backendStatus());
+        stats.put("toolsList", toolListCache.stats());
+        stats.put("toolViews", toolViews.stats());
+        stats.put("resultCursors", resultCursors.stats());
+        return stats;
+    }
+
+    /**
+     * 立即條件式重新掃描工具目錄 (例如 biz 部署完成後由 CI 呼叫)
+     */
+    @WriteOperation
+    public Mono<Map<String, Object>> refresh() {
+        return catalogLoader.refresh()
+                .map(change -> Map.<String, Object>of("refreshed", true, "change", change))
+                .defaultIfEmpty(Map.of("refreshed", false,
+                        "reason", catalogLoader.isLoaded() ? "沒有變更或已有掃描進行中" : "工具目錄尚未完成首次載入"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.ToolResilience;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 將斷路器與隔艙狀態輸出為 Micrometer 指標
+ * (resilience4j_circuitbreaker_state、resilience4j_circuitbreaker_calls、resilience4j_bulkhead_available_concurrent_calls 等)。
+ */
+@Configuration
+public class ResilienceMetricsConfig {
+
+    @Bean
+    public MeterBinder circuitBreakerMetrics(ToolResilience resilience) {
+        return TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(resilience.getCircuitBreakerRegistry());
+    }
+
+    @Bean
+    public MeterBinder bulkheadMetrics(ToolResilience resilience) {
+        return TaggedBulkheadMetrics.ofBulkheadRegistry(resilience.getBulkheadRegistry());
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.ToolCatalogLoader;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 工具目錄健康狀態 (toolCatalog)：首次載入成功前為 DOWN，納入 readiness group 供 k8s readinessProbe 使用。
+ */
+@Component
+public class ToolCatalogHealthIndicator implements HealthIndicator {
+
+    private final ToolCatalogLoader catalogLoader;
+
+    public ToolCatalogHealthIndicator(ToolCatalogLoader catalogLoader) {
+        this.catalogLoader = catalogLoader;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = catalogLoader.isLoaded() ? Health.up() : Health.down();
+        return builder.withDetails(catalogLoader.status()).build();
+    }
+}
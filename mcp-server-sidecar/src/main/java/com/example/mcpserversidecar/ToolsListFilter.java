@@ -0,0 +1,209 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.ToolListCache;
+import com.example.mcpserversidecar.service.ToolViews;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 以 {@link ToolListCache} 預先序列化的結果頁直接回應 /mcp 的 tools/list (JSON-RPC 單一請求)，
+ * 每次請求只需寫出 id 前綴與共用的結果頁 bytes，並支援 cursor 分頁。
+ *
+ * 其他 JSON-RPC 訊息 (tools/call、initialize、批次請求等) 原封不動交給 MCP Server；
+ * 結果頁尚未建立、未帶 Mcp-Session-Id 或 session 不是由 MCP Server 建立 (已刪除、已過期) 的請求也交由 MCP Server 處理，
+ * 由它回應 404 等錯誤。session 依 MCP Server 在 initialize 回應中設定的 Mcp-Session-Id 記錄，DELETE 或回應 404 時移除。
+ * 只讀取 Content-Length 不超過 {@value #MAX_BODY_BYTES} bytes 的 body，較大的請求 (tools/call 的大型參數等) 直接放行。
+ * 排在 AuthenticationFilter 之後，
+ * 未通過 JWT 驗證的請求不會到達此處；回應的工具只包含 AuthenticationFilter 決定的呼叫者檢視 (ToolViews)。
+ */
+@Component
+@Order(AuthenticationFilter.ORDER + 1)
+public class ToolsListFilter implements WebFilter {
+
+    private static final String MCP_PATH = "/mcp";
+    private static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final byte[] TOOLS_LIST = "\"tools/list\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE_PREFIX = "{\"jsonrpc\":\"2.0\",\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESULT_FIELD = ",\"result\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INVALID_CURSOR =
+            ",\"error\":{\"code\":-32602,\"message\":\"Invalid cursor\"}}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE_SUFFIX = {'}'};
+
+    /**
+     * tools/list 請求只有 id 與 cursor，超過此大小的 body 不讀取
+     */
+    static final int MAX_BODY_BYTES = 4096;
+
+    private final ToolListCache toolListCache;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Cache<String, Boolean> sessions;
+
+    public ToolsListFilter(ToolListCache toolListCache, ObjectMapper objectMapper,
+            @Value("${mcp.tools-list.pre-serialized:true}") boolean enabled,
+            @Value("${mcp.tools-list.max-sessions:100000}") long maxSessions,
+            @Value("${mcp.tools-list.session-idle-timeout:30m}") Duration sessionIdleTimeout) {
+        this.toolListCache = toolListCache;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        // 淘汰只會讓該 session 的 tools/list 改由 MCP Server 處理，不影響正確性
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterAccess(sessionIdleTimeout)
+                .build();
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (!enabled || !MCP_PATH.equals(request.getPath().value())) {
+            return chain.filter(exchange);
+        }
+        String sessionId = request.getHeaders().getFirst(SESSION_HEADER);
+        if (request.getMethod() == HttpMethod.DELETE) {
+            if (sessionId != null) {
+                sessions.invalidate(sessionId);
+            }
+            return chain.filter(exchange);
+        }
+        if (request.getMethod() != HttpMethod.POST || sessionId == null
+                || sessions.getIfPresent(sessionId) == null || !toolListCache.isReady()
+                || request.getHeaders().getContentLength() < 0
+                || request.getHeaders().getContentLength() > MAX_BODY_BYTES) {
+            return chain.filter(trackSession(exchange, sessionId));
+        }
+        return DataBufferUtils.join(request.getBody())
+                .map(buffer -> {
+                    byte[] body = new byte[buffer.readableByteCount()];
+                    buffer.read(body);
+                    DataBufferUtils.release(buffer);
+                    return body;
+                })
+                .defaultIfEmpty(new byte[0])
+                .flatMap(body -> Mono.deferContextual(ctx -> {
+                    Mono<Void> response = indexOf(body, TOOLS_LIST) >= 0
+                            ? toolsList(exchange, body, ctx.getOrDefault(AuthenticationFilter.VIEW_KEY, ToolViews.ALL))
+                            : null;
+                    // 已讀取的 body 需重新提供給 MCP Server
+                    return response != null
+                            ? response
+                            : chain.filter(trackSession(exchange.mutate().request(replayBody(request, body)).build(),
+                                    sessionId));
+                }));
+    }
+
+    /**
+     * 回應送出前記錄 MCP Server 建立的 session (initialize 回應的 Mcp-Session-Id)，
+     * MCP Server 以 404 拒絕的 session 則移除
+     */
+    private ServerWebExchange trackSession(ServerWebExchange exchange, String requestSessionId) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            String created = response.getHeaders().getFirst(SESSION_HEADER);
+            if (created != null) {
+                sessions.put(created, Boolean.TRUE);
+            } else if (requestSessionId != null && HttpStatus.NOT_FOUND.equals(response.getStatusCode())) {
+                sessions.invalidate(requestSessionId);
+            }
+            return Mono.empty();
+        });
+        return exchange;
+    }
+
+    /**
+     * 以快取的結果頁回應 tools/list；不是單一 tools/list 請求時回傳 null
+     */
+    private Mono<Void> toolsList(ServerWebExchange exchange, byte[] body, ToolViews.ToolView view) {
+        JsonNode message;
+        try {
+            message = objectMapper.readTree(body);
+        } catch (IOException e) {
+            return null;
+        }
+        if (message == null || !message.isObject() || !"tools/list".equals(message.path("method").asText())
+                || !message.hasNonNull("id")) {
+            return null;
+        }
+        JsonNode cursorNode = message.path("params").path("cursor");
+        String cursor = cursorNode.isTextual() ? cursorNode.asText() : null;
+
+        byte[] page;
+        try {
+            page = toolListCache.page(view, cursor);
+        } catch (ToolListCache.InvalidCursorException e) {
+            return write(exchange, message.get("id"), INVALID_CURSOR);
+        }
+        if (page == null) {
+            return null;
+        }
+        return write(exchange, message.get("id"), RESULT_FIELD, page, RESPONSE_SUFFIX);
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, JsonNode id, byte[]... parts) {
+        byte[] idBytes;
+        try {
+            idBytes = objectMapper.writeValueAsBytes(id);
+        } catch (IOException e) {
+            return Mono.error(e);
+        }
+        DataBufferFactory factory = exchange.getResponse().bufferFactory();
+        DataBuffer[] buffers = new DataBuffer[parts.length + 2];
+        buffers[0] = factory.wrap(RESPONSE_PREFIX);
+        buffers[1] = factory.wrap(idBytes);
+        for (int i = 0; i < parts.length; i++) {
+            buffers[i + 2] = factory.wrap(parts[i]);
+        }
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return exchange.getResponse().writeWith(Flux.just(buffers));
+    }
+
+    private static ServerHttpRequest replayBody(ServerHttpRequest request, byte[] body) {
+        return new ServerHttpRequestDecorator(request) {
+            @Override
+            @NonNull
+            public Flux<DataBuffer> getBody() {
+                return Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)));
+            }
+        };
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.mcpserversidecar;
+
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 已設定的上游後端與各自的連線池 (依設定順序，第一個為預設後端)。由 UpstreamHttpConfig 建立。
+ */
+public class UpstreamBackends {
+
+    /**
+     * @param baseUrl  組成請求 URL 用的 base URL (Unix socket 模式下為 http://localhost)
+     * @param specUrl  OpenAPI 規格的完整 URL
+     * @param balancer 閘道模式的實例負載平衡；null 表示直接連線 baseUrl
+     * @param fixedAddress 連線位址由 httpClient 的 remoteAddress 決定 (Unix socket 模式)，URL 只提供路徑
+     */
+    public record Backend(
+            String name,
+            String baseUrl,
+            String specUrl,
+            boolean forwardAuthorization,
+            String toolPrefix,
+            HttpClient httpClient,
+            EndpointBalancer balancer,
+            boolean fixedAddress) {
+
+        public Backend(String name, String baseUrl, String specUrl, boolean forwardAuthorization, String toolPrefix,
+                HttpClient httpClient) {
+            this(name, baseUrl, specUrl, forwardAuthorization, toolPrefix, httpClient, null, false);
+        }
+
+        public WebClient webClient(WebClient.Builder builder) {
+            return webClient(builder, httpClient);
+        }
+
+        /**
+         * 以指定的 HttpClient (例如自訂連線逾時的衍生實例) 建立此後端的 WebClient，閘道模式下套用負載平衡。
+         * Unix socket 模式 (fixedAddress) 下以相對 URI 送出請求：reactor-netty 收到絕對 URI 會改連 URL 中的 host，
+         * 忽略 remoteAddress。
+         */
+        public WebClient webClient(WebClient.Builder builder, HttpClient client) {
+            ClientHttpConnector connector = new ReactorClientHttpConnector(client);
+            if (fixedAddress) {
+                ClientHttpConnector absolute = connector;
+                connector = (method, uri, requestCallback) ->
+                        absolute.connect(method, pathAndQuery(uri), requestCallback);
+            }
+            WebClient.Builder configured = builder.clone()
+                    .clientConnector(connector);
+            if (balancer != null) {
+                configured.filter(balancer.filter());
+            }
+            return configured.build();
+        }
+
+        private static URI pathAndQuery(URI uri) {
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            return URI.create(uri.getRawQuery() != null ? path + "?" + uri.getRawQuery() : path);
+        }
+    }
+
+    private final Map<String, Backend> backends;
+    private final List<ConnectionProvider> providers;
+
+    public UpstreamBackends(List<Backend> backends, List<ConnectionProvider> providers) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("至少需要設定一個上游後端");
+        }
+        Map<String, Backend> byName = new LinkedHashMap<>();
+        backends.forEach(backend -> byName.put(backend.name(), backend));
+        this.backends = Collections.unmodifiableMap(byName);
+        this.providers = new ArrayList<>(providers);
+    }
+
+    public List<Backend> all() {
+        return List.copyOf(backends.values());
+    }
+
+    public Backend defaultBackend() {
+        return backends.values().iterator().next();
+    }
+
+    /**
+     * 依名稱取得後端；name 為 null (例如升級前的工具目錄快照) 時回傳預設後端，不存在時回傳 null
+     */
+    public Backend get(String name) {
+        return name == null ? defaultBackend() : backends.get(name);
+    }
+
+    public void dispose() {
+        backends.values().forEach(backend -> {
+            if (backend.balancer() != null) {
+                backend.balancer().dispose();
+            }
+        });
+        providers.forEach(ConnectionProvider::dispose);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.mcpserversidecar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.unix.DomainSocketAddress;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通往上游後端 (預設為 biz 容器，target.api.url) 的專用 Reactor Netty 連線池。
+ *
+ * 與 WebClient 預設的全域連線池分開，讓突發的工具呼叫不與其他用途搶連線，
+ * 並可調整連線數、等待佇列、閒置/存活時間。啟用 target.api.http2.enabled 時改用 HTTP/2 cleartext (h2c)，
+ * 多個工具呼叫以 stream 多工共用少數連線 (biz 端需設定 server.http2.enabled=true)。
+ *
+ * target.api.url 可設為 unix:/path/to/biz.sock，透過 Pod 內共享的 emptyDir 以 Unix domain socket 連線 biz，
+ * 省去 TCP loopback 的協定堆疊成本；socket 不存在或平台不支援 native transport 時退回
+ * target.api.unix.fallback-url (預設 http://127.0.0.1:8080)。
+ *
+ * target.api.connect-timeout / response-timeout 為所有工具的預設逾時，可在 mcp-mapping.json 的
+ * "timeout" 區塊逐一覆寫。
+ *
+ * 設定 mcp.backends.&lt;name&gt;.* 時 (見 BackendProperties) 每個後端各建立一個連線池 (名稱 &lt;name&gt;-upstream)，
+ * 未設定的屬性沿用上述 target.api.* 的值；未設定任何後端時只有一個以 target.api.* 建立的後端 "biz"。
+ *
+ * 閘道模式：後端設定 load-balancer.endpoints (或 load-balancer.dns) 時，呼叫由 EndpointBalancer 分散到多個實例
+ * (預設後端為 target.api.load-balancer.*)，此時不使用 Unix domain socket。
+ *
+ * 連線池指標 (reactor.netty.connection.provider.*：active / idle / pending 連線數與取得連線耗時)
+ * 透過 Micrometer 輸出。
+ */
+@Configuration
+@EnableConfigurationProperties(BackendProperties.class)
+public class UpstreamHttpConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamHttpConfig.class);
+
+    /**
+     * 未設定 mcp.backends 時的單一後端名稱
+     */
+    public static final String DEFAULT_BACKEND = "biz";
+
+    /**
+     * target.api.url 以此前綴表示 Unix domain socket，例如 unix:/var/run/biz/biz.sock
+     */
+    public static final String UNIX_PREFIX = "unix:";
+
+    private static final String UNIX_BASE_URL = "http://localhost";
+
+    private static final String DEFAULT_SPEC_PATH = "/v3/api-docs";
+
+    @Bean(destroyMethod = "dispose")
+    public UpstreamBackends upstreamBackends(BackendProperties properties,
+            @Value("${target.api.url}") String targetApiUrl,
+            @Value("${target.api.unix.fallback-url:http://127.0.0.1:8080}") String fallbackUrl,
+            @Value("${target.api.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${target.api.response-timeout:30s}") Duration responseTimeout,
+            @Value("${target.api.http2.enabled:false}") boolean http2,
+            @Value("${target.api.http2.max-concurrent-streams:100}") int maxConcurrentStreams,
+            @Value("${target.api.pool.max-connections:50}") int maxConnections,
+            @Value("${target.api.pool.pending-acquire-max-count:500}") int pendingAcquireMaxCount,
+            @Value("${target.api.pool.pending-acquire-timeout:5s}") Duration pendingAcquireTimeout,
+            @Value("${target.api.pool.max-idle-time:30s}") Duration maxIdleTime,
+            @Value("${target.api.pool.max-life-time:5m}") Duration maxLifeTime,
+            @Value("${target.api.pool.evict-in-background:30s}") Duration evictInBackground,
+            @Value("${target.api.load-balancer.endpoints:}") List<String> endpoints,
+            @Value("${target.api.load-balancer.dns:}") String dns) {
+
+        BackendProperties.Backend defaults = new BackendProperties.Backend(targetApiUrl, DEFAULT_SPEC_PATH, true, "",
+                connectTimeout, responseTimeout, fallbackUrl, http2,
+                new BackendProperties.Pool(maxConnections, pendingAcquireMaxCount, pendingAcquireTimeout,
+                        maxIdleTime, maxLifeTime),
+                new BackendProperties.LoadBalancer(endpoints, dns, null, null, null, null, null, null));
+        Map<String, BackendProperties.Backend> configured = properties.backends().isEmpty()
+                ? Map.of(DEFAULT_BACKEND, defaults)
+                : properties.backends();
+
+        List<UpstreamBackends.Backend> backends = new ArrayList<>();
+        List<ConnectionProvider> providers = new ArrayList<>();
+        configured.forEach((name, backend) -> {
+            BackendProperties.Backend settings = withDefaults(name, backend, defaults);
+            ConnectionProvider provider = connectionProvider(name + "-upstream", settings,
+                    evictInBackground, maxConcurrentStreams);
+            providers.add(provider);
+            boolean balanced = settings.loadBalancer() != null && settings.loadBalancer().isEnabled();
+            HttpClient client = httpClient(provider, settings, balanced);
+            backends.add(new UpstreamBackends.Backend(name,
+                    httpBaseUrl(settings.url()),
+                    httpBaseUrl(settings.url()) + settings.specPath(),
+                    settings.forwardAuthorization(),
+                    settings.toolPrefix(),
+                    client,
+                    balanced ? new EndpointBalancer(name, settings.loadBalancer(), settings.specPath(), client) : null,
+                    isUnixSocket(settings.url()) && !balanced));
+        });
+        return new UpstreamBackends(backends, providers);
+    }
+
+    /**
+     * 後端未設定的屬性沿用 target.api.* 的值 (url 與 load-balancer 除外)；
+     * 閘道模式未設定 url 時以第一個實例 (或 DNS 名稱) 組成
+     */
+    private static BackendProperties.Backend withDefaults(String name, BackendProperties.Backend backend,
+            BackendProperties.Backend defaults) {
+        BackendProperties.LoadBalancer loadBalancer = backend.loadBalancer();
+        String url = backend.url();
+        if ((url == null || url.isBlank()) && loadBalancer != null && loadBalancer.isEnabled()) {
+            url = loadBalancer.endpoints() != null && !loadBalancer.endpoints().isEmpty()
+                    ? loadBalancer.endpoints().get(0)
+                    : "http://" + loadBalancer.dns();
+        }
+        if (url == null || url.isBlank()) {
+            throw new IllegalStateException("mcp.backends." + name + ".url 未設定");
+        }
+        BackendProperties.Pool pool = backend.pool() != null ? backend.pool() : defaults.pool();
+        BackendProperties.Pool defaultPool = defaults.pool();
+        return new BackendProperties.Backend(
+                url,
+                backend.specPath() != null ? backend.specPath() : defaults.specPath(),
+                backend.forwardAuthorization() != null ? backend.forwardAuthorization() : defaults.forwardAuthorization(),
+                backend.toolPrefix() != null ? backend.toolPrefix() : defaults.toolPrefix(),
+                backend.connectTimeout() != null ? backend.connectTimeout() : defaults.connectTimeout(),
+                backend.responseTimeout() != null ? backend.responseTimeout() : defaults.responseTimeout(),
+                backend.unixFallbackUrl() != null ? backend.unixFallbackUrl() : defaults.unixFallbackUrl(),
+                backend.http2() != null ? backend.http2() : defaults.http2(),
+                new BackendProperties.Pool(
+                        pool.maxConnections() != null ? pool.maxConnections() : defaultPool.maxConnections(),
+                        pool.pendingAcquireMaxCount() != null
+                                ? pool.pendingAcquireMaxCount() : defaultPool.pendingAcquireMaxCount(),
+                        pool.pendingAcquireTimeout() != null
+                                ? pool.pendingAcquireTimeout() : defaultPool.pendingAcquireTimeout(),
+                        pool.maxIdleTime() != null ? pool.maxIdleTime() : defaultPool.maxIdleTime(),
+                        pool.maxLifeTime() != null ? pool.maxLifeTime() : defaultPool.maxLifeTime()),
+                loadBalancer);
+    }
+
+    private static ConnectionProvider connectionProvider(String poolName, BackendProperties.Backend settings,
+            Duration evictInBackground, int maxConcurrentStreams) {
+        BackendProperties.Pool pool = settings.pool();
+        ConnectionProvider.Builder builder = ConnectionProvider.builder(poolName)
+                .maxConnections(pool.maxConnections())
+                .pendingAcquireMaxCount(pool.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.pendingAcquireTimeout())
+                .maxIdleTime(pool.maxIdleTime())
+                .maxLifeTime(pool.maxLifeTime())
+                .evictInBackground(evictInBackground)
+                .metrics(true);
+
+        if (settings.http2()) {
+            // h2c：每條連線可同時承載多個 stream，連線數可大幅降低
+            builder.allocationStrategy(Http2AllocationStrategy.builder()
+                    .minConnections(1)
+                    .maxConnections(pool.maxConnections())
+                    .maxConcurrentStreams(maxConcurrentStreams)
+                    .build());
+        }
+
+        log.info("建立上游連線池 {}: maxConnections={}, pendingAcquireMaxCount={}, h2c={}",
+                poolName, pool.maxConnections(), pool.pendingAcquireMaxCount(), settings.http2());
+        return builder.build();
+    }
+
+    private static HttpClient httpClient(ConnectionProvider provider, BackendProperties.Backend settings,
+            boolean balanced) {
+        HttpClient client = HttpClient.create(provider)
+                .protocol(settings.http2() ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.connectTimeout().toMillis())
+                .responseTimeout(settings.responseTimeout());
+
+        String url = settings.url();
+        if (!isUnixSocket(url) || balanced) {
+            return client;
+        }
+
+        String fallbackUrl = settings.unixFallbackUrl();
+        URI fallback = URI.create(fallbackUrl);
+        InetSocketAddress fallbackAddress = InetSocketAddress.createUnresolved(fallback.getHost(),
+                fallback.getPort() > 0 ? fallback.getPort() : 80);
+        if (!LoopResources.hasNativeSupport()) {
+            log.warn("目前平台不支援 Netty native transport，無法使用 Unix domain socket，改用 TCP: {}", fallbackUrl);
+            return client.remoteAddress(() -> fallbackAddress);
+        }
+
+        // 每次建立新連線時檢查 socket 檔案，服務尚未建立 socket (或共享 volume 未掛載) 時退回 TCP
+        Path socketPath = Path.of(url.substring(UNIX_PREFIX.length()));
+        log.info("上游改經由 Unix domain socket 連線: {} (TCP 備援: {})", socketPath, fallbackUrl);
+        return client.remoteAddress(() -> Files.exists(socketPath)
+                ? new DomainSocketAddress(socketPath.toString())
+                : fallbackAddress);
+    }
+
+    public static boolean isUnixSocket(String targetApiUrl) {
+        return targetApiUrl != null && targetApiUrl.startsWith(UNIX_PREFIX);
+    }
+
+    /**
+     * 組成請求 URL 用的 base URL。Unix socket 模式下實際連線位址由 HttpClient.remoteAddress 決定，
+     * URL 只提供路徑與 Host header。
+     */
+    public static String httpBaseUrl(String targetApiUrl) {
+        return isUnixSocket(targetApiUrl) ? UNIX_BASE_URL : targetApiUrl;
+    }
+}
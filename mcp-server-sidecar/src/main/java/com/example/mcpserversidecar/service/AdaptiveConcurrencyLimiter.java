@@ -0,0 +1,334 @@
+package com.example.mcpserversidecar.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 依觀察到的上游延遲自動調整每個後端的並行上限 (gradient 演算法)，避免 agent 突發流量壓垮同 Pod 的 biz。
+ *
+ * 每次上游嘗試 (含重試與 hedge) 先取得額度。上限依短期 RTT 與長期 RTT 的比值調整：
+ * gradient = clamp(rtt-tolerance × 長期 RTT / 短期 RTT, 0.5, 1)，新上限 = 上限 × gradient + √上限，
+ * 再以 smoothing 平滑。延遲上升時 gradient &lt; 1，上限隨之縮小；延遲回到基準時以 √上限 的幅度逐步放大。
+ * 連線失敗、逾時與 503/504 視為過載訊號，上限直接乘以 0.9。
+ *
+ * 超過上限的呼叫最多排隊 queue-timeout，佇列已滿或等待逾時時以 {@link LimitExceededException} 拒絕，
+ * 由 DynamicToolRegistry 轉成可重試的 isError 結果 (不計入斷路器失敗率)。
+ */
+@Service
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double SHORT_RTT_ALPHA = 2.0 / (10 + 1);
+    private static final double LONG_RTT_ALPHA = 2.0 / (600 + 1);
+    private static final double DROP_FACTOR = 0.9;
+
+    private final ToolMetrics metrics;
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Duration queueTimeout;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * 超過並行上限且排隊逾時 (或佇列已滿) 而未送往上游的呼叫
+     */
+    public static class LimitExceededException extends RuntimeException {
+
+        private final String backend;
+        private final int limit;
+
+        LimitExceededException(String backend, int limit) {
+            super("後端 " + backend + " 並行呼叫已達上限 " + limit, null, false, false);
+            this.backend = backend;
+            this.limit = limit;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter(ToolMetrics metrics,
+            @Value("${mcp.concurrency-limit.enabled:true}") boolean enabled,
+            @Value("${mcp.concurrency-limit.initial-limit:20}") int initialLimit,
+            @Value("${mcp.concurrency-limit.min-limit:2}") int minLimit,
+            @Value("${mcp.concurrency-limit.max-limit:200}") int maxLimit,
+            @Value("${mcp.concurrency-limit.max-queue:100}") int maxQueue,
+            @Value("${mcp.concurrency-limit.queue-timeout:200ms}") Duration queueTimeout,
+            @Value("${mcp.concurrency-limit.rtt-tolerance:1.5}") double rttTolerance,
+            @Value("${mcp.concurrency-limit.smoothing:0.2}") double smoothing) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.queueTimeout = queueTimeout;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * 取得額度後執行一次上游嘗試，完成時以其延遲更新上限；取消 (例如 hedge 落敗) 時只歸還額度
+     */
+    public <T> Mono<T> execute(String backend, Mono<T> attempt) {
+        if (!enabled) {
+            return attempt;
+        }
+        Limit limit = limits.computeIfAbsent(backend, this::newLimit);
+        return Mono.defer(() -> {
+            Permit permit = new Permit(limit);
+            return permit.acquire()
+                    .then(Mono.defer(() -> {
+                        permit.start();
+                        return attempt;
+                    }))
+                    .doOnSuccess(result -> permit.sample(false))
+                    .doOnError(e -> permit.sample(isDropped(e)))
+                    .doFinally(signal -> permit.release());
+        });
+    }
+
+    /**
+     * 連線失敗/逾時與 503/504 代表上游過載或無法處理；其他錯誤只當作一般延遲樣本
+     */
+    private static boolean isDropped(Throwable e) {
+        if (e instanceof ToolResilience.UpstreamFailureException failure) {
+            return failure.getStatus() == 503 || failure.getStatus() == 504;
+        }
+        return e instanceof WebClientRequestException;
+    }
+
+    private Limit newLimit(String backend) {
+        Limit limit = new Limit(backend, initialLimit);
+        metrics.registerConcurrencyLimit(backend, limit, l -> (int) l.limit, l -> l.inFlight.get(),
+                l -> l.queued.get());
+        return limit;
+    }
+
+    /**
+     * 單一後端的並行上限、進行中呼叫與等待佇列
+     */
+    final class Limit {
+
+        final String backend;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger queued = new AtomicInteger();
+        final Queue<Permit> waiters = new ConcurrentLinkedQueue<>();
+        final LongAdder rejected = new LongAdder();
+        volatile double limit;
+        /**
+         * RTT 的短期與長期指數移動平均 (nanos)，只在 onSample 的鎖內修改
+         */
+        double shortRtt;
+        double longRtt;
+
+        Limit(String backend, int initialLimit) {
+            this.backend = backend;
+            this.limit = initialLimit;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= (int) limit) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 歸還額度並依目前上限放行排隊中的呼叫
+         */
+        void release() {
+            inFlight.decrementAndGet();
+            drain();
+        }
+
+        void drain() {
+            while (!waiters.isEmpty() && tryAcquire()) {
+                Permit next = waiters.poll();
+                if (next == null) {
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                queued.decrementAndGet();
+                if (!next.grant()) {
+                    // 已逾時或取消
+                    inFlight.decrementAndGet();
+                }
+            }
+        }
+
+        synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+            double current = limit;
+            double next;
+            if (dropped) {
+                next = current * DROP_FACTOR;
+            } else {
+                shortRtt = shortRtt == 0 ? rttNanos : shortRtt + SHORT_RTT_ALPHA * (rttNanos - shortRtt);
+                longRtt = longRtt == 0 ? rttNanos : longRtt + LONG_RTT_ALPHA * (rttNanos - longRtt);
+                // 負載下降後讓長期基準較快回落，避免長期 RTT 停在尖峰時的高值
+                if (longRtt / shortRtt > 2) {
+                    longRtt *= 0.95;
+                }
+                double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+                next = current * gradient + Math.sqrt(current);
+                next = current * (1 - smoothing) + next * smoothing;
+                // 進行中呼叫不到上限一半時無從判斷更高的並行是否安全，只允許縮小
+                if (next > current && inFlightAtStart < current / 2) {
+                    return;
+                }
+            }
+            next = Math.max(minLimit, Math.min(maxLimit, next));
+            if ((int) next != (int) current) {
+                log.debug("後端 {} 並行上限 {} -> {} (短期 RTT {} ms, 長期 RTT {} ms)", backend, (int) current,
+                        (int) next, Math.round(shortRtt / 1_000_000), Math.round(longRtt / 1_000_000));
+            }
+            limit = next;
+            if (next > current) {
+                drain();
+            }
+        }
+    }
+
+    /**
+     * 一次上游嘗試的額度；狀態只會前進 WAITING → GRANTED → RELEASED 或 WAITING → CANCELLED
+     */
+    private final class Permit {
+
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int CANCELLED = 2;
+        static final int RELEASED = 3;
+
+        final Limit limit;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+        volatile MonoSink<Void> sink;
+        long startNanos;
+        int inFlightAtStart;
+
+        Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        Mono<Void> acquire() {
+            if (limit.tryAcquire()) {
+                state.set(GRANTED);
+                return Mono.empty();
+            }
+            if (limit.queued.get() >= maxQueue) {
+                return reject();
+            }
+            return Mono.<Void>create(sink -> {
+                        this.sink = sink;
+                        limit.queued.incrementAndGet();
+                        limit.waiters.offer(this);
+                        // 加入佇列前可能已有額度釋出
+                        limit.drain();
+                    })
+                    .timeout(queueTimeout, Mono.defer(this::timedOut));
+        }
+
+        /**
+         * 排隊逾時：先移出佇列再拒絕；逾時與放行同時發生時已取得額度，照常送出
+         */
+        private Mono<Void> timedOut() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return Mono.empty();
+            }
+            if (limit.waiters.remove(this)) {
+                limit.queued.decrementAndGet();
+            }
+            return reject();
+        }
+
+        private Mono<Void> reject() {
+            limit.rejected.increment();
+            metrics.recordConcurrencyRejected(limit.backend);
+            return Mono.error(new LimitExceededException(limit.backend, (int) limit.limit));
+        }
+
+        boolean grant() {
+            if (!state.compareAndSet(WAITING, GRANTED)) {
+                return false;
+            }
+            sink.success();
+            return true;
+        }
+
+        void start() {
+            startNanos = System.nanoTime();
+            inFlightAtStart = limit.inFlight.get();
+        }
+
+        void sample(boolean dropped) {
+            if (startNanos != 0) {
+                limit.onSample(System.nanoTime() - startNanos, inFlightAtStart, dropped);
+            }
+        }
+
+        void release() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                if (limit.waiters.remove(this)) {
+                    limit.queued.decrementAndGet();
+                }
+            } else if (state.compareAndSet(GRANTED, RELEASED)) {
+                limit.release();
+            }
+        }
+    }
+
+    /**
+     * 測試用：直接以樣本更新後端的上限
+     */
+    void onSample(String backend, long rttNanos, int inFlight, boolean dropped) {
+        limits.computeIfAbsent(backend, this::newLimit).onSample(rttNanos, inFlight, dropped);
+    }
+
+    int limit(String backend) {
+        Limit limit = limits.get(backend);
+        return limit != null ? (int) limit.limit : initialLimit;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        limits.forEach((backend, limit) -> {
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("limit", (int) limit.limit);
+            state.put("inFlight", limit.inFlight.get());
+            state.put("queued", limit.queued.get());
+            state.put("rejected", limit.rejected.sum());
+            state.put("shortRttMs", Math.round(limit.shortRtt / 1_000_000));
+            state.put("longRttMs", Math.round(limit.longRtt / 1_000_000));
+            stats.put(backend, state);
+        });
+        return stats;
+    }
+}
@@ -0,0 +1,454 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 工具註冊時由 inputSchema 預先編譯的參數驗證器，在送往上游前拒絕型別錯誤或缺少必填欄位的呼叫。
+ *
+ * LLM 常見的型別偏差會先轉型再驗證："42" → 42 (integer/number)、"true" → true (boolean)、
+ * 42 → "42" (string)、單一值 → 單元素陣列；轉型後的參數交給 ToolInvoker 組成請求。
+ * 未宣告於 properties 的參數不檢查 (inputSchema 的 additionalProperties 為 true)，
+ * oneOf 與 anyOf 一樣只要求符合其中一個分支。
+ */
+public final class ArgumentValidator {
+
+    private static final Pattern INTEGER = Pattern.compile("-?\\d+");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+    private static final Pattern UUID = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final String DEFS_REF_PREFIX = "#/$defs/";
+
+    /**
+     * 單一違規項目；field 為參數路徑 (例如 items[0].sku)，rule 為違反的 JSON Schema 關鍵字
+     */
+    public record Violation(String field, String rule, String message) {
+    }
+
+    /**
+     * arguments 為轉型後的參數 (未轉型時為原本的 Map)；coerced 表示是否有參數被轉型
+     */
+    public record Result(Map<String, Object> arguments, List<Violation> violations, boolean coerced) {
+
+        public boolean isValid() {
+            return violations.isEmpty();
+        }
+    }
+
+    private final Node root;
+
+    private ArgumentValidator(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * 編譯工具的 inputSchema；$defs 中的循環定義以同一個節點表示
+     */
+    public static ArgumentValidator compile(McpSchema.JsonSchema inputSchema) {
+        Map<String, Object> schema = new HashMap<>();
+        schema.put("type", "object");
+        if (inputSchema.properties() != null) {
+            schema.put("properties", inputSchema.properties());
+        }
+        if (inputSchema.required() != null) {
+            schema.put("required", inputSchema.required());
+        }
+        Map<String, Object> defs = inputSchema.defs() != null ? inputSchema.defs() : Collections.emptyMap();
+        return new ArgumentValidator(new Compiler(defs).compile(schema));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Result validate(Map<String, Object> arguments) {
+        Context ctx = new Context();
+        Object checked = root.check(arguments != null ? arguments : Collections.emptyMap(), "", ctx);
+        return new Result((Map<String, Object>) checked, ctx.violations, ctx.coerced);
+    }
+
+    private static final class Context {
+        final List<Violation> violations = new ArrayList<>();
+        boolean coerced;
+    }
+
+    /**
+     * 轉型失敗的標記值
+     */
+    private static final Object INVALID = new Object();
+
+    private static final class Node {
+        String type;
+        Set<Object> enumValues;
+        List<BigDecimal> enumNumbers;
+        List<Object> enumList;
+        BigDecimal minimum;
+        BigDecimal maximum;
+        Integer minLength;
+        Integer maxLength;
+        Pattern pattern;
+        String format;
+        Node items;
+        Map<String, Node> properties;
+        List<String> required;
+        List<Node> allOf;
+        List<Node> anyOf;
+
+        @SuppressWarnings("unchecked")
+        Object check(Object value, String path, Context ctx) {
+            if (value == null) {
+                return null;
+            }
+            Object v = type != null ? coerce(value) : value;
+            if (v == INVALID) {
+                ctx.violations.add(new Violation(field(path), "type", "應為 " + type + "，收到 " + describe(value)));
+                return value;
+            }
+            if (v != value) {
+                ctx.coerced = true;
+            }
+
+            if (enumList != null && !enumAllows(v)) {
+                ctx.violations.add(new Violation(field(path), "enum", "必須是下列其中之一: " + enumList));
+            }
+            if (v instanceof Number number) {
+                checkRange(number, path, ctx);
+            } else if (v instanceof String s) {
+                checkString(s, path, ctx);
+            } else if (v instanceof List<?> list && items != null) {
+                v = checkItems(list, path, ctx);
+            } else if (v instanceof Map<?, ?> map) {
+                v = checkObject((Map<String, Object>) map, path, ctx);
+            }
+
+            if (allOf != null) {
+                for (Node node : allOf) {
+                    v = node.check(v, path, ctx);
+                }
+            }
+            if (anyOf != null) {
+                v = checkAnyOf(v, path, ctx);
+            }
+            return v;
+        }
+
+        /**
+         * 數值以 BigDecimal.compareTo 比較 (1、1.0、1L 視為相同)，其他值以 equals 比較，不把 "1" 與 1 混為一談
+         */
+        private boolean enumAllows(Object v) {
+            if (v instanceof Number number) {
+                BigDecimal d = new BigDecimal(number.toString());
+                return enumNumbers.stream().anyMatch(e -> e.compareTo(d) == 0);
+            }
+            return enumValues.contains(v);
+        }
+
+        private Object coerce(Object v) {
+            switch (type) {
+                case "string" -> {
+                    if (v instanceof String) {
+                        return v;
+                    }
+                    if (v instanceof Number n) {
+                        return new BigDecimal(n.toString()).stripTrailingZeros().toPlainString();
+                    }
+                    return v instanceof Boolean ? v.toString() : INVALID;
+                }
+                case "integer" -> {
+                    if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte
+                            || v instanceof BigInteger) {
+                        return v;
+                    }
+                    if (v instanceof Number n) {
+                        BigDecimal d = new BigDecimal(n.toString());
+                        if (d.stripTrailingZeros().scale() > 0) {
+                            return INVALID;
+                        }
+                        BigInteger i = d.toBigInteger();
+                        return i.bitLength() < 64 ? (Object) i.longValue() : i;
+                    }
+                    if (v instanceof String s && INTEGER.matcher(s.trim()).matches()) {
+                        BigInteger i = new BigInteger(s.trim());
+                        return i.bitLength() < 64 ? (Object) i.longValue() : i;
+                    }
+                    return INVALID;
+                }
+                case "number" -> {
+                    if (v instanceof Number) {
+                        return v;
+                    }
+                    if (v instanceof String s) {
+                        String t = s.trim();
+                        if (INTEGER.matcher(t).matches() && t.length() < 19) {
+                            return Long.parseLong(t);
+                        }
+                        return NUMBER.matcher(t).matches() ? (Object) Double.parseDouble(t) : INVALID;
+                    }
+                    return INVALID;
+                }
+                case "boolean" -> {
+                    if (v instanceof Boolean) {
+                        return v;
+                    }
+                    if (v instanceof String s && (s.equalsIgnoreCase("true") || s.equalsIgnoreCase("false"))) {
+                        return Boolean.parseBoolean(s);
+                    }
+                    return INVALID;
+                }
+                case "array" -> {
+                    if (v instanceof List) {
+                        return v;
+                    }
+                    if (v instanceof Collection<?> c) {
+                        return new ArrayList<>(c);
+                    }
+                    // 單一值 (含物件) 視為只有一個元素的陣列
+                    return List.of(v);
+                }
+                case "object" -> {
+                    return v instanceof Map ? v : INVALID;
+                }
+                default -> {
+                    return v;
+                }
+            }
+        }
+
+        private void checkRange(Number number, String path, Context ctx) {
+            if ("int32".equals(format) && (number.longValue() < Integer.MIN_VALUE
+                    || number.longValue() > Integer.MAX_VALUE || number instanceof BigInteger)) {
+                ctx.violations.add(new Violation(field(path), "format", "超出 int32 範圍"));
+            }
+            if (minimum == null && maximum == null) {
+                return;
+            }
+            BigDecimal d = new BigDecimal(number.toString());
+            if (minimum != null && d.compareTo(minimum) < 0) {
+                ctx.violations.add(new Violation(field(path), "minimum", "不可小於 " + minimum.toPlainString()));
+            }
+            if (maximum != null && d.compareTo(maximum) > 0) {
+                ctx.violations.add(new Violation(field(path), "maximum", "不可大於 " + maximum.toPlainString()));
+            }
+        }
+
+        private void checkString(String s, String path, Context ctx) {
+            int length = s.codePointCount(0, s.length());
+            if (minLength != null && length < minLength) {
+                ctx.violations.add(new Violation(field(path), "minLength", "長度不可少於 " + minLength));
+            }
+            if (maxLength != null && length > maxLength) {
+                ctx.violations.add(new Violation(field(path), "maxLength", "長度不可超過 " + maxLength));
+            }
+            if (pattern != null && !pattern.matcher(s).find()) {
+                ctx.violations.add(new Violation(field(path), "pattern", "必須符合格式 " + pattern.pattern()));
+            }
+            if (format != null && !matchesFormat(s)) {
+                ctx.violations.add(new Violation(field(path), "format", "必須是 " + format + " 格式"));
+            }
+        }
+
+        private boolean matchesFormat(String s) {
+            try {
+                switch (format) {
+                    case "date" -> LocalDate.parse(s);
+                    case "date-time" -> OffsetDateTime.parse(s);
+                    case "uuid" -> {
+                        return UUID.matcher(s).matches();
+                    }
+                    default -> {
+                        // 其他格式 (email、uri 等) 交由上游驗證
+                    }
+                }
+                return true;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        private Object checkItems(List<?> list, String path, Context ctx) {
+            List<Object> copy = null;
+            for (int i = 0; i < list.size(); i++) {
+                Object item = list.get(i);
+                Object checked = items.check(item, path + "[" + i + "]", ctx);
+                if (checked != item && copy == null) {
+                    copy = new ArrayList<>(list);
+                }
+                if (copy != null) {
+                    copy.set(i, checked);
+                }
+            }
+            return copy != null ? copy : list;
+        }
+
+        private Object checkObject(Map<String, Object> map, String path, Context ctx) {
+            if (required != null) {
+                for (String name : required) {
+                    if (map.get(name) == null) {
+                        ctx.violations.add(new Violation(child(path, name), "required", "缺少必填欄位"));
+                    }
+                }
+            }
+            if (properties == null) {
+                return map;
+            }
+            Map<String, Object> copy = null;
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                Node node = properties.get(entry.getKey());
+                if (node == null) {
+                    continue;
+                }
+                Object checked = node.check(entry.getValue(), child(path, entry.getKey()), ctx);
+                if (checked != entry.getValue()) {
+                    if (copy == null) {
+                        copy = new LinkedHashMap<>(map);
+                    }
+                    copy.put(entry.getKey(), checked);
+                }
+            }
+            return copy != null ? copy : map;
+        }
+
+        private Object checkAnyOf(Object v, String path, Context ctx) {
+            for (Node branch : anyOf) {
+                Context attempt = new Context();
+                Object checked = branch.check(v, path, attempt);
+                if (attempt.violations.isEmpty()) {
+                    ctx.coerced |= attempt.coerced;
+                    return checked;
+                }
+            }
+            ctx.violations.add(new Violation(field(path), "anyOf", "不符合任何允許的格式"));
+            return v;
+        }
+    }
+
+    /**
+     * 將已編譯的 schema Map 轉為驗證節點；$defs 引用以名稱快取，循環引用指向同一個節點
+     */
+    private static final class Compiler {
+
+        private final Map<String, Object> defs;
+        private final Map<String, Node> defNodes = new HashMap<>();
+
+        Compiler(Map<String, Object> defs) {
+            this.defs = defs;
+        }
+
+        Node compile(Object schemaObj) {
+            if (!(schemaObj instanceof Map<?, ?> schema)) {
+                return new Node();
+            }
+            Object ref = schema.get("$ref");
+            if (ref instanceof String r && r.startsWith(DEFS_REF_PREFIX)) {
+                String name = r.substring(DEFS_REF_PREFIX.length());
+                Node node = defNodes.get(name);
+                if (node == null) {
+                    node = new Node();
+                    defNodes.put(name, node);
+                    fill(node, defs.get(name));
+                }
+                return node;
+            }
+            Node node = new Node();
+            fill(node, schema);
+            return node;
+        }
+
+        private void fill(Node node, Object schemaObj) {
+            if (!(schemaObj instanceof Map<?, ?> schema)) {
+                return;
+            }
+            if (schema.get("type") instanceof String type) {
+                node.type = type;
+            }
+            if (schema.get("enum") instanceof List<?> values && !values.isEmpty()) {
+                node.enumList = List.copyOf(values);
+                node.enumValues = new HashSet<>();
+                node.enumNumbers = new ArrayList<>();
+                values.forEach(value -> {
+                    if (value instanceof Number number) {
+                        node.enumNumbers.add(new BigDecimal(number.toString()));
+                    } else {
+                        node.enumValues.add(value);
+                    }
+                });
+            }
+            node.minimum = decimal(schema.get("minimum"));
+            node.maximum = decimal(schema.get("maximum"));
+            node.minLength = schema.get("minLength") instanceof Number n ? n.intValue() : null;
+            node.maxLength = schema.get("maxLength") instanceof Number n ? n.intValue() : null;
+            if (schema.get("pattern") instanceof String p) {
+                try {
+                    node.pattern = Pattern.compile(p);
+                } catch (PatternSyntaxException e) {
+                    // ECMA 262 專有語法無法以 java.util.regex 編譯時略過，交由上游驗證
+                }
+            }
+            if (schema.get("format") instanceof String f) {
+                node.format = f;
+            }
+            if (schema.get("items") != null) {
+                node.items = compile(schema.get("items"));
+            }
+            if (schema.get("properties") instanceof Map<?, ?> props) {
+                node.properties = new HashMap<>();
+                props.forEach((name, prop) -> node.properties.put((String) name, compile(prop)));
+            }
+            if (schema.get("required") instanceof List<?> required && !required.isEmpty()) {
+                node.required = required.stream().map(String::valueOf).toList();
+            }
+            node.allOf = compileAll(schema.get("allOf"), null);
+            node.anyOf = compileAll(schema.get("oneOf"), compileAll(schema.get("anyOf"), null));
+        }
+
+        private List<Node> compileAll(Object parts, List<Node> into) {
+            if (!(parts instanceof List<?> list) || list.isEmpty()) {
+                return into;
+            }
+            List<Node> nodes = into != null ? into : new ArrayList<>();
+            list.forEach(part -> nodes.add(compile(part)));
+            return nodes;
+        }
+
+        private static BigDecimal decimal(Object value) {
+            return value instanceof Number || value instanceof String ? new BigDecimal(value.toString()) : null;
+        }
+    }
+
+    private static String field(String path) {
+        return path.isEmpty() ? "(arguments)" : path;
+    }
+
+    private static String child(String path, String name) {
+        return path.isEmpty() ? name : path + "." + name;
+    }
+
+    private static String describe(Object value) {
+        if (value instanceof String s) {
+            return "string \"" + (s.length() > 40 ? s.substring(0, 40) + "…" : s) + "\"";
+        }
+        if (value instanceof Number n) {
+            return "number " + n;
+        }
+        if (value instanceof Boolean b) {
+            return "boolean " + b;
+        }
+        if (value instanceof Map) {
+            return "object";
+        }
+        return value instanceof Collection ? "array" : value.getClass().getSimpleName();
+    }
+}
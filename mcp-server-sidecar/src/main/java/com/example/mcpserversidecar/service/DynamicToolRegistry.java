@@ -4,18 +4,32 @@ import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.annotation.Bean;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import io.netty.channel.ChannelOption;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClientRequest;
 import com.example.mcpserversidecar.AuthenticationFilter;
+import com.example.mcpserversidecar.UpstreamBackends;
+import com.example.mcpserversidecar.util.MappingValues;
+import com.example.mcpserversidecar.util.RequestKeys;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.util.Base64;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,130 +37,459 @@ public class DynamicToolRegistry {
 
     private static final Logger log = LoggerFactory.getLogger(DynamicToolRegistry.class);
 
-    private final WebClient webClient;
+    private final WebClient.Builder upstreamBuilder;
+    private final UpstreamBackends backends;
+    /**
+     * 各後端的 WebClient (各自的連線池)
+     */
+    private final Map<String, WebClient> webClients = new HashMap<>();
+    /**
+     * 依工具自訂的連線逾時建立的 WebClient (共用所屬後端的連線池)
+     */
+    private final Map<ConnectTimeoutKey, WebClient> connectTimeoutClients = new ConcurrentHashMap<>();
     private final OpenApiScannerService scannerService;
+    private final ToolResponseCache responseCache;
+    private final InFlightCoalescer coalescer;
+    private final ToolResponseHandler responseHandler;
+    private final ToolResilience resilience;
+    private final ToolRetryExecutor retryExecutor;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ToolRateLimiter rateLimiter;
+    private final ToolViews toolViews;
+    private final ToolResultCursors resultCursors;
+    private final ToolMetrics metrics;
+    private final ObjectMapper objectMapper;
 
-    public DynamicToolRegistry(WebClient.Builder webClientBuilder, OpenApiScannerService scannerService) {
-        this.webClient = webClientBuilder
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024)) // 16MB
-                .build();
+    private record ConnectTimeoutKey(String backend, Duration connectTimeout) {
+    }
+
+    public DynamicToolRegistry(WebClient.Builder webClientBuilder, UpstreamBackends backends,
+            OpenApiScannerService scannerService, ToolResponseCache responseCache, InFlightCoalescer coalescer,
+            ToolResponseHandler responseHandler, ToolResilience resilience, ToolRetryExecutor retryExecutor,
+            AdaptiveConcurrencyLimiter concurrencyLimiter, ToolRateLimiter rateLimiter, ToolViews toolViews,
+            ToolResultCursors resultCursors, ToolMetrics metrics, ObjectMapper objectMapper) {
+        this.upstreamBuilder = webClientBuilder.clone()
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024)); // 16MB
+        this.backends = backends;
+        for (UpstreamBackends.Backend backend : backends.all()) {
+            webClients.put(backend.name(), backend.webClient(upstreamBuilder));
+        }
         this.scannerService = scannerService;
+        this.responseCache = responseCache;
+        this.coalescer = coalescer;
+        this.responseHandler = responseHandler;
+        this.resilience = resilience;
+        this.retryExecutor = retryExecutor;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = rateLimiter;
+        this.toolViews = toolViews;
+        this.resultCursors = resultCursors;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * 提供動態工具規格。Spring AI MCP 會自動掃描 Bean 並註冊。
+     * 註冊時預先解析的工具設定與編譯好的請求產生器，避免每次呼叫重新讀取 mapping
      */
-    @Bean
-    public List<AsyncToolSpecification> dynamicTools() {
-        log.info("正在從 OpenAPI 掃描並準備動態工具規格...");
-        List<OpenApiScannerService.ToolDefinition> tools = scannerService.scanAndMap();
+    private record RegisteredTool(
+            OpenApiScannerService.ToolDefinition def,
+            UpstreamBackends.Backend backend,
+            ToolInvoker invoker,
+            ArgumentValidator validator,
+            ToolResponseCache.CachePolicy cachePolicy,
+            boolean coalesce,
+            ToolResponseHandler.ResponsePolicy responsePolicy,
+            ToolResilience.ResiliencePolicy resiliencePolicy,
+            ToolResilience.ResiliencePolicy backendPolicy,
+            ToolRetryExecutor.AttemptPolicy attemptPolicy,
+            ToolRateLimiter.RatePolicy ratePolicy) {
+
+        static RegisteredTool of(OpenApiScannerService.ToolDefinition def, UpstreamBackends.Backend backend,
+                ToolResilience.ResiliencePolicy backendPolicy) {
+            ToolResponseHandler.ResponsePolicy responsePolicy = ToolResponseHandler.ResponsePolicy.from(def.mapping());
+            // 分頁回應的 cursor 屬於單一呼叫者且有時效，不能快取或與其他呼叫共用
+            boolean paged = responsePolicy.pageSize() > 0;
+            return new RegisteredTool(def,
+                    backend,
+                    ToolInvoker.compile(def, backend.baseUrl()),
+                    MappingValues.getBoolean(def.mapping(), "validateArguments", true)
+                            ? ArgumentValidator.compile(def.tool().inputSchema())
+                            : null,
+                    paged ? null : ToolResponseCache.CachePolicy.from(def.mapping()),
+                    !paged && MappingValues.getBoolean(def.mapping(), "coalesce", false),
+                    responsePolicy,
+                    ToolResilience.ResiliencePolicy.forTool(def.mapping()),
+                    backendPolicy,
+                    ToolRetryExecutor.AttemptPolicy.from(def.mapping()),
+                    ToolRateLimiter.RatePolicy.from(def.mapping()));
+        }
+
+        String name() {
+            return def.tool().name();
+        }
+    }
+
+    /**
+     * 將掃描結果轉換為動態工具規格，由 ToolCatalogLoader 註冊到執行中的 MCP Server。
+     * 每個工具依所屬後端決定 base URL、連線池、後端斷路器與是否轉發 Authorization。
+     * 取得後續頁的 companion 工具 (ToolResultCursors) 不連線上游，直接讀取暫存的結果頁。
+     */
+    public List<AsyncToolSpecification> toSpecifications(List<OpenApiScannerService.ToolDefinition> tools) {
+        Map<String, ToolResilience.ResiliencePolicy> backendPolicies = new HashMap<>();
 
         return tools.stream()
-                .map(def -> AsyncToolSpecification.builder()
-                        .tool(def.tool())
-                        .callHandler((exchange, request) -> executeToolCall(def, (McpSchema.CallToolRequest) request))
-                        .build())
+                .map(def -> {
+                    String cursorFor = ToolResultCursors.cursorFor(def);
+                    if (cursorFor != null) {
+                        return companionSpecification(def.tool(), cursorFor);
+                    }
+                    UpstreamBackends.Backend backend = backends.get(def.backend());
+                    if (backend == null) {
+                        log.warn("工具 {} 所屬的後端 {} 未設定，略過註冊", def.tool().name(), def.backend());
+                        return null;
+                    }
+                    ToolResilience.ResiliencePolicy backendPolicy = backendPolicies.computeIfAbsent(backend.name(),
+                            name -> ToolResilience.ResiliencePolicy.forBackend(scannerService.getBackendSettings(name)));
+                    RegisteredTool registered = RegisteredTool.of(def, backend, backendPolicy);
+                    return AsyncToolSpecification.builder()
+                            .tool(def.tool())
+                            .callHandler((exchange, request) -> metrics.instrument(registered.name(),
+                                    admit(registered, (McpSchema.CallToolRequest) request)))
+                            .build();
+                })
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
-    private Mono<McpSchema.CallToolResult> executeToolCall(OpenApiScannerService.ToolDefinition def,
+    private AsyncToolSpecification companionSpecification(McpSchema.Tool tool, String cursorFor) {
+        return AsyncToolSpecification.builder()
+                .tool(tool)
+                .callHandler((exchange, request) -> metrics.instrument(tool.name(),
+                        nextPage(tool.name(), cursorFor, (McpSchema.CallToolRequest) request)))
+                .build();
+    }
+
+    /**
+     * 以 cursor 讀取 cursorFor 工具暫存的下一頁；cursor 只能由產生它的呼叫者使用
+     */
+    private Mono<McpSchema.CallToolResult> nextPage(String toolName, String cursorFor,
             McpSchema.CallToolRequest request) {
-        String url = def.path().startsWith("/") ? scannerService.getTargetApiUrl() + def.path() : def.path();
-        log.info("執行工具呼叫: {} {}, 參數: {}", def.method(), url, request.arguments());
-
-        if ("POST".equalsIgnoreCase(def.method())) {
-            return Mono.deferContextual(ctx -> {
-                String authHeader = ctx.getOrDefault(AuthenticationFilter.AUTH_TOKEN_KEY, null);
-                var requestSpec = webClient.post().uri(url).bodyValue(request.arguments());
-                if (authHeader != null) {
-                    requestSpec.header("Authorization", authHeader);
-                }
-                return requestSpec
-                        .exchangeToMono(response -> handleResponse(response));
-            });
-        } else {
-            return Mono.deferContextual(ctx -> {
-                String authHeader = ctx.getOrDefault(AuthenticationFilter.AUTH_TOKEN_KEY, null);
-                String targetUrl = buildTargetUrl(url, request.arguments());
-
-                var requestSpec = webClient.get().uri(targetUrl);
-                if (authHeader != null) {
-                    requestSpec.header("Authorization", authHeader);
-                }
-
-                return requestSpec
-                        .exchangeToMono(response -> handleResponse(response));
-            });
+        return Mono.deferContextual(ctx -> {
+            ToolViews.ToolView view = ctx.getOrDefault(AuthenticationFilter.VIEW_KEY, ToolViews.ALL);
+            if (!view.allows(toolName)) {
+                toolViews.recordDenied();
+                metrics.recordViewDenied(toolName);
+                return Mono.just(viewError(toolName));
+            }
+            String principal = ctx.getOrDefault(AuthenticationFilter.PRINCIPAL_KEY, "anonymous");
+            Object cursor = request.arguments() != null ? request.arguments().get("cursor") : null;
+            return Mono.fromCallable(() -> McpSchema.CallToolResult.builder()
+                            .addTextContent(resultCursors.page(cursor instanceof String s ? s : null, cursorFor,
+                                    principal))
+                            .build())
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .onErrorResume(ToolResultCursors.CursorException.class,
+                            e -> Mono.just(cursorError(e.getMessage())));
+        });
+    }
+
+    /**
+     * 工具定義變更或移除時，丟棄依舊設定建立的快取與斷路器/隔艙
+     */
+    public void evict(String toolName) {
+        responseCache.invalidate(toolName);
+        resilience.reset(toolName);
+    }
+
+    /**
+     * 工具已自目錄移除：除了 {@link #evict(String)} 之外，一併移除該工具的指標
+     */
+    public void remove(String toolName) {
+        evict(toolName);
+        metrics.removeTool(toolName);
+    }
+
+    /**
+     * 後端層級設定變更時，丟棄該後端的斷路器/隔艙
+     */
+    public void evictBackend(String backendName) {
+        resilience.resetBackend(backendName);
+    }
+
+    /**
+     * 先確認工具在呼叫者的檢視 (ToolViews) 內，再扣除呼叫者 (principal) 的速率額度；
+     * 任一項不通過時直接回傳 isError 結果 (速率限制附 retryAfterMs)，不執行工具也不連線上游
+     */
+    private Mono<McpSchema.CallToolResult> admit(RegisteredTool registered, McpSchema.CallToolRequest request) {
+        return Mono.deferContextual(ctx -> {
+            ToolViews.ToolView view = ctx.getOrDefault(AuthenticationFilter.VIEW_KEY, ToolViews.ALL);
+            if (!view.allows(registered.name())) {
+                toolViews.recordDenied();
+                metrics.recordViewDenied(registered.name());
+                return Mono.just(viewError(registered.name()));
+            }
+            String principal = ctx.getOrDefault(AuthenticationFilter.PRINCIPAL_KEY, "anonymous");
+            long waitNanos = rateLimiter.tryAcquire(principal, registered.name(), registered.ratePolicy());
+            if (waitNanos > 0) {
+                metrics.recordRateLimited(registered.name());
+                return Mono.just(rateLimitError(registered.name(), waitNanos));
+            }
+            return executeToolCall(registered, request);
+        });
+    }
+
+    private Mono<McpSchema.CallToolResult> executeToolCall(RegisteredTool registered,
+            McpSchema.CallToolRequest request) {
+        Map<String, Object> arguments = request.arguments();
+        if (registered.validator() != null) {
+            ArgumentValidator.Result validation = registered.validator().validate(arguments);
+            if (!validation.isValid()) {
+                log.debug("工具 {} 參數驗證失敗: {}", registered.name(), validation.violations());
+                metrics.recordRejectedArguments(registered.name(), validation.violations().get(0).rule());
+                return Mono.just(validationError(registered.name(), validation.violations()));
+            }
+            if (validation.coerced()) {
+                metrics.recordCoercedArguments(registered.name());
+            }
+            arguments = validation.arguments();
+        }
+
+        ToolInvoker.Invocation invocation;
+        try {
+            invocation = registered.invoker().bind(arguments);
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(registered.name(), "invalid_arguments");
+            return Mono.just(McpSchema.CallToolResult.builder()
+                    .addTextContent("Error: " + e.getMessage())
+                    .isError(true)
+                    .build());
         }
+        log.info("執行工具呼叫: {} {}, 參數: {}", invocation.method(), invocation.uri(), arguments);
+        Map<String, Object> boundArguments = arguments;
+
+        return Mono.deferContextual(ctx -> {
+            // 不轉發 Authorization 的後端回應與呼叫者身分無關，快取/合併也不以身分區分
+            String authHeader = registered.backend().forwardAuthorization()
+                    ? ctx.getOrDefault(AuthenticationFilter.AUTH_TOKEN_KEY, null)
+                    : null;
+
+            // 只有安全方法 (GET/HEAD) 可以快取與合併
+            if (!registered.invoker().isSafe() || (registered.cachePolicy() == null && !registered.coalesce())) {
+                return exchange(registered, invocation, authHeader);
+            }
+
+            String key = RequestKeys.of(registered.name(), boundArguments, authHeader);
+            if (registered.coalesce()) {
+                // 相同工具、參數與身分的並行呼叫共用同一次上游請求
+                return coalescer.execute(key, () -> cachedOrDirect(registered, key, invocation, authHeader));
+            }
+            return cachedOrDirect(registered, key, invocation, authHeader);
+        });
+    }
+
+    /**
+     * 結構化的驗證錯誤 (JSON)，讓 LLM 能依欄位修正後重新呼叫
+     */
+    private McpSchema.CallToolResult validationError(String toolName, List<ArgumentValidator.Violation> violations) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", "invalid_arguments");
+        error.put("message", "工具 " + toolName + " 的參數不符合 inputSchema，請依 violations 修正後重新呼叫");
+        error.put("violations", violations);
+        return errorResult(error);
     }
 
     /**
-     * 處理回應，根據 Content-Type 決定如何處理
+     * 結構化的工具檢視錯誤 (JSON)：工具存在但不在呼叫者的 ToolViews 範圍內
      */
-    private Mono<McpSchema.CallToolResult> handleResponse(
-            org.springframework.web.reactive.function.client.ClientResponse response) {
+    private McpSchema.CallToolResult viewError(String toolName) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", "tool_not_available");
+        error.put("message", "工具 " + toolName + " 不在目前呼叫者可使用的工具範圍內");
+        return errorResult(error);
+    }
 
-        MediaType contentType = response.headers().contentType().orElse(MediaType.APPLICATION_JSON);
+    /**
+     * 結構化的 cursor 錯誤 (JSON)；cursor 過期時需重新呼叫原工具
+     */
+    private McpSchema.CallToolResult cursorError(String reason) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", "invalid_cursor");
+        error.put("message", reason + "，請重新呼叫原工具取得新的 cursor");
+        return errorResult(error);
+    }
 
-        // 處理圖片類型
-        if (contentType.getType().equals("image")) {
-            return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class))
-                    .map(dataBuffer -> {
-                        byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                        dataBuffer.read(bytes);
-                        DataBufferUtils.release(dataBuffer);
-                        String base64 = Base64.getEncoder().encodeToString(bytes);
-                        String mimeType = contentType.toString();
+    /**
+     * 結構化的速率限制錯誤 (JSON)，retryAfterMs 為額度補足前建議等待的時間
+     */
+    private McpSchema.CallToolResult rateLimitError(String toolName, long waitNanos) {
+        long retryAfterMs = Math.max(1, (waitNanos + 999_999) / 1_000_000);
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", "rate_limited");
+        error.put("message", "工具 " + toolName + " 的呼叫頻率超過限制，請於 retryAfterMs 毫秒後重試");
+        error.put("retryAfterMs", retryAfterMs);
+        return errorResult(error);
+    }
 
-                        log.info("收到圖片回應: {} ({} bytes)", mimeType, bytes.length);
+    /**
+     * 以 JSON 錯誤物件建立 isError 結果；序列化失敗時退回純文字
+     */
+    private McpSchema.CallToolResult errorResult(Map<String, Object> error) {
+        String text;
+        try {
+            text = objectMapper.writeValueAsString(error);
+        } catch (JsonProcessingException e) {
+            text = "Error: " + error.get("message");
+        }
+        return McpSchema.CallToolResult.builder()
+                .addTextContent(text)
+                .isError(true)
+                .build();
+    }
 
-                        @SuppressWarnings("deprecation")
-                        var imageContent = new McpSchema.ImageContent(null, null, base64, mimeType);
-                        return McpSchema.CallToolResult.builder()
-                                .addContent(imageContent)
-                                .build();
-                    })
-                    .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
-                            .addTextContent("Error processing image: " + e.getMessage())
-                            .isError(true)
-                            .build()));
+    private Mono<McpSchema.CallToolResult> cachedOrDirect(RegisteredTool registered, String key,
+            ToolInvoker.Invocation invocation, String authHeader) {
+        if (registered.cachePolicy() != null) {
+            return cachedGet(registered, key, invocation, authHeader);
         }
+        return exchange(registered, invocation, authHeader);
+    }
+
+    private Mono<McpSchema.CallToolResult> exchange(RegisteredTool registered, ToolInvoker.Invocation invocation,
+            String authHeader) {
+        var requestSpec = prepare(registered, invocation, authHeader);
+        return guarded(registered, () -> requestSpec
+                .exchangeToMono(response -> failOn5xx(response, handleResponse(registered, response))));
+    }
+
+    /**
+     * 記錄上游狀態碼與回應 body 大小後交由 ToolResponseHandler 轉換；有整形規則時另記錄整形後的大小
+     */
+    private Mono<McpSchema.CallToolResult> handleResponse(RegisteredTool registered, ClientResponse response) {
+        metrics.recordUpstreamStatus(registered.name(), response.statusCode().value());
+        long[] bytes = {0};
+        ClientResponse measured = response.mutate()
+                .body(body -> body
+                        .doOnNext(buffer -> bytes[0] += buffer.readableByteCount())
+                        .doOnComplete(() -> metrics.recordResponseSize(registered.name(), bytes[0])))
+                .build();
+        return responseHandler.handle(measured, registered.responsePolicy(), registered.name(),
+                shaped -> metrics.recordShapedResponseSize(registered.name(), shaped));
+    }
 
-        // 處理 JSON 或其他文字類型
-        return response.bodyToMono(Object.class)
-                .map(body -> McpSchema.CallToolResult.builder()
-                        .addTextContent(body.toString())
-                        .build())
-                .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
-                        .addTextContent("Error: " + e.getMessage())
-                        .isError(true)
-                        .build()));
+    /**
+     * 實際送往上游的呼叫 (快取命中不經過)：每次嘗試各自套用逾時並取得後端的並行額度，
+     * 外層依序為重試/hedge、斷路器與隔艙。
+     * 重試後仍連線失敗或逾時、或超過並行上限時回傳 isError 結果，不讓錯誤拖住整個對話回合。
+     */
+    private Mono<McpSchema.CallToolResult> guarded(RegisteredTool registered,
+            Supplier<Mono<McpSchema.CallToolResult>> attempt) {
+        String backend = registered.backend().name();
+        Mono<McpSchema.CallToolResult> call = retryExecutor.execute(registered.name(), registered.attemptPolicy(),
+                registered.invoker().isSafe(), () -> concurrencyLimiter.execute(backend, attempt.get()));
+        return resilience.protect(registered.name(), backend, registered.resiliencePolicy(),
+                registered.backendPolicy(), call)
+                .onErrorResume(AdaptiveConcurrencyLimiter.LimitExceededException.class, e -> {
+                    log.debug("工具 {} 未送出: {}", registered.name(), e.getMessage());
+                    metrics.recordError(registered.name(), "ConcurrencyLimitExceeded");
+                    return Mono.just(McpSchema.CallToolResult.builder()
+                            .addTextContent("Error: 上游服務 " + backend + " 目前負載過高 (並行上限 " + e.getLimit()
+                                    + ")，呼叫未送出，請稍後再試。")
+                            .isError(true)
+                            .build());
+                })
+                .onErrorResume(WebClientRequestException.class, e -> {
+                    log.warn("工具 {} 上游呼叫失敗: {}", registered.name(), e.getMessage());
+                    metrics.recordError(registered.name(), e.getMostSpecificCause().getClass().getSimpleName());
+                    return Mono.just(McpSchema.CallToolResult.builder()
+                            .addTextContent("Error: 無法連線上游服務或回應逾時 (" + e.getMostSpecificCause() + ")")
+                            .isError(true)
+                            .build());
+                });
     }
 
     /**
-     * 構建目標 URL，替換路徑參數並添加查詢參數
+     * 5xx 回應轉為 UpstreamFailureException 讓斷路器記錄失敗，ToolResilience 會再還原為原本的結果
      */
-    private String buildTargetUrl(String url, Map<String, Object> arguments) {
-        if (arguments == null || arguments.isEmpty()) {
-            return url;
+    private static Mono<McpSchema.CallToolResult> failOn5xx(ClientResponse response,
+            Mono<McpSchema.CallToolResult> result) {
+        if (!response.statusCode().is5xxServerError()) {
+            return result;
         }
+        int status = response.statusCode().value();
+        return result.flatMap(r -> Mono.error(new ToolResilience.UpstreamFailureException(status, r)));
+    }
 
-        StringBuilder sb = new StringBuilder(url);
-        boolean first = !url.contains("?");
-
-        for (Map.Entry<String, Object> entry : arguments.entrySet()) {
-            String key = entry.getKey();
-            String val = entry.getValue().toString();
-            if (sb.toString().contains("{" + key + "}")) {
-                String newUrl = sb.toString().replace("{" + key + "}", val);
-                sb.setLength(0);
-                sb.append(newUrl);
-            } else {
-                sb.append(first ? "?" : "&").append(key).append("=").append(val);
-                first = false;
+    /**
+     * 依預先編譯的呼叫內容建立上游請求，並依後端設定轉發 Authorization Header
+     */
+    private WebClient.RequestHeadersSpec<?> prepare(RegisteredTool registered, ToolInvoker.Invocation invocation,
+            String authHeader) {
+        ToolRetryExecutor.AttemptPolicy attemptPolicy = registered.attemptPolicy();
+        UpstreamBackends.Backend backend = registered.backend();
+        WebClient client = attemptPolicy.connectTimeout() != null
+                ? connectTimeoutClients.computeIfAbsent(
+                        new ConnectTimeoutKey(backend.name(), attemptPolicy.connectTimeout()),
+                        key -> clientWithConnectTimeout(backend, key.connectTimeout()))
+                : webClients.get(backend.name());
+        WebClient.RequestBodySpec requestSpec = client.method(invocation.method()).uri(invocation.uri());
+        if (attemptPolicy.responseTimeout() != null) {
+            requestSpec.httpRequest(httpRequest -> httpRequest.<HttpClientRequest>getNativeRequest()
+                    .responseTimeout(attemptPolicy.responseTimeout()));
+        }
+        invocation.headers().forEach((name, value) -> requestSpec.header(name, value));
+        if (authHeader != null) {
+            requestSpec.header("Authorization", authHeader);
+        }
+        if (invocation.body() != null) {
+            // 先序列化以取得實際送出的大小 (與 Jackson encoder 的輸出相同)
+            byte[] body;
+            try {
+                body = objectMapper.writeValueAsBytes(invocation.body());
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("無法序列化請求內容: " + e.getOriginalMessage(), e);
             }
+            metrics.recordRequestSize(registered.name(), body.length);
+            return requestSpec.contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+        }
+        return requestSpec;
+    }
+
+    private WebClient clientWithConnectTimeout(UpstreamBackends.Backend backend, Duration connectTimeout) {
+        return backend.webClient(upstreamBuilder, backend.httpClient()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis()));
+    }
+
+    /**
+     * 帶快取的 GET 呼叫：新鮮項目直接回傳，過期但有 ETag 的項目以 If-None-Match 重新驗證
+     */
+    private Mono<McpSchema.CallToolResult> cachedGet(RegisteredTool registered, String key,
+            ToolInvoker.Invocation invocation, String authHeader) {
+        String toolName = registered.name();
+        ToolResponseCache.CachePolicy policy = registered.cachePolicy();
+        ToolResponseCache.CachedResponse cached = responseCache.lookup(toolName, policy, key);
+        if (cached != null && cached.isFresh()) {
+            log.debug("工具回應快取命中: {}", toolName);
+            return Mono.just(cached.result());
+        }
+
+        var requestSpec = prepare(registered, invocation, authHeader);
+        if (cached != null && cached.etag() != null) {
+            requestSpec.ifNoneMatch(cached.etag());
         }
 
-        return sb.toString();
+        return guarded(registered, () -> requestSpec.exchangeToMono(response -> {
+            if (cached != null && response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                metrics.recordUpstreamStatus(toolName, HttpStatus.NOT_MODIFIED.value());
+                return response.releaseBody()
+                        .then(Mono.fromSupplier(() -> responseCache.revalidated(toolName, policy, key, cached,
+                                response.headers().asHttpHeaders())));
+            }
+            Mono<McpSchema.CallToolResult> result = handleResponse(registered, response);
+            if (!response.statusCode().is2xxSuccessful()) {
+                return failOn5xx(response, result);
+            }
+            HttpHeaders headers = response.headers().asHttpHeaders();
+            return result.doOnNext(r -> responseCache.store(toolName, policy, key, r, headers));
+        }));
     }
 }
@@ -0,0 +1,57 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight：將同一時間內相同 (工具 + 參數 + 身分) 的冪等呼叫合併為一次上游請求。
+ *
+ * 第一個呼叫者建立共享的 Mono 並放入 in-flight 表，後到的呼叫者直接訂閱同一個結果。
+ * 共享 Mono 採用 refCount 語意：個別訂閱者取消不影響其他人，全部取消時才取消上游請求。
+ * 上游結束 (成功、失敗或取消) 後立即從表中移除，不作為快取使用。
+ */
+@Service
+public class InFlightCoalescer {
+
+    private final Map<String, Mono<McpSchema.CallToolResult>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public Mono<McpSchema.CallToolResult> execute(String key, Supplier<Mono<McpSchema.CallToolResult>> upstream) {
+        return Mono.defer(() -> {
+            boolean[] created = { false };
+            Mono<McpSchema.CallToolResult> shared = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                AtomicReference<Mono<McpSchema.CallToolResult>> self = new AtomicReference<>();
+                // 只移除自己：結束訊號晚到時，表中可能已是下一個呼叫者建立的新項目
+                self.set(upstream.get()
+                        .doFinally(signal -> inFlight.remove(k, self.get()))
+                        .share());
+                return self.get();
+            });
+            if (created[0]) {
+                leaders.increment();
+            } else {
+                coalesced.increment();
+            }
+            return shared;
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("upstreamCalls", leaders.sum());
+        stats.put("coalescedCalls", coalesced.sum());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.mcpserversidecar.service;
 
+import com.example.mcpserversidecar.UpstreamBackends;
 import com.example.mcpserversidecar.util.OpenApiToMcpMapper;
+import com.example.mcpserversidecar.util.SchemaCompiler;
+import com.example.mcpserversidecar.util.StreamingOpenApiExtractor;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.modelcontextprotocol.spec.McpSchema;
@@ -14,103 +17,481 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 
+/**
+ * 掃描各上游後端的 OpenAPI 規格，依 mcp-mapping.json 轉換為 MCP 工具定義並合併為單一工具命名空間。
+ *
+ * 每個後端 (UpstreamBackends) 有各自的規格 URL、連線池與條件式重新掃描基準，掃描時平行進行；
+ * 單一後端失敗不影響其他後端，只有全部失敗時才發出錯誤。合併時依後端設定順序，
+ * 名稱重複的工具改名為 &lt;後端名稱&gt;_&lt;工具名稱&gt; (並記錄 WARN)，先設定的後端保留原名。
+ *
+ * mcp-mapping.json 以 "backends": { "&lt;name&gt;": { "mappings": [...], ...後端層級設定 } } 區分各後端；
+ * 頂層的 "mappings" 與 "backend" 區塊屬於預設 (第一個) 後端。
+ */
 @Service
 public class OpenApiScannerService {
 
     private static final Logger log = LoggerFactory.getLogger(OpenApiScannerService.class);
 
-    private final WebClient webClient;
+    private final UpstreamBackends backends;
     private final ObjectMapper objectMapper;
     private final ResourceLoader resourceLoader;
+    private final ToolMetrics metrics;
 
-    @Value("${target.api.url}")
-    private String targetApiUrl;
+    /**
+     * mapping 檔位置，可改為 file: 路徑 (例如掛載的 ConfigMap) 以便不重新部署即可修改
+     */
+    @Value("${mcp.mapping.location:classpath:mcp-mapping.json}")
+    private String mappingLocation;
 
-    private List<ToolDefinition> cachedTools = new ArrayList<>();
+    /**
+     * OpenAPI 解析方式：swagger (OpenAPIV3Parser 解析整份規格) 或 streaming (只取出 mapping 中的 operation)
+     */
+    @Value("${mcp.openapi.parser:swagger}")
+    private String openApiParser;
 
-    public OpenApiScannerService(WebClient.Builder webClientBuilder, ObjectMapper objectMapper,
-            ResourceLoader resourceLoader) {
-        this.webClient = webClientBuilder.build();
-        this.objectMapper = objectMapper;
-        this.resourceLoader = resourceLoader;
+    /**
+     * 各後端的掃描狀態 (依設定順序)
+     */
+    private final Map<String, BackendState> states = new LinkedHashMap<>();
+
+    private volatile List<ToolDefinition> cachedTools = new ArrayList<>();
+
+    /**
+     * mapping 頂層的 "toolViews" 區塊 (依呼叫者區分可見工具的規則，見 ToolViews)，隨 mapping 重新載入
+     */
+    private volatile Map<String, Object> viewSettings = Collections.emptyMap();
+
+    /**
+     * 單一後端的條件式重新掃描比對基準與最近一次轉換結果 (同一後端的掃描由 ToolCatalogLoader 串行執行)
+     */
+    private static final class BackendState {
+
+        final UpstreamBackends.Backend backend;
+        final WebClient webClient;
+        volatile String lastSpecEtag;
+        volatile String lastSpecHash;
+        volatile String lastMappingHash;
+        volatile List<ToolDefinition> tools = List.of();
+
+        /**
+         * 後端層級設定 (mapping 區塊中 "mappings" 以外的內容，例如斷路器門檻)
+         */
+        volatile Map<String, Object> settings = Collections.emptyMap();
+        volatile Throwable lastError;
+
+        BackendState(UpstreamBackends.Backend backend, WebClient webClient) {
+            this.backend = backend;
+            this.webClient = webClient;
+        }
     }
 
-    public String getTargetApiUrl() {
-        return targetApiUrl;
+    public OpenApiScannerService(WebClient.Builder webClientBuilder, UpstreamBackends backends,
+            ObjectMapper objectMapper, ResourceLoader resourceLoader, ToolMetrics metrics) {
+        this.backends = backends;
+        this.objectMapper = objectMapper;
+        this.resourceLoader = resourceLoader;
+        this.metrics = metrics;
+        // 數千個 operation 的規格可達數 MB，遠超過 WebClient 預設的 256KB 緩衝上限
+        WebClient.Builder specBuilder = webClientBuilder.clone()
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(64 * 1024 * 1024)); // 64MB
+        for (UpstreamBackends.Backend backend : backends.all()) {
+            states.put(backend.name(), new BackendState(backend, backend.webClient(specBuilder)));
+        }
     }
 
     public List<ToolDefinition> getCachedTools() {
         return Collections.unmodifiableList(cachedTools);
     }
 
+    /**
+     * 各後端的後端層級設定 (依設定順序)
+     */
+    public Map<String, Map<String, Object>> getBackendSettings() {
+        Map<String, Map<String, Object>> settings = new LinkedHashMap<>();
+        states.forEach((name, state) -> settings.put(name, state.settings));
+        return settings;
+    }
+
+    /**
+     * mapping 的 "toolViews" 區塊；未設定時為空 Map
+     */
+    public Map<String, Object> getViewSettings() {
+        return viewSettings;
+    }
+
+    /**
+     * 指定後端的後端層級設定；name 為 null 時為預設後端
+     */
+    public Map<String, Object> getBackendSettings(String name) {
+        BackendState state = states.get(name != null ? name : backends.defaultBackend().name());
+        return state != null ? state.settings : Collections.emptyMap();
+    }
+
+    /**
+     * @param backend 工具所屬的後端名稱；null 表示預設後端
+     */
     public record ToolDefinition(
             McpSchema.Tool tool,
             String path,
-            String method) {
+            String method,
+            Map<String, Object> mapping,
+            Map<String, String> parameterLocations,
+            String backend) {
+
+        public ToolDefinition(McpSchema.Tool tool, String path, String method,
+                Map<String, Object> mapping, Map<String, String> parameterLocations) {
+            this(tool, path, method, mapping, parameterLocations, null);
+        }
+
+        public ToolDefinition(McpSchema.Tool tool, String path, String method) {
+            this(tool, path, method, Collections.emptyMap(), Collections.emptyMap());
+        }
+
+        ToolDefinition withName(String name) {
+            McpSchema.Tool renamed = McpSchema.Tool.builder()
+                    .name(name)
+                    .description(tool.description())
+                    .inputSchema(tool.inputSchema())
+                    .build();
+            return new ToolDefinition(renamed, path, method, mapping, parameterLocations, backend);
+        }
     }
 
-    public List<ToolDefinition> scanAndMap() {
-        List<ToolDefinition> results = new ArrayList<>();
-        try {
-            // 1. 獲取 OpenAPI JSON (同步阻塞以進行啟動時註冊)
-            String openApiUrl = targetApiUrl + "/v3/api-docs";
-            log.info("正在從 {} 獲取 OpenAPI 定義...", openApiUrl);
-            String openApiJson = webClient.get()
+    /**
+     * 完整掃描所有後端的 OpenAPI 並轉換為工具定義 (忽略上次的 ETag/雜湊)。所有後端皆失敗時發出錯誤，
+     * 由呼叫端決定重試策略；部分失敗時以成功的後端組成工具目錄，失敗的後端於下次條件式重新掃描時補上。
+     * 解析 OpenAPI 與讀取 mapping 屬於 CPU/阻塞工作，切到 boundedElastic 執行，不佔用 Netty event loop。
+     * mapping 檔不存在、無法讀取或解析時整次掃描失敗 (不會以空的 mapping 移除工具)。
+     */
+    public Mono<List<ToolDefinition>> scanAndMap() {
+        return scanAll(true);
+    }
+
+    /**
+     * 條件式重新掃描：各後端以 If-None-Match 取得規格，並比對規格與 mapping 內容的 SHA-256；
+     * 所有後端皆未變更時不解析，直接回傳 empty。
+     */
+    public Mono<List<ToolDefinition>> rescanIfChanged() {
+        return scanAll(false);
+    }
+
+    /**
+     * 上游規格回應；body 為 null 表示 304 Not Modified
+     */
+    private record FetchedSpec(byte[] body, String etag) {
+    }
+
+    /**
+     * 條件式重新掃描的比對基準，隨工具目錄快照一併保存
+     */
+    public record ScanBaseline(String specEtag, String specHash, String mappingHash) {
+    }
+
+    /**
+     * 各後端的比對基準；尚未成功掃描的後端不列入
+     */
+    public Map<String, ScanBaseline> baselines() {
+        Map<String, ScanBaseline> baselines = new LinkedHashMap<>();
+        states.forEach((name, state) -> {
+            if (state.lastSpecHash != null) {
+                baselines.put(name, new ScanBaseline(state.lastSpecEtag, state.lastSpecHash, state.lastMappingHash));
+            }
+        });
+        return baselines;
+    }
+
+    /**
+     * 所有後端共同依據的 mapping SHA-256；有後端尚未掃描成功或依據不同版本時回傳 null
+     */
+    public String mappingHash() {
+        Set<String> hashes = new HashSet<>();
+        states.values().forEach(state -> hashes.add(state.lastMappingHash));
+        return hashes.size() == 1 ? hashes.iterator().next() : null;
+    }
+
+    /**
+     * 目前 mapping 檔內容的 SHA-256 (阻塞讀檔)；無法讀取時丟出 IllegalStateException
+     */
+    public String currentMappingHash() {
+        return sha256(readMappingFile());
+    }
+
+    /**
+     * 以快照內容還原工具目錄與比對基準，不需下載或解析 OpenAPI。
+     * 快照中沒有基準的後端 (例如新增的後端) 維持未掃描狀態，下次重新掃描時完整下載；已不存在的後端忽略。
+     */
+    public void restore(Map<String, ScanBaseline> baselines, Map<String, Map<String, Object>> settings,
+            List<ToolDefinition> tools) {
+        String defaultName = backends.defaultBackend().name();
+        Map<String, List<ToolDefinition>> byBackend = new HashMap<>();
+        for (ToolDefinition def : tools) {
+            byBackend.computeIfAbsent(def.backend() != null ? def.backend() : defaultName, name -> new ArrayList<>())
+                    .add(def);
+        }
+        states.forEach((name, state) -> {
+            ScanBaseline baseline = baselines.get(name);
+            if (baseline == null) {
+                return;
+            }
+            state.lastSpecEtag = baseline.specEtag();
+            state.lastSpecHash = baseline.specHash();
+            state.lastMappingHash = baseline.mappingHash();
+            Map<String, Object> backendSettings = settings != null ? settings.get(name) : null;
+            state.settings = backendSettings != null ? backendSettings : Collections.emptyMap();
+            state.tools = List.copyOf(byBackend.getOrDefault(name, List.of()));
+        });
+        this.cachedTools = merge();
+        this.viewSettings = loadMapping().viewSettings();
+        metrics.recordToolCount(cachedTools.size());
+    }
+
+    /**
+     * 304 但 mapping 已變更：規格內容解析後即丟棄，不常駐記憶體，需改為完整下載後重新解析
+     */
+    private static class SpecBodyUnavailableException extends RuntimeException {
+
+        SpecBodyUnavailableException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * 單一後端的掃描結果；error 不為 null 表示該後端掃描失敗
+     */
+    private record Outcome(BackendState state, boolean changed, Throwable error) {
+    }
+
+    /**
+     * 一次掃描所依據的 mapping：所有後端共用同一份內容，任一後端的區塊無效時整次掃描失敗
+     */
+    private record MappingFile(byte[] body, String hash, Map<String, MappingSection> sections,
+            Map<String, Object> viewSettings) {
+    }
+
+    private Mono<List<ToolDefinition>> scanAll(boolean force) {
+        return Mono.fromCallable(this::loadMapping)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(mapping -> scanAll(mapping, force));
+    }
+
+    private Mono<List<ToolDefinition>> scanAll(MappingFile mapping, boolean force) {
+        return Flux.fromIterable(states.values())
+                .flatMap(state -> scan(state, force, mapping)
+                        .map(changed -> new Outcome(state, changed, null))
+                        .onErrorResume(e -> Mono.just(new Outcome(state, false, e))))
+                .collectList()
+                .flatMap(outcomes -> {
+                    List<Outcome> failed = outcomes.stream().filter(outcome -> outcome.error() != null).toList();
+                    if (failed.size() == outcomes.size()) {
+                        return Mono.error(failed.get(0).error());
+                    }
+                    failed.forEach(outcome -> log.warn("後端 {} 掃描 OpenAPI 失敗，沿用上次的工具: {}",
+                            outcome.state().backend.name(), outcome.error().toString()));
+                    if (!force && outcomes.stream().noneMatch(Outcome::changed)) {
+                        return Mono.empty();
+                    }
+                    List<ToolDefinition> merged = merge();
+                    this.cachedTools = merged;
+                    metrics.recordToolCount(merged.size());
+                    log.info("掃描 OpenAPI 完成，{} 個後端共 {} 個工具", states.size(), merged.size());
+                    return Mono.just(merged);
+                });
+    }
+
+    /**
+     * 掃描單一後端；規格與 mapping 皆未變更時發出 false
+     */
+    private Mono<Boolean> scan(BackendState state, boolean force, MappingFile mapping) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            // 1. 獲取 OpenAPI JSON
+            String openApiUrl = state.backend.specUrl();
+            String etag = force ? null : state.lastSpecEtag;
+            log.debug("正在從 {} 獲取 OpenAPI 定義...", openApiUrl);
+            return state.webClient.get()
                     .uri(openApiUrl)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-
-            SwaggerParseResult parseResult = new OpenAPIV3Parser().readContents(openApiJson);
-            OpenAPI openAPI = parseResult.getOpenAPI();
-            log.info("OpenAPI 定義已獲取: {}", openAPI.getInfo().getTitle());
-
-            // 2. 獲取 Mapping 配置
-            Map<String, Map<String, Object>> mappings = loadMappings();
-            log.info("Mapping 配置已獲取: {}", mappings.size());
-
-            // 3. 遍歷 Paths 並轉換
-            if (openAPI.getPaths() != null) {
-                for (Map.Entry<String, PathItem> pathEntry : openAPI.getPaths().entrySet()) {
-                    String path = pathEntry.getKey();
-                    PathItem item = pathEntry.getValue();
-
-                    item.readOperationsMap().forEach((method, operation) -> {
-                        // 嚴格依照 mapping 定義來曝露工具
-                        String opId = operation.getOperationId();
-                        if (opId != null && mappings.containsKey(opId)) {
-                            results.add(convertToMcpTool(path, method.name(), operation, mappings));
-                            log.info("發現並對齊映射工具: {} -> {}", opId, mappings.get(opId).get("toolName"));
+                    .headers(headers -> {
+                        if (etag != null) {
+                            headers.setIfNoneMatch(etag);
+                        }
+                    })
+                    .exchangeToMono(response -> {
+                        if (response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                            return response.releaseBody().thenReturn(new FetchedSpec(null, etag));
+                        }
+                        if (!response.statusCode().is2xxSuccessful()) {
+                            return response.createError();
+                        }
+                        String newEtag = response.headers().asHttpHeaders().getETag();
+                        return response.bodyToMono(byte[].class)
+                                .defaultIfEmpty(new byte[0])
+                                .map(body -> new FetchedSpec(body, newEtag));
+                    })
+                    .publishOn(Schedulers.boundedElastic())
+                    .map(spec -> {
+                        List<ToolDefinition> results = mapIfChanged(state, spec, force, mapping);
+                        if (results == null) {
+                            return false;
+                        }
+                        state.tools = List.copyOf(results);
+                        log.info("後端 {} 掃描 OpenAPI 完成，發現 {} 個工具", state.backend.name(), results.size());
+                        return true;
+                    })
+                    .doOnNext(changed -> {
+                        metrics.recordScan(state.backend.name(), Duration.ofNanos(System.nanoTime() - start), true);
+                        state.lastError = null;
+                    })
+                    .doOnError(e -> {
+                        if (!(e instanceof SpecBodyUnavailableException)) {
+                            metrics.recordScan(state.backend.name(), Duration.ofNanos(System.nanoTime() - start),
+                                    false);
+                            state.lastError = e;
                         }
-                    });
+                    })
+                    .onErrorResume(SpecBodyUnavailableException.class, e -> scan(state, true, mapping));
+        });
+    }
+
+    /**
+     * 依後端設定順序合併各後端的工具；名稱重複時後設定的工具改名為 &lt;後端名稱&gt;_&lt;工具名稱&gt;
+     */
+    private List<ToolDefinition> merge() {
+        Map<String, ToolDefinition> merged = new LinkedHashMap<>();
+        for (BackendState state : states.values()) {
+            for (ToolDefinition def : state.tools) {
+                String name = def.tool().name();
+                if (merged.containsKey(name)) {
+                    String renamed = state.backend.name() + "_" + name;
+                    for (int i = 2; merged.containsKey(renamed); i++) {
+                        renamed = state.backend.name() + "_" + name + "_" + i;
+                    }
+                    log.warn("工具名稱 {} 重複，後端 {} 的工具改名為 {}", name, state.backend.name(), renamed);
+                    def = def.withName(renamed);
                 }
+                merged.put(def.tool().name(), def);
             }
-        } catch (Exception e) {
-            log.error("掃描 OpenAPI 失敗: {}", e.getMessage(), e);
         }
-        this.cachedTools = results;
-        log.debug("掃描 OpenAPI 完成，發現 {} 個工具", results.size());
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * 規格與 mapping 皆未變更時回傳 null；否則解析並更新比對基準
+     */
+    private List<ToolDefinition> mapIfChanged(BackendState state, FetchedSpec spec, boolean force,
+            MappingFile mapping) {
+        String mappingHash = mapping.hash();
+        byte[] specBody = spec.body();
+        if (specBody == null) {
+            if (!force && mappingHash.equals(state.lastMappingHash)) {
+                log.debug("後端 {} 的 OpenAPI 定義 (304) 與 mapping 皆未變更，略過解析", state.backend.name());
+                return null;
+            }
+            throw new SpecBodyUnavailableException();
+        }
+        String specHash = sha256(specBody);
+        if (!force && specHash.equals(state.lastSpecHash) && mappingHash.equals(state.lastMappingHash)) {
+            log.debug("後端 {} 的 OpenAPI 定義與 mapping 皆未變更，略過解析", state.backend.name());
+            return null;
+        }
+
+        MappingSection section = mapping.sections().get(state.backend.name());
+        List<ToolDefinition> results = mapTools(state.backend, specBody, section.mappings());
+        state.lastSpecEtag = spec.etag();
+        state.lastSpecHash = specHash;
+        state.lastMappingHash = mappingHash;
+        state.settings = section.settings();
+        viewSettings = mapping.viewSettings();
         return results;
     }
 
-    private ToolDefinition convertToMcpTool(String path, String method, Operation operation,
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<ToolDefinition> mapTools(UpstreamBackends.Backend backend, byte[] specBody,
             Map<String, Map<String, Object>> mappings) {
+        List<ToolDefinition> results = new ArrayList<>();
+
+        // 2. 獲取 Mapping 配置 (串流解析需要先知道要取出哪些 operation)
+        log.info("後端 {} 的 Mapping 配置已獲取: {}", backend.name(), mappings.size());
+
+        OpenAPI openAPI = parseOpenApi(specBody, mappings.keySet());
+        log.info("OpenAPI 定義已獲取: {}", openAPI.getInfo().getTitle());
+
+        // 3. 遍歷 Paths 並轉換 (同一次掃描的工具共用已編譯的 component schema)
+        SchemaCompiler compiler = new SchemaCompiler(openAPI.getComponents());
+        if (openAPI.getPaths() != null) {
+            for (Map.Entry<String, PathItem> pathEntry : openAPI.getPaths().entrySet()) {
+                String path = pathEntry.getKey();
+                PathItem item = pathEntry.getValue();
+
+                item.readOperationsMap().forEach((method, operation) -> {
+                    // 嚴格依照 mapping 定義來曝露工具
+                    String opId = operation.getOperationId();
+                    if (opId != null && mappings.containsKey(opId)) {
+                        results.add(convertToMcpTool(backend, path, method.name(), operation, mappings, compiler));
+                        log.info("發現並對齊映射工具: {} -> {}", opId, mappings.get(opId).get("toolName"));
+                    }
+                });
+            }
+        }
+        log.debug("已編譯 {} 個 component schema", compiler.size());
+        return results;
+    }
+
+    /**
+     * streaming 模式下以 StreamingOpenApiExtractor 只建模 mapping 中的 operation 與其引用的 components，
+     * 大型規格時可避免整份規格的 heap 尖峰與解析耗時；非 JSON 規格仍以 OpenAPIV3Parser 解析。
+     */
+    private OpenAPI parseOpenApi(byte[] specBody, Set<String> operationIds) {
+        SwaggerParseResult parseResult;
+        if ("streaming".equals(openApiParser) && StreamingOpenApiExtractor.supports(specBody)) {
+            try {
+                parseResult = StreamingOpenApiExtractor.extract(specBody, operationIds);
+            } catch (IOException e) {
+                throw new IllegalStateException("無法解析 OpenAPI 定義: " + e.getMessage(), e);
+            }
+        } else {
+            parseResult = new OpenAPIV3Parser().readContents(new String(specBody, StandardCharsets.UTF_8));
+        }
+        OpenAPI openAPI = parseResult.getOpenAPI();
+        if (openAPI == null) {
+            throw new IllegalStateException("無法解析 OpenAPI 定義: " + parseResult.getMessages());
+        }
+        return openAPI;
+    }
+
+    private ToolDefinition convertToMcpTool(UpstreamBackends.Backend backend, String path, String method,
+            Operation operation, Map<String, Map<String, Object>> mappings, SchemaCompiler compiler) {
         String operationId = operation.getOperationId();
         Map<String, Object> mapping = mappings.getOrDefault(operationId, Collections.emptyMap());
 
-        String toolName = (String) mapping.getOrDefault("toolName", operationId);
+        String toolName = backend.toolPrefix() + mapping.getOrDefault("toolName", operationId);
         String description = (String) mapping.getOrDefault("description", operation.getSummary());
 
-        McpSchema.JsonSchema inputSchema = OpenApiToMcpMapper.mapOperationToInputSchema(operation);
+        McpSchema.JsonSchema inputSchema = OpenApiToMcpMapper.mapOperationToInputSchema(operation, compiler);
 
         // 提取 Output Schema 並附加到描述中，讓 LLM 了解返回格式
-        Map<String, Object> outputSchema = OpenApiToMcpMapper.mapOperationToOutputSchema(operation);
+        Map<String, Object> outputSchema = OpenApiToMcpMapper.mapOperationToOutputSchema(operation, compiler);
         if (outputSchema != null) {
             String returnsInfo = "\nReturns: " + outputSchema.toString();
             if (description == null) {
@@ -131,7 +512,10 @@ public class OpenApiScannerService {
                     for (Map.Entry<String, Object> entry : paramMappings.entrySet()) {
                         String paramName = entry.getKey();
                         if (properties.containsKey(paramName)) {
-                            Map<String, Object> fieldSchema = (Map<String, Object>) properties.get(paramName);
+                            // 已編譯的 schema 為共用的不可變實例，覆寫前先複製
+                            Map<String, Object> fieldSchema =
+                                    new LinkedHashMap<>((Map<String, Object>) properties.get(paramName));
+                            properties.put(paramName, fieldSchema);
                             Object val = entry.getValue();
 
                             if (val instanceof String) {
@@ -159,28 +543,131 @@ public class OpenApiScannerService {
                 .inputSchema(inputSchema)
                 .build();
 
-        return new ToolDefinition(tool, path, method);
+        return new ToolDefinition(tool, path, method, mapping,
+                OpenApiToMcpMapper.mapParameterLocations(operation, compiler), backend.name());
     }
 
-    private Map<String, Map<String, Object>> loadMappings() {
-        Map<String, Map<String, Object>> result = new HashMap<>();
+    /**
+     * 讀取 mapping 檔原始內容。檔案不存在或無法讀取時丟出 IllegalStateException，讓該次掃描失敗並沿用目前的工具，
+     * 不以空的 mapping 繼續 (空 mapping 會使所有工具被移除)
+     */
+    private byte[] readMappingFile() {
+        Resource resource = resourceLoader.getResource(mappingLocation);
+        if (!resource.exists()) {
+            throw new IllegalStateException("找不到 mapping 檔: " + mappingLocation);
+        }
+        try (InputStream is = resource.getInputStream()) {
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("無法讀取 " + mappingLocation + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * mapping 檔中屬於某個後端的工具 mapping (以 operationId 為 key) 與後端層級設定
+     */
+    private record MappingSection(Map<String, Map<String, Object>> mappings, Map<String, Object> settings) {
+    }
+
+    /**
+     * 讀取並解析 mapping 檔 (阻塞)。內容不是有效的 JSON 物件或 mapping 缺少 operationId 時丟出
+     * IllegalStateException，各後端的比對基準都不更新，修正後下次重新掃描再解析
+     */
+    private MappingFile loadMapping() {
+        byte[] body = readMappingFile();
+        Map<String, MappingSection> sections = new HashMap<>();
+        Map<String, Object> views;
         try {
-            Resource resource = resourceLoader.getResource("classpath:mcp-mapping.json");
-            if (resource.exists()) {
-                try (InputStream is = resource.getInputStream()) {
-                    JsonNode root = objectMapper.readTree(is);
-                    JsonNode mappings = root.get("mappings");
-                    if (mappings != null && mappings.isArray()) {
-                        for (JsonNode m : mappings) {
-                            String opId = m.get("operationId").asText();
-                            result.put(opId, objectMapper.convertValue(m, Map.class));
-                        }
-                    }
-                }
+            JsonNode root = objectMapper.readTree(body);
+            if (root == null || !root.isObject()) {
+                throw new IllegalStateException("內容不是 JSON 物件");
+            }
+            for (BackendState state : states.values()) {
+                sections.put(state.backend.name(), loadSection(root, state.backend));
             }
+            views = loadViewSettings(root);
         } catch (Exception e) {
-            log.warn("無法載入 mcp-mapping.json: {}", e.getMessage());
+            throw new IllegalStateException("無法載入 " + mappingLocation + ": " + e.getMessage(), e);
+        }
+        return new MappingFile(body, sha256(body), sections, views);
+    }
+
+    /**
+     * 取出後端的 mapping 區塊："backends" 下同名的區塊，預設後端另包含頂層的 "mappings" 與 "backend"
+     */
+    private MappingSection loadSection(JsonNode root, UpstreamBackends.Backend backend) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        Map<String, Object> settings = Collections.emptyMap();
+        if (backend.name().equals(backends.defaultBackend().name())) {
+            JsonNode legacy = root.get("backend");
+            if (legacy != null && legacy.isObject()) {
+                settings = objectMapper.convertValue(legacy, Map.class);
+            }
+            putMappings(root.get("mappings"), result);
         }
-        return result;
+        JsonNode backendsNode = root.get("backends");
+        JsonNode section = backendsNode != null ? backendsNode.get(backend.name()) : null;
+        if (section != null && section.isObject()) {
+            Map<String, Object> sectionSettings = new LinkedHashMap<>(objectMapper.convertValue(section, Map.class));
+            sectionSettings.remove("mappings");
+            if (!sectionSettings.isEmpty()) {
+                settings = sectionSettings;
+            }
+            putMappings(section.get("mappings"), result);
+        }
+        return new MappingSection(result, settings);
+    }
+
+    /**
+     * 取出 mapping 頂層的 "toolViews" 區塊
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> loadViewSettings(JsonNode root) {
+        JsonNode views = root.get("toolViews");
+        if (views == null || views.isNull()) {
+            return Collections.emptyMap();
+        }
+        // 格式錯誤時整次掃描失敗並沿用目前的規則，不能當作未設定 (全部工具可見)
+        if (!views.isObject()) {
+            throw new IllegalStateException("toolViews 必須是 JSON 物件");
+        }
+        return objectMapper.convertValue(views, Map.class);
+    }
+
+    private void putMappings(JsonNode mappings, Map<String, Map<String, Object>> result) {
+        if (mappings != null && mappings.isArray()) {
+            for (JsonNode m : mappings) {
+                JsonNode operationId = m.get("operationId");
+                if (operationId == null || !operationId.isTextual()) {
+                    throw new IllegalStateException("mapping 缺少 operationId: " + m);
+                }
+                String opId = operationId.asText();
+                result.put(opId, objectMapper.convertValue(m, Map.class));
+            }
+        }
+    }
+
+    /**
+     * 各後端的掃描狀態 (供 /actuator/mcptools 顯示)
+     */
+    public Map<String, Object> backendStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        states.forEach((name, state) -> {
+            Map<String, Object> backend = new LinkedHashMap<>();
+            backend.put("specUrl", state.backend.specUrl());
+            backend.put("tools", state.tools.size());
+            if (state.lastSpecEtag != null) {
+                backend.put("specEtag", state.lastSpecEtag);
+            }
+            Throwable error = state.lastError;
+            if (error != null) {
+                backend.put("lastError", error.toString());
+            }
+            if (state.backend.balancer() != null) {
+                backend.put("endpoints", state.backend.balancer().stats());
+            }
+            status.put(name, backend);
+        });
+        return status;
     }
 }
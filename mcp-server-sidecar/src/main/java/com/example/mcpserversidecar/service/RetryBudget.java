@@ -0,0 +1,91 @@
+package com.example.mcpserversidecar.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 全域重試預算：最近 WINDOW_SECONDS 秒內的重試 (含 hedge) 次數不得超過
+ * 「最低保障 min-per-second × 視窗秒數 + ratio × 同期間請求數」。
+ *
+ * 上游整體故障時所有呼叫都會失敗，若每個呼叫各自重試 N 次，送往上游的流量會放大為 N+1 倍；
+ * 預算讓重試流量最多只佔正常流量的一小部分，避免重試把故障拖得更久。
+ */
+@Service
+public class RetryBudget {
+
+    private static final int WINDOW_SECONDS = 10;
+
+    private final double ratio;
+    private final int minPerSecond;
+
+    private final long[] bucketSecond = new long[WINDOW_SECONDS];
+    private final long[] requests = new long[WINDOW_SECONDS];
+    private final long[] retries = new long[WINDOW_SECONDS];
+    private long totalRetries;
+    private long deniedRetries;
+
+    public RetryBudget(@Value("${target.api.retry-budget.ratio:0.1}") double ratio,
+            @Value("${target.api.retry-budget.min-per-second:5}") int minPerSecond) {
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+    }
+
+    /**
+     * 記錄一次原始 (非重試) 上游呼叫
+     */
+    public synchronized void recordRequest() {
+        requests[roll(currentSecond())]++;
+    }
+
+    /**
+     * 預算足夠時扣除一次重試並回傳 true
+     */
+    public synchronized boolean tryAcquireRetry() {
+        long second = currentSecond();
+        int current = roll(second);
+        long windowRequests = 0;
+        long windowRetries = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (second - bucketSecond[i] < WINDOW_SECONDS) {
+                windowRequests += requests[i];
+                windowRetries += retries[i];
+            }
+        }
+        if (windowRetries >= (long) minPerSecond * WINDOW_SECONDS + ratio * windowRequests) {
+            deniedRetries++;
+            return false;
+        }
+        retries[current]++;
+        totalRetries++;
+        return true;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("retries", totalRetries);
+        stats.put("deniedRetries", deniedRetries);
+        stats.put("ratio", ratio);
+        stats.put("minPerSecond", minPerSecond);
+        return stats;
+    }
+
+    private static long currentSecond() {
+        return System.nanoTime() / 1_000_000_000L;
+    }
+
+    /**
+     * 重設目前秒數所屬的桶 (若仍是舊資料)，回傳桶索引
+     */
+    private int roll(long second) {
+        int index = (int) Math.floorMod(second, (long) WINDOW_SECONDS);
+        if (bucketSecond[index] != second) {
+            bucketSecond[index] = second;
+            requests[index] = 0;
+            retries[index] = 0;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.server.McpAsyncServer;
+import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 啟動後於背景掃描 OpenAPI 並將工具註冊到執行中的 MCP Server。
+ *
+ * 應用程式不再等待 biz 就緒才完成啟動；biz 尚未啟動時以指數退避持續重試，
+ * 首次載入成功前 readiness 維持 DOWN (見 ToolCatalogHealthIndicator)，避免 Pod 以空工具清單接收流量。
+ *
+ * 載入後每隔 mcp.catalog.refresh-interval (或經由 POST /actuator/mcptools 觸發) 條件式重新掃描，
+ * 與目前註冊的工具比對後只新增/移除/替換有變動的工具；McpAsyncServer 於每次變更時
+ * 向已連線的 session 發送 notifications/tools/list_changed。
+ *
+ * 每次套用後依 mapping 的 "toolViews" 重建呼叫者檢視 (ToolViews)，
+ * 並重建 tools/list 的預先序列化結果頁 (ToolListCache)。
+ *
+ * 每次解析後將工具目錄寫入磁碟快照 (ToolCatalogSnapshot)；下次啟動時若 mapping 未變更，
+ * 直接由快照註冊工具並立即 ready，再於背景以條件式請求驗證上游規格。
+ */
+@Service
+public class ToolCatalogLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolCatalogLoader.class);
+
+    private final OpenApiScannerService scannerService;
+    private final DynamicToolRegistry toolRegistry;
+    /**
+     * spring.ai.mcp.server.enabled=false (例如只啟用 MCP Client 的測試) 時為 null，不註冊工具
+     */
+    private final McpAsyncServer mcpServer;
+    private final ToolCatalogSnapshot snapshotStore;
+    private final ToolListCache toolListCache;
+    private final ToolViews toolViews;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration refreshInterval;
+
+    /**
+     * 目前註冊在 MCP Server 上的工具定義；只在串行的載入/重新掃描流程中修改
+     */
+    private final Map<String, OpenApiScannerService.ToolDefinition> registered = new LinkedHashMap<>();
+    private Map<String, Map<String, Object>> registeredBackends;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final AtomicLong attempts = new AtomicLong();
+    private volatile Throwable lastError;
+    private volatile Instant loadedAt;
+    private volatile int toolCount;
+    private volatile Disposable subscription;
+    private volatile Disposable refreshTask;
+    private volatile Instant lastRefreshAt;
+    private volatile CatalogChange lastChange;
+
+    /**
+     * 一次載入或重新掃描造成的工具變動
+     */
+    public record CatalogChange(List<String> added, List<String> updated, List<String> removed) {
+
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    public ToolCatalogLoader(OpenApiScannerService scannerService, DynamicToolRegistry toolRegistry,
+            @Nullable McpAsyncServer mcpServer, ToolCatalogSnapshot snapshotStore, ToolListCache toolListCache,
+            ToolViews toolViews,
+            @Value("${mcp.catalog.initial-backoff:500ms}") Duration initialBackoff,
+            @Value("${mcp.catalog.max-backoff:30s}") Duration maxBackoff,
+            @Value("${mcp.catalog.refresh-interval:60s}") Duration refreshInterval) {
+        this.scannerService = scannerService;
+        this.toolRegistry = toolRegistry;
+        this.mcpServer = mcpServer;
+        this.snapshotStore = snapshotStore;
+        this.toolListCache = toolListCache;
+        this.toolViews = toolViews;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        if (mcpServer == null) {
+            log.info("MCP Server 未啟用，不載入動態工具");
+            return;
+        }
+        subscription = fromSnapshot()
+                .switchIfEmpty(Mono.defer(this::fullScan))
+                .subscribe(
+                        change -> schedulePeriodicRefresh(),
+                        e -> log.error("註冊動態工具失敗: {}", e.getMessage(), e));
+    }
+
+    /**
+     * 由磁碟快照註冊工具，之後立即於背景驗證上游規格 (驗證失敗時保留快照內容，交由定期重新掃描處理)。
+     * 無法讀取 mapping 或快照時改為完整掃描，由重試流程回報錯誤
+     */
+    private Mono<CatalogChange> fromSnapshot() {
+        if (!snapshotStore.isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> {
+                    long start = System.nanoTime();
+                    ToolCatalogSnapshot.Snapshot snapshot =
+                            snapshotStore.load(scannerService.currentMappingHash()).orElse(null);
+                    if (snapshot != null) {
+                        log.info("已讀取工具目錄快照: {} 個工具，耗時 {} ms",
+                                snapshot.tools().size(), (System.nanoTime() - start) / 1_000_000);
+                        scannerService.restore(snapshot.baselines(), snapshot.backends(), snapshot.tools());
+                    }
+                    return snapshot;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    log.warn("無法由快照載入工具目錄，改為完整掃描: {}", e.toString());
+                    return Mono.empty();
+                })
+                .flatMap(snapshot -> apply(scannerService.getCachedTools()))
+                .flatMap(change -> {
+                    log.info("已由快照註冊 {} 個動態工具，背景驗證上游 OpenAPI 定義...", change.added().size());
+                    return refresh()
+                            .onErrorResume(e -> {
+                                log.warn("驗證 OpenAPI 定義失敗，暫時使用快照內容: {}", e.toString());
+                                return Mono.empty();
+                            })
+                            .thenReturn(change);
+                });
+    }
+
+    private Mono<CatalogChange> fullScan() {
+        log.info("開始於背景掃描 OpenAPI 並註冊動態工具...");
+        // 每次重試重新呼叫 scanAndMap()，不重複訂閱同一個 (可能已組好的) Mono
+        return Mono.defer(scannerService::scanAndMap)
+                .doOnSubscribe(s -> attempts.incrementAndGet())
+                .doOnError(e -> lastError = e)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, initialBackoff)
+                        .maxBackoff(maxBackoff)
+                        .doBeforeRetry(signal -> log.warn("掃描 OpenAPI 失敗 (第 {} 次)，稍後重試: {}",
+                                signal.totalRetries() + 1, signal.failure().toString())))
+                .flatMap(tools -> apply(tools).flatMap(change -> saveSnapshot(tools).thenReturn(change)))
+                .doOnNext(change -> log.info("已註冊 {} 個動態工具 (共嘗試 {} 次)",
+                        change.added().size(), attempts.get()));
+    }
+
+    private Mono<Void> saveSnapshot(List<OpenApiScannerService.ToolDefinition> tools) {
+        if (!snapshotStore.isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(() -> {
+            String mappingHash = scannerService.mappingHash();
+            if (mappingHash == null) {
+                // 部分後端尚未掃描成功，快照無法代表完整的工具目錄
+                log.debug("尚有後端未完成掃描，暫不寫入工具目錄快照");
+                return;
+            }
+            snapshotStore.save(new ToolCatalogSnapshot.Snapshot(ToolCatalogSnapshot.FORMAT_VERSION, mappingHash,
+                    scannerService.baselines(), scannerService.getBackendSettings(), tools));
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private void schedulePeriodicRefresh() {
+        if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+            return;
+        }
+        refreshTask = Flux.interval(refreshInterval, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh()
+                        .onErrorResume(e -> {
+                            log.warn("重新掃描 OpenAPI 失敗，維持目前的工具清單: {}", e.toString());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    /**
+     * 條件式重新掃描並套用差異。首次載入尚未完成或已有掃描進行中時回傳 empty；
+     * 規格與 mapping 皆未變更時只花一次條件式 HTTP 請求，不解析也不變動工具。
+     * 失敗時 (例如 mapping 無法解析) 維持目前的工具，錯誤記錄於 lastError 直到下次成功套用。
+     */
+    public Mono<CatalogChange> refresh() {
+        if (!isLoaded() || !refreshing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        return scannerService.rescanIfChanged()
+                .flatMap(tools -> apply(tools).flatMap(change -> saveSnapshot(tools).thenReturn(change)))
+                .doOnNext(change -> {
+                    if (!change.isEmpty()) {
+                        log.info("工具目錄已更新: 新增 {}, 替換 {}, 移除 {}",
+                                change.added(), change.updated(), change.removed());
+                    }
+                })
+                .doOnSuccess(change -> lastError = null)
+                .doOnError(e -> lastError = e)
+                // 在結果送出前 (而非 doFinally) 解除進行中標記，呼叫端收到結果後立即再 refresh 不會被略過
+                .doOnEach(signal -> refreshDone())
+                .doOnCancel(this::refreshDone);
+    }
+
+    private void refreshDone() {
+        lastRefreshAt = Instant.now();
+        refreshing.set(false);
+    }
+
+    /**
+     * 與目前註冊的工具比對，只移除/替換/新增有變動的工具。
+     * 中途失敗時 registered、呼叫者檢視與 tools/list 結果頁改為反映已成功的變更，下次套用時再補上其餘差異
+     */
+    private Mono<CatalogChange> apply(List<OpenApiScannerService.ToolDefinition> tools) {
+        if (tools.isEmpty()) {
+            log.warn("OpenAPI 中沒有任何 operation 對應到 mcp-mapping.json，工具清單為空");
+        }
+        Map<String, OpenApiScannerService.ToolDefinition> next = new LinkedHashMap<>();
+        // 設定 response.pageSize 的工具另有取得後續頁的 companion 工具
+        ToolResultCursors.withCompanions(tools).forEach(def -> next.put(def.tool().name(), def));
+
+        // 後端層級設定變更時，該後端所有工具的後端斷路器設定都需重建
+        Map<String, Map<String, Object>> backends = scannerService.getBackendSettings();
+        Set<String> changedBackends = new HashSet<>();
+        if (registeredBackends != null) {
+            backends.forEach((name, settings) -> {
+                if (!settings.equals(registeredBackends.getOrDefault(name, settings))) {
+                    changedBackends.add(name);
+                }
+            });
+        }
+
+        List<String> removed = new ArrayList<>();
+        registered.keySet().stream().filter(name -> !next.containsKey(name)).forEach(removed::add);
+        List<OpenApiScannerService.ToolDefinition> added = new ArrayList<>();
+        List<OpenApiScannerService.ToolDefinition> updated = new ArrayList<>();
+        next.forEach((name, def) -> {
+            OpenApiScannerService.ToolDefinition current = registered.get(name);
+            if (current == null) {
+                added.add(def);
+            } else if (changedBackends.contains(def.backend()) || !current.equals(def)) {
+                updated.add(def);
+            }
+        });
+
+        List<AsyncToolSpecification> addedSpecs = toolRegistry.toSpecifications(added);
+        List<AsyncToolSpecification> updatedSpecs = toolRegistry.toSpecifications(updated);
+
+        // 實際已註冊在 MCP Server 上的工具，每一步成功後才更新
+        Map<String, OpenApiScannerService.ToolDefinition> applied = new LinkedHashMap<>(registered);
+        Mono<Void> removals = Flux.fromIterable(removed)
+                .concatMap(name -> mcpServer.removeTool(name)
+                        .then(Mono.fromRunnable(() -> {
+                            applied.remove(name);
+                            toolRegistry.remove(name);
+                        })))
+                .then();
+        // 替換：addTool 以同名的新規格直接取代舊規格，不會出現工具暫時消失的空檔
+        Mono<Void> replacements = Flux.fromIterable(updatedSpecs)
+                .concatMap(spec -> mcpServer.addTool(spec)
+                        .then(Mono.fromRunnable(() -> {
+                            applied.put(spec.tool().name(), next.get(spec.tool().name()));
+                            toolRegistry.evict(spec.tool().name());
+                        })))
+                .then();
+        Mono<Void> additions = Flux.fromIterable(addedSpecs)
+                .concatMap(spec -> mcpServer.addTool(spec)
+                        .then(Mono.fromRunnable(() -> applied.put(spec.tool().name(), next.get(spec.tool().name())))))
+                .then();
+
+        return removals.then(replacements).then(additions)
+                .doOnError(e -> {
+                    log.warn("套用工具目錄變更失敗，已註冊 {} 個工具: {}", applied.size(), e.toString());
+                    commit(applied);
+                })
+                .then(Mono.fromSupplier(() -> {
+                    changedBackends.forEach(toolRegistry::evictBackend);
+                    commit(next);
+                    registeredBackends = backends;
+                    loadedAt = Instant.now();
+                    lastError = null;
+                    CatalogChange change = new CatalogChange(names(added), names(updated), removed);
+                    lastChange = change;
+                    return change;
+                }));
+    }
+
+    /**
+     * 以實際註冊在 MCP Server 上的工具更新 registered，並重建呼叫者檢視與預先序列化的 tools/list 結果頁
+     */
+    private void commit(Map<String, OpenApiScannerService.ToolDefinition> tools) {
+        registered.clear();
+        registered.putAll(tools);
+        toolViews.update(scannerService.getViewSettings(), tools.keySet(), companions(tools.values()));
+        toolListCache.update(tools.values().stream()
+                .map(OpenApiScannerService.ToolDefinition::tool)
+                .toList());
+        toolCount = tools.size();
+    }
+
+    /**
+     * companion 工具名稱 → 其 cursorFor 原工具
+     */
+    private static Map<String, String> companions(Collection<OpenApiScannerService.ToolDefinition> defs) {
+        Map<String, String> companions = new HashMap<>();
+        for (OpenApiScannerService.ToolDefinition def : defs) {
+            String cursorFor = ToolResultCursors.cursorFor(def);
+            if (cursorFor != null) {
+                companions.put(def.tool().name(), cursorFor);
+            }
+        }
+        return companions;
+    }
+
+    private static List<String> names(List<OpenApiScannerService.ToolDefinition> defs) {
+        return defs.stream().map(def -> def.tool().name()).toList();
+    }
+
+    /**
+     * 首次工具目錄是否已載入並註冊
+     */
+    public boolean isLoaded() {
+        return loadedAt != null;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("attempts", attempts.get());
+        status.put("tools", toolCount);
+        if (loadedAt != null) {
+            status.put("loadedAt", loadedAt.toString());
+        }
+        if (lastRefreshAt != null) {
+            status.put("lastRefreshAt", lastRefreshAt.toString());
+        }
+        if (lastChange != null) {
+            status.put("lastChange", lastChange);
+        }
+        Throwable error = lastError;
+        if (error != null) {
+            status.put("lastError", error.toString());
+        }
+        return status;
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Disposable current : new Disposable[] {subscription, refreshTask}) {
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+}
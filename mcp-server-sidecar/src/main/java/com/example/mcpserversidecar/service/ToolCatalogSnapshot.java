@@ -0,0 +1,181 @@
+package com.example.mcpserversidecar.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已解析工具目錄的磁碟快照 (gzip JSON)，供冷啟動時跳過 OpenAPI 下載、解析與轉換。
+ *
+ * 快照記錄產生時各後端的規格 ETag/SHA-256 與 mapping SHA-256；mapping 檔雜湊不符即視為失效。
+ * 規格是否變更無法離線判斷，由 ToolCatalogLoader 載入快照後於背景以條件式請求驗證。
+ *
+ * 掃描時 SchemaCompiler 讓引用同一 component 的工具共用同一個 schema 實例，JSON 反序列化會為每個工具各建一份；
+ * 載入時依內容重新共用 (intern) inputSchema 的屬性與 $defs，快照啟動的記憶體用量與完整掃描相同。
+ * 快照以 Jackson 反射讀寫，native image 需登錄 Snapshot 與 ToolDefinition 的反射資訊。
+ */
+@Service
+@RegisterReflectionForBinding({ToolCatalogSnapshot.Snapshot.class, OpenApiScannerService.ToolDefinition.class,
+        OpenApiScannerService.ScanBaseline.class})
+public class ToolCatalogSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolCatalogSnapshot.class);
+
+    /**
+     * 快照格式版本；ToolDefinition 結構或 schema 編譯結果變更時遞增，讓舊快照自動失效
+     */
+    static final int FORMAT_VERSION = 3;
+
+    private final ObjectMapper objectMapper;
+    private final Path path;
+
+    /**
+     * @param baselines 各後端的條件式重新掃描基準
+     * @param backends  各後端的後端層級設定
+     */
+    public record Snapshot(
+            int version,
+            String mappingHash,
+            Map<String, OpenApiScannerService.ScanBaseline> baselines,
+            Map<String, Map<String, Object>> backends,
+            List<OpenApiScannerService.ToolDefinition> tools) {
+    }
+
+    public ToolCatalogSnapshot(ObjectMapper objectMapper,
+            @Value("${mcp.catalog.snapshot.path:}") String path) {
+        this.objectMapper = objectMapper;
+        this.path = path == null || path.isBlank() ? null : Path.of(path);
+    }
+
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * 讀取與目前 mapping 檔相符的快照；不存在、格式不符或損毀時回傳 empty
+     */
+    public Optional<Snapshot> load(String mappingHash) {
+        if (path == null || !Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+            Snapshot snapshot = objectMapper.readValue(in, Snapshot.class);
+            if (snapshot.version() != FORMAT_VERSION || !mappingHash.equals(snapshot.mappingHash())) {
+                log.info("工具目錄快照已失效 (格式版本或 mapping 已變更)，改為完整掃描");
+                return Optional.empty();
+            }
+            return Optional.of(intern(snapshot));
+        } catch (IOException | RuntimeException e) {
+            log.warn("無法讀取工具目錄快照 {}: {}", path, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 寫入暫存檔後再原子性地取代，避免程序中斷時留下不完整的快照
+     */
+    public void save(Snapshot snapshot) {
+        if (path == null) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            Path dir = path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                objectMapper.writeValue(out, snapshot);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            log.debug("已寫入工具目錄快照: {} ({} 個工具)", path, snapshot.tools().size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("無法寫入工具目錄快照 {}: {}", path, e.toString());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    log.debug("無法刪除快照暫存檔 {}: {}", tmp, e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * 依內容共用各工具 inputSchema 的屬性 schema 與 $defs；頂層 properties 仍每個工具獨立
+     */
+    private static Snapshot intern(Snapshot snapshot) {
+        Map<Object, Object> canonical = new HashMap<>();
+        List<OpenApiScannerService.ToolDefinition> tools = new ArrayList<>(snapshot.tools().size());
+        for (OpenApiScannerService.ToolDefinition def : snapshot.tools()) {
+            McpSchema.JsonSchema schema = def.tool().inputSchema();
+            if (schema == null) {
+                tools.add(def);
+                continue;
+            }
+            McpSchema.Tool tool = McpSchema.Tool.builder()
+                    .name(def.tool().name())
+                    .description(def.tool().description())
+                    .inputSchema(new McpSchema.JsonSchema(schema.type(),
+                            internValues(schema.properties(), canonical),
+                            schema.required(),
+                            schema.additionalProperties(),
+                            internValues(schema.defs(), canonical),
+                            schema.definitions()))
+                    .build();
+            tools.add(new OpenApiScannerService.ToolDefinition(tool, def.path(), def.method(), def.mapping(),
+                    def.parameterLocations(), def.backend()));
+        }
+        return new Snapshot(snapshot.version(), snapshot.mappingHash(), snapshot.baselines(), snapshot.backends(),
+                tools);
+    }
+
+    private static Map<String, Object> internValues(Map<String, Object> map, Map<Object, Object> canonical) {
+        if (map == null) {
+            return null;
+        }
+        Map<String, Object> interned = new LinkedHashMap<>();
+        map.forEach((key, value) -> interned.put(key, intern(value, canonical)));
+        return interned;
+    }
+
+    /**
+     * 由內而外轉為不可變結構，內容相同的 Map/List 回傳同一個實例 (與 SchemaCompiler 的編譯結果一致)
+     */
+    private static Object intern(Object value, Map<Object, Object> canonical) {
+        Object copy;
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> interned = new LinkedHashMap<>();
+            map.forEach((key, child) -> interned.put(key, intern(child, canonical)));
+            copy = Collections.unmodifiableMap(interned);
+        } else if (value instanceof List<?> list) {
+            List<Object> interned = new ArrayList<>(list.size());
+            list.forEach(child -> interned.add(intern(child, canonical)));
+            copy = Collections.unmodifiableList(interned);
+        } else {
+            return value;
+        }
+        return canonical.computeIfAbsent(copy, k -> k);
+    }
+}
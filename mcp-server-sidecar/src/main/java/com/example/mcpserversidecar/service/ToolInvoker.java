@@ -0,0 +1,175 @@
+package com.example.mcpserversidecar.service;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.util.UriUtils;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工具註冊時預先編譯的請求產生器。
+ *
+ * 路徑樣板 (例如 /api/customers/{id}/orders) 於編譯時拆成固定片段與參數槽位，
+ * 參數位置依 OpenAPI Parameter.in 分為 path / query / header / body。
+ * 呼叫時只需把參數值 percent-encode 後填入預先配置大小的 StringBuilder，
+ * 不再對整個 URL 反覆 contains/replace。
+ *
+ * 未在 OpenAPI 中宣告的參數：GET/DELETE/HEAD 視為 query，POST/PUT/PATCH 放入 request body。
+ */
+public final class ToolInvoker {
+
+    /**
+     * 一次工具呼叫所需的上游請求內容
+     */
+    public record Invocation(HttpMethod method, URI uri, Map<String, String> headers, Map<String, Object> body) {
+    }
+
+    private final HttpMethod method;
+    private final boolean hasBody;
+    /**
+     * 路徑固定片段，長度比 pathParams 多 1：literal[0] {p0} literal[1] {p1} ... literal[n]
+     */
+    private final String[] literals;
+    private final String[] pathParams;
+    private final Map<String, String> locations;
+    private final int estimatedLength;
+
+    private ToolInvoker(HttpMethod method, String[] literals, String[] pathParams, Map<String, String> locations) {
+        this.method = method;
+        this.hasBody = HttpMethod.POST.equals(method) || HttpMethod.PUT.equals(method)
+                || HttpMethod.PATCH.equals(method);
+        this.literals = literals;
+        this.pathParams = pathParams;
+        this.locations = locations;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.estimatedLength = length + 16 * (pathParams.length + locations.size());
+    }
+
+    /**
+     * 編譯工具定義：解析路徑樣板並記錄各參數位置
+     */
+    public static ToolInvoker compile(OpenApiScannerService.ToolDefinition def, String targetApiUrl) {
+        String url = def.path().startsWith("/") ? targetApiUrl + def.path() : def.path();
+        List<String> literals = new ArrayList<>();
+        List<String> pathParams = new ArrayList<>();
+
+        int pos = 0;
+        while (true) {
+            int open = url.indexOf('{', pos);
+            int close = open >= 0 ? url.indexOf('}', open) : -1;
+            if (open < 0 || close < 0) {
+                literals.add(url.substring(pos));
+                break;
+            }
+            literals.add(url.substring(pos, open));
+            pathParams.add(url.substring(open + 1, close));
+            pos = close + 1;
+        }
+
+        Map<String, String> locations = new LinkedHashMap<>(def.parameterLocations());
+        for (String name : pathParams) {
+            locations.put(name, "path");
+        }
+
+        return new ToolInvoker(HttpMethod.valueOf(def.method().toUpperCase()),
+                literals.toArray(new String[0]), pathParams.toArray(new String[0]),
+                Collections.unmodifiableMap(locations));
+    }
+
+    public HttpMethod method() {
+        return method;
+    }
+
+    /**
+     * GET/HEAD 為安全且冪等的方法，才允許快取與合併
+     */
+    public boolean isSafe() {
+        return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method);
+    }
+
+    /**
+     * 將工具參數填入預先編譯的槽位
+     *
+     * @throws IllegalArgumentException 缺少路徑參數時
+     */
+    public Invocation bind(Map<String, Object> arguments) {
+        Map<String, Object> args = arguments != null ? arguments : Collections.emptyMap();
+        StringBuilder sb = new StringBuilder(estimatedLength);
+
+        sb.append(literals[0]);
+        for (int i = 0; i < pathParams.length; i++) {
+            Object val = args.get(pathParams[i]);
+            if (val == null) {
+                throw new IllegalArgumentException("缺少路徑參數: " + pathParams[i]);
+            }
+            sb.append(UriUtils.encodePathSegment(val.toString(), StandardCharsets.UTF_8));
+            sb.append(literals[i + 1]);
+        }
+
+        boolean firstQuery = sb.indexOf("?") < 0;
+        Map<String, String> headers = Collections.emptyMap();
+        Map<String, Object> body = hasBody ? new LinkedHashMap<>() : null;
+
+        for (Map.Entry<String, Object> entry : args.entrySet()) {
+            String name = entry.getKey();
+            Object val = entry.getValue();
+            if (val == null) {
+                continue;
+            }
+            String in = locations.getOrDefault(name, hasBody ? "body" : "query");
+            switch (in) {
+                case "path" -> {
+                    // 已於上方填入
+                }
+                case "header" -> {
+                    if (headers.isEmpty()) {
+                        headers = new LinkedHashMap<>();
+                    }
+                    headers.put(name, val.toString());
+                }
+                case "body" -> {
+                    if (body != null) {
+                        body.put(name, val);
+                    }
+                }
+                default -> {
+                    // query (以及 cookie 等不支援的位置，退回 query)
+                    if (val instanceof Collection<?> values) {
+                        for (Object item : values) {
+                            firstQuery = appendQuery(sb, firstQuery, name, item);
+                        }
+                    } else {
+                        firstQuery = appendQuery(sb, firstQuery, name, val);
+                    }
+                }
+            }
+        }
+
+        return new Invocation(method, URI.create(sb.toString()), headers, body);
+    }
+
+    private static boolean appendQuery(StringBuilder sb, boolean first, String name, Object val) {
+        sb.append(first ? '?' : '&')
+                .append(encodeQuery(name))
+                .append('=')
+                .append(encodeQuery(String.valueOf(val)));
+        return false;
+    }
+
+    /**
+     * encodeQueryParam 會保留 '+'，但多數伺服器將 query 中的 '+' 解讀為空白，因此額外編碼
+     */
+    private static String encodeQuery(String value) {
+        String encoded = UriUtils.encodeQueryParam(value, StandardCharsets.UTF_8);
+        return encoded.indexOf('+') >= 0 ? encoded.replace("+", "%2B") : encoded;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.mcpserversidecar.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 預先序列化的 tools/list 結果頁。
+ *
+ * 工具目錄變更時 (ToolCatalogLoader 套用後) 將每個工具序列化一次，依 mcp.tools-list.page-size 切成不可變的
+ * JSON 片段 {"tools":[...],"nextCursor":"..."}；之後每次 tools/list 只需把對應的頁寫入回應 (見 ToolsListFilter)，
+ * 不再重新序列化數百個帶有長描述與 schema 的 Tool。
+ *
+ * cursor 為不透明字串 (目錄版本 + 位移，base64url)。版本是該檢視結果頁內容 (各工具序列化結果與頁大小) 的 SHA-256，
+ * 不是行程內的計數器：內容相同的其他副本或重啟後的行程接受同一 cursor，內容不同時一律視為無效，
+ * 不會回傳錯誤的頁。目錄更新後舊版本的 cursor 視為無效，客戶端應依 notifications/tools/list_changed 從第一頁重新取得。
+ *
+ * 呼叫者只能看到部分工具時 ({@link ToolViews})，由已序列化的工具片段組出該檢視的結果頁，
+ * 每個檢視在每版目錄只組一次。
+ */
+@Service
+public class ToolListCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolListCache.class);
+
+    private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+    private volatile Pages pages;
+    private final LongAdder served = new LongAdder();
+
+    /**
+     * 某一版工具目錄：每個工具的序列化片段、完整目錄的結果頁，以及依檢視組出的結果頁
+     */
+    private record Pages(List<String> names, List<byte[]> serialized, ViewPages all,
+            Map<String, ViewPages> views) {
+    }
+
+    /**
+     * 一個檢視的結果頁
+     *
+     * @param version 結果頁內容的雜湊 (hex)，cursor 以此識別版本
+     */
+    private record ViewPages(String version, int toolCount, List<byte[]> results) {
+    }
+
+    /**
+     * cursor 格式錯誤或屬於舊版目錄
+     */
+    public static class InvalidCursorException extends RuntimeException {
+
+        InvalidCursorException(String cursor) {
+            super("無效的 cursor: " + cursor, null, false, false);
+        }
+    }
+
+    public ToolListCache(ObjectMapper objectMapper, @Value("${mcp.tools-list.page-size:100}") int pageSize) {
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize > 0 ? pageSize : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 以目前註冊的工具 (依註冊順序) 重建結果頁
+     */
+    public void update(List<McpSchema.Tool> tools) {
+        long start = System.nanoTime();
+        try {
+            List<String> names = new ArrayList<>(tools.size());
+            List<byte[]> serialized = new ArrayList<>(tools.size());
+            for (McpSchema.Tool tool : tools) {
+                names.add(tool.name());
+                serialized.add(objectMapper.writeValueAsBytes(tool));
+            }
+            ViewPages all = paginate(serialized);
+            pages = new Pages(List.copyOf(names), List.copyOf(serialized), all, new ConcurrentHashMap<>());
+            log.debug("已序列化 tools/list: {} 個工具、{} 頁，耗時 {} ms", tools.size(), all.results().size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (JsonProcessingException e) {
+            // 維持舊的結果頁會回傳過時的目錄，改由 MCP Server 自行處理 tools/list
+            pages = null;
+            log.warn("序列化 tools/list 失敗，改由 MCP Server 處理: {}", e.toString());
+        }
+    }
+
+    /**
+     * 是否已有可直接輸出的結果頁
+     */
+    public boolean isReady() {
+        return pages != null;
+    }
+
+    /**
+     * 取得完整目錄中 cursor 對應的 ListToolsResult JSON；cursor 為 null 時為第一頁
+     *
+     * @return 結果頁 bytes (不可修改)；尚未建立結果頁時回傳 null
+     * @throws InvalidCursorException cursor 無效或屬於舊版目錄
+     */
+    public byte[] page(String cursor) {
+        return page(ToolViews.ALL, cursor);
+    }
+
+    /**
+     * 取得呼叫者檢視中 cursor 對應的 ListToolsResult JSON；cursor 為 null 時為第一頁
+     *
+     * @return 結果頁 bytes (不可修改)；尚未建立結果頁時回傳 null
+     * @throws InvalidCursorException cursor 無效或屬於舊版目錄
+     */
+    public byte[] page(ToolViews.ToolView view, String cursor) {
+        Pages current = pages;
+        if (current == null) {
+            return null;
+        }
+        ViewPages viewPages = view.isUnrestricted()
+                ? current.all()
+                : current.views().computeIfAbsent(view.key(), key -> paginate(current, view));
+        int index = 0;
+        if (cursor != null) {
+            int offset = offset(cursor, viewPages.version());
+            if (offset <= 0 || offset >= viewPages.toolCount() || offset % pageSize != 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            index = offset / pageSize;
+        }
+        served.increment();
+        return viewPages.results().get(index);
+    }
+
+    private ViewPages paginate(Pages current, ToolViews.ToolView view) {
+        List<byte[]> visible = new ArrayList<>();
+        for (int i = 0; i < current.names().size(); i++) {
+            if (view.allows(current.names().get(i))) {
+                visible.add(current.serialized().get(i));
+            }
+        }
+        return paginate(visible);
+    }
+
+    private ViewPages paginate(List<byte[]> serialized) {
+        String version = version(serialized);
+        List<byte[]> results = new ArrayList<>();
+        for (int offset = 0; offset == 0 || offset < serialized.size(); offset += pageSize) {
+            int end = (int) Math.min((long) offset + pageSize, serialized.size());
+            results.add(page(serialized.subList(offset, end),
+                    end < serialized.size() ? cursor(version, end) : null));
+        }
+        return new ViewPages(version, serialized.size(), List.copyOf(results));
+    }
+
+    /**
+     * 結果頁內容的雜湊：頁大小與各工具的序列化結果 (含長度，避免相鄰工具的邊界造成碰撞)，取 SHA-256 前 8 bytes
+     */
+    private String version(List<byte[]> serialized) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        digest.update(length.putInt(0, pageSize).array());
+        for (byte[] tool : serialized) {
+            digest.update(length.putInt(0, tool.length).array());
+            digest.update(tool);
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    private static int offset(String cursor, String version) {
+        try {
+            String decoded = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.US_ASCII);
+            int separator = decoded.indexOf(':');
+            if (separator < 0 || !decoded.substring(0, separator).equals(version)) {
+                return -1;
+            }
+            return Integer.parseInt(decoded.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static String cursor(String version, int offset) {
+        return CURSOR_ENCODER.encodeToString((version + ":" + offset).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] page(List<byte[]> tools, String nextCursor) {
+        int size = 16;
+        for (byte[] tool : tools) {
+            size += tool.length + 1;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 64);
+        out.writeBytes("{\"tools\":[".getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < tools.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(tools.get(i));
+        }
+        out.write(']');
+        if (nextCursor != null) {
+            out.writeBytes((",\"nextCursor\":\"" + nextCursor + "\"").getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Pages current = pages;
+        stats.put("ready", current != null);
+        if (current != null) {
+            stats.put("version", current.all().version());
+            stats.put("tools", current.all().toolCount());
+            stats.put("pages", current.all().results().size());
+            stats.put("bytes", current.all().results().stream().mapToLong(page -> page.length).sum());
+            stats.put("views", current.views().size());
+        }
+        stats.put("pageSize", pageSize == Integer.MAX_VALUE ? 0 : pageSize);
+        stats.put("served", served.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.mcpserversidecar.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * MCP 工具管線的 Micrometer 指標，透過 /actuator/prometheus 輸出。
+ *
+ * <ul>
+ *   <li>mcp.tool.calls (Timer, tool/outcome)：工具呼叫次數與延遲，SLO 區間與百分位數於 application.properties 設定</li>
+ *   <li>mcp.tool.inflight (Gauge, tool)：進行中的工具呼叫數</li>
+ *   <li>mcp.tool.errors (Counter, tool/type)：錯誤類型</li>
+ *   <li>mcp.tool.upstream.responses (Counter, tool/status)：上游 HTTP 狀態碼</li>
+ *   <li>mcp.tool.request.size / mcp.tool.response.size (DistributionSummary, tool)：上游請求/回應 body 大小</li>
+ *   <li>mcp.tool.rate.limited (Counter, tool)：超過呼叫者速率限制而拒絕的呼叫</li>
+ *   <li>mcp.tool.arguments.rejected (Counter, tool/rule)、mcp.tool.arguments.coerced (Counter, tool)：參數驗證拒絕與轉型次數</li>
+ *   <li>mcp.openapi.scan (Timer, backend/outcome)、mcp.tools.registered (Gauge)：各後端 OpenAPI 掃描耗時與合併後的工具數</li>
+ *   <li>mcp.upstream.concurrency.limit / .inflight / .queued (Gauge, backend)：自適應並行上限、進行中與排隊中的上游呼叫</li>
+ *   <li>mcp.upstream.concurrency.rejected (Counter, backend)：超過並行上限且排隊逾時而拒絕的呼叫</li>
+ * </ul>
+ *
+ * 帶 tool tag 的 meter 依工具快取 (呼叫路徑上不再經過 builder 與 registry 查詢)，工具自目錄移除時由
+ * {@link #removeTool(String)} 一併自 registry 移除；移除前已開始的呼叫在結束時不會重新註冊 meter。
+ */
+@Service
+public class ToolMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, ToolMeters> tools = new ConcurrentHashMap<>();
+    private final AtomicInteger registeredTools = new AtomicInteger();
+
+    /**
+     * 單一工具的進行中計數與已註冊的 meter (key 為 meter 名稱與 tool 以外的 tag 值)
+     */
+    private static final class ToolMeters {
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final Map<String, Meter> meters = new ConcurrentHashMap<>();
+        Gauge inFlightGauge;
+        boolean removed;
+
+        /**
+         * 取得或註冊 meter；工具已移除時回傳 null，避免進行中的呼叫在移除後重新註冊 meter
+         */
+        @SuppressWarnings("unchecked")
+        <M extends Meter> M meter(String key, Supplier<M> factory) {
+            Meter meter = meters.get(key);
+            if (meter != null) {
+                return (M) meter;
+            }
+            synchronized (this) {
+                return removed ? null : (M) meters.computeIfAbsent(key, k -> factory.get());
+            }
+        }
+    }
+
+    public ToolMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("mcp.tools.registered", registeredTools, AtomicInteger::get)
+                .description("目前註冊的 MCP 工具數")
+                .register(registry);
+    }
+
+    /**
+     * 量測一次工具呼叫：延遲、結果 (success / error / cancelled)、進行中數量與未預期的例外類型
+     */
+    public Mono<McpSchema.CallToolResult> instrument(String toolName, Mono<McpSchema.CallToolResult> call) {
+        return Mono.defer(() -> {
+            ToolMeters tool = meters(toolName);
+            tool.inFlight.incrementAndGet();
+            Timer.Sample sample = Timer.start(registry);
+            String[] outcome = {"cancelled"};
+            return call
+                    .doOnNext(result -> outcome[0] = Boolean.TRUE.equals(result.isError()) ? "error" : "success")
+                    .doOnError(e -> {
+                        outcome[0] = "exception";
+                        record(tool, "errors:" + e.getClass().getSimpleName(),
+                                () -> errorCounter(toolName, e.getClass().getSimpleName()), Counter::increment);
+                    })
+                    .doFinally(signal -> {
+                        tool.inFlight.decrementAndGet();
+                        Timer timer = tool.meter("calls:" + outcome[0], () -> Timer.builder("mcp.tool.calls")
+                                .description("MCP 工具呼叫延遲")
+                                .tags("tool", toolName, "outcome", outcome[0])
+                                .register(registry));
+                        if (timer != null) {
+                            sample.stop(timer);
+                        }
+                    });
+        });
+    }
+
+    public void recordError(String toolName, String type) {
+        record(toolName, "errors:" + type, () -> errorCounter(toolName, type), Counter::increment);
+    }
+
+    private Counter errorCounter(String toolName, String type) {
+        return Counter.builder("mcp.tool.errors")
+                .description("MCP 工具呼叫錯誤")
+                .tags("tool", toolName, "type", type)
+                .register(registry);
+    }
+
+    /**
+     * 參數驗證失敗而未送往上游的呼叫；rule 為第一個違反的 JSON Schema 關鍵字
+     */
+    public void recordRejectedArguments(String toolName, String rule) {
+        this.<Counter>record(toolName, "rejected:" + rule, () -> Counter.builder("mcp.tool.arguments.rejected")
+                .description("參數驗證失敗而拒絕的工具呼叫")
+                .tags("tool", toolName, "rule", rule)
+                .register(registry),
+                Counter::increment);
+    }
+
+    public void recordRateLimited(String toolName) {
+        this.<Counter>record(toolName, "rateLimited", () -> Counter.builder("mcp.tool.rate.limited")
+                .description("超過呼叫者速率限制而拒絕的工具呼叫")
+                .tags("tool", toolName)
+                .register(registry),
+                Counter::increment);
+    }
+
+    public void recordViewDenied(String toolName) {
+        this.<Counter>record(toolName, "viewDenied", () -> Counter.builder("mcp.tool.view.denied")
+                .description("不在呼叫者工具檢視內而拒絕的工具呼叫")
+                .tags("tool", toolName)
+                .register(registry),
+                Counter::increment);
+    }
+
+    public void recordCoercedArguments(String toolName) {
+        this.<Counter>record(toolName, "coerced", () -> Counter.builder("mcp.tool.arguments.coerced")
+                .description("參數經型別轉換後才通過驗證的工具呼叫")
+                .tags("tool", toolName)
+                .register(registry),
+                Counter::increment);
+    }
+
+    public void recordUpstreamStatus(String toolName, int status) {
+        this.<Counter>record(toolName, "status:" + status, () -> Counter.builder("mcp.tool.upstream.responses")
+                .description("上游 HTTP 回應狀態碼")
+                .tags("tool", toolName, "status", Integer.toString(status))
+                .register(registry),
+                Counter::increment);
+    }
+
+    public void recordRequestSize(String toolName, long bytes) {
+        this.<DistributionSummary>record(toolName, "requestSize", () -> DistributionSummary.builder("mcp.tool.request.size")
+                .description("送往上游的請求 body 大小")
+                .baseUnit("bytes")
+                .tags("tool", toolName)
+                .register(registry),
+                summary -> summary.record(bytes));
+    }
+
+    public void recordResponseSize(String toolName, long bytes) {
+        this.<DistributionSummary>record(toolName, "responseSize", () -> DistributionSummary.builder("mcp.tool.response.size")
+                .description("上游回應 body 大小")
+                .baseUnit("bytes")
+                .tags("tool", toolName)
+                .register(registry),
+                summary -> summary.record(bytes));
+    }
+
+    public void recordShapedResponseSize(String toolName, long bytes) {
+        this.<DistributionSummary>record(toolName, "shapedSize", () -> DistributionSummary.builder("mcp.tool.response.shaped.size")
+                .description("依 mapping 整形 (投影、截斷) 後的回應大小")
+                .baseUnit("bytes")
+                .tags("tool", toolName)
+                .register(registry),
+                summary -> summary.record(bytes));
+    }
+
+    public void recordScan(String backend, Duration duration, boolean success) {
+        Timer.builder("mcp.openapi.scan")
+                .description("OpenAPI 掃描與工具轉換耗時")
+                .tags("backend", backend, "outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(duration);
+    }
+
+    public void recordToolCount(int toolCount) {
+        registeredTools.set(toolCount);
+    }
+
+    /**
+     * 註冊後端並行上限的 gauge；state 由 AdaptiveConcurrencyLimiter 持有
+     */
+    public <T> void registerConcurrencyLimit(String backend, T state, ToDoubleFunction<T> limit,
+            ToDoubleFunction<T> inFlight, ToDoubleFunction<T> queued) {
+        Gauge.builder("mcp.upstream.concurrency.limit", state, limit)
+                .description("上游自適應並行上限")
+                .tags("backend", backend)
+                .register(registry);
+        Gauge.builder("mcp.upstream.concurrency.inflight", state, inFlight)
+                .description("進行中的上游呼叫")
+                .tags("backend", backend)
+                .register(registry);
+        Gauge.builder("mcp.upstream.concurrency.queued", state, queued)
+                .description("等待並行額度的上游呼叫")
+                .tags("backend", backend)
+                .register(registry);
+    }
+
+    public void recordConcurrencyRejected(String backend) {
+        Counter.builder("mcp.upstream.concurrency.rejected")
+                .description("超過並行上限而拒絕的上游呼叫")
+                .tags("backend", backend)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 自 registry 移除工具的所有 meter (工具已自目錄移除)；仍在進行中的呼叫結束時不再記錄，也不會重新註冊 meter
+     */
+    public void removeTool(String toolName) {
+        ToolMeters removed = tools.remove(toolName);
+        if (removed == null) {
+            return;
+        }
+        synchronized (removed) {
+            removed.removed = true;
+            registry.remove(removed.inFlightGauge);
+            removed.meters.values().forEach(registry::remove);
+            removed.meters.clear();
+        }
+    }
+
+    private ToolMeters meters(String toolName) {
+        return tools.computeIfAbsent(toolName, name -> {
+            ToolMeters meters = new ToolMeters();
+            meters.inFlightGauge = Gauge.builder("mcp.tool.inflight", meters.inFlight, AtomicInteger::get)
+                    .description("進行中的 MCP 工具呼叫")
+                    .tags("tool", name)
+                    .register(registry);
+            return meters;
+        });
+    }
+
+    /**
+     * 記錄至工具的 meter；meter 只在 {@link #instrument} 開始呼叫時建立工具項目，已移除的工具直接略過
+     */
+    private <M extends Meter> void record(String toolName, String key, Supplier<M> factory, Consumer<M> action) {
+        ToolMeters tool = tools.get(toolName);
+        if (tool != null) {
+            record(tool, key, factory, action);
+        }
+    }
+
+    private <M extends Meter> void record(ToolMeters tool, String key, Supplier<M> factory,
+            Consumer<M> action) {
+        M meter = tool.meter(key, factory);
+        if (meter != null) {
+            action.accept(meter);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.util.MappingValues;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 每個呼叫者 (principal，由 AuthenticationFilter 依 Authorization 推導) 的工具呼叫速率限制，
+ * 避免單一失控的 agent 用盡 sidecar 與上游的容量。
+ *
+ * 兩層 token bucket：所有工具共用的呼叫者上限 (mcp.rate-limit.*)，以及 mcp-mapping.json 中個別工具的上限：
+ * <pre>
+ * "rateLimit": { "requestsPerSecond": 2, "burst": 5 }
+ * </pre>
+ * 每個 bucket 以 GCRA 表示為單一 AtomicLong (理論到達時間)，以 CAS 更新，不需鎖；
+ * 既有呼叫者與工具的 bucket 查詢不配置物件。閒置的呼叫者於 idle-timeout 後移除。
+ */
+@Service
+public class ToolRateLimiter {
+
+    private final boolean enabled;
+    private final RatePolicy principalPolicy;
+    private final LongSupplier nanoClock;
+    private final long origin;
+    private final Cache<String, PrincipalBuckets> principals;
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * 速率設定：每秒補充 requestsPerSecond 個額度，最多累積 burst 個
+     */
+    public record RatePolicy(double requestsPerSecond, int burst) {
+
+        /**
+         * 從 mapping 解析工具層級的速率限制；未宣告 "rateLimit" 或 requestsPerSecond <= 0 時回傳 null
+         */
+        public static RatePolicy from(Map<String, Object> mapping) {
+            Map<String, Object> rateLimit = MappingValues.section(mapping, "rateLimit");
+            if (rateLimit == null) {
+                return null;
+            }
+            double requestsPerSecond = MappingValues.getDouble(rateLimit, "requestsPerSecond", 0);
+            if (requestsPerSecond <= 0) {
+                return null;
+            }
+            return new RatePolicy(requestsPerSecond,
+                    MappingValues.getInt(rateLimit, "burst", (int) Math.max(1, Math.ceil(requestsPerSecond))));
+        }
+
+        long intervalNanos() {
+            return (long) (1_000_000_000L / requestsPerSecond);
+        }
+
+        long toleranceNanos() {
+            return intervalNanos() * Math.max(1, burst);
+        }
+    }
+
+    /**
+     * 單一呼叫者的 bucket：all 為所有工具共用，tools 依工具名稱
+     */
+    private static final class PrincipalBuckets {
+
+        final AtomicLong all = new AtomicLong();
+        final Map<String, AtomicLong> tools = new ConcurrentHashMap<>();
+    }
+
+    @Autowired
+    public ToolRateLimiter(@Value("${mcp.rate-limit.enabled:true}") boolean enabled,
+            @Value("${mcp.rate-limit.requests-per-second:20}") double requestsPerSecond,
+            @Value("${mcp.rate-limit.burst:40}") int burst,
+            @Value("${mcp.rate-limit.max-principals:100000}") long maxPrincipals,
+            @Value("${mcp.rate-limit.idle-timeout:10m}") Duration idleTimeout) {
+        this(enabled, requestsPerSecond > 0 ? new RatePolicy(requestsPerSecond, burst) : null, maxPrincipals,
+                idleTimeout, System::nanoTime);
+    }
+
+    ToolRateLimiter(boolean enabled, RatePolicy principalPolicy, long maxPrincipals, Duration idleTimeout,
+            LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.principalPolicy = principalPolicy;
+        this.nanoClock = nanoClock;
+        // 理論到達時間以 0 表示「從未呼叫」，時間基準需為正值
+        this.origin = nanoClock.getAsLong() - 1;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxPrincipals)
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    /**
+     * 扣除一次呼叫額度
+     *
+     * @param toolPolicy 工具層級設定，null 表示只套用呼叫者上限
+     * @return 0 表示允許；否則為額度補足前建議等待的 nanos
+     */
+    public long tryAcquire(String principal, String toolName, RatePolicy toolPolicy) {
+        if (!enabled || (principalPolicy == null && toolPolicy == null)) {
+            return 0;
+        }
+        PrincipalBuckets buckets = principals.get(principal, key -> new PrincipalBuckets());
+        long now = nanoClock.getAsLong() - origin;
+        AtomicLong toolBucket = null;
+        if (toolPolicy != null) {
+            toolBucket = buckets.tools.computeIfAbsent(toolName, key -> new AtomicLong());
+            long wait = acquire(toolBucket, toolPolicy, now);
+            if (wait > 0) {
+                limited.increment();
+                return wait;
+            }
+        }
+        if (principalPolicy != null) {
+            long wait = acquire(buckets.all, principalPolicy, now);
+            if (wait > 0) {
+                if (toolBucket != null) {
+                    // 歸還已扣除的工具額度
+                    toolBucket.addAndGet(-toolPolicy.intervalNanos());
+                }
+                limited.increment();
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * GCRA：理論到達時間 (tat) 超過 now + 容許突發量時拒絕，否則 tat 前進一個補充間隔
+     */
+    private static long acquire(AtomicLong tat, RatePolicy policy, long now) {
+        long interval = policy.intervalNanos();
+        long tolerance = policy.toleranceNanos();
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + interval;
+            long wait = next - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("principals", principals.estimatedSize());
+        stats.put("limitedCalls", limited.sum());
+        if (principalPolicy != null) {
+            stats.put("requestsPerSecond", principalPolicy.requestsPerSecond());
+            stats.put("burst", principalPolicy.burst());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.util.MappingValues;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上游呼叫的斷路器與隔艙 (Resilience4j)。
+ *
+ * 每個工具各有一個斷路器與 semaphore 隔艙，另外每個上游後端有一個由其所有工具共用的斷路器：
+ * 後端整體故障時該後端的工具一起快速失敗 (不影響其他後端)，單一端點故障時只影響該工具。
+ * 斷路器開啟或隔艙已滿時立即回傳 isError 的 CallToolResult，不佔用連線也不對後端加壓。
+ *
+ * 門檻設定於 mcp-mapping.json：工具項目的 "circuitBreaker" / "bulkhead" 區塊，以及各後端的設定區塊
+ * (預設後端為頂層 "backend" 區塊)。
+ */
+@Service
+public class ToolResilience {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolResilience.class);
+
+    public static final String BACKEND_PREFIX = "backend:";
+
+    private final CircuitBreakerRegistry circuitBreakers = CircuitBreakerRegistry.ofDefaults();
+    private final BulkheadRegistry bulkheads = BulkheadRegistry.ofDefaults();
+    private final LongAdder transitions = new LongAdder();
+    private final LongAdder rejectedByBreaker = new LongAdder();
+    private final LongAdder rejectedByBulkhead = new LongAdder();
+
+    public ToolResilience() {
+        // 每個斷路器建立時掛上狀態變更監聽 (CLOSED → OPEN → HALF_OPEN ...)
+        circuitBreakers.getEventPublisher().onEntryAdded(added -> added.getAddedEntry().getEventPublisher()
+                .onStateTransition(event -> {
+                    transitions.increment();
+                    log.warn("斷路器狀態變更: {} {}", event.getCircuitBreakerName(), event.getStateTransition());
+                }));
+    }
+
+    /**
+     * 斷路器/隔艙設定。bulkhead 為 null 表示不限制並行數。
+     * <pre>
+     * "circuitBreaker": { "failureRateThreshold": 50, "slowCallRateThreshold": 80, "slowCallDurationMs": 2000,
+     *                     "slidingWindowSize": 20, "minimumNumberOfCalls": 10,
+     *                     "waitDurationInOpenStateMs": 10000, "permittedCallsInHalfOpenState": 3 },
+     * "bulkhead": { "maxConcurrentCalls": 20, "maxWaitMs": 0 }
+     * </pre>
+     */
+    public record ResiliencePolicy(CircuitBreakerConfig circuitBreaker, BulkheadConfig bulkhead) {
+
+        public static ResiliencePolicy forTool(Map<String, Object> mapping) {
+            return from(mapping, 50);
+        }
+
+        public static ResiliencePolicy forBackend(Map<String, Object> backendMapping) {
+            return from(backendMapping, 0);
+        }
+
+        private static ResiliencePolicy from(Map<String, Object> mapping, int defaultMaxConcurrentCalls) {
+            Map<String, Object> cb = MappingValues.sectionOrEmpty(mapping, "circuitBreaker");
+            CircuitBreakerConfig circuitBreaker = CircuitBreakerConfig.custom()
+                    .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                    .slidingWindowSize(MappingValues.getInt(cb, "slidingWindowSize", 20))
+                    .minimumNumberOfCalls(MappingValues.getInt(cb, "minimumNumberOfCalls", 10))
+                    .failureRateThreshold((float) MappingValues.getDouble(cb, "failureRateThreshold", 50))
+                    .slowCallRateThreshold((float) MappingValues.getDouble(cb, "slowCallRateThreshold", 80))
+                    .slowCallDurationThreshold(
+                            Duration.ofMillis(MappingValues.getLong(cb, "slowCallDurationMs", 2000)))
+                    .waitDurationInOpenState(
+                            Duration.ofMillis(MappingValues.getLong(cb, "waitDurationInOpenStateMs", 10000)))
+                    .permittedNumberOfCallsInHalfOpenState(
+                            MappingValues.getInt(cb, "permittedCallsInHalfOpenState", 3))
+                    // 並行上限與內層 (後端) 斷路器的拒絕都發生在送出前，不代表此工具的上游故障
+                    .ignoreExceptions(AdaptiveConcurrencyLimiter.LimitExceededException.class,
+                            CallNotPermittedException.class)
+                    .build();
+
+            Map<String, Object> bh = MappingValues.sectionOrEmpty(mapping, "bulkhead");
+            int maxConcurrentCalls = MappingValues.getInt(bh, "maxConcurrentCalls", defaultMaxConcurrentCalls);
+            BulkheadConfig bulkhead = maxConcurrentCalls > 0
+                    ? BulkheadConfig.custom()
+                            .maxConcurrentCalls(maxConcurrentCalls)
+                            .maxWaitDuration(Duration.ofMillis(MappingValues.getLong(bh, "maxWaitMs", 0)))
+                            .build()
+                    : null;
+            return new ResiliencePolicy(circuitBreaker, bulkhead);
+        }
+    }
+
+    /**
+     * 上游回傳 5xx：結果照常回給呼叫者，但需讓斷路器記錄為失敗
+     */
+    public static class UpstreamFailureException extends RuntimeException {
+
+        private final int status;
+        private final transient McpSchema.CallToolResult result;
+
+        public UpstreamFailureException(int status, McpSchema.CallToolResult result) {
+            super("上游回應 " + status, null, false, false);
+            this.status = status;
+            this.result = result;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public McpSchema.CallToolResult getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * 以隔艙 → 工具斷路器 → 後端斷路器的順序保護一次上游呼叫
+     */
+    public Mono<McpSchema.CallToolResult> protect(String toolName, String backendName, ResiliencePolicy toolPolicy,
+            ResiliencePolicy backendPolicy, Mono<McpSchema.CallToolResult> call) {
+        String backendKey = BACKEND_PREFIX + backendName;
+        Mono<McpSchema.CallToolResult> protectedCall = call
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker(backendKey, backendPolicy)))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker("tool:" + toolName, toolPolicy)));
+        if (toolPolicy.bulkhead() != null) {
+            protectedCall = protectedCall.transformDeferred(BulkheadOperator.of(bulkhead(toolName, toolPolicy)));
+        }
+        if (backendPolicy.bulkhead() != null) {
+            protectedCall = protectedCall.transformDeferred(
+                    BulkheadOperator.of(bulkhead(backendKey, backendPolicy)));
+        }
+        return protectedCall
+                .onErrorResume(UpstreamFailureException.class, e -> Mono.just(e.getResult()))
+                .onErrorResume(CallNotPermittedException.class, e -> {
+                    rejectedByBreaker.increment();
+                    return Mono.just(McpSchema.CallToolResult.builder()
+                            .addTextContent("Error: 工具 " + toolName + " 的後端目前無法使用 (斷路器開啟: "
+                                    + e.getCausingCircuitBreakerName() + ")，請稍後再試。")
+                            .isError(true)
+                            .build());
+                })
+                .onErrorResume(BulkheadFullException.class, e -> {
+                    rejectedByBulkhead.increment();
+                    return Mono.just(McpSchema.CallToolResult.builder()
+                            .addTextContent("Error: 工具 " + toolName + " 同時進行中的呼叫已達上限，請稍後再試。")
+                            .isError(true)
+                            .build());
+                });
+    }
+
+    /**
+     * 移除工具的斷路器與隔艙，下次呼叫時依新設定重新建立
+     */
+    public void reset(String toolName) {
+        circuitBreakers.remove("tool:" + toolName);
+        bulkheads.remove(toolName);
+    }
+
+    /**
+     * 移除後端層級的斷路器與隔艙 (該後端的設定區塊變更時)
+     */
+    public void resetBackend(String backendName) {
+        circuitBreakers.remove(BACKEND_PREFIX + backendName);
+        bulkheads.remove(BACKEND_PREFIX + backendName);
+    }
+
+    public CircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return circuitBreakers;
+    }
+
+    public BulkheadRegistry getBulkheadRegistry() {
+        return bulkheads;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Object> breakers = new LinkedHashMap<>();
+        circuitBreakers.getAllCircuitBreakers().forEach(cb -> {
+            CircuitBreaker.Metrics metrics = cb.getMetrics();
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("state", cb.getState().name());
+            state.put("failureRate", metrics.getFailureRate());
+            state.put("slowCallRate", metrics.getSlowCallRate());
+            state.put("bufferedCalls", metrics.getNumberOfBufferedCalls());
+            breakers.put(cb.getName(), state);
+        });
+        Map<String, Object> bulkheadStats = new LinkedHashMap<>();
+        bulkheads.getAllBulkheads().forEach(bh -> bulkheadStats.put(bh.getName(),
+                Map.of("available", bh.getMetrics().getAvailableConcurrentCalls(),
+                        "max", bh.getMetrics().getMaxAllowedConcurrentCalls())));
+        stats.put("circuitBreakers", breakers);
+        stats.put("bulkheads", bulkheadStats);
+        stats.put("stateTransitions", transitions.sum());
+        stats.put("rejectedByCircuitBreaker", rejectedByBreaker.sum());
+        stats.put("rejectedByBulkhead", rejectedByBulkhead.sum());
+        return stats;
+    }
+
+    private CircuitBreaker circuitBreaker(String name, ResiliencePolicy policy) {
+        return circuitBreakers.circuitBreaker(name, policy.circuitBreaker());
+    }
+
+    private Bulkhead bulkhead(String name, ResiliencePolicy policy) {
+        return bulkheads.bulkhead(name, policy.bulkhead());
+    }
+}
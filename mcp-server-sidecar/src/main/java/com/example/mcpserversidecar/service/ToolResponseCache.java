@@ -0,0 +1,248 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.util.MappingValues;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 冪等 GET 工具的回應快取。
+ *
+ * 每個工具一個 Caffeine 快取 (W-TinyLFU 淘汰)，由 mcp-mapping.json 的 "cache" 區塊設定：
+ * <pre>
+ * "cache": { "ttlSeconds": 30, "maxEntries": 500, "maxBytes": 1048576, "staleSeconds": 300 }
+ * </pre>
+ * maxEntries 與 maxBytes 同時生效：設定 maxBytes 時以位元組為權重淘汰，且每個項目至少計為
+ * maxBytes / maxEntries，因此項目數不會超過 maxEntries (小項目會被高估，實際可用位元組較少)。
+ * 上游的 Cache-Control (no-store / no-cache / max-age) 會縮短或停用快取；
+ * 帶有 ETag 的項目過期後仍保留 staleSeconds，供 If-None-Match 條件式重新驗證使用。
+ */
+@Service
+public class ToolResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolResponseCache.class);
+
+    private final Map<String, Cache<String, CachedResponse>> caches = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 工具層級快取設定
+     */
+    public record CachePolicy(Duration ttl, long maxEntries, long maxBytes, Duration stale) {
+
+        /**
+         * 從 mapping 解析快取設定；未宣告 "cache" 區塊或 ttlSeconds <= 0 時回傳 null (不快取)
+         */
+        public static CachePolicy from(Map<String, Object> mapping) {
+            Map<String, Object> cache = MappingValues.section(mapping, "cache");
+            if (cache == null) {
+                return null;
+            }
+            long ttlSeconds = MappingValues.getLong(cache, "ttlSeconds", 0);
+            if (ttlSeconds <= 0) {
+                return null;
+            }
+            return new CachePolicy(
+                    Duration.ofSeconds(ttlSeconds),
+                    MappingValues.getLong(cache, "maxEntries", 1000),
+                    MappingValues.getLong(cache, "maxBytes", 0),
+                    Duration.ofSeconds(MappingValues.getLong(cache, "staleSeconds", ttlSeconds * 10)));
+        }
+    }
+
+    /**
+     * 快取項目。freshUntilNanos 之前直接命中；之後若有 ETag 則走條件式重新驗證。
+     */
+    public record CachedResponse(McpSchema.CallToolResult result, String etag, long freshUntilNanos, int weight) {
+
+        public boolean isFresh() {
+            return System.nanoTime() - freshUntilNanos < 0;
+        }
+
+        CachedResponse refreshed(String etag, Duration ttl) {
+            return new CachedResponse(result, etag, System.nanoTime() + ttl.toNanos(), weight);
+        }
+    }
+
+    /**
+     * 上游 Cache-Control 指令中與快取相關的部分
+     */
+    record CacheDirectives(boolean noStore, boolean noCache, long maxAgeSeconds) {
+
+        static final CacheDirectives NONE = new CacheDirectives(false, false, -1);
+
+        static CacheDirectives parse(String cacheControl) {
+            if (cacheControl == null || cacheControl.isBlank()) {
+                return NONE;
+            }
+            boolean noStore = false;
+            boolean noCache = false;
+            long maxAge = -1;
+            for (String token : cacheControl.split(",")) {
+                String directive = token.trim().toLowerCase(Locale.ROOT);
+                if (directive.equals("no-store")) {
+                    noStore = true;
+                } else if (directive.equals("no-cache")) {
+                    noCache = true;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAge = Long.parseLong(directive.substring("max-age=".length()).replace("\"", ""));
+                    } catch (NumberFormatException ignored) {
+                        // 格式錯誤時忽略 max-age
+                    }
+                }
+            }
+            return new CacheDirectives(noStore, noCache, maxAge);
+        }
+    }
+
+    /**
+     * 查詢快取；回傳的項目可能已過期 (僅供條件式重新驗證)，呼叫端需自行檢查 {@link CachedResponse#isFresh()}
+     */
+    public CachedResponse lookup(String toolName, CachePolicy policy, String key) {
+        CachedResponse cached = cacheFor(toolName, policy).getIfPresent(key);
+        if (cached != null && cached.isFresh()) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * 儲存上游 2xx 回應；依 Cache-Control 決定是否儲存及新鮮期
+     */
+    public void store(String toolName, CachePolicy policy, String key, McpSchema.CallToolResult result,
+            HttpHeaders headers) {
+        if (Boolean.TRUE.equals(result.isError())) {
+            return;
+        }
+        String etag = headers.getETag();
+        Duration ttl = freshness(policy, CacheDirectives.parse(headers.getCacheControl()), etag);
+        if (ttl == null) {
+            return;
+        }
+        cacheFor(toolName, policy).put(key,
+                new CachedResponse(result, etag, System.nanoTime() + ttl.toNanos(), estimateWeight(result)));
+    }
+
+    /**
+     * 上游回傳 304 Not Modified 時依 304 回應的 Cache-Control / ETag 更新既有項目的新鮮期；
+     * 304 要求 no-store (或 no-cache 但沒有 ETag) 時移除該項目
+     */
+    public McpSchema.CallToolResult revalidated(String toolName, CachePolicy policy, String key,
+            CachedResponse cached, HttpHeaders headers) {
+        revalidations.increment();
+        String etag = headers.getETag() != null ? headers.getETag() : cached.etag();
+        Duration ttl = freshness(policy, CacheDirectives.parse(headers.getCacheControl()), etag);
+        if (ttl == null) {
+            cacheFor(toolName, policy).invalidate(key);
+        } else {
+            cacheFor(toolName, policy).put(key, cached.refreshed(etag, ttl));
+        }
+        return cached.result();
+    }
+
+    /**
+     * 依 Cache-Control 決定新鮮期 (不超過工具設定的 ttl)；no-cache 時為 0 (每次重新驗證)
+     *
+     * @return 不可儲存時回傳 null
+     */
+    private static Duration freshness(CachePolicy policy, CacheDirectives directives, String etag) {
+        if (directives.noStore()) {
+            return null;
+        }
+        if (directives.noCache()) {
+            return etag != null ? Duration.ZERO : null;
+        }
+        if (directives.maxAgeSeconds() >= 0 && directives.maxAgeSeconds() < policy.ttl().toSeconds()) {
+            return Duration.ofSeconds(directives.maxAgeSeconds());
+        }
+        return policy.ttl();
+    }
+
+    /**
+     * 丟棄工具的所有快取項目 (工具定義變更或移除時)
+     */
+    public void invalidate(String toolName) {
+        Cache<String, CachedResponse> cache = caches.remove(toolName);
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("revalidations", revalidations.sum());
+        stats.put("evictions", evictions.sum());
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        caches.forEach((tool, cache) -> sizes.put(tool, cache.estimatedSize()));
+        stats.put("entries", sizes);
+        return stats;
+    }
+
+    private Cache<String, CachedResponse> cacheFor(String toolName, CachePolicy policy) {
+        return caches.computeIfAbsent(toolName, name -> {
+            Caffeine<String, CachedResponse> builder = Caffeine.newBuilder()
+                    .expireAfterWrite(policy.ttl().plus(policy.stale()))
+                    .removalListener((String key, CachedResponse value, RemovalCause cause) -> {
+                        if (cause.wasEvicted()) {
+                            evictions.increment();
+                        }
+                    });
+            if (policy.maxBytes() > 0) {
+                int minWeight = minimumWeight(policy);
+                builder = builder.maximumWeight(policy.maxBytes())
+                        .weigher((String key, CachedResponse value) -> Math.max(value.weight(), minWeight));
+            } else {
+                builder = builder.maximumSize(policy.maxEntries());
+            }
+            log.info("建立工具回應快取: {} (ttl={}, maxEntries={}, maxBytes={})",
+                    name, policy.ttl(), policy.maxEntries(), policy.maxBytes());
+            return builder.build();
+        });
+    }
+
+    /**
+     * 以權重淘汰時每個項目的最低權重，讓 maxEntries 在 maxBytes 之下仍然成立
+     */
+    private static int minimumWeight(CachePolicy policy) {
+        if (policy.maxEntries() <= 0) {
+            return 0;
+        }
+        long perEntry = (policy.maxBytes() + policy.maxEntries() - 1) / policy.maxEntries();
+        return (int) Math.min(perEntry, Integer.MAX_VALUE);
+    }
+
+    private static int estimateWeight(McpSchema.CallToolResult result) {
+        long bytes = 64;
+        if (result.content() != null) {
+            for (McpSchema.Content content : result.content()) {
+                if (content instanceof McpSchema.TextContent text && text.text() != null) {
+                    bytes += text.text().length() * 2L;
+                } else if (content instanceof McpSchema.ImageContent image && image.data() != null) {
+                    bytes += image.data().length() * 2L;
+                }
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.AuthenticationFilter;
+import com.example.mcpserversidecar.util.ImageThumbnails;
+import com.example.mcpserversidecar.util.MappingValues;
+import com.example.mcpserversidecar.util.StreamingBase64Encoder;
+import com.example.mcpserversidecar.util.StreamingJsonShaper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * 將上游回應轉換為 MCP CallToolResult，根據 Content-Type 分流處理 (參考 ADR-001、ADR-002)。
+ */
+@Service
+public class ToolResponseHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolResponseHandler.class);
+
+    /**
+     * 預設回應上限，與 WebClient 的 maxInMemorySize 一致
+     */
+    public static final int DEFAULT_MAX_BYTES = 16 * 1024 * 1024; // 16MB
+
+    /**
+     * 工具層級回應設定，對應 mapping 的 "response" 區塊：
+     * <pre>
+     * "response": { "maxBytes": 65536, "oversizedImage": "thumbnail", "thumbnailMaxDimension": 512,
+     *               "include": ["/data/items/*&#47;id"], "exclude": ["$.debug"],
+     *               "maxArrayLength": 20, "maxStringLength": 500, "pageSize": 100 }
+     * </pre>
+     * oversizedImage 預設為 "error"；設為 "thumbnail" 時，超過上限的圖片會縮小後回傳
+     * (未提供 Content-Length 的圖片先讀完再依實際大小判斷)。
+     * 設定 include/exclude/maxArrayLength/maxStringLength 任一項時，JSON 回應以 {@link StreamingJsonShaper} 整形。
+     * 設定 pageSize 時，根陣列超過 pageSize 的元素暫存於 {@link ToolResultCursors}，回應只含第一頁與 nextCursor。
+     *
+     * @param shape    JSON 整形規則；null 表示原樣透傳
+     * @param pageSize 根陣列每頁的元素數；0 表示不分頁
+     * @param nextTool 取得後續頁的 companion 工具名稱 ({@link ToolResultCursors#withCompanions} 決定)；
+     *                 null 表示 &lt;工具名稱&gt;_next_page
+     */
+    public record ResponsePolicy(int maxBytes, boolean thumbnailOversizedImages, int thumbnailMaxDimension,
+            StreamingJsonShaper.Rules shape, int pageSize, String nextTool) {
+
+        public static final ResponsePolicy DEFAULT = new ResponsePolicy(DEFAULT_MAX_BYTES, false, 512, null, 0, null);
+
+        public static ResponsePolicy from(Map<String, Object> mapping) {
+            Map<String, Object> response = MappingValues.section(mapping, "response");
+            if (response == null) {
+                return DEFAULT;
+            }
+            int maxBytes = MappingValues.getInt(response, "maxBytes", DEFAULT_MAX_BYTES);
+            return new ResponsePolicy(
+                    maxBytes > 0 ? Math.min(maxBytes, DEFAULT_MAX_BYTES) : DEFAULT_MAX_BYTES,
+                    "thumbnail".equalsIgnoreCase(MappingValues.getString(response, "oversizedImage", "error")),
+                    MappingValues.getInt(response, "thumbnailMaxDimension", 512),
+                    shape(response),
+                    Math.max(0, MappingValues.getInt(response, "pageSize", 0)),
+                    MappingValues.getString(mapping, ToolResultCursors.NEXT_PAGE_TOOL, null));
+        }
+
+        private static StreamingJsonShaper.Rules shape(Map<String, Object> response) {
+            List<String> include = MappingValues.getStringList(response, "include");
+            List<String> exclude = MappingValues.getStringList(response, "exclude");
+            int maxArrayLength = MappingValues.getInt(response, "maxArrayLength", 0);
+            int maxStringLength = MappingValues.getInt(response, "maxStringLength", 0);
+            if (include.isEmpty() && exclude.isEmpty() && maxArrayLength <= 0 && maxStringLength <= 0) {
+                return null;
+            }
+            try {
+                return StreamingJsonShaper.Rules.compile(include, exclude, maxArrayLength, maxStringLength);
+            } catch (IllegalArgumentException e) {
+                log.warn("回應整形規則無效，改為原樣透傳: {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 分頁回應的暫存處；null 時 pageSize 設定不生效 (測試用)
+     */
+    private final ToolResultCursors cursors;
+
+    @Autowired
+    public ToolResponseHandler(ToolResultCursors cursors) {
+        this.cursors = cursors;
+    }
+
+    ToolResponseHandler() {
+        this(null);
+    }
+
+    /**
+     * 處理回應，根據 Content-Type 決定如何處理
+     */
+    public Mono<McpSchema.CallToolResult> handle(ClientResponse response, ResponsePolicy policy) {
+        return handle(response, policy, null, bytes -> {
+        });
+    }
+
+    /**
+     * @param toolName    產生回應的工具；分頁回應的 cursor 綁定此工具
+     * @param shapedBytes JSON 回應經整形後，接收整形後的大小 (bytes)
+     */
+    public Mono<McpSchema.CallToolResult> handle(ClientResponse response, ResponsePolicy policy, String toolName,
+            LongConsumer shapedBytes) {
+        MediaType contentType = response.headers().contentType().orElse(MediaType.APPLICATION_JSON);
+
+        // 處理圖片類型
+        if (contentType.getType().equals("image")) {
+            return handleImage(response, contentType, policy);
+        }
+
+        if (policy.pageSize() > 0 && cursors != null && toolName != null && isJson(contentType)) {
+            return handlePagedJson(response, policy, toolName, shapedBytes);
+        }
+
+        if (policy.shape() != null && isJson(contentType)) {
+            return handleShapedJson(response, policy, shapedBytes);
+        }
+
+        // 處理 JSON 或其他文字類型：原樣透傳上游位元組，只做一次字元解碼，不建立中間物件樹
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()), policy.maxBytes())
+                .map(dataBuffer -> {
+                    try {
+                        return dataBuffer.toString(charset);
+                    } finally {
+                        DataBufferUtils.release(dataBuffer);
+                    }
+                })
+                .defaultIfEmpty("")
+                .map(text -> McpSchema.CallToolResult.builder()
+                        .addTextContent(text)
+                        .build())
+                .onErrorResume(DataBufferLimitException.class, e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: 回應超過 " + policy.maxBytes() + " bytes 上限")
+                        .isError(true)
+                        .build()))
+                .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: " + e.getMessage())
+                        .isError(true)
+                        .build()));
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return contentType.isCompatibleWith(MediaType.APPLICATION_JSON)
+                || contentType.getSubtype().endsWith("+json");
+    }
+
+    /**
+     * JSON 回應逐塊整形 (投影、陣列與字串截斷)，每個 buffer 處理後立即釋放，不建立物件樹也不保留原始內容
+     */
+    private Mono<McpSchema.CallToolResult> handleShapedJson(ClientResponse response, ResponsePolicy policy,
+            LongConsumer shapedBytes) {
+        return response.body(BodyExtractors.toDataBuffers())
+                .reduceWith(() -> new StreamingJsonShaper(policy.shape(), policy.maxBytes()),
+                        (shaper, dataBuffer) -> {
+                            try {
+                                return shaper.append(dataBuffer);
+                            } finally {
+                                DataBufferUtils.release(dataBuffer);
+                            }
+                        })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .map(shaper -> {
+                    String text = shaper.finish();
+                    shapedBytes.accept(shaper.outputBytes());
+                    return McpSchema.CallToolResult.builder()
+                            .addTextContent(text)
+                            .build();
+                })
+                .onErrorResume(DataBufferLimitException.class, e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: 回應超過 " + policy.maxBytes() + " bytes 上限")
+                        .isError(true)
+                        .build()))
+                .onErrorResume(UncheckedIOException.class, e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: 上游回應不是有效的 JSON，無法套用回應整形: "
+                                + e.getCause().getMessage())
+                        .isError(true)
+                        .build()))
+                .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: " + e.getMessage())
+                        .isError(true)
+                        .build()));
+    }
+
+    /**
+     * 大型陣列回應分頁：根陣列的第一頁留在結果中，其餘元素寫入暫存檔並回傳 nextCursor。
+     * 暫存檔的寫入是阻塞 I/O，因此在 boundedElastic 上整形；上游中斷或結果未取用時刪除暫存檔。
+     * 原始回應不受 maxBytes 限制 (heap 只保留第一頁)，改以 mcp.result-cursors.max-bytes 為上限。
+     */
+    private Mono<McpSchema.CallToolResult> handlePagedJson(ClientResponse response, ResponsePolicy policy,
+            String toolName, LongConsumer shapedBytes) {
+        StreamingJsonShaper.Rules rules = policy.shape() != null ? policy.shape() : StreamingJsonShaper.Rules.NONE;
+        return Mono.deferContextual(ctx -> Mono.using(
+                        () -> cursors.open(policy.pageSize()),
+                        spill -> response.body(BodyExtractors.toDataBuffers())
+                                .publishOn(Schedulers.boundedElastic())
+                                .reduceWith(() -> new StreamingJsonShaper(rules, cursors.maxBytes(),
+                                                policy.pageSize(), spill),
+                                        (shaper, dataBuffer) -> {
+                                            try {
+                                                return shaper.append(dataBuffer);
+                                            } finally {
+                                                DataBufferUtils.release(dataBuffer);
+                                            }
+                                        })
+                                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                                .map(shaper -> {
+                                    String text = shaper.finish();
+                                    shapedBytes.accept(shaper.outputBytes());
+                                    if (shaper.overflowElements() == 0) {
+                                        return McpSchema.CallToolResult.builder()
+                                                .addTextContent(text)
+                                                .build();
+                                    }
+                                    String cursor = cursors.commit(spill, toolName,
+                                            ctx.getOrDefault(AuthenticationFilter.PRINCIPAL_KEY, "anonymous"),
+                                            shaper.overflowElements());
+                                    return McpSchema.CallToolResult.builder()
+                                            .addTextContent("{\"items\":" + text
+                                                    + ",\"nextCursor\":\"" + cursor
+                                                    + "\",\"remaining\":" + shaper.overflowElements()
+                                                    + ",\"nextTool\":\"" + (policy.nextTool() != null
+                                                            ? policy.nextTool()
+                                                            : toolName + ToolResultCursors.COMPANION_SUFFIX)
+                                                    + "\"}")
+                                            .build();
+                                }),
+                        ToolResultCursors.Spill::discard))
+                .onErrorResume(DataBufferLimitException.class, e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: 回應超過 " + cursors.maxBytes() + " bytes 上限")
+                        .isError(true)
+                        .build()))
+                .onErrorResume(UncheckedIOException.class, e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: 無法分頁上游回應: " + e.getCause().getMessage())
+                        .isError(true)
+                        .build()))
+                .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error: " + e.getMessage())
+                        .isError(true)
+                        .build()));
+    }
+
+    /**
+     * 圖片以串流方式逐塊 Base64 編碼，每個 buffer 編碼後立即釋放，heap 上只保留編碼結果
+     */
+    private Mono<McpSchema.CallToolResult> handleImage(ClientResponse response, MediaType contentType,
+            ResponsePolicy policy) {
+        String mimeType = contentType.toString();
+        long contentLength = response.headers().contentLength().orElse(-1L);
+
+        if (policy.thumbnailOversizedImages() && (contentLength > policy.maxBytes() || contentLength < 0)) {
+            return thumbnail(response, mimeType, policy);
+        }
+
+        return response.bodyToFlux(DataBuffer.class)
+                .reduceWith(() -> new StreamingBase64Encoder(policy.maxBytes()),
+                        (encoder, dataBuffer) -> {
+                            try {
+                                return encoder.append(dataBuffer);
+                            } finally {
+                                DataBufferUtils.release(dataBuffer);
+                            }
+                        })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .map(encoder -> {
+                    long rawBytes = encoder.totalBytes();
+                    String base64 = encoder.finish();
+
+                    log.info("收到圖片回應: {} ({} bytes)", mimeType, rawBytes);
+
+                    @SuppressWarnings("deprecation")
+                    var imageContent = new McpSchema.ImageContent(null, null, base64, mimeType);
+                    return McpSchema.CallToolResult.builder()
+                            .addContent(imageContent)
+                            .build();
+                })
+                .onErrorResume(StreamingBase64Encoder.LimitExceededException.class,
+                        e -> Mono.just(McpSchema.CallToolResult.builder()
+                                .addTextContent("Error: 圖片" + e.getMessage())
+                                .isError(true)
+                                .build()))
+                .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error processing image: " + e.getMessage())
+                        .isError(true)
+                        .build()));
+    }
+
+    /**
+     * 超過上限的圖片縮小後回傳；縮圖需完整解碼，因此仍受 16MB 全域上限與
+     * {@link ImageThumbnails#DEFAULT_MAX_PIXELS} 像素上限限制。解碼與縮放佔用 CPU，改在 boundedElastic 執行，
+     * 不阻塞 Reactor Netty 的 event loop。chunked 回應無法事先得知大小，讀完後未超過上限時原樣回傳
+     */
+    private Mono<McpSchema.CallToolResult> thumbnail(ClientResponse response, String mimeType,
+            ResponsePolicy policy) {
+        return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class), DEFAULT_MAX_BYTES)
+                .map(dataBuffer -> {
+                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
+                    dataBuffer.read(bytes);
+                    DataBufferUtils.release(dataBuffer);
+                    return bytes;
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .map(bytes -> {
+                    if (bytes.length <= policy.maxBytes()) {
+                        log.info("收到圖片回應: {} ({} bytes)", mimeType, bytes.length);
+                        return imageResult(bytes, mimeType);
+                    }
+                    ImageThumbnails.Thumbnail thumbnail;
+                    try {
+                        thumbnail = ImageThumbnails.downscale(bytes, mimeType, policy.thumbnailMaxDimension());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    log.info("圖片超過上限 ({} > {} bytes)，回傳縮圖: {} ({} bytes)",
+                            bytes.length, policy.maxBytes(), thumbnail.mimeType(), thumbnail.bytes().length);
+                    return imageResult(thumbnail.bytes(), thumbnail.mimeType());
+                })
+                .onErrorResume(e -> Mono.just(McpSchema.CallToolResult.builder()
+                        .addTextContent("Error processing image: " + e.getMessage())
+                        .isError(true)
+                        .build()));
+    }
+
+    private static McpSchema.CallToolResult imageResult(byte[] bytes, String mimeType) {
+        @SuppressWarnings("deprecation")
+        var imageContent = new McpSchema.ImageContent(null, null, Base64.getEncoder().encodeToString(bytes), mimeType);
+        return McpSchema.CallToolResult.builder()
+                .addContent(imageContent)
+                .build();
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.mcpserversidecar.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.modelcontextprotocol.spec.McpSchema;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 大型陣列回應的伺服器端 cursor。
+ *
+ * 工具在 mapping 的 "response" 區塊設定 "pageSize" 後，上游回傳的根陣列只有第一頁放進 CallToolResult，
+ * 其餘元素由 StreamingJsonShaper 逐一寫入暫存檔 (每行一個元素)，不留在 heap。回應附上 nextCursor，
+ * agent 再以自動產生的 &lt;工具名稱&gt;_next_page 工具 (與既有工具同名時加上數字後綴) 取得後續頁。
+ *
+ * 暫存檔以 Caffeine 管理：閒置超過 mcp.result-cursors.ttl 或總大小超過 mcp.result-cursors.max-bytes 時
+ * 淘汰並刪除檔案。cursor 綁定產生它的工具與呼叫者 (principal)，同一 cursor 可重複取得同一頁 (重試安全)。
+ */
+@Service
+public class ToolResultCursors {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolResultCursors.class);
+
+    /**
+     * 取得後續頁的工具名稱後綴
+     */
+    public static final String COMPANION_SUFFIX = "_next_page";
+
+    /**
+     * companion 工具 mapping 中指向原工具名稱的欄位
+     */
+    private static final String CURSOR_FOR = "cursorFor";
+
+    /**
+     * 分頁工具 mapping 中記錄其 companion 工具名稱的欄位 (由 {@link #withCompanions} 加入)
+     */
+    static final String NEXT_PAGE_TOOL = "nextPageTool";
+
+    private static final String FILE_SUFFIX = ".ndjson";
+    private static final Base64.Encoder ID_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Cache<String, Entry> entries;
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder pagesServed = new LongAdder();
+
+    /**
+     * 一份溢出的陣列：暫存檔與各頁的起始位移
+     *
+     * @param pageOffsets 第 i 頁在檔案中的起始位移
+     */
+    private record Entry(Path file, String tool, String owner, int pageSize, long[] pageOffsets, long elements,
+            long bytes) {
+    }
+
+    /**
+     * cursor 格式錯誤、已過期，或不屬於此工具/呼叫者
+     */
+    public static class CursorException extends RuntimeException {
+
+        CursorException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    public ToolResultCursors(
+            @Value("${mcp.result-cursors.directory:}") String directory,
+            @Value("${mcp.result-cursors.ttl:10m}") Duration ttl,
+            @Value("${mcp.result-cursors.max-bytes:268435456}") long maxBytes) {
+        this.directory = directory.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "mcp-result-cursors")
+                : Path.of(directory);
+        this.maxBytes = maxBytes;
+        this.entries = Caffeine.newBuilder()
+                .expireAfterAccess(ttl)
+                .maximumWeight(maxBytes)
+                .weigher((String id, Entry entry) -> (int) Math.min(entry.bytes(), Integer.MAX_VALUE))
+                // 過期的暫存檔需要及時刪除，不等下一次存取
+                .scheduler(Scheduler.systemScheduler())
+                .removalListener((String id, Entry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        delete(entry.file());
+                    }
+                })
+                .build();
+        deleteStaleFiles();
+    }
+
+    /**
+     * 暫存檔的總大小上限，也是分頁工具單一上游回應的大小上限
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 建立接收溢出元素的暫存輸出；第一次寫入時才建立檔案
+     */
+    public Spill open(int pageSize) {
+        return new Spill(pageSize);
+    }
+
+    /**
+     * 登記已寫完的暫存檔並回傳第一個 cursor
+     *
+     * @param tool  產生結果的工具
+     * @param owner 呼叫者 (principal)
+     */
+    public String commit(Spill spill, String tool, String owner, long elements) {
+        spill.close();
+        String id = newId();
+        Entry entry = new Entry(spill.file, tool, owner, spill.pageSize,
+                spill.offsets.stream().mapToLong(Long::longValue).toArray(), elements, spill.bytes);
+        spill.committed = true;
+        entries.put(id, entry);
+        created.increment();
+        log.debug("工具 {} 的回應超過一頁，{} 個元素 ({} bytes) 暫存於 {}", tool, elements, spill.bytes, spill.file);
+        return cursor(id, 0);
+    }
+
+    /**
+     * 讀取 cursor 指向的一頁 (阻塞讀檔)
+     *
+     * @return {"items":[...],"nextCursor":"...","remaining":N}；最後一頁沒有 nextCursor
+     * @throws CursorException cursor 無效、已過期，或不屬於此工具/呼叫者
+     */
+    public String page(String cursor, String tool, String owner) {
+        int separator = cursor != null ? cursor.lastIndexOf('.') : -1;
+        if (separator <= 0) {
+            throw new CursorException("無效的 cursor");
+        }
+        Entry entry = entries.getIfPresent(cursor.substring(0, separator));
+        int page;
+        try {
+            page = Integer.parseInt(cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            page = -1;
+        }
+        if (entry == null || page < 0 || page >= entry.pageOffsets().length) {
+            throw new CursorException("cursor 無效或已過期");
+        }
+        if (!entry.tool().equals(tool) || !entry.owner().equals(owner)) {
+            throw new CursorException("cursor 不屬於此工具或呼叫者");
+        }
+
+        long start = entry.pageOffsets()[page];
+        long end = page + 1 < entry.pageOffsets().length ? entry.pageOffsets()[page + 1] : entry.bytes();
+        byte[] lines;
+        try (FileChannel channel = FileChannel.open(entry.file(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // 讀到指定長度為止
+            }
+            lines = buffer.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pagesServed.increment();
+
+        int length = lines.length > 0 && lines[lines.length - 1] == '\n' ? lines.length - 1 : lines.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 96);
+        out.writeBytes("{\"items\":[".getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < length; i++) {
+            // 元素之間的換行即為陣列的逗號
+            out.write(lines[i] == '\n' ? ',' : lines[i]);
+        }
+        out.write(']');
+        if (page + 1 < entry.pageOffsets().length) {
+            out.writeBytes((",\"nextCursor\":\"" + cursor(cursor.substring(0, separator), page + 1) + "\"")
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+        long remaining = Math.max(0, entry.elements() - (long) (page + 1) * entry.pageSize());
+        out.writeBytes((",\"remaining\":" + remaining + "}").getBytes(StandardCharsets.US_ASCII));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 為設定 "response.pageSize" 的工具加上取得後續頁的 companion 工具定義 (緊接在原工具之後)。
+     * &lt;工具名稱&gt;_next_page 已是其他工具的名稱時 (例如上游本身就有 list_orders_next_page)，
+     * 改用 _next_page_2、_next_page_3…，並將實際名稱記錄在原工具 mapping 的 "nextPageTool"。
+     */
+    public static List<OpenApiScannerService.ToolDefinition> withCompanions(
+            List<OpenApiScannerService.ToolDefinition> tools) {
+        Set<String> names = new HashSet<>();
+        tools.forEach(def -> names.add(def.tool().name()));
+        List<OpenApiScannerService.ToolDefinition> result = new ArrayList<>(tools.size());
+        for (OpenApiScannerService.ToolDefinition def : tools) {
+            if (ToolResponseHandler.ResponsePolicy.from(def.mapping()).pageSize() <= 0) {
+                result.add(def);
+                continue;
+            }
+            String base = def.tool().name() + COMPANION_SUFFIX;
+            String name = base;
+            for (int i = 2; names.contains(name); i++) {
+                name = base + "_" + i;
+            }
+            if (!name.equals(base)) {
+                log.warn("工具 {} 已存在，{} 的分頁工具改名為 {}", base, def.tool().name(), name);
+            }
+            names.add(name);
+            Map<String, Object> mapping = new LinkedHashMap<>(def.mapping());
+            mapping.put(NEXT_PAGE_TOOL, name);
+            result.add(new OpenApiScannerService.ToolDefinition(def.tool(), def.path(), def.method(),
+                    Collections.unmodifiableMap(mapping), def.parameterLocations(), def.backend()));
+            result.add(companion(def, name));
+        }
+        return result;
+    }
+
+    /**
+     * @return companion 工具所屬的原工具名稱；不是 companion 工具時回傳 null
+     */
+    public static String cursorFor(OpenApiScannerService.ToolDefinition def) {
+        Object tool = def.mapping() != null ? def.mapping().get(CURSOR_FOR) : null;
+        return tool != null ? tool.toString() : null;
+    }
+
+    private static OpenApiScannerService.ToolDefinition companion(OpenApiScannerService.ToolDefinition def,
+            String name) {
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+                .name(name)
+                .description("取得 " + def.tool().name() + " 結果的下一頁。傳入上一頁回應中的 nextCursor；"
+                        + "回應中沒有 nextCursor 表示已是最後一頁。")
+                .inputSchema(new McpSchema.JsonSchema("object",
+                        Map.of("cursor", Map.of("type", "string", "description", "上一頁回應中的 nextCursor")),
+                        List.of("cursor"), null, null, null))
+                .build();
+        return new OpenApiScannerService.ToolDefinition(tool, def.path(), def.method(),
+                Map.of("toolName", name, CURSOR_FOR, def.tool().name()), Map.of(), def.backend());
+    }
+
+    private String newId() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return ID_ENCODER.encodeToString(bytes);
+    }
+
+    private static String cursor(String id, int page) {
+        return id + "." + page;
+    }
+
+    private void deleteStaleFiles() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            files.forEach(ToolResultCursors::delete);
+        } catch (IOException e) {
+            log.warn("無法清除舊的 cursor 暫存檔 {}: {}", directory, e.toString());
+        }
+    }
+
+    private static void delete(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("無法刪除 cursor 暫存檔 {}: {}", file, e.toString());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("entries", entries.estimatedSize());
+        stats.put("bytes", entries.asMap().values().stream().mapToLong(Entry::bytes).sum());
+        stats.put("created", created.sum());
+        stats.put("pagesServed", pagesServed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        entries.invalidateAll();
+        entries.cleanUp();
+    }
+
+    /**
+     * 溢出元素的暫存輸出：計算位元組並記錄每頁的起始位移。
+     * 未 commit 就 discard 時刪除暫存檔 (例如上游中斷、hedge 落敗的請求)。
+     */
+    public final class Spill extends OutputStream {
+
+        private final int pageSize;
+        private final List<Long> offsets = new ArrayList<>();
+        private Path file;
+        private OutputStream out;
+        private long bytes;
+        private long newlines;
+        private boolean committed;
+
+        private Spill(int pageSize) {
+            this.pageSize = pageSize;
+            offsets.add(0L);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            stream().write(b);
+            advance(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            stream().write(b, off, len);
+            for (int i = off; i < off + len; i++) {
+                advance(b[i]);
+            }
+        }
+
+        private void advance(int b) {
+            bytes++;
+            // 元素以換行分隔：第 k 個換行之後是第 k+1 個元素，每 pageSize 個元素為一頁
+            if (b == '\n' && ++newlines % pageSize == 0) {
+                offsets.add(bytes);
+            }
+        }
+
+        private OutputStream stream() throws IOException {
+            if (out == null) {
+                Files.createDirectories(directory);
+                file = Files.createTempFile(directory, "cursor-", FILE_SUFFIX);
+                out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            }
+            return out;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * 尚未 commit 時關閉並刪除暫存檔
+         */
+        public void discard() {
+            if (committed) {
+                return;
+            }
+            try {
+                close();
+            } finally {
+                delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.util.LatencyTracker;
+import com.example.mcpserversidecar.util.MappingValues;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 上游呼叫的重試與 hedging。
+ *
+ * 只有安全方法 (GET/HEAD) 的工具會重試或 hedge；重試以 jitter 指數退避，
+ * 每次重試與 hedge 都須先向全域 {@link RetryBudget} 取得額度。
+ * hedge：呼叫超過該工具觀察到的 p95 延遲仍未回應時，送出第二個相同請求，取先成功者並取消另一個。
+ */
+@Service
+public class ToolRetryExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolRetryExecutor.class);
+
+    private final RetryBudget retryBudget;
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final LongAdder hedgesFired = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+
+    public ToolRetryExecutor(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * 每個工具的逾時、重試與 hedge 設定。
+     * <pre>
+     * "timeout": { "connectMs": 1000, "responseMs": 5000 },
+     * "retry":   { "maxRetries": 2, "backoffMs": 50, "maxBackoffMs": 500, "jitter": 0.5 },
+     * "hedge":   { "percentile": 0.95, "minDelayMs": 10 }
+     * </pre>
+     * connectTimeout / responseTimeout 為 null 時沿用 target.api.connect-timeout / response-timeout；
+     * hedgePercentile 為 0 表示不 hedge。
+     */
+    public record AttemptPolicy(
+            Duration connectTimeout,
+            Duration responseTimeout,
+            int maxRetries,
+            Duration backoff,
+            Duration maxBackoff,
+            double jitter,
+            double hedgePercentile,
+            Duration minHedgeDelay) {
+
+        public static final AttemptPolicy DEFAULT = from(Map.of());
+
+        public static AttemptPolicy from(Map<String, Object> mapping) {
+            Map<String, Object> timeout = MappingValues.sectionOrEmpty(mapping, "timeout");
+            Map<String, Object> retry = MappingValues.sectionOrEmpty(mapping, "retry");
+            Map<String, Object> hedge = MappingValues.section(mapping, "hedge");
+            return new AttemptPolicy(
+                    millisOrNull(timeout, "connectMs"),
+                    millisOrNull(timeout, "responseMs"),
+                    MappingValues.getInt(retry, "maxRetries", 0),
+                    Duration.ofMillis(MappingValues.getLong(retry, "backoffMs", 50)),
+                    Duration.ofMillis(MappingValues.getLong(retry, "maxBackoffMs", 1000)),
+                    MappingValues.getDouble(retry, "jitter", 0.5),
+                    hedge != null ? MappingValues.getDouble(hedge, "percentile", 0.95) : 0,
+                    Duration.ofMillis(hedge != null ? MappingValues.getLong(hedge, "minDelayMs", 10) : 0));
+        }
+
+        private static Duration millisOrNull(Map<String, Object> map, String key) {
+            long millis = MappingValues.getLong(map, key, -1);
+            return millis > 0 ? Duration.ofMillis(millis) : null;
+        }
+
+        boolean hedge() {
+            return hedgePercentile > 0;
+        }
+    }
+
+    /**
+     * 單次嘗試的結果；hedge 時兩個嘗試都需轉成值才能比較
+     */
+    private record Outcome(McpSchema.CallToolResult result, Throwable error) {
+
+        boolean succeeded() {
+            return error == null;
+        }
+
+        Mono<McpSchema.CallToolResult> toMono() {
+            return succeeded() ? Mono.just(result) : Mono.error(error);
+        }
+    }
+
+    /**
+     * 依工具設定執行上游呼叫
+     *
+     * @param idempotent 呼叫可安全重送 (GET/HEAD)
+     * @param attempt    每次訂閱送出一次上游請求
+     */
+    public Mono<McpSchema.CallToolResult> execute(String toolName, AttemptPolicy policy, boolean idempotent,
+            Supplier<Mono<McpSchema.CallToolResult>> attempt) {
+        LatencyTracker tracker = policy.hedge()
+                ? latencies.computeIfAbsent(toolName, name -> new LatencyTracker(policy.hedgePercentile()))
+                : null;
+        Mono<McpSchema.CallToolResult> call = Mono.defer(() -> idempotent && tracker != null
+                ? hedged(toolName, policy, tracker, attempt)
+                : attempt.get());
+        if (idempotent && policy.maxRetries() > 0) {
+            // 重試次數用盡時 Retry 不會呼叫 doBeforeRetryAsync，只有真的要重送的嘗試才扣預算
+            call = call.retryWhen(Retry.backoff(policy.maxRetries(), policy.backoff())
+                    .maxBackoff(policy.maxBackoff())
+                    .jitter(policy.jitter())
+                    .filter(ToolRetryExecutor::isRetryable)
+                    .doBeforeRetryAsync(signal -> {
+                        if (!retryBudget.tryAcquireRetry()) {
+                            return Mono.error(signal.failure());
+                        }
+                        log.warn("重試工具呼叫 {} (第 {} 次): {}",
+                                toolName, signal.totalRetries() + 1, signal.failure().toString());
+                        return Mono.empty();
+                    })
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        }
+        // 原始請求只記錄一次；retryWhen 重新訂閱的是上面的 call，不會重複計入
+        Mono<McpSchema.CallToolResult> attempts = call;
+        return Mono.defer(() -> {
+            retryBudget.recordRequest();
+            return attempts;
+        });
+    }
+
+    /**
+     * 送出主要請求；超過 hedge 延遲仍未完成時 (且重試預算足夠) 再送一個相同請求，取先成功者。
+     * 主要請求在 hedge 送出前就失敗時不再 hedge，交由重試處理。
+     */
+    private Mono<McpSchema.CallToolResult> hedged(String toolName, AttemptPolicy policy, LatencyTracker tracker,
+            Supplier<Mono<McpSchema.CallToolResult>> attempt) {
+        long percentileNanos = tracker.percentileNanos();
+        if (percentileNanos < 0) {
+            // 樣本不足，先累積延遲資料
+            return timed(tracker, attempt.get());
+        }
+        Duration delay = Duration.ofNanos(Math.max(percentileNanos, policy.minHedgeDelay().toNanos()));
+
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        Mono<Outcome> primary = timed(tracker, attempt.get())
+                .doOnError(e -> primaryFailed.tryEmitValue(Boolean.TRUE))
+                .map(result -> new Outcome(result, null))
+                .onErrorResume(e -> Mono.just(new Outcome(null, e)));
+        Mono<Outcome> hedge = Mono.delay(delay)
+                .takeUntilOther(primaryFailed.asMono())
+                .filter(tick -> retryBudget.tryAcquireRetry())
+                .flatMap(tick -> {
+                    hedgesFired.increment();
+                    log.debug("工具 {} 超過 {}ms 未回應，送出 hedge 請求", toolName, delay.toMillis());
+                    return timed(tracker, attempt.get())
+                            .doOnNext(result -> hedgesWon.increment())
+                            .map(result -> new Outcome(result, null))
+                            .onErrorResume(e -> Mono.just(new Outcome(null, e)));
+                });
+
+        // 取第一個成功的結果 (takeUntil 會取消另一個請求)；兩者皆失敗時回傳主要請求的錯誤
+        return Flux.merge(primary, hedge)
+                .takeUntil(Outcome::succeeded)
+                .reduce((first, next) -> next.succeeded() ? next : first)
+                .flatMap(Outcome::toMono);
+    }
+
+    private static Mono<McpSchema.CallToolResult> timed(LatencyTracker tracker,
+            Mono<McpSchema.CallToolResult> attempt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return attempt.doOnNext(result -> tracker.record(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * 連線失敗/回應逾時，以及 502/503/504 可重試；其他 5xx 多為確定性錯誤，重試無益
+     */
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof ToolResilience.UpstreamFailureException failure) {
+            int status = failure.getStatus();
+            return status == 502 || status == 503 || status == 504;
+        }
+        return e instanceof WebClientRequestException;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(retryBudget.stats());
+        stats.put("hedgesFired", hedgesFired.sum());
+        stats.put("hedgesWon", hedgesWon.sum());
+        Map<String, Object> hedgeDelays = new LinkedHashMap<>();
+        latencies.forEach((name, tracker) -> hedgeDelays.put(name, tracker.percentileNanos() / 1_000_000.0));
+        stats.put("hedgeDelayMs", hedgeDelays);
+        return stats;
+    }
+}
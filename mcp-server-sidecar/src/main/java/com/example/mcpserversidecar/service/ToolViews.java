@@ -0,0 +1,365 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.util.MappingValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 依呼叫者 (JWT scope/claim 或用戶端 Header) 決定可見的工具子集，減少 tools/list 的傳輸量與 LLM context。
+ *
+ * 規則宣告於 mcp-mapping.json 頂層的 "toolViews"：
+ * <pre>
+ * "toolViews": {
+ *   "default": ["*"],
+ *   "views": [
+ *     { "name": "reporting", "scopes": ["reports:read"], "tools": ["get_*"] },
+ *     { "name": "calculator", "clients": ["calc-agent"], "tools": ["calculate_sum"] },
+ *     { "name": "admin", "claims": { "role": "admin" }, "tools": ["*"] }
+ *   ]
+ * }
+ * </pre>
+ * 一條規則的 scopes (全部具備)、claims (全部相符) 與 clients (其中之一) 皆成立時套用，呼叫者可見的工具為
+ * 所有成立規則的聯集；沒有規則成立時使用 "default" (未設定時為全部工具)。scopes/claims 只採用已驗證的
+ * JWT (mcp.auth.jwt.enabled)；clients 取自用戶端自行宣告的 Header，只適合用於精簡工具清單，
+ * 因此只以 clients 為條件、卻開放 default 以外工具的規則會被略過。
+ *
+ * 設定格式錯誤時不會退回「全部工具」：沿用先前的規則，先前沒有規則時不開放任何工具。
+ *
+ * 工具名稱比對在工具目錄或規則變更時 (ToolCatalogLoader 套用後) 進行，每組成立規則的組合只計算一次並快取，
+ * 之後 tools/list 與 tools/call 的判斷都只是查表。
+ */
+@Service
+public class ToolViews {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolViews.class);
+
+    /**
+     * 規則以 long 位元遮罩表示成立的組合
+     */
+    private static final int MAX_RULES = 63;
+
+    /**
+     * 不限制的檢視 (未設定任何規則)
+     */
+    public static final ToolView ALL = new ToolView("*", null);
+
+    private final String clientHeader;
+    private volatile Catalog catalog = new Catalog(0, RuleSet.UNRESTRICTED, Set.of(), Map.of());
+    private final LongAdder denied = new LongAdder();
+
+    /**
+     * 呼叫者可見的工具集合
+     *
+     * @param key   檢視識別 (含規則版本)，供 ToolListCache 快取對應的 tools/list 結果頁
+     * @param tools 可見的工具名稱；null 表示不限制
+     */
+    public record ToolView(String key, Set<String> tools) {
+
+        public boolean isUnrestricted() {
+            return tools == null;
+        }
+
+        public boolean allows(String toolName) {
+            return tools == null || tools.contains(toolName);
+        }
+    }
+
+    private record Rule(String name, Set<String> scopes, Map<String, String> claims, Set<String> clients,
+            List<Pattern> tools) {
+
+        boolean matches(Set<String> callerScopes, Map<String, Object> callerClaims, String client) {
+            if (!scopes.isEmpty() && !callerScopes.containsAll(scopes)) {
+                return false;
+            }
+            for (Map.Entry<String, String> claim : claims.entrySet()) {
+                if (!claimMatches(callerClaims.get(claim.getKey()), claim.getValue())) {
+                    return false;
+                }
+            }
+            return clients.isEmpty() || (client != null && clients.contains(client));
+        }
+    }
+
+    /**
+     * 解析後的 "toolViews" 區塊
+     *
+     * @param unrestricted 未設定 "toolViews"，所有呼叫者可見全部工具
+     */
+    private record RuleSet(boolean unrestricted, List<Rule> rules, List<Pattern> defaultTools) {
+
+        static final RuleSet UNRESTRICTED = new RuleSet(true, List.of(), List.of());
+
+        /**
+         * 設定無效且沒有可沿用的規則時：不開放任何工具
+         */
+        static final RuleSet CLOSED = new RuleSet(false, List.of(), List.of());
+    }
+
+    /**
+     * 某一版規則與工具目錄，以及依規則組合快取的檢視
+     */
+    private record Catalog(long version, RuleSet ruleSet, Set<String> toolNames, Map<String, String> companions,
+            Map<Long, ToolView> views) {
+
+        Catalog(long version, RuleSet ruleSet, Set<String> toolNames, Map<String, String> companions) {
+            this(version, ruleSet, toolNames, companions, new ConcurrentHashMap<>());
+        }
+
+        List<Rule> rules() {
+            return ruleSet.rules();
+        }
+
+        List<Pattern> defaultTools() {
+            return ruleSet.defaultTools();
+        }
+    }
+
+    public ToolViews(@Value("${mcp.tool-views.client-header:X-MCP-Client}") String clientHeader) {
+        this.clientHeader = clientHeader;
+    }
+
+    /**
+     * 宣告用戶端身分的 Request Header 名稱
+     */
+    public String clientHeader() {
+        return clientHeader;
+    }
+
+    public void update(Map<String, Object> settings, Collection<String> toolNames) {
+        update(settings, toolNames, Map.of());
+    }
+
+    /**
+     * 以新的規則 ("toolViews" 區塊) 與工具目錄重建檢視；預先計算預設檢視與每條規則單獨成立時的檢視
+     *
+     * @param companions 取得後續頁的 companion 工具名稱 → 其 cursorFor 原工具；原工具可見時 companion 工具也可見
+     */
+    public void update(Map<String, Object> settings, Collection<String> toolNames, Map<String, String> companions) {
+        Catalog current = catalog;
+        RuleSet ruleSet;
+        try {
+            ruleSet = parse(settings);
+        } catch (IllegalArgumentException e) {
+            // 不因設定錯誤而開放全部工具
+            ruleSet = current.ruleSet().unrestricted() ? RuleSet.CLOSED : current.ruleSet();
+            log.warn("toolViews 設定無效，{}: {}",
+                    ruleSet == RuleSet.CLOSED ? "不開放任何工具" : "沿用先前的規則", e.getMessage());
+        }
+        ruleSet = withoutSelfDeclaredEscalation(ruleSet, toolNames, companions.keySet());
+
+        Catalog next = new Catalog(current.version() + 1, ruleSet, Set.copyOf(toolNames), Map.copyOf(companions));
+        if (!ruleSet.unrestricted()) {
+            view(next, 0L);
+            for (int i = 0; i < ruleSet.rules().size(); i++) {
+                view(next, 1L << i);
+            }
+            log.info("已載入 {} 條工具檢視規則", ruleSet.rules().size());
+        }
+        catalog = next;
+    }
+
+    /**
+     * 解析 "toolViews" 區塊；型別不符時丟出 IllegalArgumentException
+     */
+    private static RuleSet parse(Map<String, Object> settings) {
+        if (settings == null || settings.isEmpty()) {
+            return RuleSet.UNRESTRICTED;
+        }
+        Object views = settings.get("views");
+        if (views != null && !(views instanceof List)) {
+            throw new IllegalArgumentException("views 必須是陣列");
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (Object view : list(settings, "views")) {
+            if (!(view instanceof Map<?, ?> map)) {
+                throw new IllegalArgumentException("views 的項目必須是物件: " + view);
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> rule = (Map<String, Object>) map;
+            if (rules.size() == MAX_RULES) {
+                log.warn("toolViews 最多 {} 條規則，略過其餘規則", MAX_RULES);
+                break;
+            }
+            String name = String.valueOf(rule.getOrDefault("name", "view" + rules.size()));
+            if (rule.get("claims") != null && !(rule.get("claims") instanceof Map)) {
+                throw new IllegalArgumentException("規則 " + name + " 的 claims 必須是物件");
+            }
+            Map<String, String> claims = new LinkedHashMap<>();
+            MappingValues.sectionOrEmpty(rule, "claims").forEach((k, v) -> claims.put(k, String.valueOf(v)));
+            rules.add(new Rule(name, strings(rule, "scopes"), claims, strings(rule, "clients"),
+                    patterns(strings(rule, "tools"))));
+        }
+        List<Pattern> defaultTools = settings.get("default") != null
+                ? patterns(strings(settings, "default"))
+                : List.of(Pattern.compile(".*"));
+        return new RuleSet(false, List.copyOf(rules), defaultTools);
+    }
+
+    /**
+     * 略過只以用戶端自行宣告的 clients 為條件、卻開放 default 以外工具的規則 (任何人帶上 Header 即可取得)
+     */
+    private static RuleSet withoutSelfDeclaredEscalation(RuleSet ruleSet, Collection<String> toolNames,
+            Set<String> companions) {
+        List<Rule> accepted = new ArrayList<>();
+        for (Rule rule : ruleSet.rules()) {
+            if (rule.scopes().isEmpty() && rule.claims().isEmpty() && !rule.clients().isEmpty()) {
+                List<String> escalated = toolNames.stream()
+                        .filter(name -> !companions.contains(name))
+                        .filter(name -> matchesAny(rule.tools(), name) && !matchesAny(ruleSet.defaultTools(), name))
+                        .toList();
+                if (!escalated.isEmpty()) {
+                    log.warn("toolViews 規則 {} 只以用戶端自行宣告的 clients 為條件，卻開放 default 以外的工具 {}，已略過",
+                            rule.name(), escalated);
+                    continue;
+                }
+            }
+            accepted.add(rule);
+        }
+        return accepted.size() == ruleSet.rules().size()
+                ? ruleSet
+                : new RuleSet(ruleSet.unrestricted(), List.copyOf(accepted), ruleSet.defaultTools());
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String name) {
+        return patterns.stream().anyMatch(pattern -> pattern.matcher(name).matches());
+    }
+
+    /**
+     * 依呼叫者已驗證的 claims 與用戶端 Header 取得可見的工具集合
+     *
+     * @param claims 已驗證的 JWT claims；未驗證時為 null
+     * @param client 用戶端 Header 的值；未帶時為 null
+     */
+    public ToolView resolve(Map<String, Object> claims, String client) {
+        Catalog current = catalog;
+        if (current.ruleSet().unrestricted()) {
+            return ALL;
+        }
+        Map<String, Object> callerClaims = claims != null ? claims : Map.of();
+        Set<String> scopes = scopes(callerClaims);
+        long mask = 0;
+        List<Rule> rules = current.rules();
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).matches(scopes, callerClaims, client)) {
+                mask |= 1L << i;
+            }
+        }
+        return view(current, mask);
+    }
+
+    /**
+     * 記錄一次因不在檢視內而拒絕的工具呼叫
+     */
+    public void recordDenied() {
+        denied.increment();
+    }
+
+    private static ToolView view(Catalog catalog, long mask) {
+        return catalog.views().computeIfAbsent(mask, m -> {
+            List<Pattern> patterns = new ArrayList<>();
+            StringJoiner key = new StringJoiner("+", catalog.version() + ":", "");
+            if (m == 0) {
+                patterns.addAll(catalog.defaultTools());
+                key.add("default");
+            }
+            for (int i = 0; i < catalog.rules().size(); i++) {
+                if ((m & (1L << i)) != 0) {
+                    patterns.addAll(catalog.rules().get(i).tools());
+                    key.add(catalog.rules().get(i).name());
+                }
+            }
+            Set<String> tools = new LinkedHashSet<>();
+            for (String name : catalog.toolNames()) {
+                if (!catalog.companions().containsKey(name) && matchesAny(patterns, name)) {
+                    tools.add(name);
+                }
+            }
+            // companion 工具依其 cursorFor 與原工具一起可見，不依名稱比對 (上游工具可能本身就以 _next_page 結尾)
+            catalog.companions().forEach((companion, cursorFor) -> {
+                if (tools.contains(cursorFor)) {
+                    tools.add(companion);
+                }
+            });
+            return new ToolView(key.toString(), Set.copyOf(tools));
+        });
+    }
+
+    /**
+     * OAuth2 scope：RFC 8693 的 "scope" (空白分隔字串) 或常見的 "scp" (陣列或字串)
+     */
+    private static Set<String> scopes(Map<String, Object> claims) {
+        Set<String> scopes = new LinkedHashSet<>();
+        for (String name : new String[] {"scope", "scp"}) {
+            Object value = claims.get(name);
+            if (value instanceof String s) {
+                for (String scope : s.trim().split("\\s+")) {
+                    if (!scope.isEmpty()) {
+                        scopes.add(scope);
+                    }
+                }
+            } else if (value instanceof Collection<?> values) {
+                values.forEach(v -> scopes.add(String.valueOf(v)));
+            }
+        }
+        return scopes;
+    }
+
+    private static boolean claimMatches(Object value, String expected) {
+        if (value instanceof Collection<?> values) {
+            return values.stream().anyMatch(v -> expected.equals(String.valueOf(v)));
+        }
+        return value != null && expected.equals(String.valueOf(value));
+    }
+
+    private static List<?> list(Map<String, Object> map, String key) {
+        Object value = map != null ? map.get(key) : null;
+        return value instanceof List<?> list ? list : List.of();
+    }
+
+    private static Set<String> strings(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        if (value instanceof String s) {
+            return Set.of(s);
+        }
+        if (value != null && !(value instanceof List)) {
+            throw new IllegalArgumentException(key + " 必須是字串或陣列: " + value);
+        }
+        Set<String> result = new LinkedHashSet<>();
+        list(map, key).forEach(v -> result.add(String.valueOf(v)));
+        return result;
+    }
+
+    /**
+     * 工具名稱樣式："*" 為萬用字元，其餘字元照字面比對
+     */
+    private static List<Pattern> patterns(Set<String> globs) {
+        return globs.stream()
+                .map(glob -> Pattern.compile(Pattern.quote(glob).replace("*", "\\E.*\\Q")))
+                .toList();
+    }
+
+    public Map<String, Object> stats() {
+        Catalog current = catalog;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rules", current.rules().stream().map(Rule::name).toList());
+        Map<String, Integer> views = new LinkedHashMap<>();
+        current.views().values().forEach(view -> views.put(view.key(), view.tools().size()));
+        stats.put("views", views);
+        stats.put("deniedCalls", denied.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.mcpserversidecar.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 將超過上限的圖片縮小為縮圖 (長邊不超過 maxDimension)。
+ * PNG/GIF 輸出為 PNG 以保留透明度，其餘輸出為 JPEG。
+ *
+ * 解碼前先以 {@link ImageReader} 讀取標頭中的寬高，像素數超過上限的圖片直接拒絕：
+ * 壓縮後很小的 PNG 可宣告極大的尺寸，完整解碼會佔用數 GB heap。
+ */
+public final class ImageThumbnails {
+
+    private ImageThumbnails() {
+    }
+
+    /**
+     * 預設像素上限 (約 24MP，以 4 bytes/pixel 解碼約 96MB)
+     */
+    public static final long DEFAULT_MAX_PIXELS = 24_000_000L;
+
+    public record Thumbnail(byte[] bytes, String mimeType) {
+    }
+
+    /**
+     * 圖片尺寸超過像素上限
+     */
+    public static class ImageTooLargeException extends IOException {
+        public ImageTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    public static Thumbnail downscale(byte[] source, String sourceMimeType, int maxDimension) throws IOException {
+        return downscale(source, sourceMimeType, maxDimension, DEFAULT_MAX_PIXELS);
+    }
+
+    public static Thumbnail downscale(byte[] source, String sourceMimeType, int maxDimension, long maxPixels)
+            throws IOException {
+        BufferedImage image = decode(source, sourceMimeType, maxPixels);
+
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        boolean png = sourceMimeType.contains("png") || sourceMimeType.contains("gif");
+        BufferedImage scaled = new BufferedImage(width, height,
+                png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(scaled, png ? "png" : "jpeg", out);
+        return new Thumbnail(out.toByteArray(), png ? "image/png" : "image/jpeg");
+    }
+
+    /**
+     * 先檢查宣告的寬高再解碼第一張影格
+     */
+    private static BufferedImage decode(byte[] source, String sourceMimeType, long maxPixels) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("無法解碼圖片格式: " + sourceMimeType);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long width = reader.getWidth(0);
+                long height = reader.getHeight(0);
+                if (width * height > maxPixels) {
+                    throw new ImageTooLargeException(
+                            "圖片尺寸 " + width + "x" + height + " 超過像素上限 " + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.mcpserversidecar.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以環狀緩衝區保存最近的呼叫延遲，並定期計算指定百分位數。
+ *
+ * 每記錄 RECOMPUTE_EVERY 筆才重新排序一次 (最多 SIZE 筆)，讀取百分位數只是讀一個 volatile 欄位，
+ * 適合在每次工具呼叫時查詢 (例如決定 hedge 延遲)。
+ */
+public final class LatencyTracker {
+
+    private static final int SIZE = 512;
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final double percentile;
+    private final long[] samples = new long[SIZE];
+    private final AtomicLong count = new AtomicLong();
+    private volatile long percentileNanos = -1;
+
+    /**
+     * @param percentile 0 ~ 1，例如 0.95
+     */
+    public LatencyTracker(double percentile) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile 必須介於 0 與 1 之間: " + percentile);
+        }
+        this.percentile = percentile;
+    }
+
+    public void record(long nanos) {
+        long n = count.getAndIncrement();
+        samples[(int) (n % SIZE)] = nanos;
+        if ((n + 1) % RECOMPUTE_EVERY == 0) {
+            recompute((int) Math.min(n + 1, SIZE));
+        }
+    }
+
+    /**
+     * @return 最近樣本的百分位延遲 (奈秒)，樣本不足 RECOMPUTE_EVERY 筆時回傳 -1
+     */
+    public long percentileNanos() {
+        return percentileNanos;
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    private void recompute(int size) {
+        long[] copy = Arrays.copyOf(samples, size);
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(percentile * size) - 1;
+        percentileNanos = copy[Math.max(0, Math.min(index, size - 1))];
+    }
+}
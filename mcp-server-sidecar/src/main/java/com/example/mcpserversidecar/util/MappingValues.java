@@ -0,0 +1,89 @@
+package com.example.mcpserversidecar.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 讀取 mcp-mapping.json 中工具層級設定 (例如 "cache") 的小工具。
+ * Mapping 以 Jackson 轉成的 Map 形式保存，數值型別可能是 Integer/Long/Double 或字串。
+ */
+public final class MappingValues {
+
+    private MappingValues() {
+    }
+
+    /**
+     * 取得子區塊 (例如 mapping.cache)，不存在時回傳 null
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> section(Map<String, Object> mapping, String key) {
+        if (mapping == null) {
+            return null;
+        }
+        Object val = mapping.get(key);
+        return val instanceof Map ? (Map<String, Object>) val : null;
+    }
+
+    /**
+     * 取得子區塊，不存在時回傳空 Map
+     */
+    public static Map<String, Object> sectionOrEmpty(Map<String, Object> mapping, String key) {
+        Map<String, Object> section = section(mapping, key);
+        return section != null ? section : Collections.emptyMap();
+    }
+
+    public static long getLong(Map<String, Object> map, String key, long defaultValue) {
+        Object val = map != null ? map.get(key) : null;
+        if (val instanceof Number n) {
+            return n.longValue();
+        }
+        if (val instanceof String s && !s.isBlank()) {
+            return Long.parseLong(s.trim());
+        }
+        return defaultValue;
+    }
+
+    public static int getInt(Map<String, Object> map, String key, int defaultValue) {
+        return (int) getLong(map, key, defaultValue);
+    }
+
+    public static double getDouble(Map<String, Object> map, String key, double defaultValue) {
+        Object val = map != null ? map.get(key) : null;
+        if (val instanceof Number n) {
+            return n.doubleValue();
+        }
+        if (val instanceof String s && !s.isBlank()) {
+            return Double.parseDouble(s.trim());
+        }
+        return defaultValue;
+    }
+
+    public static boolean getBoolean(Map<String, Object> map, String key, boolean defaultValue) {
+        Object val = map != null ? map.get(key) : null;
+        if (val instanceof Boolean b) {
+            return b;
+        }
+        if (val instanceof String s && !s.isBlank()) {
+            return Boolean.parseBoolean(s.trim());
+        }
+        return defaultValue;
+    }
+
+    public static String getString(Map<String, Object> map, String key, String defaultValue) {
+        Object val = map != null ? map.get(key) : null;
+        return val != null ? val.toString() : defaultValue;
+    }
+
+    /**
+     * 取得字串清單；值為單一字串時視為只有一個元素，不存在時回傳空 List
+     */
+    public static List<String> getStringList(Map<String, Object> map, String key) {
+        Object val = map != null ? map.get(key) : null;
+        if (val instanceof Collection<?> values) {
+            return values.stream().map(String::valueOf).toList();
+        }
+        return val != null ? List.of(val.toString()) : List.of();
+    }
+}
@@ -17,17 +17,28 @@ public class OpenApiToMcpMapper {
     private static final Logger log = LoggerFactory.getLogger(OpenApiToMcpMapper.class);
 
     /**
-     * 將 OpenAPI 的 Operation 轉換為 MCP 的 Input Schema (請求參數)
+     * 將 OpenAPI 的 Operation 轉換為 MCP 的 Input Schema (請求參數)，不解析 components 引用
      */
     public static McpSchema.JsonSchema mapOperationToInputSchema(Operation operation) {
-        Map<String, Object> properties = new HashMap<>();
+        return mapOperationToInputSchema(operation, new SchemaCompiler(null));
+    }
+
+    /**
+     * 將 OpenAPI 的 Operation 轉換為 MCP 的 Input Schema (請求參數)。
+     * 屬性 schema 為 compiler 共用的不可變實例；頂層 properties 每個工具獨立，可再覆寫個別參數。
+     */
+    public static McpSchema.JsonSchema mapOperationToInputSchema(Operation operation, SchemaCompiler compiler) {
+        Map<String, Object> properties = new LinkedHashMap<>();
         List<String> required = new ArrayList<>();
+        Set<String> defs = new HashSet<>();
 
         // 1. 處理 Path/Query Parameters
         if (operation.getParameters() != null) {
-            for (Parameter p : operation.getParameters()) {
-                Map<String, Object> paramSchema = mapSchemaToMap(p.getSchema());
+            for (Parameter ref : operation.getParameters()) {
+                Parameter p = compiler.resolve(ref);
+                Map<String, Object> paramSchema = compiler.compile(p.getSchema(), defs);
                 if (p.getDescription() != null) {
+                    paramSchema = new LinkedHashMap<>(paramSchema);
                     paramSchema.put("description", p.getDescription());
                 }
                 properties.put(p.getName(), paramSchema);
@@ -37,19 +48,13 @@ public class OpenApiToMcpMapper {
             }
         }
 
-        // 2. 處理 Request Body (主要針對 POST/PUT)
-        if (operation.getRequestBody() != null && operation.getRequestBody().getContent() != null) {
-            Content content = operation.getRequestBody().getContent();
-            if (content.containsKey("application/json")) {
-                Schema<?> schema = content.get("application/json").getSchema();
-                if (schema != null && schema.getProperties() != null) {
-                    for (Map.Entry<String, Schema> entry : ((Map<String, Schema>) schema.getProperties()).entrySet()) {
-                        properties.put(entry.getKey(), mapSchemaToMap(entry.getValue()));
-                    }
-                    if (schema.getRequired() != null) {
-                        required.addAll(schema.getRequired());
-                    }
-                }
+        // 2. 處理 Request Body (主要針對 POST/PUT)，DTO 屬性攤平為頂層參數；
+        //    以 $ref 引用的 DTO 取用 compiler 快取的編譯結果，引用同一 DTO 的工具共用屬性 schema
+        for (Schema<?> schema : requestBodySchemas(operation, compiler)) {
+            Map<String, Object> body = compiler.compile(schema, defs);
+            properties.putAll((Map<String, Object>) body.get("properties"));
+            if (body.get("required") instanceof List<?> names) {
+                names.forEach(name -> required.add((String) name));
             }
         }
 
@@ -58,14 +63,41 @@ public class OpenApiToMcpMapper {
                 properties,
                 required.isEmpty() ? null : required,
                 true,
-                null,
+                compiler.defs(defs),
                 null);
     }
 
+    /**
+     * 記錄每個參數在 HTTP 請求中的位置 (path/query/header/cookie 依 Parameter.in，Request Body 屬性為 body)
+     */
+    public static Map<String, String> mapParameterLocations(Operation operation) {
+        return mapParameterLocations(operation, new SchemaCompiler(null));
+    }
+
+    public static Map<String, String> mapParameterLocations(Operation operation, SchemaCompiler compiler) {
+        Map<String, String> locations = new LinkedHashMap<>();
+        if (operation.getParameters() != null) {
+            for (Parameter ref : operation.getParameters()) {
+                Parameter p = compiler.resolve(ref);
+                locations.put(p.getName(), p.getIn() != null ? p.getIn() : "query");
+            }
+        }
+        for (Schema<?> schema : requestBodySchemas(operation, compiler)) {
+            for (String name : compiler.resolve(schema).getProperties().keySet()) {
+                locations.putIfAbsent(name, "body");
+            }
+        }
+        return locations;
+    }
+
     /**
      * 從 OpenAPI Operation 中提取成功回應 (200 OK) 的 Schema 描述
      */
     public static Map<String, Object> mapOperationToOutputSchema(Operation operation) {
+        return mapOperationToOutputSchema(operation, new SchemaCompiler(null));
+    }
+
+    public static Map<String, Object> mapOperationToOutputSchema(Operation operation, SchemaCompiler compiler) {
         ApiResponses responses = operation.getResponses();
         if (responses == null)
             return null;
@@ -79,48 +111,38 @@ public class OpenApiToMcpMapper {
         if (successResponse != null && successResponse.getContent() != null) {
             Content content = successResponse.getContent();
             if (content.containsKey("application/json")) {
-                return mapSchemaToMap(content.get("application/json").getSchema());
+                return compiler.compile(content.get("application/json").getSchema(), new HashSet<>());
             }
         }
         return null;
     }
 
     /**
-     * 遞迴將 OpenAPI Schema 轉換為 Map 格式 (供裝飾 Tool Description 或構建 Input Schema 使用)
+     * application/json Request Body 中帶有屬性的 Schema (allOf 的各部分分別列出)；
+     * 回傳原本的 Schema (可能是 $ref)，沿 $ref 解析後必定帶有 properties
      */
-    private static Map<String, Object> mapSchemaToMap(Schema<?> schema) {
-        Map<String, Object> map = new HashMap<>();
-        if (schema == null) {
-            map.put("type", "string");
-            return map;
+    private static List<Schema<?>> requestBodySchemas(Operation operation, SchemaCompiler compiler) {
+        if (operation.getRequestBody() == null || operation.getRequestBody().getContent() == null
+                || !operation.getRequestBody().getContent().containsKey("application/json")) {
+            return Collections.emptyList();
         }
-
-        String type = schema.getType();
-        // OpenAPI 類型映射
-        map.put("type", type != null ? type : "string");
-
-        if (schema.getDescription() != null) {
-            map.put("description", schema.getDescription());
-        }
-
-        // 處理 Array 類型 (遞迴轉換 items)
-        if ("array".equals(type) && schema.getItems() != null) {
-            map.put("items", mapSchemaToMap(schema.getItems()));
+        List<Schema<?>> result = new ArrayList<>();
+        Schema<?> body = operation.getRequestBody().getContent().get("application/json").getSchema();
+        Schema<?> schema = compiler.resolve(body);
+        if (schema == null) {
+            return result;
         }
-
-        // 處理 Object 類型屬性
         if (schema.getProperties() != null) {
-            Map<String, Object> props = new HashMap<>();
-            for (Map.Entry<String, Schema> entry : ((Map<String, Schema>) schema.getProperties()).entrySet()) {
-                props.put(entry.getKey(), mapSchemaToMap(entry.getValue()));
-            }
-            map.put("properties", props);
+            result.add(body);
         }
-
-        if (schema.getRequired() != null) {
-            map.put("required", schema.getRequired());
+        if (schema.getAllOf() != null) {
+            for (Schema<?> part : schema.getAllOf()) {
+                Schema<?> resolved = compiler.resolve(part);
+                if (resolved != null && resolved.getProperties() != null) {
+                    result.add(part);
+                }
+            }
         }
-
-        return map;
+        return result;
     }
 }
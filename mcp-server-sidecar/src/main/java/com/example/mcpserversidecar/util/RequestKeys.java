@@ -0,0 +1,104 @@
+package com.example.mcpserversidecar.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 產生工具呼叫的識別鍵：工具名稱 + 正規化參數 + Authorization 雜湊。
+ * 參數以 key 排序後序列化，確保 {a=1,b=2} 與 {b=2,a=1} 得到相同的鍵；key 與字串值一律加上引號並跳脫
+ * 引號與反斜線，參數內容無法偽造分隔符號而與其他參數組合得到相同的鍵 (快取可能跨呼叫者共用)。
+ */
+public final class RequestKeys {
+
+    private static final String ANONYMOUS = "-";
+
+    /**
+     * 每個請求都會計算身分雜湊 (速率限制)，重用各執行緒的 MessageDigest
+     */
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    });
+
+    private RequestKeys() {
+    }
+
+    public static String of(String toolName, Map<String, Object> arguments, String authHeader) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(toolName).append('|');
+        appendCanonical(sb, arguments);
+        sb.append('|').append(authIdentity(authHeader));
+        return sb.toString();
+    }
+
+    /**
+     * 將 Authorization Header 轉成不可逆的身分識別 (SHA-256 前 16 bytes)，避免 Token 原文留在記憶體的 key 中
+     */
+    public static String authIdentity(String authHeader) {
+        if (authHeader == null || authHeader.isEmpty()) {
+            return ANONYMOUS;
+        }
+        byte[] hash = SHA_256.get().digest(authHeader.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hash, 0, 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendCanonical(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Map<?, ?> map) {
+            List<String> keys = new ArrayList<>(map.size());
+            for (Object k : map.keySet()) {
+                keys.add(String.valueOf(k));
+            }
+            keys.sort(null);
+            sb.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                String k = keys.get(i);
+                appendQuoted(sb, k);
+                sb.append('=');
+                appendCanonical(sb, ((Map<Object, Object>) map).get(k));
+            }
+            sb.append('}');
+        } else if (value instanceof Collection<?> list) {
+            sb.append('[');
+            boolean first = true;
+            for (Object item : list) {
+                if (!first) {
+                    sb.append(',');
+                }
+                appendCanonical(sb, item);
+                first = false;
+            }
+            sb.append(']');
+        } else if (value instanceof CharSequence text) {
+            appendQuoted(sb, text);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static void appendQuoted(StringBuilder sb, CharSequence text) {
+        sb.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.mcpserversidecar.util;
+
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.parameters.Parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 將 OpenAPI Schema 編譯為 MCP JsonSchema 使用的不可變 Map。
+ *
+ * 依 components/schemas 解析 $ref，每個 component 只編譯一次並於同一次掃描的所有工具間共用同一個實例，
+ * 引用相同 DTO 的 operation 越多也不會重複建構。循環引用改以 {"$ref": "#/$defs/Name"} 表示，
+ * 工具的 inputSchema 透過 {@link #defs(Set)} 附上被引用的定義。
+ *
+ * 非執行緒安全：每次掃描建立一個實例。
+ */
+public class SchemaCompiler {
+
+    private static final String SCHEMA_REF_PREFIX = "#/components/schemas/";
+    private static final String PARAMETER_REF_PREFIX = "#/components/parameters/";
+    private static final String DEFS_REF_PREFIX = "#/$defs/";
+
+    /**
+     * 未宣告類型 ({})、缺少 Schema 或無法解析的 $ref：接受任何值，不指定 type
+     */
+    private static final Map<String, Object> ANY_SCHEMA = Map.of();
+
+    /**
+     * 已編譯的 component 與其 (遞移) 需要的循環定義名稱
+     */
+    private record Compiled(Map<String, Object> schema, Set<String> defs) {
+    }
+
+    private final Map<String, Schema> schemas;
+    private final Map<String, Parameter> parameters;
+    private final Map<String, Compiled> compiled = new HashMap<>();
+    private final Set<String> inProgress = new HashSet<>();
+
+    public SchemaCompiler(Components components) {
+        this.schemas = components != null && components.getSchemas() != null
+                ? components.getSchemas() : Collections.emptyMap();
+        this.parameters = components != null && components.getParameters() != null
+                ? components.getParameters() : Collections.emptyMap();
+    }
+
+    /**
+     * 已編譯的 component 數量
+     */
+    public int size() {
+        return compiled.size();
+    }
+
+    /**
+     * 編譯 Schema；defs 收集結果中以 #/$defs/ 引用的 component 名稱
+     */
+    public Map<String, Object> compile(Schema<?> schema, Set<String> defs) {
+        if (schema == null) {
+            return ANY_SCHEMA;
+        }
+        String ref = schema.get$ref();
+        if (ref != null) {
+            return ref.startsWith(SCHEMA_REF_PREFIX)
+                    ? component(ref.substring(SCHEMA_REF_PREFIX.length()), defs)
+                    : ANY_SCHEMA;
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        String type = type(schema);
+        if (type != null) {
+            map.put("type", type);
+        }
+        putIfPresent(map, "format", schema.getFormat());
+        putIfPresent(map, "description", schema.getDescription());
+        if (schema.getEnum() != null && !schema.getEnum().isEmpty()) {
+            map.put("enum", Collections.unmodifiableList(new ArrayList<>(schema.getEnum())));
+        }
+        putIfPresent(map, "default", schema.getDefault());
+        putIfPresent(map, "minimum", schema.getMinimum());
+        putIfPresent(map, "maximum", schema.getMaximum());
+        putIfPresent(map, "minLength", schema.getMinLength());
+        putIfPresent(map, "maxLength", schema.getMaxLength());
+        putIfPresent(map, "pattern", schema.getPattern());
+
+        // 處理 Array 類型 (遞迴轉換 items)
+        if (schema.getItems() != null) {
+            map.put("items", compile(schema.getItems(), defs));
+        }
+
+        // 處理 Object 類型屬性
+        if (schema.getProperties() != null) {
+            Map<String, Object> props = new LinkedHashMap<>();
+            for (Map.Entry<String, Schema> entry : ((Map<String, Schema>) schema.getProperties()).entrySet()) {
+                props.put(entry.getKey(), compile(entry.getValue(), defs));
+            }
+            map.put("properties", Collections.unmodifiableMap(props));
+        }
+        if (schema.getAdditionalProperties() instanceof Schema<?> additional) {
+            map.put("additionalProperties", compile(additional, defs));
+        } else if (schema.getAdditionalProperties() instanceof Boolean additional) {
+            map.put("additionalProperties", additional);
+        }
+        if (schema.getRequired() != null && !schema.getRequired().isEmpty()) {
+            map.put("required", List.copyOf(schema.getRequired()));
+        }
+
+        putComposition(map, "allOf", schema.getAllOf(), defs);
+        putComposition(map, "anyOf", schema.getAnyOf(), defs);
+        putComposition(map, "oneOf", schema.getOneOf(), defs);
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * 被引用的循環定義 (供 JsonSchema 的 $defs 使用)；沒有時回傳 null
+     */
+    public Map<String, Object> defs(Set<String> names) {
+        if (names.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> defs = new TreeMap<>();
+        for (String name : names) {
+            defs.put(name, compiled.get(name).schema());
+        }
+        return defs;
+    }
+
+    /**
+     * 沿 $ref 取得實際的 Schema (例如 Request Body 的 DTO)，循環或無法解析時回傳最後一個可取得的 Schema
+     */
+    public Schema<?> resolve(Schema<?> schema) {
+        Set<String> seen = new HashSet<>();
+        while (schema != null && schema.get$ref() != null && schema.get$ref().startsWith(SCHEMA_REF_PREFIX)) {
+            String name = schema.get$ref().substring(SCHEMA_REF_PREFIX.length());
+            Schema<?> target = schemas.get(name);
+            if (target == null || !seen.add(name)) {
+                break;
+            }
+            schema = target;
+        }
+        return schema;
+    }
+
+    /**
+     * 取得 #/components/parameters/ 引用的 Parameter
+     */
+    public Parameter resolve(Parameter parameter) {
+        String ref = parameter.get$ref();
+        if (ref != null && ref.startsWith(PARAMETER_REF_PREFIX)) {
+            Parameter target = parameters.get(ref.substring(PARAMETER_REF_PREFIX.length()));
+            if (target != null) {
+                return target;
+            }
+        }
+        return parameter;
+    }
+
+    private Map<String, Object> component(String name, Set<String> defs) {
+        Compiled cached = compiled.get(name);
+        if (cached != null) {
+            defs.addAll(cached.defs());
+            return cached.schema();
+        }
+        if (inProgress.contains(name)) {
+            defs.add(name);
+            return Map.of("$ref", DEFS_REF_PREFIX + name);
+        }
+        Schema<?> schema = schemas.get(name);
+        if (schema == null) {
+            return ANY_SCHEMA;
+        }
+        inProgress.add(name);
+        Set<String> own = new HashSet<>();
+        Map<String, Object> result;
+        try {
+            result = compile(schema, own);
+        } finally {
+            inProgress.remove(name);
+        }
+        compiled.put(name, new Compiled(result, Set.copyOf(own)));
+        defs.addAll(own);
+        return result;
+    }
+
+    private void putComposition(Map<String, Object> map, String key, List<Schema> parts, Set<String> defs) {
+        if (parts == null || parts.isEmpty()) {
+            return;
+        }
+        List<Object> compiledParts = new ArrayList<>(parts.size());
+        for (Schema part : parts) {
+            compiledParts.add(compile(part, defs));
+        }
+        map.put(key, Collections.unmodifiableList(compiledParts));
+    }
+
+    /**
+     * OpenAPI 類型映射：未宣告類型時依內容推斷；組合型 (allOf/anyOf/oneOf) 與無法推斷的 Schema 不指定類型
+     */
+    private static String type(Schema<?> schema) {
+        if (schema.getType() != null) {
+            return schema.getType();
+        }
+        if (schema.getTypes() != null && schema.getTypes().size() == 1) {
+            return schema.getTypes().iterator().next();
+        }
+        if (schema.getProperties() != null) {
+            return "object";
+        }
+        if (schema.getItems() != null) {
+            return "array";
+        }
+        return null;
+    }
+
+    private static void putIfPresent(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.mcpserversidecar.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 逐塊整形 JSON 回應：每收到一個 DataBuffer 就交給 Jackson 非阻塞 parser，依規則把 token 寫入輸出，
+ * 呼叫端可立即釋放該 buffer。整個過程只走一次 token 串流，不建立 JsonNode 樹，也不保留上游原始內容。
+ *
+ * 規則 ({@link Rules})：
+ * <ul>
+ *   <li>include：只保留這些路徑 (與其祖先容器)；未設定時保留全部</li>
+ *   <li>exclude：移除這些路徑</li>
+ *   <li>maxArrayLength：陣列只保留前 N 個元素，其餘以 {"truncated":true,"omitted":M} 標記取代</li>
+ *   <li>maxStringLength：字串超過 N 個字元時截斷並加上 "…[truncated M chars]"</li>
+ * </ul>
+ * 路徑可寫成 JSON Pointer ("/data/items/*&#47;id") 或 JSONPath 子集 ("$.data.items[*].id")，"*" 比對任一欄位或陣列元素。
+ *
+ * 指定 pageSize 與 overflow 時，根陣列只有前 pageSize 個元素留在輸出，其餘 (整形後的) 元素依序寫入 overflow，
+ * 每行一個 compact JSON 元素 (字串中的換行一律跳脫，因此 '\n' 即為元素分隔)，供伺服器端 cursor 分頁使用。
+ */
+public final class StreamingJsonShaper {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final Rules rules;
+    private final long maxBytes;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final ByteArrayOutputStream out;
+    private final JsonGenerator generator;
+    private final byte[] scratch = new byte[SCRATCH_SIZE];
+    private final int pageSize;
+    private final OutputStream overflow;
+    private JsonGenerator overflowGenerator;
+
+    /**
+     * 目前寫入的輸出：一般為 generator，寫出溢出的根陣列元素時為 overflowGenerator
+     */
+    private JsonGenerator target;
+    private Frame overflowFrame;
+    private long overflowElements;
+
+    /**
+     * 目前輸出中開啟的容器
+     */
+    private final Deque<Frame> stack = new ArrayDeque<>();
+
+    /**
+     * 略過中的子樹層數；大於 0 時不輸出任何 token
+     */
+    private int skipDepth;
+    private String fieldName;
+    private long totalBytes;
+
+    /**
+     * 編譯後的整形規則，於工具註冊時建立一次
+     *
+     * @param maxArrayLength  陣列元素上限；0 表示不限制
+     * @param maxStringLength 字串字元數上限；0 表示不限制
+     */
+    public record Rules(List<String[]> include, List<String[]> exclude, int maxArrayLength, int maxStringLength) {
+
+        /**
+         * 不整形 (只分頁時使用)
+         */
+        public static final Rules NONE = new Rules(List.of(), List.of(), 0, 0);
+
+        public static Rules compile(List<String> include, List<String> exclude, int maxArrayLength,
+                int maxStringLength) {
+            return new Rules(include.stream().map(StreamingJsonShaper::segments).toList(),
+                    exclude.stream().map(StreamingJsonShaper::segments).toList(),
+                    Math.max(0, maxArrayLength), Math.max(0, maxStringLength));
+        }
+    }
+
+    /**
+     * 輸出中開啟的容器，以及仍可能比對到其子孫的 include/exclude 路徑
+     *
+     * @param depth    子元素在路徑中的位置
+     * @param includes 仍在比對中的 include 路徑；null 表示整個子樹都保留
+     */
+    private static final class Frame {
+
+        final boolean array;
+        final int depth;
+        final List<String[]> includes;
+        final List<String[]> excludes;
+        int index;
+        int emitted;
+        int omitted;
+
+        Frame(boolean array, int depth, List<String[]> includes, List<String[]> excludes) {
+            this.array = array;
+            this.depth = depth;
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+    }
+
+    /**
+     * @param maxBytes 原始位元組上限，超過時丟出 DataBufferLimitException
+     */
+    public StreamingJsonShaper(Rules rules, long maxBytes) {
+        this(rules, maxBytes, 0, null);
+    }
+
+    /**
+     * @param pageSize 根陣列留在輸出中的元素數；0 表示不分頁
+     * @param overflow 接收其餘根陣列元素的輸出 (不負責關閉)
+     */
+    public StreamingJsonShaper(Rules rules, long maxBytes, int pageSize, OutputStream overflow) {
+        this.rules = rules;
+        this.maxBytes = maxBytes;
+        this.pageSize = overflow != null ? pageSize : 0;
+        this.overflow = overflow;
+        try {
+            this.parser = FACTORY.createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            this.out = new ByteArrayOutputStream(SCRATCH_SIZE);
+            this.generator = FACTORY.createGenerator(out);
+            this.target = generator;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 整形一個 buffer 的全部可讀內容 (不負責釋放 buffer)
+     */
+    public StreamingJsonShaper append(DataBuffer buffer) {
+        int remaining = buffer.readableByteCount();
+        totalBytes += remaining;
+        if (totalBytes > maxBytes) {
+            throw new DataBufferLimitException("回應超過 " + maxBytes + " bytes 上限");
+        }
+        try {
+            while (remaining > 0) {
+                int toRead = Math.min(remaining, SCRATCH_SIZE);
+                buffer.read(scratch, 0, toRead);
+                remaining -= toRead;
+                feeder.feedInput(scratch, 0, toRead);
+                drain();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * 結束輸入並回傳整形後的 JSON；內容不是完整的 JSON 時丟出 UncheckedIOException
+     */
+    public String finish() {
+        try {
+            feeder.endOfInput();
+            drain();
+            generator.flush();
+            if (overflowGenerator != null) {
+                overflowGenerator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 寫入 overflow 的根陣列元素數
+     */
+    public long overflowElements() {
+        return overflowElements;
+    }
+
+    /**
+     * 整形後的大小 (finish 之後才完整，不含 overflow)
+     */
+    public long outputBytes() {
+        return out.size();
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (skipDepth > 0) {
+            if (token.isStructStart()) {
+                skipDepth++;
+            } else if (token.isStructEnd()) {
+                skipDepth--;
+            }
+            return;
+        }
+        switch (token) {
+            case FIELD_NAME -> fieldName = parser.currentName();
+            case END_OBJECT -> {
+                Frame frame = stack.pop();
+                target.writeEndObject();
+                endOverflow(frame);
+            }
+            case END_ARRAY -> {
+                Frame frame = stack.pop();
+                if (frame.omitted > 0) {
+                    target.writeStartObject();
+                    target.writeBooleanField("truncated", true);
+                    target.writeNumberField("omitted", frame.omitted);
+                    target.writeEndObject();
+                }
+                target.writeEndArray();
+                endOverflow(frame);
+            }
+            default -> value(token);
+        }
+    }
+
+    private void value(JsonToken token) throws IOException {
+        Frame parent = stack.peek();
+        List<String[]> includes;
+        List<String[]> excludes;
+        if (parent == null) {
+            // 根節點一律輸出；長度為 0 的 include 路徑 ("/" 或 "$") 表示保留全部
+            includes = rules.include().isEmpty() || rules.include().stream().anyMatch(p -> p.length == 0)
+                    ? null
+                    : rules.include();
+            excludes = rules.exclude().stream().filter(p -> p.length > 0).toList();
+        } else {
+            String segment = parent.array ? Integer.toString(parent.index++) : fieldName;
+            excludes = childExcludes(parent, segment);
+            includes = childIncludes(parent, segment);
+            // 被排除、不在 include 路徑上，或只比對到路徑前段的純量 (不可能包含更深的路徑) 都不輸出
+            if (excludes == null || (includes != null && (includes.isEmpty() || token.isScalarValue()))) {
+                skip(token);
+                return;
+            }
+            boolean rootArray = parent.array && stack.size() == 1;
+            if (rootArray && pageSize > 0) {
+                // 分頁時根陣列不截斷，超過 pageSize 的元素改寫入 overflow
+                if (parent.emitted >= pageSize) {
+                    beginOverflow();
+                } else {
+                    parent.emitted++;
+                }
+            } else if (parent.array && rules.maxArrayLength() > 0 && parent.emitted >= rules.maxArrayLength()) {
+                parent.omitted++;
+                skip(token);
+                return;
+            } else if (parent.array) {
+                parent.emitted++;
+            } else {
+                target.writeFieldName(segment);
+            }
+        }
+        int depth = parent != null ? parent.depth + 1 : 0;
+        switch (token) {
+            case START_OBJECT -> {
+                target.writeStartObject();
+                push(new Frame(false, depth, includes, excludes));
+            }
+            case START_ARRAY -> {
+                target.writeStartArray();
+                push(new Frame(true, depth, includes, excludes));
+            }
+            case VALUE_STRING -> target.writeString(truncate(parser.getText()));
+            // 以原始文字輸出數字，保留上游的精度與格式
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> target.writeNumber(parser.getText());
+            default -> target.copyCurrentEvent(parser);
+        }
+        if (target != generator && overflowFrame == null) {
+            // 溢出的純量元素已寫完
+            target = generator;
+        }
+    }
+
+    private void push(Frame frame) {
+        if (target != generator && overflowFrame == null) {
+            overflowFrame = frame;
+        }
+        stack.push(frame);
+    }
+
+    /**
+     * 接下來的根陣列元素寫入 overflow；每個元素為 overflow 的一個根值，以換行分隔
+     */
+    private void beginOverflow() throws IOException {
+        if (overflowGenerator == null) {
+            overflowGenerator = FACTORY.createGenerator(overflow);
+            overflowGenerator.setRootValueSeparator(new SerializedString("\n"));
+        }
+        overflowElements++;
+        target = overflowGenerator;
+    }
+
+    private void endOverflow(Frame frame) {
+        if (frame == overflowFrame) {
+            overflowFrame = null;
+            target = generator;
+        }
+    }
+
+    /**
+     * @return null 表示此節點被排除；否則為仍需在子孫中比對的 exclude 路徑
+     */
+    private static List<String[]> childExcludes(Frame parent, String segment) {
+        if (parent.excludes.isEmpty()) {
+            return List.of();
+        }
+        List<String[]> excludes = new ArrayList<>(parent.excludes.size());
+        for (String[] path : parent.excludes) {
+            if (matches(path[parent.depth], segment)) {
+                if (path.length == parent.depth + 1) {
+                    return null;
+                }
+                excludes.add(path);
+            }
+        }
+        return excludes;
+    }
+
+    /**
+     * @return null 表示子樹全部保留；空 List 表示沒有任何 include 路徑經過此節點
+     */
+    private static List<String[]> childIncludes(Frame parent, String segment) {
+        if (parent.includes == null) {
+            return null;
+        }
+        List<String[]> includes = new ArrayList<>(parent.includes.size());
+        for (String[] path : parent.includes) {
+            if (matches(path[parent.depth], segment)) {
+                if (path.length == parent.depth + 1) {
+                    return null;
+                }
+                includes.add(path);
+            }
+        }
+        return includes;
+    }
+
+    private void skip(JsonToken token) {
+        if (token.isStructStart()) {
+            skipDepth = 1;
+        }
+    }
+
+    private String truncate(String text) {
+        int max = rules.maxStringLength();
+        if (max == 0 || text.length() <= max) {
+            return text;
+        }
+        int end = Character.isHighSurrogate(text.charAt(max - 1)) ? max - 1 : max;
+        return text.substring(0, end) + "…[truncated " + (text.length() - end) + " chars]";
+    }
+
+    private static boolean matches(String pattern, String segment) {
+        return "*".equals(pattern) || pattern.equals(segment);
+    }
+
+    /**
+     * 將 JSON Pointer 或 JSONPath 子集 ($.a.b[*]、$['a'][0]) 轉成路徑片段
+     */
+    static String[] segments(String path) {
+        String trimmed = path.trim();
+        List<String> segments = new ArrayList<>();
+        if (trimmed.startsWith("$")) {
+            int i = 1;
+            while (i < trimmed.length()) {
+                char c = trimmed.charAt(i);
+                if (c == '.') {
+                    int end = i + 1;
+                    while (end < trimmed.length() && trimmed.charAt(end) != '.' && trimmed.charAt(end) != '[') {
+                        end++;
+                    }
+                    segments.add(trimmed.substring(i + 1, end));
+                    i = end;
+                } else if (c == '[') {
+                    int end = trimmed.indexOf(']', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("無效的 JSONPath: " + path);
+                    }
+                    String inner = trimmed.substring(i + 1, end).trim();
+                    if (inner.length() >= 2 && (inner.charAt(0) == '\'' || inner.charAt(0) == '"')) {
+                        inner = inner.substring(1, inner.length() - 1);
+                    }
+                    segments.add(inner);
+                    i = end + 1;
+                } else {
+                    throw new IllegalArgumentException("無效的 JSONPath: " + path);
+                }
+            }
+        } else if (!trimmed.isEmpty() && !trimmed.equals("/")) {
+            if (!trimmed.startsWith("/")) {
+                throw new IllegalArgumentException("JSON Pointer 必須以 / 開頭: " + path);
+            }
+            for (String segment : trimmed.substring(1).split("/", -1)) {
+                segments.add(segment.replace("~1", "/").replace("~0", "~"));
+            }
+        }
+        return segments.toArray(String[]::new);
+    }
+}
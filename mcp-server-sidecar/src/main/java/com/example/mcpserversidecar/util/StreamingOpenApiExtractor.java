@@ -0,0 +1,261 @@
+package com.example.mcpserversidecar.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.v3.parser.core.models.SwaggerParseResult;
+import io.swagger.v3.parser.util.OpenAPIDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 以 Jackson 串流解析器從 OpenAPI JSON 中只取出需要的部分，避免大型規格以 OpenAPIV3Parser 整份建模。
+ *
+ * 第一遍只建立索引：paths 下每個 operation 的 operationId 與位元組範圍、components 下每個項目的位元組範圍。
+ * 之後只將 mapping 中的 operation 與其 (遞移) $ref 引用的 components 讀成樹，組成精簡規格再交給
+ * OpenAPIDeserializer，產出的 OpenAPI 模型與完整解析時對應的部分相同。
+ */
+public final class StreamingOpenApiExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingOpenApiExtractor.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Set<String> HTTP_METHODS =
+            Set.of("get", "put", "post", "delete", "options", "head", "patch", "trace");
+
+    private static final String COMPONENTS_REF_PREFIX = "#/components/";
+
+    private StreamingOpenApiExtractor() {
+    }
+
+    /**
+     * 規格中某個 JSON 值的位元組範圍 [start, end)
+     */
+    private record Span(int start, int end) {
+    }
+
+    private record OperationSpan(String method, String operationId, Span span) {
+    }
+
+    /**
+     * common 為 path item 中 operation 以外的欄位 (例如共用 parameters)，通常很小，索引時直接讀入
+     */
+    private record PathSpan(String path, ObjectNode common, List<OperationSpan> operations) {
+    }
+
+    /**
+     * 只支援 JSON (springdoc 的 v3/api-docs)；YAML 等其他格式由呼叫端改用 OpenAPIV3Parser
+     */
+    public static boolean supports(byte[] spec) {
+        for (byte b : spec) {
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                continue;
+            }
+            return b == '{';
+        }
+        return false;
+    }
+
+    /**
+     * 取出 operationIds 對應的 operation 及其引用的 components
+     */
+    public static SwaggerParseResult extract(byte[] spec, Set<String> operationIds) throws IOException {
+        ObjectNode root = MAPPER.createObjectNode();
+        List<PathSpan> paths = new ArrayList<>();
+        Map<String, Map<String, Span>> components = new HashMap<>();
+
+        try (JsonParser parser = MAPPER.createParser(spec)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("OpenAPI 定義不是 JSON 物件");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "paths" -> indexPaths(parser, paths);
+                    case "components" -> indexComponents(parser, components);
+                    case "openapi", "info", "servers" -> root.set(field, MAPPER.readTree(parser));
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        // 只讀入 mapping 中的 operation
+        ObjectNode pathsNode = root.putObject("paths");
+        Deque<JsonNode> pending = new ArrayDeque<>();
+        int operationCount = 0;
+        int extracted = 0;
+        for (PathSpan path : paths) {
+            operationCount += path.operations().size();
+            for (OperationSpan operation : path.operations()) {
+                if (!operationIds.contains(operation.operationId())) {
+                    continue;
+                }
+                ObjectNode item = (ObjectNode) pathsNode.get(path.path());
+                if (item == null) {
+                    item = path.common().deepCopy();
+                    pathsNode.set(path.path(), item);
+                    pending.push(path.common());
+                }
+                JsonNode node = read(spec, operation.span());
+                item.set(operation.method(), node);
+                pending.push(node);
+                extracted++;
+            }
+        }
+
+        // 依 $ref 遞移讀入 components，每個項目只讀一次
+        ObjectNode componentsNode = MAPPER.createObjectNode();
+        int componentCount = 0;
+        while (!pending.isEmpty()) {
+            List<String> refs = new ArrayList<>();
+            collectRefs(pending.pop(), refs::add);
+            for (String ref : refs) {
+                String[] parts = ref.substring(COMPONENTS_REF_PREFIX.length()).split("/", 3);
+                if (parts.length < 2) {
+                    continue;
+                }
+                String section = parts[0];
+                String name = parts[1].replace("~1", "/").replace("~0", "~");
+                Span span = components.getOrDefault(section, Collections.emptyMap()).get(name);
+                ObjectNode sectionNode = (ObjectNode) componentsNode.get(section);
+                if (span == null || (sectionNode != null && sectionNode.has(name))) {
+                    continue;
+                }
+                if (sectionNode == null) {
+                    sectionNode = componentsNode.putObject(section);
+                }
+                JsonNode component = read(spec, span);
+                sectionNode.set(name, component);
+                pending.push(component);
+                componentCount++;
+            }
+        }
+        if (!componentsNode.isEmpty()) {
+            root.set("components", componentsNode);
+        }
+
+        log.debug("串流擷取 OpenAPI: {} 個 operation 中取出 {} 個，components {} 個",
+                operationCount, extracted, componentCount);
+        return new OpenAPIDeserializer().deserialize(root);
+    }
+
+    private static void indexPaths(JsonParser parser, List<PathSpan> paths) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String path = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            ObjectNode common = MAPPER.createObjectNode();
+            List<OperationSpan> operations = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (HTTP_METHODS.contains(key) && token == JsonToken.START_OBJECT) {
+                    int start = (int) parser.currentTokenLocation().getByteOffset();
+                    String operationId = scanOperationId(parser);
+                    int end = (int) parser.currentLocation().getByteOffset();
+                    if (operationId != null) {
+                        operations.add(new OperationSpan(key, operationId, new Span(start, end)));
+                    }
+                } else {
+                    common.set(key, MAPPER.readTree(parser));
+                }
+            }
+            paths.add(new PathSpan(path, common, operations));
+        }
+    }
+
+    /**
+     * 掃過整個 operation 物件，只讀取 operationId，其餘欄位直接略過
+     */
+    private static String scanOperationId(JsonParser parser) throws IOException {
+        String operationId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("operationId".equals(key) && token == JsonToken.VALUE_STRING) {
+                operationId = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return operationId;
+    }
+
+    private static void indexComponents(JsonParser parser, Map<String, Map<String, Span>> components)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String section = parser.currentName();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            Map<String, Span> entries = components.computeIfAbsent(section, k -> new HashMap<>());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                parser.skipChildren();
+                int end = (int) parser.currentLocation().getByteOffset();
+                entries.put(name, new Span(start, end));
+            }
+        }
+    }
+
+    private static JsonNode read(byte[] spec, Span span) throws IOException {
+        return MAPPER.readTree(spec, span.start(), span.end() - span.start());
+    }
+
+    /**
+     * 收集節點內所有指向 components 的引用 ($ref 與 discriminator.mapping)
+     */
+    private static void collectRefs(JsonNode node, Consumer<String> refs) {
+        if (node.isArray()) {
+            node.forEach(child -> collectRefs(child, refs));
+            return;
+        }
+        if (!node.isObject()) {
+            return;
+        }
+        for (Map.Entry<String, JsonNode> entry : node.properties()) {
+            JsonNode value = entry.getValue();
+            if ("$ref".equals(entry.getKey()) && value.isTextual()) {
+                addRef(value.asText(), refs);
+            } else if ("discriminator".equals(entry.getKey()) && value.path("mapping").isObject()) {
+                value.path("mapping").forEach(target -> addRef(target.asText(), refs));
+            } else {
+                collectRefs(value, refs);
+            }
+        }
+    }
+
+    private static void addRef(String ref, Consumer<String> refs) {
+        if (ref.startsWith(COMPONENTS_REF_PREFIX)) {
+            refs.accept(ref);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.ToolViews;
+import com.example.mcpserversidecar.util.RequestKeys;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AuthenticationFilterTest {
+
+    private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+    private static JwtVerifier verifier(boolean enabled) {
+        JwtVerifier verifier = mock(JwtVerifier.class);
+        when(verifier.isEnabled()).thenReturn(enabled);
+        return verifier;
+    }
+
+    @Test
+    void testPrincipalClaimRequiresJwtVerification() {
+        assertThatThrownBy(() -> new AuthenticationFilter(verifier(false), new ToolViews("X-MCP-Client"), "sub"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("mcp.auth.jwt.enabled");
+    }
+
+    @Test
+    void testUnverifiedTokenUsesHashEvenWithPrincipalClaim() {
+        AuthenticationFilter filter = new AuthenticationFilter(verifier(true), new ToolViews("X-MCP-Client"), "sub");
+        String payload = BASE64.encodeToString("{\"sub\":\"alice\"}".getBytes(StandardCharsets.UTF_8));
+        String authHeader = "Bearer eyJhbGciOiJub25lIn0." + payload + ".";
+        AtomicReference<String> principal = new AtomicReference<>();
+        WebFilterChain chain = exchange -> Mono.deferContextual(ctx -> {
+            principal.set(ctx.get(AuthenticationFilter.PRINCIPAL_KEY));
+            return Mono.empty();
+        });
+
+        // /mcp 以外的路徑不經 JwtVerifier，偽造的 sub 不能當作呼叫者身分
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/v3/api-docs")
+                .header("Authorization", authHeader)), chain).block();
+
+        assertThat(principal.get()).isEqualTo("token:" + RequestKeys.authIdentity(authHeader));
+    }
+}
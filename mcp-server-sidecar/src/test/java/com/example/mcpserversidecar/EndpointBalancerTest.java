@@ -0,0 +1,184 @@
+package com.example.mcpserversidecar;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EndpointBalancerTest {
+
+    private final MockWebServer fast1 = new MockWebServer();
+    private final MockWebServer fast2 = new MockWebServer();
+    private final MockWebServer slow = new MockWebServer();
+    private EndpointBalancer balancer;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (balancer != null) {
+            balancer.dispose();
+        }
+        fast1.shutdown();
+        fast2.shutdown();
+        slow.shutdown();
+    }
+
+    /**
+     * 記錄 /api 請求數的 dispatcher；healthy 為 false 時回應 503 (含探測請求)
+     */
+    private static final class CountingDispatcher extends Dispatcher {
+
+        final AtomicInteger apiCalls = new AtomicInteger();
+        final AtomicBoolean healthy = new AtomicBoolean(true);
+        final long delayMs;
+        volatile String lastPath;
+
+        CountingDispatcher(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            if (request.getPath().startsWith("/api")) {
+                apiCalls.incrementAndGet();
+                lastPath = request.getPath();
+            }
+            if (!healthy.get()) {
+                return new MockResponse().setResponseCode(503);
+            }
+            return new MockResponse().setBody("ok").setHeadersDelay(delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String url(MockWebServer server) {
+        return server.url("").toString().replaceAll("/$", "");
+    }
+
+    private EndpointBalancer balancer(int ejectAfterFailures, MockWebServer... servers) {
+        List<String> endpoints = java.util.Arrays.stream(servers).map(EndpointBalancerTest::url).toList();
+        return new EndpointBalancer("biz", new BackendProperties.LoadBalancer(endpoints, null, null,
+                ejectAfterFailures, Duration.ofMillis(100), Duration.ofSeconds(1), "/health", Duration.ofMillis(50)),
+                "/v3/api-docs", HttpClient.create());
+    }
+
+    private static int call(WebClient client) {
+        return client.get().uri("http://biz/api/info?level=vip")
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                .block();
+    }
+
+    @Test
+    void testSlowEndpointReceivesLessTraffic() throws IOException {
+        CountingDispatcher a = new CountingDispatcher(0);
+        CountingDispatcher b = new CountingDispatcher(0);
+        CountingDispatcher c = new CountingDispatcher(150);
+        fast1.setDispatcher(a);
+        fast2.setDispatcher(b);
+        slow.setDispatcher(c);
+        // 先暖機 WebClient 與 Reactor Netty：冷啟動 JVM 的第一次呼叫可能比慢實例還慢，
+        // 被計入 EWMA 的快實例在兩兩比較中會一直輸給慢實例
+        WebClient warmup = WebClient.create();
+        for (MockWebServer server : List.of(fast1, fast2)) {
+            warmup.get().uri(url(server) + "/warmup").retrieve().toBodilessEntity().block();
+        }
+        balancer = balancer(5, fast1, fast2, slow);
+        WebClient client = WebClient.builder().filter(balancer.filter()).build();
+
+        for (int i = 0; i < 40; i++) {
+            assertThat(call(client)).isEqualTo(200);
+        }
+
+        // 延遲 EWMA 較高的實例在兩兩比較中落敗，只在延遲尚未量測時分到少量請求
+        assertThat(a.apiCalls.get() + b.apiCalls.get() + c.apiCalls.get()).isEqualTo(40);
+        assertThat(c.apiCalls.get()).isLessThanOrEqualTo(3);
+        // 只改寫 scheme/host/port，路徑與 query 保持不變
+        assertThat((a.apiCalls.get() > 0 ? a : b).lastPath).isEqualTo("/api/info?level=vip");
+    }
+
+    @Test
+    void testFailingEndpointIsEjectedAndReinstatedAfterProbe() throws Exception {
+        // 健康實例固定延遲 10ms：恢復的實例以可用實例的平均 EWMA 起算，JVM 暖機中延遲持續下降時
+        // 健康實例的 EWMA 會一直低於恢復值，恢復的實例在兩兩比較中分不到請求
+        CountingDispatcher healthy = new CountingDispatcher(10);
+        CountingDispatcher failing = new CountingDispatcher(0);
+        failing.healthy.set(false);
+        fast1.setDispatcher(healthy);
+        fast2.setDispatcher(failing);
+        balancer = balancer(1, fast1, fast2);
+        WebClient client = WebClient.builder().filter(balancer.filter()).build();
+
+        for (int i = 0; i < 20; i++) {
+            call(client);
+        }
+
+        // 第一次 503 即剔除，之後的請求都送往健康的實例
+        assertThat(failing.apiCalls.get()).isLessThanOrEqualTo(1);
+        assertThat(healthy.apiCalls.get()).isGreaterThanOrEqualTo(19);
+        if (failing.apiCalls.get() == 1) {
+            assertThat(balancer.stats().get(1)).containsEntry("ejected", true);
+        }
+
+        // 恢復後由探測 (HEAD /health) 重新納入
+        failing.healthy.set(true);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (balancer.stats().stream().anyMatch(state -> Boolean.TRUE.equals(state.get("ejected")))) {
+            assertThat(System.nanoTime()).as("等待探測逾時").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        for (int i = 0; i < 40 && failing.apiCalls.get() < 2; i++) {
+            call(client);
+        }
+        assertThat(failing.apiCalls.get()).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void testInFlightCoversBodyStreaming() throws Exception {
+        fast1.enqueue(new MockResponse().setBody("x".repeat(64 * 1024))
+                .throttleBody(16 * 1024, 100, TimeUnit.MILLISECONDS));
+        balancer = balancer(5, fast1);
+        WebClient client = WebClient.builder().filter(balancer.filter()).build();
+
+        long[] inFlightAtHeaders = {-1};
+        long bytes = client.get().uri("http://biz/api/stream")
+                .exchangeToMono(response -> {
+                    inFlightAtHeaders[0] = ((Number) balancer.stats().get(0).get("inFlight")).longValue();
+                    return response.bodyToMono(String.class).map(String::length);
+                })
+                .block();
+
+        // Header 到達時 body 仍在傳輸，仍計為進行中；延遲樣本包含整個 body 的傳輸時間
+        assertThat(bytes).isEqualTo(64 * 1024);
+        assertThat(inFlightAtHeaders[0]).isEqualTo(1);
+        Map<String, Object> state = balancer.stats().get(0);
+        assertThat(state).containsEntry("inFlight", 0);
+        assertThat(((Number) state.get("latencyEwmaMs")).longValue()).isGreaterThanOrEqualTo(200);
+    }
+
+    @Test
+    void testAllEndpointsEjectedStillRoutes() throws IOException {
+        CountingDispatcher failing = new CountingDispatcher(0);
+        failing.healthy.set(false);
+        fast1.setDispatcher(failing);
+        balancer = balancer(1, fast1);
+        WebClient client = WebClient.builder().filter(balancer.filter()).build();
+
+        assertThat(call(client)).isEqualTo(503);
+        assertThat(call(client)).isEqualTo(503);
+        assertThat(failing.apiCalls.get()).isEqualTo(2);
+        Map<String, Object> state = balancer.stats().get(0);
+        assertThat(state).containsEntry("ejected", true);
+    }
+}
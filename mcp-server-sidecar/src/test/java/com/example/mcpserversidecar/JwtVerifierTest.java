@@ -0,0 +1,209 @@
+package com.example.mcpserversidecar;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以本地產生的金鑰組驗證 JwtVerifier，不需要實際的 IdP
+ */
+class JwtVerifierTest {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static KeyPair rsaKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static KeyPair ecKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    private static String b64(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > length) {
+            bytes = Arrays.copyOfRange(bytes, bytes.length - length, bytes.length);
+        } else if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return BASE64URL.encodeToString(bytes);
+    }
+
+    private static Map<String, Object> rsaJwk(String kid, KeyPair keyPair) {
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        return Map.of("kty", "RSA", "kid", kid, "use", "sig",
+                "n", b64(key.getModulus(), 256), "e", b64(key.getPublicExponent(), 3));
+    }
+
+    private static Map<String, Object> ecJwk(String kid, KeyPair keyPair) {
+        ECPublicKey key = (ECPublicKey) keyPair.getPublic();
+        return Map.of("kty", "EC", "kid", kid, "crv", "P-256",
+                "x", b64(key.getW().getAffineX(), 32), "y", b64(key.getW().getAffineY(), 32));
+    }
+
+    @SafeVarargs
+    private Path writeJwks(Map<String, Object>... jwks) throws Exception {
+        Path file = dir.resolve("jwks.json");
+        Files.writeString(file, objectMapper.writeValueAsString(Map.of("keys", List.of(jwks))));
+        return file;
+    }
+
+    private String sign(String alg, String kid, PrivateKey key, Map<String, Object> claims) throws Exception {
+        String header = BASE64URL.encodeToString(objectMapper.writeValueAsBytes(Map.of("alg", alg, "kid", kid)));
+        String payload = BASE64URL.encodeToString(objectMapper.writeValueAsBytes(claims));
+        Signature signature = Signature.getInstance(
+                alg.equals("ES256") ? "SHA256withECDSAinP1363Format" : "SHA256withRSA");
+        signature.initSign(key);
+        signature.update((header + "." + payload).getBytes(StandardCharsets.US_ASCII));
+        return "Bearer " + header + "." + payload + "." + BASE64URL.encodeToString(signature.sign());
+    }
+
+    private static Map<String, Object> claims(String sub, long expiresInSeconds) {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", sub);
+        claims.put("iss", "https://idp.test/");
+        claims.put("exp", System.currentTimeMillis() / 1000 + expiresInSeconds);
+        return claims;
+    }
+
+    private JwtVerifier verifier(Path jwks) {
+        return verifier(jwks.toUri().toString(), Duration.ofSeconds(2));
+    }
+
+    private JwtVerifier verifier(String jwksLocation, Duration readTimeout) {
+        JwtVerifier verifier = new JwtVerifier(objectMapper, new DefaultResourceLoader(), true, true,
+                jwksLocation, "https://idp.test/", "", Duration.ofSeconds(5), Duration.ZERO, 100,
+                Duration.ofMinutes(5), 10, Duration.ofSeconds(30), Duration.ofSeconds(1), readTimeout);
+        verifier.start();
+        return verifier;
+    }
+
+    private static JwtVerifier.Verification verify(JwtVerifier verifier, String authHeader) {
+        return verifier.verify(authHeader, Integer.toHexString(authHeader.hashCode())).block();
+    }
+
+    @Test
+    void testValidRsaAndEcTokensAreAcceptedAndCached() throws Exception {
+        KeyPair rsa = rsaKeyPair();
+        KeyPair ec = ecKeyPair();
+        JwtVerifier verifier = verifier(writeJwks(rsaJwk("rsa-1", rsa), ecJwk("ec-1", ec)));
+
+        String rsaToken = sign("RS256", "rsa-1", rsa.getPrivate(), claims("alice", 300));
+        JwtVerifier.Verification result = verify(verifier, rsaToken);
+        assertThat(result.valid()).isTrue();
+        assertThat(result.claims()).containsEntry("sub", "alice");
+        assertThat(verify(verifier, sign("ES256", "ec-1", ec.getPrivate(), claims("bob", 300))).valid()).isTrue();
+
+        // 第二次只查快取
+        assertThat(verify(verifier, rsaToken).valid()).isTrue();
+        assertThat(verifier.stats()).containsEntry("verifications", 2L).containsEntry("cacheHits", 1L);
+    }
+
+    @Test
+    void testInvalidTokensAreRejected() throws Exception {
+        KeyPair rsa = rsaKeyPair();
+        KeyPair other = rsaKeyPair();
+        JwtVerifier verifier = verifier(writeJwks(rsaJwk("rsa-1", rsa)));
+
+        assertThat(verify(verifier, sign("RS256", "rsa-1", rsa.getPrivate(), claims("alice", -60))).error())
+                .isEqualTo("token expired");
+        assertThat(verify(verifier, sign("RS256", "rsa-1", other.getPrivate(), claims("alice", 300))).error())
+                .isEqualTo("invalid signature");
+        Map<String, Object> wrongIssuer = claims("alice", 300);
+        wrongIssuer.put("iss", "https://evil.test/");
+        assertThat(verify(verifier, sign("RS256", "rsa-1", rsa.getPrivate(), wrongIssuer)).error())
+                .isEqualTo("unexpected issuer");
+        assertThat(verify(verifier, "Bearer not-a-jwt").error()).isEqualTo("malformed token");
+        assertThat(verify(verifier, "Basic dXNlcjpwYXNz").valid()).isFalse();
+
+        String unsigned = BASE64URL.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + BASE64URL.encodeToString(objectMapper.writeValueAsBytes(claims("alice", 300))) + ".";
+        assertThat(verify(verifier, "Bearer " + unsigned).error()).isEqualTo("unsupported alg");
+        // 原因文字不含 Token 內容，引號等字元不會進入 WWW-Authenticate
+        String quoted = BASE64URL.encodeToString("{\"alg\":\"x\\\", evil=\\\"1\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + BASE64URL.encodeToString(objectMapper.writeValueAsBytes(claims("alice", 300))) + ".";
+        assertThat(verify(verifier, "Bearer " + quoted).error()).isEqualTo("unsupported alg");
+    }
+
+    @Test
+    void testUnknownKidTriggersJwksReload() throws Exception {
+        KeyPair first = rsaKeyPair();
+        KeyPair rotated = rsaKeyPair();
+        Path jwks = writeJwks(rsaJwk("key-1", first));
+        JwtVerifier verifier = verifier(jwks);
+
+        // IdP 輪替金鑰後，以新 kid 簽發的 Token 觸發重新載入
+        writeJwks(rsaJwk("key-1", first), rsaJwk("key-2", rotated));
+        assertThat(verify(verifier, sign("RS256", "key-2", rotated.getPrivate(), claims("alice", 300))).valid())
+                .isTrue();
+        assertThat(verifier.stats().get("keys")).isEqualTo(List.of("key-1", "key-2"));
+    }
+
+    @Test
+    void testNotYetValidTokenIsAcceptedOnceNbfIsReached() throws Exception {
+        KeyPair rsa = rsaKeyPair();
+        JwtVerifier verifier = verifier(writeJwks(rsaJwk("rsa-1", rsa)));
+
+        Map<String, Object> early = claims("alice", 300);
+        early.put("nbf", System.currentTimeMillis() / 1000 + 60);
+        String token = sign("RS256", "rsa-1", rsa.getPrivate(), early);
+        assertThat(verify(verifier, token).error()).isEqualTo("token not yet valid");
+        assertThat(verify(verifier, "Bearer not-a-jwt").error()).isEqualTo("malformed token");
+
+        // nbf 失敗不快取；其他失敗只進入失敗快取，不佔用有效 Token 的快取
+        assertThat(verifier.stats()).containsEntry("cachedTokens", 0L).containsEntry("cachedInvalidTokens", 1L);
+        assertThat(verify(verifier, "Bearer not-a-jwt").error()).isEqualTo("malformed token");
+        assertThat(verifier.stats()).containsEntry("verifications", 2L).containsEntry("cacheHits", 1L);
+    }
+
+    @Test
+    void testUnresponsiveJwksEndpointTimesOutWithoutBlockingStart() throws Exception {
+        // 接受連線但永不回應的 IdP
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            long started = System.nanoTime();
+            JwtVerifier verifier = verifier("http://127.0.0.1:" + server.getLocalPort() + "/jwks.json",
+                    Duration.ofSeconds(2));
+            // 啟動不等待 JWKS 載入
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+
+            // 讀取逾時後放棄 (背景的第一次載入與此次各最多 2 秒)
+            assertThat(verifier.refresh()).isFalse();
+            assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(8));
+            verifier.stop();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.DynamicToolRegistry;
+import com.example.mcpserversidecar.service.OpenApiScannerService;
+import com.example.mcpserversidecar.service.ToolCatalogLoader;
+import com.example.mcpserversidecar.service.ToolCatalogSnapshot;
+import com.example.mcpserversidecar.service.ToolListCache;
+import com.example.mcpserversidecar.service.ToolMetrics;
+import com.example.mcpserversidecar.service.ToolViews;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.modelcontextprotocol.server.McpAsyncServer;
+import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ToolCatalogHealthIndicatorTest {
+
+    private static final String SPEC = """
+            {"openapi": "3.0.1", "info": {"title": "biz", "version": "1"},
+             "paths": {"/info": {"get": {"operationId": "getInfo", "summary": "資訊",
+               "responses": {"200": {"description": "OK"}}}}}}
+            """;
+
+    private static final String MAPPING = """
+            {"mappings": [{"operationId": "getInfo", "toolName": "get_info"}]}
+            """;
+
+    @TempDir
+    Path dir;
+
+    private final MockWebServer biz = new MockWebServer();
+    private final AtomicBoolean specAvailable = new AtomicBoolean();
+    private final DynamicToolRegistry registry = mock(DynamicToolRegistry.class);
+    private final McpAsyncServer server = mock(McpAsyncServer.class);
+
+    @AfterEach
+    void tearDown() throws Exception {
+        biz.shutdown();
+    }
+
+    @Test
+    void testReadinessStaysDownUntilBizServesTheSpec() throws Exception {
+        biz.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return specAvailable.get()
+                        ? new MockResponse().setHeader("Content-Type", "application/json").setBody(SPEC)
+                        : new MockResponse().setResponseCode(503);
+            }
+        });
+        biz.start();
+
+        ToolCatalogLoader loader = loader();
+        ToolCatalogHealthIndicator indicator = new ToolCatalogHealthIndicator(loader);
+
+        // 背景載入：start() 不等待 biz，失敗時持續重試且 readiness 維持 DOWN
+        loader.start();
+        await(() -> biz.getRequestCount() >= 3);
+
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThat(indicator.health().getDetails()).containsKey("lastError").containsEntry("tools", 0);
+        verify(server, never()).addTool(any());
+
+        // biz 開始提供規格後，下一次重試註冊工具並轉為 UP
+        specAvailable.set(true);
+        await(() -> indicator.health().getStatus().equals(Status.UP));
+
+        assertThat(indicator.health().getDetails()).containsEntry("tools", 1);
+        assertThat((Long) indicator.health().getDetails().get("attempts")).isGreaterThanOrEqualTo(4L);
+        verify(server).addTool(any());
+        assertThat(biz.getRequestCount()).isGreaterThanOrEqualTo(4);
+    }
+
+    @Test
+    void testMalformedMappingOnHotReloadKeepsTheCurrentTools() throws Exception {
+        specAvailable.set(true);
+        biz.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(SPEC);
+            }
+        });
+        biz.start();
+        ToolCatalogLoader loader = loader();
+        ToolCatalogHealthIndicator indicator = new ToolCatalogHealthIndicator(loader);
+        loader.start();
+        await(loader::isLoaded);
+
+        // 壞掉的 mapping (不是 JSON、缺少 operationId、檔案被刪除) 讓重新掃描失敗，不能變成空的工具清單
+        Path mapping = dir.resolve("mcp-mapping.json");
+        for (String broken : List.of("{\"mappings\": [", "{\"mappings\": [{\"toolName\": \"get_info\"}]}")) {
+            Files.writeString(mapping, broken);
+            assertThatThrownBy(() -> loader.refresh().block()).isInstanceOf(IllegalStateException.class);
+        }
+        Files.delete(mapping);
+        assertThatThrownBy(() -> loader.refresh().block()).hasMessageContaining("找不到 mapping 檔");
+
+        verify(server, never()).removeTool(anyString());
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(indicator.health().getDetails()).containsEntry("tools", 1).containsKey("lastError");
+
+        // 修復後 mapping 與上次成功的版本相同：比對基準未被覆寫，不需重新註冊，錯誤清除
+        Files.writeString(mapping, MAPPING);
+        assertThat(loader.refresh().block()).isNull();
+        assertThat(indicator.health().getDetails()).doesNotContainKey("lastError");
+        verify(server).addTool(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ToolCatalogLoader loader() throws Exception {
+        when(registry.toSpecifications(anyList())).thenAnswer(invocation -> ((List<OpenApiScannerService.ToolDefinition>)
+                invocation.getArgument(0)).stream()
+                .map(def -> AsyncToolSpecification.builder()
+                        .tool(def.tool())
+                        .callHandler((exchange, request) -> Mono.empty())
+                        .build())
+                .toList());
+        when(server.addTool(any())).thenReturn(Mono.empty());
+        when(server.removeTool(anyString())).thenReturn(Mono.empty());
+        return new ToolCatalogLoader(scanner(), registry, server,
+                new ToolCatalogSnapshot(new ObjectMapper(), ""), new ToolListCache(new ObjectMapper(), 100),
+                new ToolViews("X-MCP-Client"), Duration.ofMillis(10), Duration.ofMillis(50), Duration.ZERO);
+    }
+
+    private OpenApiScannerService scanner() throws Exception {
+        Path mapping = dir.resolve("mcp-mapping.json");
+        Files.writeString(mapping, MAPPING);
+        String baseUrl = biz.url("").toString().replaceAll("/$", "");
+        UpstreamBackends backends = new UpstreamBackends(List.of(new UpstreamBackends.Backend("biz", baseUrl,
+                baseUrl + "/v3/api-docs", true, "", HttpClient.create())), List.of());
+        OpenApiScannerService scanner = new OpenApiScannerService(WebClient.builder(), backends,
+                new ObjectMapper(), new DefaultResourceLoader(), new ToolMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(scanner, "mappingLocation", mapping.toUri().toString());
+        ReflectionTestUtils.setField(scanner, "openApiParser", "swagger");
+        return scanner;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("等待逾時").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.mcpserversidecar;
+
+import com.example.mcpserversidecar.service.ToolListCache;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolsListFilterTest {
+
+    private static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final String INITIALIZE = "{\"jsonrpc\":\"2.0\",\"id\":0,\"method\":\"initialize\",\"params\":{}}";
+    private static final String TOOLS_LIST = "{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"tools/list\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ToolListCache toolListCache;
+    private ToolsListFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        toolListCache = new ToolListCache(objectMapper, 100);
+        toolListCache.update(List.of(McpSchema.Tool.builder()
+                .name("get_user")
+                .description("查詢使用者")
+                .inputSchema(new McpSchema.JsonSchema("object", Map.of(), null, null, null, null))
+                .build()));
+        filter = new ToolsListFilter(toolListCache, objectMapper, true, 1000, Duration.ofMinutes(30));
+    }
+
+    /**
+     * 模擬 MCP Server：記錄轉送的請求與 body，可在回應中建立 session 或指定狀態碼
+     */
+    private static final class RecordingChain implements WebFilterChain {
+
+        String createSession;
+        HttpStatus status;
+        ServerWebExchange exchange;
+        String body;
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange) {
+            this.exchange = exchange;
+            return DataBufferUtils.join(exchange.getRequest().getBody())
+                    .doOnNext(buffer -> {
+                        body = buffer.toString(StandardCharsets.UTF_8);
+                        DataBufferUtils.release(buffer);
+                    })
+                    .then(Mono.defer(() -> {
+                        if (createSession != null) {
+                            exchange.getResponse().getHeaders().set(SESSION_HEADER, createSession);
+                        }
+                        if (status != null) {
+                            exchange.getResponse().setStatusCode(status);
+                        }
+                        return exchange.getResponse().setComplete();
+                    }));
+        }
+    }
+
+    private static MockServerWebExchange post(String sessionId, String body) {
+        MockServerHttpRequest.BodyBuilder builder = MockServerHttpRequest.post("/mcp")
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(body.getBytes(StandardCharsets.UTF_8).length);
+        if (sessionId != null) {
+            builder.header(SESSION_HEADER, sessionId);
+        }
+        return MockServerWebExchange.from(builder.body(body));
+    }
+
+    private RecordingChain send(MockServerWebExchange exchange) {
+        RecordingChain chain = new RecordingChain();
+        filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+        return chain;
+    }
+
+    private void open(String sessionId) {
+        RecordingChain chain = new RecordingChain();
+        chain.createSession = sessionId;
+        filter.filter(post(null, INITIALIZE), chain).block(Duration.ofSeconds(5));
+    }
+
+    private JsonNode responseOf(MockServerWebExchange exchange) throws Exception {
+        return objectMapper.readTree(exchange.getResponse().getBodyAsString().block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void testToolsListIsServedFromCacheForKnownSession() throws Exception {
+        open("s1");
+        MockServerWebExchange exchange = post("s1", TOOLS_LIST);
+
+        RecordingChain chain = send(exchange);
+
+        assertThat(chain.exchange).isNull();
+        JsonNode response = responseOf(exchange);
+        assertThat(response.get("id").asInt()).isEqualTo(7);
+        assertThat(response.get("result")).isEqualTo(objectMapper.readTree(toolListCache.page(null)));
+    }
+
+    @Test
+    void testOtherMethodIsForwardedWithOriginalBody() {
+        open("s1");
+        String call = "{\"jsonrpc\":\"2.0\",\"id\":8,\"method\":\"tools/call\",\"params\":{\"name\":\"tools/list\"}}";
+
+        RecordingChain chain = send(post("s1", call));
+
+        assertThat(chain.exchange).isNotNull();
+        assertThat(chain.body).isEqualTo(call);
+    }
+
+    @Test
+    void testBatchRequestIsForwarded() {
+        open("s1");
+        String batch = "[" + TOOLS_LIST + "]";
+
+        RecordingChain chain = send(post("s1", batch));
+
+        assertThat(chain.exchange).isNotNull();
+        assertThat(chain.body).isEqualTo(batch);
+    }
+
+    @Test
+    void testInvalidCursorReturnsJsonRpcError() throws Exception {
+        open("s1");
+        MockServerWebExchange exchange = post("s1",
+                "{\"jsonrpc\":\"2.0\",\"id\":\"a\",\"method\":\"tools/list\",\"params\":{\"cursor\":\"bogus\"}}");
+
+        RecordingChain chain = send(exchange);
+
+        assertThat(chain.exchange).isNull();
+        JsonNode response = responseOf(exchange);
+        assertThat(response.get("id").asText()).isEqualTo("a");
+        assertThat(response.get("error").get("code").asInt()).isEqualTo(-32602);
+    }
+
+    @Test
+    void testRequestWithoutSessionIsForwarded() {
+        open("s1");
+
+        RecordingChain chain = send(post(null, TOOLS_LIST));
+
+        assertThat(chain.exchange).isNotNull();
+        assertThat(chain.body).isEqualTo(TOOLS_LIST);
+    }
+
+    @Test
+    void testUnknownOrClosedSessionIsForwarded() {
+        open("s1");
+        open("s2");
+
+        // 不是由 MCP Server 建立的 session
+        assertThat(send(post("stale", TOOLS_LIST)).exchange).isNotNull();
+
+        // 客戶端以 DELETE 結束 session
+        send(MockServerWebExchange.from(MockServerHttpRequest.delete("/mcp").header(SESSION_HEADER, "s1")));
+        assertThat(send(post("s1", TOOLS_LIST)).exchange).isNotNull();
+
+        // MCP Server 以 404 拒絕的 session
+        RecordingChain rejected = new RecordingChain();
+        rejected.status = HttpStatus.NOT_FOUND;
+        filter.filter(post("s2", "{\"jsonrpc\":\"2.0\",\"id\":9,\"method\":\"ping\"}"), rejected)
+                .block(Duration.ofSeconds(5));
+        assertThat(send(post("s2", TOOLS_LIST)).exchange).isNotNull();
+    }
+
+    @Test
+    void testLargeBodyIsForwardedWithoutReading() {
+        open("s1");
+        String large = "{\"jsonrpc\":\"2.0\",\"id\":10,\"method\":\"tools/call\",\"params\":{\"text\":\""
+                + "x".repeat(ToolsListFilter.MAX_BODY_BYTES) + "\"}}";
+
+        MockServerWebExchange exchange = post("s1", large);
+
+        RecordingChain chain = send(exchange);
+
+        // 未讀取 body，原請求直接交給 MCP Server
+        assertThat(chain.exchange.getRequest()).isSameAs(exchange.getRequest());
+        assertThat(chain.body).isEqualTo(large);
+    }
+}
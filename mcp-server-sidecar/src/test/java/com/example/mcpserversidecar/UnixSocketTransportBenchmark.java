@@ -0,0 +1,102 @@
+package com.example.mcpserversidecar;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unix domain socket 與 TCP loopback 的延遲/吞吐量比較。
+ *
+ * 以本地 stub server (同時監聽 TCP 與 UDS，回傳與 calculate_sum 相近的小型 JSON) 模擬 biz，
+ * 分別以循序呼叫量測延遲分佈、以 64 並行量測吞吐量。
+ *
+ * 執行方式: mvn test -Dtest=UnixSocketTransportBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class UnixSocketTransportBenchmark {
+
+    private static final String BODY = "{\"result\":3,\"operation\":\"addition\"}";
+    private static final int WARMUP = 2_000;
+    private static final int SEQUENTIAL = 10_000;
+    private static final int CONCURRENT = 50_000;
+    private static final int CONCURRENCY = 64;
+
+    @Test
+    void compareLoopbackTcpAndUnixSocket() throws Exception {
+        assumeTrue(LoopResources.hasNativeSupport(), "需要 Netty native transport (epoll/kqueue)");
+
+        Path socket = Files.createTempDirectory("mcp-uds").resolve("biz.sock");
+        DisposableServer tcpServer = stubServer().port(0).bindNow();
+        DisposableServer udsServer = stubServer()
+                .bindAddress(() -> new DomainSocketAddress(socket.toString()))
+                .bindNow();
+
+        try {
+            HttpClient tcp = client().baseUrl("http://127.0.0.1:" + tcpServer.port());
+            // 與 UpstreamBackends 相同以相對 URI 送出；絕對 URI 會讓 reactor-netty 忽略 remoteAddress
+            HttpClient uds = client()
+                    .remoteAddress(() -> new DomainSocketAddress(socket.toString()));
+
+            run("TCP loopback", tcp);
+            run("Unix socket ", uds);
+        } finally {
+            tcpServer.disposeNow();
+            udsServer.disposeNow();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private static HttpServer stubServer() {
+        return HttpServer.create()
+                .route(routes -> routes.get("/api/calculate",
+                        (request, response) -> response.header("Content-Type", "application/json")
+                                .sendString(Mono.just(BODY))));
+    }
+
+    private static HttpClient client() {
+        return HttpClient.create(ConnectionProvider.builder("benchmark").maxConnections(CONCURRENCY).build());
+    }
+
+    private static void run(String label, HttpClient client) {
+        call(client, WARMUP, 1);
+
+        long[] latencies = new long[SEQUENTIAL];
+        for (int i = 0; i < SEQUENTIAL; i++) {
+            long start = System.nanoTime();
+            call(client, 1, 1);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+
+        long start = System.nanoTime();
+        call(client, CONCURRENT, CONCURRENCY);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s  p50=%6.1fµs  p99=%6.1fµs  吞吐量=%,.0f req/s (並行 %d)%n",
+                label,
+                latencies[SEQUENTIAL / 2] / 1e3,
+                latencies[(int) (SEQUENTIAL * 0.99)] / 1e3,
+                CONCURRENT / seconds,
+                CONCURRENCY);
+    }
+
+    private static void call(HttpClient client, int count, int concurrency) {
+        Flux.range(0, count)
+                .flatMap(i -> client.get().uri("/api/calculate").responseContent().aggregate().asString(),
+                        concurrency)
+                .blockLast();
+    }
+}
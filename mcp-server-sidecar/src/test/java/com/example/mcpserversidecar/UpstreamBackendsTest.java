@@ -0,0 +1,51 @@
+package com.example.mcpserversidecar;
+
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UpstreamBackendsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testUnixSocketBackendConnectsThroughSocket() {
+        assumeTrue(LoopResources.hasNativeSupport(), "需要 Netty native transport (epoll/kqueue)");
+        String socket = dir.resolve("biz.sock").toString();
+        DisposableServer server = HttpServer.create()
+                .bindAddress(() -> new DomainSocketAddress(socket))
+                .route(routes -> routes.get("/api/calculate", (request, response) ->
+                        response.sendString(Mono.just(request.uri() + " " + request.requestHeaders().get("Host")))))
+                .bindNow();
+        try {
+            // 與 UpstreamHttpConfig 的 Unix socket 模式相同：連線位址由 remoteAddress 決定，URL 只提供路徑
+            UpstreamBackends.Backend backend = new UpstreamBackends.Backend("biz", "http://localhost",
+                    "http://localhost/v3/api-docs", true, "",
+                    HttpClient.create().remoteAddress(() -> new DomainSocketAddress(socket)), null, true);
+
+            String body = backend.webClient(WebClient.builder()).get()
+                    .uri(URI.create(backend.baseUrl() + "/api/calculate?a=1&b=%202"))
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(Duration.ofSeconds(5));
+
+            assertThat(body).isEqualTo("/api/calculate?a=1&b=%202 localhost");
+        } finally {
+            server.disposeNow();
+        }
+    }
+}
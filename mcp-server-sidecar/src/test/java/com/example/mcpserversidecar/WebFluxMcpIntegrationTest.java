@@ -198,7 +198,7 @@ public class WebFluxMcpIntegrationTest {
                                         .filter(l -> l.contains("\"id\":3"))
                                         .blockFirst(Duration.ofSeconds(10));
 
-                        assertThat(callResponse).isNotNull().contains("result=3");
+                        assertThat(callResponse).isNotNull().contains("\\\"result\\\": 3");
 
                         // --- TOKEN FORWARDING VERIFICATION ---
                         // Take the requests from mock server
@@ -0,0 +1,117 @@
+package com.example.mcpserversidecar.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MS = 1_000_000;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueue, Duration queueTimeout) {
+        return new AdaptiveConcurrencyLimiter(new ToolMetrics(registry), true, initialLimit, 2, 100, maxQueue,
+                queueTimeout, 1.5, 0.2);
+    }
+
+    @Test
+    void testLimitShrinksWhenLatencyRisesAndRecovers() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 10, Duration.ofMillis(50));
+
+        // 穩定的 10ms 延遲且用滿上限時逐步放大
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample("biz", 10 * MS, 20, false);
+        }
+        int steady = limiter.limit("biz");
+        assertThat(steady).isGreaterThan(20);
+
+        // 延遲升到 50ms：短期 RTT 超過長期基準的 1.5 倍，上限縮小
+        for (int i = 0; i < 30; i++) {
+            limiter.onSample("biz", 50 * MS, steady, false);
+        }
+        int overloaded = limiter.limit("biz");
+        assertThat(overloaded).isLessThan(steady / 2);
+
+        // 過載訊號 (503/逾時) 直接乘以 0.9
+        limiter.onSample("biz", 50 * MS, overloaded, true);
+        assertThat(limiter.limit("biz")).isLessThan(overloaded);
+
+        // 延遲回落後再次放大
+        int before = limiter.limit("biz");
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample("biz", 10 * MS, limiter.limit("biz"), false);
+        }
+        assertThat(limiter.limit("biz")).isGreaterThan(before);
+        assertThat(registry.get("mcp.upstream.concurrency.limit").tag("backend", "biz").gauge().value())
+                .isEqualTo(limiter.limit("biz"));
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenUnderused() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 10, Duration.ofMillis(50));
+
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample("biz", 10 * MS, 1, false);
+        }
+
+        assertThat(limiter.limit("biz")).isEqualTo(20);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExcessCallsQueueThenAreRejected() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, Duration.ofMillis(100));
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        limiter.execute("biz", first.asMono()).subscribe();
+        limiter.execute("biz", second.asMono()).subscribe();
+
+        // 上限 2 已用滿：第三個排隊，第四個因佇列已滿立即拒絕
+        Sinks.One<String> queuedResult = Sinks.one();
+        limiter.execute("biz", Mono.just("queued")).subscribe(queuedResult::tryEmitValue);
+        assertThatThrownBy(() -> limiter.execute("biz", Mono.just("rejected")).block(Duration.ofMillis(50)))
+                .isInstanceOf(AdaptiveConcurrencyLimiter.LimitExceededException.class);
+
+        // 排隊中的呼叫在額度釋出時送出
+        first.tryEmitValue("done");
+        assertThat(queuedResult.asMono().block(Duration.ofSeconds(1))).isEqualTo("queued");
+
+        // 等不到額度的呼叫於 queue-timeout 後拒絕
+        Sinks.One<String> third = Sinks.one();
+        limiter.execute("biz", third.asMono()).subscribe();
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> limiter.execute("biz", Mono.just("late")).block())
+                .isInstanceOf(AdaptiveConcurrencyLimiter.LimitExceededException.class);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(Duration.ofMillis(90).toNanos());
+
+        Map<String, Object> stats = (Map<String, Object>) limiter.stats().get("biz");
+        assertThat(stats).containsEntry("inFlight", 2).containsEntry("queued", 0).containsEntry("rejected", 2L);
+        assertThat(registry.get("mcp.upstream.concurrency.rejected").tag("backend", "biz").counter().count())
+                .isEqualTo(2);
+
+        second.tryEmitValue("done");
+        third.tryEmitValue("done");
+        assertThat(limiter.execute("biz", Mono.just("after")).block()).isEqualTo("after");
+    }
+
+    @Test
+    void testCancelledCallReleasesItsSlot() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 1, Duration.ofMillis(100));
+
+        // 例如 hedge 落敗被取消：歸還額度但不產生延遲樣本
+        for (int i = 0; i < 5; i++) {
+            limiter.execute("biz", Mono.never()).subscribe().dispose();
+        }
+
+        assertThat(limiter.execute("biz", Mono.just("ok")).block()).isEqualTo("ok");
+        assertThat(limiter.limit("biz")).isEqualTo(2);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ArgumentValidatorTest {
+
+    private static final McpSchema.JsonSchema CALCULATE = new McpSchema.JsonSchema("object",
+            Map.of("a", Map.of("type", "integer", "format", "int32"),
+                    "b", Map.of("type", "integer", "format", "int32")),
+            List.of("a", "b"), true, null, null);
+
+    @Test
+    void testCoercesNumericStrings() {
+        ArgumentValidator validator = ArgumentValidator.compile(CALCULATE);
+
+        ArgumentValidator.Result result = validator.validate(Map.of("a", "42", "b", 8.0));
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.coerced()).isTrue();
+        assertThat(result.arguments()).containsEntry("a", 42L).containsEntry("b", 8L);
+    }
+
+    @Test
+    void testReportsTypeAndRequiredViolations() {
+        ArgumentValidator validator = ArgumentValidator.compile(CALCULATE);
+
+        ArgumentValidator.Result result = validator.validate(Map.of("a", "forty-two"));
+
+        assertThat(result.isValid()).isFalse();
+        assertThat(result.violations()).extracting(ArgumentValidator.Violation::field, ArgumentValidator.Violation::rule)
+                .containsExactlyInAnyOrder(
+                        tuple("a", "type"),
+                        tuple("b", "required"));
+        assertThat(validator.validate(Map.of("a", 1, "b", 3_000_000_000L)).violations())
+                .extracting(ArgumentValidator.Violation::rule).containsExactly("format");
+    }
+
+    @Test
+    void testValidatesNestedSchemasAndDefs() {
+        Map<String, Object> line = Map.of("type", "object",
+                "properties", Map.of(
+                        "sku", Map.of("type", "string", "pattern", "^[A-Z]{3}-\\d+$"),
+                        "quantity", Map.of("type", "integer", "minimum", 1),
+                        "parent", Map.of("$ref", "#/$defs/Line")),
+                "required", List.of("sku"));
+        McpSchema.JsonSchema schema = new McpSchema.JsonSchema("object",
+                Map.of("status", Map.of("type", "string", "enum", List.of("OPEN", "CLOSED")),
+                        "lines", Map.of("type", "array", "items", Map.of("$ref", "#/$defs/Line"))),
+                null, true, Map.of("Line", line), null);
+        ArgumentValidator validator = ArgumentValidator.compile(schema);
+
+        ArgumentValidator.Result ok = validator.validate(Map.of("status", "OPEN",
+                "lines", Map.of("sku", "ABC-1", "quantity", "2", "parent", Map.of("sku", "ABC-0"))));
+        assertThat(ok.isValid()).isTrue();
+        assertThat(ok.arguments().get("lines")).isEqualTo(List.of(
+                Map.of("sku", "ABC-1", "quantity", 2L, "parent", Map.of("sku", "ABC-0"))));
+
+        ArgumentValidator.Result bad = validator.validate(Map.of("status", "PENDING",
+                "lines", List.of(Map.of("sku", "abc", "quantity", 0, "parent", Map.of()))));
+        assertThat(bad.violations()).extracting(ArgumentValidator.Violation::field)
+                .containsExactlyInAnyOrder("status", "lines[0].sku", "lines[0].quantity", "lines[0].parent.sku");
+    }
+
+    @Test
+    void testNumericEnumComparesByValue() {
+        McpSchema.JsonSchema schema = new McpSchema.JsonSchema("object",
+                Map.of("page", Map.of("type", "integer", "enum", List.of(1, 2, 3)),
+                        "ratio", Map.of("type", "number", "enum", List.of(0.5, 2)),
+                        "code", Map.of("enum", List.of(1, "A"))),
+                null, true, null, null);
+        ArgumentValidator validator = ArgumentValidator.compile(schema);
+
+        // 轉型後的 Long 2、Double 2.0 與 schema 中的 Integer 2 相同
+        assertThat(validator.validate(Map.of("page", "2", "ratio", 2.0, "code", 1.0)).isValid()).isTrue();
+        assertThat(validator.validate(Map.of("ratio", new BigDecimal("0.50"))).isValid()).isTrue();
+        // 未指定 type 時不轉型，字串 "1" 不等於數值 1
+        assertThat(validator.validate(Map.of("page", 4, "code", "1")).violations())
+                .extracting(ArgumentValidator.Violation::field, ArgumentValidator.Violation::rule)
+                .containsExactlyInAnyOrder(tuple("page", "enum"), tuple("code", "enum"));
+    }
+
+    @Test
+    void testUntypedSchemaAcceptsAnyValue() {
+        // SchemaCompiler 對 {}、缺少 Schema 與無法解析的 $ref 不指定 type
+        McpSchema.JsonSchema schema = new McpSchema.JsonSchema("object",
+                Map.of("payload", Map.of(), "note", Map.of("description", "任意內容")),
+                null, true, null, null);
+        Map<String, Object> payload = Map.of("items", List.of(1, 2), "nested", Map.of("a", true));
+
+        ArgumentValidator.Result result = ArgumentValidator.compile(schema)
+                .validate(Map.of("payload", payload, "note", List.of("x")));
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.coerced()).isFalse();
+        assertThat(result.arguments()).containsEntry("payload", payload).containsEntry("note", List.of("x"));
+    }
+
+    @Test
+    void testUndeclaredArgumentsPassThrough() {
+        ArgumentValidator validator = ArgumentValidator.compile(CALCULATE);
+        Map<String, Object> arguments = Map.of("a", 1, "b", 2, "extra", "x");
+
+        ArgumentValidator.Result result = validator.validate(arguments);
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.coerced()).isFalse();
+        assertThat(result.arguments()).isSameAs(arguments);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.UpstreamBackends;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 冷啟動時間量測：數千個 operation 的 OpenAPI 規格，比較完整掃描 (下載 + OpenAPIV3Parser + 轉換)
+ * 與讀取工具目錄快照。每種方式各以全新的 JVM 狀態前 (第一次) 與暖機後的中位數呈現。
+ *
+ * 執行方式: mvn test -Dtest=CatalogStartupBenchmark -Dbenchmark=true [-Doperations=3000]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CatalogStartupBenchmark {
+
+    private static final int OPERATIONS = Integer.getInteger("operations", 3000);
+    private static final int RUNS = 5;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void compareFullScanAndSnapshot() throws Exception {
+        Path mapping = dir.resolve("mcp-mapping.json");
+        Files.writeString(mapping, objectMapper.writeValueAsString(mapping()));
+        String spec = objectMapper.writeValueAsString(spec());
+
+        try (MockWebServer server = new MockWebServer()) {
+            for (int i = 0; i <= RUNS; i++) {
+                server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(spec));
+            }
+            server.start();
+
+            String baseUrl = server.url("").toString().replaceAll("/$", "");
+            UpstreamBackends backends = new UpstreamBackends(List.of(new UpstreamBackends.Backend("biz", baseUrl,
+                    baseUrl + "/v3/api-docs", true, "", HttpClient.create())), List.of());
+            OpenApiScannerService scanner = new OpenApiScannerService(WebClient.builder(), backends,
+                    objectMapper, new DefaultResourceLoader(), new ToolMetrics(new SimpleMeterRegistry()));
+            ReflectionTestUtils.setField(scanner, "mappingLocation", mapping.toUri().toString());
+
+            long[] scan = new long[RUNS + 1];
+            List<OpenApiScannerService.ToolDefinition> tools = null;
+            for (int i = 0; i <= RUNS; i++) {
+                long start = System.nanoTime();
+                tools = scanner.scanAndMap().block();
+                scan[i] = System.nanoTime() - start;
+            }
+
+            Path file = dir.resolve("tool-catalog.json.gz");
+            ToolCatalogSnapshot store = new ToolCatalogSnapshot(objectMapper, file.toString());
+            store.save(new ToolCatalogSnapshot.Snapshot(ToolCatalogSnapshot.FORMAT_VERSION, scanner.mappingHash(),
+                    scanner.baselines(), scanner.getBackendSettings(), tools));
+
+            long[] load = new long[RUNS + 1];
+            for (int i = 0; i <= RUNS; i++) {
+                long start = System.nanoTime();
+                store.load(scanner.currentMappingHash()).orElseThrow();
+                load[i] = System.nanoTime() - start;
+            }
+
+            System.out.println("========================================");
+            System.out.printf("operations: %d, 工具數: %d, 規格大小: %,d bytes, 快照大小: %,d bytes%n",
+                    OPERATIONS, tools.size(), spec.length(), Files.size(file));
+            System.out.printf("完整掃描  第一次: %6d ms, 暖機後中位數: %6d ms%n", scan[0] / 1_000_000, median(scan));
+            System.out.printf("讀取快照  第一次: %6d ms, 暖機後中位數: %6d ms%n", load[0] / 1_000_000, median(load));
+            System.out.println("========================================");
+        }
+    }
+
+    private static long median(long[] samples) {
+        long[] warm = java.util.Arrays.copyOfRange(samples, 1, samples.length);
+        java.util.Arrays.sort(warm);
+        return warm[warm.length / 2] / 1_000_000;
+    }
+
+    private ObjectNode spec() {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("openapi", "3.0.1");
+        root.putObject("info").put("title", "benchmark").put("version", "1.0");
+        ObjectNode paths = root.putObject("paths");
+        for (int i = 0; i < OPERATIONS; i++) {
+            ObjectNode op = paths.putObject("/api/resource" + i + "/{id}").putObject("get");
+            op.put("operationId", "op" + i);
+            op.put("summary", "查詢資源 " + i);
+            ArrayNode params = op.putArray("parameters");
+            params.addObject().put("name", "id").put("in", "path").put("required", true)
+                    .putObject("schema").put("type", "string");
+            params.addObject().put("name", "limit").put("in", "query")
+                    .putObject("schema").put("type", "integer");
+            ObjectNode schema = op.putObject("responses").putObject("200").put("description", "OK")
+                    .putObject("content").putObject("application/json").putObject("schema");
+            schema.put("type", "object");
+            ObjectNode props = schema.putObject("properties");
+            props.putObject("id").put("type", "string");
+            props.putObject("name").put("type", "string");
+            props.putObject("amount").put("type", "number");
+        }
+        return root;
+    }
+
+    private ObjectNode mapping() {
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode mappings = root.putArray("mappings");
+        for (int i = 0; i < OPERATIONS; i++) {
+            ObjectNode m = mappings.addObject();
+            m.put("operationId", "op" + i);
+            m.put("toolName", "tool_" + i);
+            m.put("description", "工具 " + i);
+            m.putObject("parameters").put("id", "資源識別碼");
+        }
+        return root;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 圖片回應處理的 heap 量測：100 個並行的 get_manga_image 呼叫，比較舊版 (join + byte[] + encodeToString)
+ * 與串流 Base64 編碼。heap 峰值受 GC 時機影響 (兩者最後都持有 100 份 Base64 字串)，另列出總配置量作為穩定的比較基準。
+ *
+ * 執行方式: mvn test -Dtest=ImageResponseBenchmark -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ImageResponseBenchmark {
+
+    private static final int CONCURRENCY = 100;
+    private static final int IMAGE_BYTES = 2 * 1024 * 1024; // 2MB
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+
+    @Test
+    void comparePeakHeap() {
+        ToolResponseHandler handler = new ToolResponseHandler();
+
+        // 暖機
+        run(response -> legacyHandle(response));
+        run(response -> handler.handle(response, ToolResponseHandler.ResponsePolicy.DEFAULT));
+
+        long[] legacy = run(response -> legacyHandle(response));
+        long[] streaming = run(response -> handler.handle(response, ToolResponseHandler.ResponsePolicy.DEFAULT));
+        long[] chunked = run(response -> handler.handle(withoutContentLength(response),
+                ToolResponseHandler.ResponsePolicy.DEFAULT));
+
+        System.out.println("========================================");
+        System.out.printf("圖片大小: %d bytes, 並行數: %d%n", IMAGE_BYTES, CONCURRENCY);
+        System.out.printf("舊版 (join + byte[] + encodeToString) heap 峰值: %,d MB, 總配置: %,d MB%n",
+                legacy[0] / 1024 / 1024, legacy[1] / 1024 / 1024);
+        System.out.printf("串流 Base64 編碼 heap 峰值:              %,d MB, 總配置: %,d MB%n",
+                streaming[0] / 1024 / 1024, streaming[1] / 1024 / 1024);
+        System.out.printf("串流 Base64 編碼 (無 Content-Length) heap 峰值: %,d MB, 總配置: %,d MB%n",
+                chunked[0] / 1024 / 1024, chunked[1] / 1024 / 1024);
+        System.out.println("========================================");
+    }
+
+    /**
+     * @return {heap 峰值增量, 所有執行緒的配置量}
+     */
+    private long[] run(Function<ClientResponse, Mono<McpSchema.CallToolResult>> handler) {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+        long baseline = heapPools.stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long allocatedBefore = allocatedBytes();
+
+        // 收集全部結果，模擬 100 個呼叫同時持有回應直到送出
+        List<McpSchema.CallToolResult> results = Flux.range(0, CONCURRENCY)
+                .flatMap(i -> handler.apply(imageResponse()), CONCURRENCY)
+                .collectList()
+                .block();
+
+        long allocated = allocatedBytes() - allocatedBefore;
+        long peak = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        if (results == null || results.size() != CONCURRENCY) {
+            throw new IllegalStateException("結果數量不正確");
+        }
+        return new long[] {Math.max(0, peak - baseline), allocated};
+    }
+
+    /**
+     * 目前存活執行緒的累計配置量 (parallel scheduler 的執行緒於暖機時已建立)
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return Arrays.stream(threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                .filter(bytes -> bytes > 0)
+                .sum();
+    }
+
+    private ClientResponse imageResponse() {
+        Flux<DataBuffer> body = Flux.range(0, IMAGE_BYTES / CHUNK_BYTES)
+                .publishOn(Schedulers.parallel())
+                .map(i -> factory.allocateBuffer(CHUNK_BYTES).write(chunk));
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "image/png")
+                .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(IMAGE_BYTES))
+                .body(body)
+                .build();
+    }
+
+    private static ClientResponse withoutContentLength(ClientResponse response) {
+        return response.mutate().headers(headers -> headers.remove(HttpHeaders.CONTENT_LENGTH)).build();
+    }
+
+    /**
+     * 串流編碼前 (ADR-001) 的圖片處理方式
+     */
+    private Mono<McpSchema.CallToolResult> legacyHandle(ClientResponse response) {
+        return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class))
+                .map(dataBuffer -> {
+                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
+                    dataBuffer.read(bytes);
+                    DataBufferUtils.release(dataBuffer);
+                    String base64 = Base64.getEncoder().encodeToString(bytes);
+                    @SuppressWarnings("deprecation")
+                    var imageContent = new McpSchema.ImageContent(null, null, base64, "image/png");
+                    return McpSchema.CallToolResult.builder().addContent(imageContent).build();
+                });
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightCoalescerTest {
+
+    @Test
+    void testConcurrentIdenticalCallsShareOneUpstream() {
+        InFlightCoalescer coalescer = new InFlightCoalescer();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Sinks.One<McpSchema.CallToolResult> upstream = Sinks.one();
+
+        Mono<McpSchema.CallToolResult> first = coalescer.execute("k",
+                () -> upstream.asMono().doOnSubscribe(s -> upstreamCalls.incrementAndGet()));
+        Mono<McpSchema.CallToolResult> second = coalescer.execute("k",
+                () -> upstream.asMono().doOnSubscribe(s -> upstreamCalls.incrementAndGet()));
+
+        var firstResult = first.toFuture();
+        var secondResult = second.toFuture();
+        upstream.tryEmitValue(McpSchema.CallToolResult.builder().addTextContent("ok").build());
+
+        assertThat(firstResult.join()).isSameAs(secondResult.join());
+        assertThat(upstreamCalls.get()).isEqualTo(1);
+        assertThat(coalescer.stats()).containsEntry("coalescedCalls", 1L).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void testOneSubscriberCancellingDoesNotCancelOthers() {
+        InFlightCoalescer coalescer = new InFlightCoalescer();
+        AtomicInteger cancelled = new AtomicInteger();
+        Sinks.One<McpSchema.CallToolResult> upstream = Sinks.one();
+
+        Disposable leaving = coalescer.execute("k", () -> upstream.asMono().doOnCancel(cancelled::incrementAndGet))
+                .subscribe();
+        var staying = coalescer.execute("k", () -> upstream.asMono()).toFuture();
+
+        leaving.dispose();
+        upstream.tryEmitValue(McpSchema.CallToolResult.builder().addTextContent("ok").build());
+
+        assertThat(staying.join()).isNotNull();
+        assertThat(cancelled.get()).isZero();
+    }
+
+    @Test
+    void testCompletedCallIsNotReused() {
+        InFlightCoalescer coalescer = new InFlightCoalescer();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            coalescer.execute("k", () -> Mono.fromSupplier(() -> {
+                upstreamCalls.incrementAndGet();
+                return McpSchema.CallToolResult.builder().addTextContent("ok").build();
+            })).block(Duration.ofSeconds(1));
+        }
+
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+    }
+}
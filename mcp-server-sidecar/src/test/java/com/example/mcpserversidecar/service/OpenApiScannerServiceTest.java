@@ -0,0 +1,202 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.UpstreamBackends;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenApiScannerServiceTest {
+
+    private static final String SPEC = """
+            {"openapi": "3.0.1", "info": {"title": "%s", "version": "1"},
+             "paths": {"/info": {"get": {"operationId": "getInfo", "summary": "資訊",
+               "responses": {"200": {"description": "OK"}}}}}}
+            """;
+
+    private static final String MAPPING = """
+            {"mappings": [{"operationId": "getInfo", "toolName": "get_info"}],
+             "backends": {
+               "erp": {"circuitBreaker": {"failureRateThreshold": 30},
+                       "mappings": [{"operationId": "getInfo", "toolName": "get_info"}]},
+               "hr": {"mappings": [{"operationId": "getInfo", "toolName": "get_info"}]}}}
+            """;
+
+    @TempDir
+    Path dir;
+
+    private final MockWebServer crm = new MockWebServer();
+    private final MockWebServer erp = new MockWebServer();
+    private final MockWebServer hr = new MockWebServer();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        crm.start();
+        erp.start();
+        hr.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        crm.shutdown();
+        erp.shutdown();
+        hr.shutdown();
+    }
+
+    private OpenApiScannerService scanner() throws Exception {
+        Path mapping = dir.resolve("mcp-mapping.json");
+        Files.writeString(mapping, MAPPING);
+        UpstreamBackends backends = new UpstreamBackends(List.of(
+                backend("crm", crm, ""), backend("erp", erp, ""), backend("hr", hr, "hr_")), List.of());
+        OpenApiScannerService scanner = new OpenApiScannerService(WebClient.builder(), backends,
+                new ObjectMapper(), new DefaultResourceLoader(), new ToolMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(scanner, "mappingLocation", mapping.toUri().toString());
+        ReflectionTestUtils.setField(scanner, "openApiParser", "swagger");
+        return scanner;
+    }
+
+    private static UpstreamBackends.Backend backend(String name, MockWebServer server, String toolPrefix) {
+        String baseUrl = server.url("").toString().replaceAll("/$", "");
+        return new UpstreamBackends.Backend(name, baseUrl, baseUrl + "/v3/api-docs", true, toolPrefix,
+                HttpClient.create());
+    }
+
+    private static MockResponse spec(String title) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(SPEC.formatted(title));
+    }
+
+    @Test
+    void testMergesBackendsWithCollisionSafeNames() throws Exception {
+        crm.enqueue(spec("crm"));
+        erp.enqueue(spec("erp"));
+        hr.enqueue(spec("hr"));
+
+        OpenApiScannerService scanner = scanner();
+        List<OpenApiScannerService.ToolDefinition> tools = scanner.scanAndMap().block();
+
+        // 先設定的後端保留原名，重複的改名為 <後端>_<工具>；有前綴的不衝突
+        assertThat(tools).extracting(def -> def.tool().name())
+                .containsExactly("get_info", "erp_get_info", "hr_get_info");
+        assertThat(tools).extracting(OpenApiScannerService.ToolDefinition::backend)
+                .containsExactly("crm", "erp", "hr");
+        assertThat(scanner.getBackendSettings("erp")).containsKey("circuitBreaker");
+        assertThat(scanner.getBackendSettings("hr")).isEmpty();
+        assertThat(scanner.mappingHash()).isNotNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedBackendDoesNotFailTheScan() throws Exception {
+        crm.enqueue(spec("crm"));
+        erp.enqueue(new MockResponse().setResponseCode(503));
+        hr.enqueue(spec("hr"));
+
+        OpenApiScannerService scanner = scanner();
+        List<OpenApiScannerService.ToolDefinition> tools = scanner.scanAndMap().block();
+
+        assertThat(tools).extracting(def -> def.tool().name()).containsExactly("get_info", "hr_get_info");
+        assertThat(scanner.baselines()).containsOnlyKeys("crm", "hr");
+        // 有後端尚未掃描成功時不產生快照依據
+        assertThat(scanner.mappingHash()).isNull();
+        assertThat((Map<String, Object>) scanner.backendStatus().get("erp")).containsKey("lastError");
+
+        // 下次重新掃描時補上失敗的後端，其餘後端以 304 略過
+        crm.enqueue(new MockResponse().setResponseCode(304));
+        erp.enqueue(spec("erp"));
+        hr.enqueue(new MockResponse().setResponseCode(304));
+        assertThat(scanner.rescanIfChanged().block()).extracting(def -> def.tool().name())
+                .containsExactly("get_info", "erp_get_info", "hr_get_info");
+    }
+
+    @Test
+    void testMappingChangeAfterNotModifiedDownloadsSpecAgain() throws Exception {
+        crm.enqueue(spec("crm"));
+        erp.enqueue(spec("erp"));
+        hr.enqueue(spec("hr"));
+        OpenApiScannerService scanner = scanner();
+        scanner.scanAndMap().block();
+
+        // 規格未變更 (304) 但 mapping 已變更：記憶體不保留規格，改為完整下載後重新解析
+        Files.writeString(dir.resolve("mcp-mapping.json"), MAPPING.replace("\"get_info\"", "\"get_summary\""));
+        for (MockWebServer server : List.of(crm, erp, hr)) {
+            server.enqueue(new MockResponse().setResponseCode(304));
+        }
+        crm.enqueue(spec("crm"));
+        erp.enqueue(spec("erp"));
+        hr.enqueue(spec("hr"));
+
+        assertThat(scanner.rescanIfChanged().block()).extracting(def -> def.tool().name())
+                .containsExactly("get_summary", "erp_get_summary", "hr_get_summary");
+        assertThat(crm.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testUnreadableMappingFailsTheScanAndKeepsTheBaseline() throws Exception {
+        crm.enqueue(spec("crm"));
+        erp.enqueue(spec("erp"));
+        hr.enqueue(spec("hr"));
+        OpenApiScannerService scanner = scanner();
+        scanner.scanAndMap().block();
+        String mappingHash = scanner.mappingHash();
+
+        Path mapping = dir.resolve("mcp-mapping.json");
+        // 只有 erp 的區塊缺少 operationId，也不能讓其他後端套用新 mapping
+        Files.writeString(mapping, MAPPING.replace("{\"operationId\": \"getInfo\", \"toolName\": \"get_info\"}]},",
+                "{\"toolName\": \"get_info\"}]},"));
+        assertThatThrownBy(() -> scanner.rescanIfChanged().block()).hasMessageContaining("operationId");
+        Files.writeString(mapping, "{\"mappings\": [");
+        assertThatThrownBy(() -> scanner.rescanIfChanged().block()).isInstanceOf(IllegalStateException.class);
+        // toolViews 格式錯誤不能當作未設定 (全部工具可見)
+        Files.writeString(mapping, MAPPING.replaceFirst("\\{", "{\"toolViews\": [\"admin\"], "));
+        assertThatThrownBy(() -> scanner.rescanIfChanged().block()).hasMessageContaining("toolViews");
+
+        assertThat(scanner.mappingHash()).isEqualTo(mappingHash);
+        assertThat(scanner.getCachedTools()).hasSize(3);
+        assertThat(crm.getRequestCount()).isEqualTo(1);
+
+        // 原本的 mapping 恢復後，與比對基準相同，304 即可略過
+        Files.writeString(mapping, MAPPING);
+        for (MockWebServer server : List.of(crm, erp, hr)) {
+            server.enqueue(new MockResponse().setResponseCode(304));
+        }
+        assertThat(scanner.rescanIfChanged().block()).isNull();
+    }
+
+    @Test
+    void testSpecLargerThanDefaultBufferLimit() throws Exception {
+        // WebClient 預設只緩衝 256KB
+        crm.enqueue(spec("x".repeat(512 * 1024)));
+        erp.enqueue(spec("erp"));
+        hr.enqueue(spec("hr"));
+
+        assertThat(scanner().scanAndMap().block()).extracting(def -> def.tool().name())
+                .containsExactly("get_info", "erp_get_info", "hr_get_info");
+    }
+
+    @Test
+    void testAllBackendsFailing() throws Exception {
+        crm.enqueue(new MockResponse().setResponseCode(503));
+        erp.enqueue(new MockResponse().setResponseCode(503));
+        hr.enqueue(new MockResponse().setResponseCode(503));
+
+        OpenApiScannerService scanner = scanner();
+
+        assertThatThrownBy(() -> scanner.scanAndMap().block()).isNotNull();
+    }
+}
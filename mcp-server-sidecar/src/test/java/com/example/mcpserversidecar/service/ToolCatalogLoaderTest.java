@@ -0,0 +1,149 @@
+package com.example.mcpserversidecar.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.server.McpAsyncServer;
+import io.modelcontextprotocol.server.McpServerFeatures.AsyncToolSpecification;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ToolCatalogLoaderTest {
+
+    private final OpenApiScannerService scanner = mock(OpenApiScannerService.class);
+    private final DynamicToolRegistry registry = mock(DynamicToolRegistry.class);
+    private final McpAsyncServer server = mock(McpAsyncServer.class);
+    private final ToolCatalogSnapshot snapshot = mock(ToolCatalogSnapshot.class);
+    private final ToolListCache toolListCache = new ToolListCache(new ObjectMapper(), 100);
+    private final ToolCatalogLoader loader = new ToolCatalogLoader(scanner, registry, server, snapshot, toolListCache,
+            new ToolViews("X-MCP-Client"),
+            Duration.ofMillis(1), Duration.ofMillis(10), Duration.ZERO);
+
+    private static OpenApiScannerService.ToolDefinition def(String name, String path) {
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+                .name(name)
+                .description(name)
+                .inputSchema(new McpSchema.JsonSchema("object", Map.of(), List.of(), null, null, null))
+                .build();
+        return new OpenApiScannerService.ToolDefinition(tool, path, "GET");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubRegistration() {
+        when(scanner.getBackendSettings()).thenReturn(Map.of());
+        when(registry.toSpecifications(anyList())).thenAnswer(invocation -> ((List<OpenApiScannerService.ToolDefinition>)
+                invocation.getArgument(0)).stream()
+                .map(def -> AsyncToolSpecification.builder()
+                        .tool(def.tool())
+                        .callHandler((exchange, request) -> Mono.empty())
+                        .build())
+                .toList());
+        when(server.addTool(any())).thenReturn(Mono.empty());
+        when(server.removeTool(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void testInitialLoadRetriesUntilBizIsUp() {
+        stubRegistration();
+        when(scanner.scanAndMap()).thenReturn(
+                Mono.error(new IllegalStateException("connection refused")),
+                Mono.just(List.of(def("a", "/a"))));
+
+        loader.start();
+
+        await(loader::isLoaded);
+        assertThat(loader.status()).containsEntry("attempts", 2L).containsEntry("tools", 1);
+        verify(server).addTool(any());
+        assertThat(toolListCache.stats()).containsEntry("tools", 1);
+    }
+
+    @Test
+    void testRefreshAppliesOnlyTheDiff() {
+        stubRegistration();
+        when(scanner.scanAndMap()).thenReturn(Mono.just(List.of(def("a", "/a"), def("b", "/b"), def("c", "/c"))));
+        loader.start();
+        await(loader::isLoaded);
+
+        when(scanner.rescanIfChanged()).thenReturn(Mono.just(List.of(def("a", "/a"), def("b", "/b2"),
+                def("d", "/d"))));
+        ToolCatalogLoader.CatalogChange change = loader.refresh().block();
+
+        assertThat(change.added()).containsExactly("d");
+        assertThat(change.updated()).containsExactly("b");
+        assertThat(change.removed()).containsExactly("c");
+        InOrder order = inOrder(server);
+        order.verify(server).removeTool("c");
+        order.verify(server).addTool(argThat(spec -> spec.tool().name().equals("b")));
+        order.verify(server).addTool(argThat(spec -> spec.tool().name().equals("d")));
+        // 替換直接以同名規格取代，不先移除 (工具不會暫時從清單中消失)
+        verify(server, never()).removeTool("b");
+        verify(server, never()).removeTool("a");
+        // 替換的工具只丟棄快取與斷路器，移除的工具連同指標一起移除
+        verify(registry).evict("b");
+        verify(registry, never()).remove("b");
+        verify(registry).remove("c");
+    }
+
+    @Test
+    void testPartialFailureResyncsWithWhatWasRegistered() {
+        stubRegistration();
+        when(scanner.scanAndMap()).thenReturn(Mono.just(List.of(def("a", "/a"), def("b", "/b"))));
+        loader.start();
+        await(loader::isLoaded);
+
+        // 移除 b、新增 c 成功，新增 d 時失敗
+        when(server.addTool(argThat(spec -> spec != null && spec.tool().name().equals("d"))))
+                .thenReturn(Mono.error(new IllegalStateException("boom")));
+        when(scanner.rescanIfChanged()).thenReturn(Mono.just(List.of(def("a", "/a"), def("c", "/c"),
+                def("d", "/d"))));
+        assertThatThrownBy(() -> loader.refresh().block()).hasMessageContaining("boom");
+
+        assertThat(loader.status()).containsEntry("tools", 2).containsKey("lastError");
+        assertThat(toolListCache.stats()).containsEntry("tools", 2);
+
+        // 下次套用只補上失敗的 d，不重複移除 b 或新增 c
+        when(server.addTool(any())).thenReturn(Mono.empty());
+        ToolCatalogLoader.CatalogChange change = loader.refresh().block();
+        assertThat(change.added()).containsExactly("d");
+        assertThat(change.removed()).isEmpty();
+        assertThat(change.updated()).isEmpty();
+        assertThat(loader.status()).containsEntry("tools", 3).doesNotContainKey("lastError");
+    }
+
+    @Test
+    void testUnchangedSpecDoesNothing() {
+        stubRegistration();
+        when(scanner.scanAndMap()).thenReturn(Mono.just(List.of(def("a", "/a"))));
+        loader.start();
+        await(loader::isLoaded);
+
+        when(scanner.rescanIfChanged()).thenReturn(Mono.empty());
+
+        assertThat(loader.refresh().block()).isNull();
+        verify(server, never()).removeTool(anyString());
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("等待逾時").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.mcpserversidecar.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolCatalogSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private static OpenApiScannerService.ToolDefinition def() {
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+                .name("get_enterprise_info")
+                .description("獲取企業業務資訊")
+                .inputSchema(new McpSchema.JsonSchema("object",
+                        Map.of("level", Map.of("type", "string", "description", "業務等級")),
+                        List.of("level"), null, null, null))
+                .build();
+        return new OpenApiScannerService.ToolDefinition(tool, "/api/business/{level}", "GET",
+                Map.of("toolName", "get_enterprise_info", "cache", Map.of("ttlSeconds", 30)),
+                Map.of("level", "path"), "biz");
+    }
+
+    @Test
+    void testRoundTrip() {
+        Path file = dir.resolve("catalog/tool-catalog.json.gz");
+        ToolCatalogSnapshot store = new ToolCatalogSnapshot(new ObjectMapper(), file.toString());
+
+        store.save(new ToolCatalogSnapshot.Snapshot(ToolCatalogSnapshot.FORMAT_VERSION, "mapping-hash",
+                Map.of("biz", new OpenApiScannerService.ScanBaseline("\"v1\"", "spec-hash", "mapping-hash")),
+                Map.of("biz", Map.of("circuitBreaker", Map.of("failureRateThreshold", 50))), List.of(def())));
+
+        ToolCatalogSnapshot.Snapshot loaded = store.load("mapping-hash").orElseThrow();
+        assertThat(loaded.baselines().get("biz").specEtag()).isEqualTo("\"v1\"");
+        assertThat(loaded.tools()).containsExactly(def());
+        assertThat(loaded.backends().get("biz")).containsKey("circuitBreaker");
+    }
+
+    @Test
+    void testMappingChangeOrCorruptFileInvalidatesSnapshot() throws Exception {
+        Path file = dir.resolve("tool-catalog.json.gz");
+        ToolCatalogSnapshot store = new ToolCatalogSnapshot(new ObjectMapper(), file.toString());
+        store.save(new ToolCatalogSnapshot.Snapshot(ToolCatalogSnapshot.FORMAT_VERSION, "mapping-hash",
+                Map.of(), Map.of(), List.of(def())));
+
+        assertThat(store.load("other-mapping-hash")).isEmpty();
+
+        Files.writeString(file, "not gzip");
+        assertThat(store.load("mapping-hash")).isEmpty();
+    }
+
+    @Test
+    void testSharedComponentSchemasAreInternedOnLoad() {
+        Path file = dir.resolve("tool-catalog.json.gz");
+        ToolCatalogSnapshot store = new ToolCatalogSnapshot(new ObjectMapper(), file.toString());
+        Map<String, Object> address = Map.of("type", "object",
+                "properties", Map.of("city", Map.of("type", "string")));
+        store.save(new ToolCatalogSnapshot.Snapshot(ToolCatalogSnapshot.FORMAT_VERSION, "mapping-hash",
+                Map.of(), Map.of(), List.of(defWithAddress("create_order", address),
+                        defWithAddress("update_order", address))));
+
+        List<OpenApiScannerService.ToolDefinition> tools = store.load("mapping-hash").orElseThrow().tools();
+
+        McpSchema.JsonSchema first = tools.get(0).tool().inputSchema();
+        McpSchema.JsonSchema second = tools.get(1).tool().inputSchema();
+        assertThat(first.properties().get("address")).isEqualTo(address)
+                .isSameAs(second.properties().get("address"));
+        assertThat(first.defs().get("Address")).isSameAs(second.defs().get("Address"))
+                .isSameAs(first.properties().get("address"));
+        assertThat(first.properties()).isNotSameAs(second.properties());
+    }
+
+    @Test
+    void testFailedWriteRemovesTempFile() throws Exception {
+        Path file = dir.resolve("tool-catalog.json.gz");
+        ToolCatalogSnapshot store = new ToolCatalogSnapshot(new ObjectMapper(), file.toString());
+        Map<String, Object> unserializable = Map.of("bad", new Object());
+
+        store.save(new ToolCatalogSnapshot.Snapshot(ToolCatalogSnapshot.FORMAT_VERSION, "mapping-hash",
+                Map.of(), Map.of("biz", unserializable), List.of(def())));
+
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private static OpenApiScannerService.ToolDefinition defWithAddress(String name, Map<String, Object> address) {
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+                .name(name)
+                .description(name)
+                .inputSchema(new McpSchema.JsonSchema("object", Map.of("address", address), null, true,
+                        Map.of("Address", address), null))
+                .build();
+        return new OpenApiScannerService.ToolDefinition(tool, "/api/orders", "POST", Map.of(), Map.of(), "biz");
+    }
+
+    @Test
+    void testDisabledWhenPathIsBlank() {
+        ToolCatalogSnapshot store = new ToolCatalogSnapshot(new ObjectMapper(), "");
+
+        assertThat(store.isEnabled()).isFalse();
+        assertThat(store.load("mapping-hash")).isEmpty();
+    }
+}
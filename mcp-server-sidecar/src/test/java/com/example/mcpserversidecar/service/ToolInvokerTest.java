@@ -0,0 +1,89 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ToolInvokerTest {
+
+    private static final String BASE = "http://127.0.0.1:8080";
+
+    @Test
+    void testPathAndQueryAreEncoded() {
+        ToolInvoker invoker = ToolInvoker.compile(definition("/api/customers/{id}/orders", "GET",
+                Map.of("id", "path", "q", "query")), BASE);
+
+        Map<String, Object> args = new LinkedHashMap<>();
+        args.put("id", "a/b c");
+        args.put("q", "1+1=2&x");
+        ToolInvoker.Invocation invocation = invoker.bind(args);
+
+        assertThat(invocation.method()).isEqualTo(HttpMethod.GET);
+        assertThat(invocation.uri().toString())
+                .isEqualTo(BASE + "/api/customers/a%2Fb%20c/orders?q=1%2B1%3D2%26x");
+        assertThat(invocation.body()).isNull();
+    }
+
+    @Test
+    void testPostSplitsQueryHeaderAndBody() {
+        ToolInvoker invoker = ToolInvoker.compile(definition("/api/orders", "POST",
+                Map.of("dryRun", "query", "X-Tenant", "header", "amount", "body")), BASE);
+
+        Map<String, Object> args = new LinkedHashMap<>();
+        args.put("dryRun", true);
+        args.put("X-Tenant", "acme");
+        args.put("amount", 42);
+        args.put("remark", "undeclared");
+        ToolInvoker.Invocation invocation = invoker.bind(args);
+
+        assertThat(invocation.uri().toString()).isEqualTo(BASE + "/api/orders?dryRun=true");
+        assertThat(invocation.headers()).containsEntry("X-Tenant", "acme");
+        assertThat(invocation.body()).containsOnlyKeys("amount", "remark");
+    }
+
+    @Test
+    void testDeleteAndPutUseTheirOwnMethods() {
+        assertThat(ToolInvoker.compile(definition("/api/items/{id}", "DELETE", Map.of()), BASE)
+                .bind(Map.of("id", 7)).method()).isEqualTo(HttpMethod.DELETE);
+
+        ToolInvoker put = ToolInvoker.compile(definition("/api/items/{id}", "PUT", Map.of()), BASE);
+        ToolInvoker.Invocation invocation = put.bind(Map.of("id", 7, "name", "x"));
+        assertThat(invocation.method()).isEqualTo(HttpMethod.PUT);
+        assertThat(invocation.body()).containsOnlyKeys("name");
+        assertThat(put.isSafe()).isFalse();
+    }
+
+    @Test
+    void testArrayQueryIsRepeated() {
+        ToolInvoker invoker = ToolInvoker.compile(definition("/api/search", "GET", Map.of()), BASE);
+
+        assertThat(invoker.bind(Map.of("tag", List.of("a", "b"))).uri().toString())
+                .isEqualTo(BASE + "/api/search?tag=a&tag=b");
+    }
+
+    @Test
+    void testMissingPathParameter() {
+        ToolInvoker invoker = ToolInvoker.compile(definition("/api/items/{id}", "GET", Map.of()), BASE);
+
+        assertThatThrownBy(() -> invoker.bind(Map.of()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("id");
+    }
+
+    private static OpenApiScannerService.ToolDefinition definition(String path, String method,
+            Map<String, String> locations) {
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+                .name("test_tool")
+                .description("test")
+                .inputSchema(new McpSchema.JsonSchema("object", Map.of(), null, true, null, null))
+                .build();
+        return new OpenApiScannerService.ToolDefinition(tool, path, method, Map.of(), locations);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.mcpserversidecar.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * tools/list 每次請求的成本：比較 MCP Server 每次序列化整份 ListToolsResult，
+ * 與 ToolListCache 預先序列化後只包裝既有 bytes (不分頁與每頁 100 個工具)。
+ *
+ * 執行方式: mvn test -Dtest=ToolListBenchmark -Dbenchmark=true [-Dtools=1500]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ToolListBenchmark {
+
+    private static final int TOOLS = Integer.getInteger("tools", 1500);
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 2000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void compareSerializeEveryRequestAndPreSerialized() throws Exception {
+        List<McpSchema.Tool> tools = IntStream.range(0, TOOLS).mapToObj(ToolListBenchmark::tool).toList();
+
+        long[] bytes = new long[1];
+        long serialize = measure(() -> {
+            bytes[0] = objectMapper.writeValueAsBytes(new McpSchema.ListToolsResult(tools, null)).length;
+        });
+
+        ToolListCache single = new ToolListCache(objectMapper, 0);
+        long build = System.nanoTime();
+        single.update(tools);
+        build = System.nanoTime() - build;
+        long cachedSingle = measure(() -> write(single.page(null)));
+
+        ToolListCache paged = new ToolListCache(objectMapper, 100);
+        paged.update(tools);
+        long cachedPage = measure(() -> write(paged.page(null)));
+
+        System.out.println("========================================");
+        System.out.printf("工具數: %d, 完整結果: %,d bytes, 預先序列化耗時: %d ms%n",
+                TOOLS, bytes[0], build / 1_000_000);
+        System.out.printf("每次序列化       : %,10d ns/op%n", serialize);
+        System.out.printf("預先序列化 (不分頁): %,10d ns/op%n", cachedSingle);
+        System.out.printf("預先序列化 (100/頁): %,10d ns/op%n", cachedPage);
+        System.out.println("========================================");
+    }
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static long measure(Body body) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            body.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            body.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    /**
+     * 與 ToolsListFilter 相同：包裝既有 bytes 為 DataBuffer，不複製內容
+     */
+    private static void write(byte[] page) {
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(page);
+        DataBufferUtils.release(buffer);
+    }
+
+    private static McpSchema.Tool tool(int i) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (int p = 0; p < 6; p++) {
+            properties.put("field" + p, Map.of("type", p % 2 == 0 ? "string" : "integer",
+                    "description", "欄位 " + p + " 的說明，包含格式限制、預設值與範例 (例如 2024-01-01)"));
+        }
+        return McpSchema.Tool.builder()
+                .name("tool_" + i)
+                .description(("工具 " + i + " 查詢企業資源並回傳摘要；適用於報表與稽核情境。").repeat(8))
+                .inputSchema(new McpSchema.JsonSchema("object", properties, List.of("field0"), null, null, null))
+                .build();
+    }
+}
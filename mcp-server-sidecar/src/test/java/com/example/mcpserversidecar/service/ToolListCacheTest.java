@@ -0,0 +1,138 @@
+package com.example.mcpserversidecar.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ToolListCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static McpSchema.Tool tool(int i) {
+        return McpSchema.Tool.builder()
+                .name("tool_" + i)
+                .description("工具 " + i)
+                .inputSchema(new McpSchema.JsonSchema("object",
+                        Map.of("id", Map.of("type", "string")), List.of("id"), null, null, null))
+                .build();
+    }
+
+    private static List<String> names(JsonNode page) {
+        List<String> names = new ArrayList<>();
+        page.get("tools").forEach(tool -> names.add(tool.get("name").asText()));
+        return names;
+    }
+
+    private static List<McpSchema.Tool> tools(int count) {
+        return IntStream.range(0, count).mapToObj(ToolListCacheTest::tool).toList();
+    }
+
+    @Test
+    void testNotReadyUntilFirstUpdate() {
+        ToolListCache cache = new ToolListCache(objectMapper, 2);
+
+        assertThat(cache.isReady()).isFalse();
+        assertThat(cache.page(null)).isNull();
+    }
+
+    @Test
+    void testPagesFollowCursorsAndMatchSdkSerialization() throws Exception {
+        ToolListCache cache = new ToolListCache(objectMapper, 2);
+        List<McpSchema.Tool> tools = tools(5);
+        cache.update(tools);
+
+        List<McpSchema.Tool> collected = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            McpSchema.ListToolsResult result =
+                    objectMapper.readValue(cache.page(cursor), McpSchema.ListToolsResult.class);
+            collected.addAll(result.tools());
+            cursor = result.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(collected).containsExactlyElementsOf(tools);
+        assertThat(cache.stats()).containsEntry("pages", 3).containsEntry("served", 3L);
+
+        // 不分頁時與 SDK 序列化整份 ListToolsResult 的結果一致
+        ToolListCache single = new ToolListCache(objectMapper, 0);
+        single.update(tools);
+        JsonNode expected = objectMapper.valueToTree(new McpSchema.ListToolsResult(tools, null));
+        JsonNode page = objectMapper.readTree(single.page(null));
+        assertThat(page.get("tools")).isEqualTo(expected.get("tools"));
+        assertThat(page.has("nextCursor")).isFalse();
+    }
+
+    @Test
+    void testViewPagesContainOnlyVisibleTools() throws Exception {
+        ToolListCache cache = new ToolListCache(objectMapper, 2);
+        cache.update(tools(5));
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(Map.of(
+                        "default", List.of("tool_1", "tool_3", "tool_4"),
+                        "views", List.of(Map.of("name", "other", "clients", "other-agent", "tools", "tool_0"))),
+                tools(5).stream().map(McpSchema.Tool::name).toList());
+        ToolViews.ToolView view = views.resolve(null, null);
+
+        JsonNode first = objectMapper.readTree(cache.page(view, null));
+        assertThat(names(first)).containsExactly("tool_1", "tool_3");
+        JsonNode second = objectMapper.readTree(cache.page(view, first.get("nextCursor").asText()));
+        assertThat(names(second)).containsExactly("tool_4");
+        assertThat(second.has("nextCursor")).isFalse();
+        assertThat(cache.stats()).containsEntry("views", 1);
+    }
+
+    @Test
+    void testEmptyCatalogHasSingleEmptyPage() throws Exception {
+        ToolListCache cache = new ToolListCache(objectMapper, 2);
+        cache.update(List.of());
+
+        JsonNode page = objectMapper.readTree(cache.page(null));
+        assertThat(page.get("tools")).isEmpty();
+        assertThat(page.has("nextCursor")).isFalse();
+    }
+
+    @Test
+    void testStaleOrForgedCursorIsRejected() throws Exception {
+        ToolListCache cache = new ToolListCache(objectMapper, 2);
+        cache.update(tools(5));
+        String cursor = objectMapper.readTree(cache.page(null)).get("nextCursor").asText();
+        assertThat(cache.page(cursor)).isNotNull();
+
+        // 目錄更新後舊版本的 cursor 失效
+        cache.update(tools(4));
+        assertThatThrownBy(() -> cache.page(cursor)).isInstanceOf(ToolListCache.InvalidCursorException.class);
+        assertThatThrownBy(() -> cache.page("not-a-cursor"))
+                .isInstanceOf(ToolListCache.InvalidCursorException.class);
+        assertThatThrownBy(() -> cache.page("Mjo5OTk"))
+                .isInstanceOf(ToolListCache.InvalidCursorException.class);
+    }
+
+    @Test
+    void testCursorVersionFollowsCatalogContentAcrossInstances() throws Exception {
+        ToolListCache first = new ToolListCache(objectMapper, 2);
+        first.update(tools(5));
+        String cursor = objectMapper.readTree(first.page(null)).get("nextCursor").asText();
+
+        // 另一個副本 (或重啟後) 載入相同目錄：同一 cursor 取得同一頁
+        ToolListCache replica = new ToolListCache(objectMapper, 2);
+        replica.update(tools(5));
+        assertThat(replica.page(cursor)).isEqualTo(first.page(cursor));
+
+        // 目錄內容不同的行程即使更新次數相同也拒絕該 cursor，不會回傳錯誤的頁
+        ToolListCache other = new ToolListCache(objectMapper, 2);
+        other.update(tools(6).subList(1, 6));
+        assertThatThrownBy(() -> other.page(cursor)).isInstanceOf(ToolListCache.InvalidCursorException.class);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.mcpserversidecar.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolMetricsTest {
+
+    @Test
+    void testInstrumentRecordsOutcomeAndInFlight() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolMetrics metrics = new ToolMetrics(registry);
+        Sinks.One<McpSchema.CallToolResult> upstream = Sinks.one();
+
+        var pending = metrics.instrument("get_tool", upstream.asMono()).toFuture();
+        assertThat(registry.get("mcp.tool.inflight").tag("tool", "get_tool").gauge().value()).isEqualTo(1.0);
+
+        upstream.tryEmitValue(McpSchema.CallToolResult.builder().addTextContent("Error").isError(true).build());
+        pending.join();
+
+        assertThat(registry.get("mcp.tool.inflight").tag("tool", "get_tool").gauge().value()).isZero();
+        assertThat(registry.get("mcp.tool.calls").tags("tool", "get_tool", "outcome", "error").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void testInstrumentRecordsExceptionType() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolMetrics metrics = new ToolMetrics(registry);
+
+        metrics.instrument("get_tool", Mono.<McpSchema.CallToolResult>error(new IllegalStateException("boom")))
+                .onErrorResume(e -> Mono.empty())
+                .block();
+
+        assertThat(registry.get("mcp.tool.errors").tags("tool", "get_tool", "type", "IllegalStateException")
+                .counter().count()).isEqualTo(1);
+        assertThat(registry.get("mcp.tool.calls").tags("tool", "get_tool", "outcome", "exception").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void testMetersAreReusedAndRemovedWithTool() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolMetrics metrics = new ToolMetrics(registry);
+
+        for (int i = 0; i < 3; i++) {
+            metrics.instrument("get_tool", Mono.just(McpSchema.CallToolResult.builder().addTextContent("ok").build()))
+                    .block();
+            metrics.recordUpstreamStatus("get_tool", 200);
+        }
+        metrics.instrument("other_tool", Mono.just(McpSchema.CallToolResult.builder().addTextContent("ok").build()))
+                .block();
+
+        assertThat(registry.get("mcp.tool.calls").tags("tool", "get_tool", "outcome", "success").timer().count())
+                .isEqualTo(3);
+        assertThat(registry.get("mcp.tool.upstream.responses").tags("tool", "get_tool", "status", "200")
+                .counter().count()).isEqualTo(3);
+
+        metrics.removeTool("get_tool");
+
+        assertThat(registry.find("mcp.tool.inflight").tag("tool", "get_tool").gauge()).isNull();
+        assertThat(registry.find("mcp.tool.calls").tag("tool", "get_tool").timer()).isNull();
+        assertThat(registry.find("mcp.tool.upstream.responses").tag("tool", "get_tool").counter()).isNull();
+        assertThat(registry.find("mcp.tool.calls").tag("tool", "other_tool").timer()).isNotNull();
+    }
+
+    @Test
+    void testCallInFlightDuringRemovalDoesNotReRegisterMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ToolMetrics metrics = new ToolMetrics(registry);
+        Sinks.One<McpSchema.CallToolResult> upstream = Sinks.one();
+
+        var pending = metrics.instrument("get_tool", upstream.asMono()).toFuture();
+        metrics.removeTool("get_tool");
+
+        metrics.recordUpstreamStatus("get_tool", 200);
+        upstream.tryEmitValue(McpSchema.CallToolResult.builder().addTextContent("ok").build());
+        pending.join();
+
+        assertThat(registry.find("mcp.tool.inflight").tag("tool", "get_tool").gauge()).isNull();
+        assertThat(registry.find("mcp.tool.calls").tag("tool", "get_tool").timer()).isNull();
+        assertThat(registry.find("mcp.tool.upstream.responses").tag("tool", "get_tool").counter()).isNull();
+    }
+}
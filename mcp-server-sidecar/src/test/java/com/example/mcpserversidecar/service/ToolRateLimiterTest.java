@@ -0,0 +1,71 @@
+package com.example.mcpserversidecar.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolRateLimiterTest {
+
+    private static final long MS = 1_000_000;
+
+    private final AtomicLong clock = new AtomicLong(-5_000 * MS);
+
+    private ToolRateLimiter limiter(ToolRateLimiter.RatePolicy principalPolicy) {
+        return new ToolRateLimiter(true, principalPolicy, 1000, Duration.ofMinutes(10), clock::get);
+    }
+
+    @Test
+    void testBurstThenRefillWithRetryAfterHint() {
+        ToolRateLimiter limiter = limiter(new ToolRateLimiter.RatePolicy(10, 3));
+
+        // 突發 3 次後額度用盡，每 100ms 補充一次
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("token:a", "get_info", null)).isZero();
+        }
+        assertThat(limiter.tryAcquire("token:a", "get_info", null)).isEqualTo(100 * MS);
+
+        clock.addAndGet(40 * MS);
+        assertThat(limiter.tryAcquire("token:a", "get_info", null)).isEqualTo(60 * MS);
+        clock.addAndGet(60 * MS);
+        assertThat(limiter.tryAcquire("token:a", "get_info", null)).isZero();
+        assertThat(limiter.tryAcquire("token:a", "get_info", null)).isPositive();
+
+        // 其他呼叫者不受影響
+        assertThat(limiter.tryAcquire("token:b", "get_info", null)).isZero();
+    }
+
+    @Test
+    void testToolLimitIsPerPrincipalAndRefundsOnPrincipalLimit() {
+        ToolRateLimiter limiter = limiter(new ToolRateLimiter.RatePolicy(10, 1));
+        ToolRateLimiter.RatePolicy toolPolicy = ToolRateLimiter.RatePolicy.from(
+                Map.of("rateLimit", Map.of("requestsPerSecond", 1, "burst", 1)));
+
+        assertThat(limiter.tryAcquire("token:a", "calculate_sum", toolPolicy)).isZero();
+        // 工具上限 (每秒 1 次) 用盡，其他工具仍可使用呼叫者額度
+        assertThat(limiter.tryAcquire("token:a", "calculate_sum", toolPolicy)).isEqualTo(1_000 * MS);
+        clock.addAndGet(100 * MS);
+        assertThat(limiter.tryAcquire("token:a", "get_info", null)).isZero();
+
+        // 工具額度已補足但呼叫者上限用盡：拒絕並歸還工具額度
+        clock.addAndGet(900 * MS);
+        assertThat(limiter.tryAcquire("token:a", "get_info", null)).isZero();
+        assertThat(limiter.tryAcquire("token:a", "calculate_sum", toolPolicy)).isEqualTo(100 * MS);
+        clock.addAndGet(100 * MS);
+        assertThat(limiter.tryAcquire("token:a", "calculate_sum", toolPolicy)).isZero();
+
+        assertThat(limiter.tryAcquire("token:b", "calculate_sum", toolPolicy)).isZero();
+        assertThat(limiter.stats()).containsEntry("limitedCalls", 2L);
+    }
+
+    @Test
+    void testPolicyFromMapping() {
+        assertThat(ToolRateLimiter.RatePolicy.from(Map.of())).isNull();
+        assertThat(ToolRateLimiter.RatePolicy.from(Map.of("rateLimit", Map.of("requestsPerSecond", 0)))).isNull();
+        assertThat(ToolRateLimiter.RatePolicy.from(Map.of("rateLimit", Map.of("requestsPerSecond", 2.5))))
+                .isEqualTo(new ToolRateLimiter.RatePolicy(2.5, 3));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.mcpserversidecar.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolResilienceTest {
+
+    private static final Map<String, Object> SMALL_WINDOW = Map.of("circuitBreaker",
+            Map.of("slidingWindowSize", 4, "minimumNumberOfCalls", 4, "failureRateThreshold", 50));
+
+    private static McpSchema.CallToolResult failure() {
+        return McpSchema.CallToolResult.builder().addTextContent("Error: 500").isError(true).build();
+    }
+
+    @Test
+    void testUpstream5xxOpensBreakerAndFailsFast() {
+        ToolResilience resilience = new ToolResilience();
+        ToolResilience.ResiliencePolicy toolPolicy = ToolResilience.ResiliencePolicy.forTool(SMALL_WINDOW);
+        ToolResilience.ResiliencePolicy backendPolicy = ToolResilience.ResiliencePolicy.forBackend(Map.of());
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        for (int i = 0; i < 4; i++) {
+            McpSchema.CallToolResult result = resilience.protect("flaky", "biz", toolPolicy, backendPolicy,
+                    Mono.defer(() -> {
+                        upstreamCalls.incrementAndGet();
+                        return Mono.error(new ToolResilience.UpstreamFailureException(500, failure()));
+                    })).block();
+            // 5xx 結果原樣回傳給呼叫者
+            assertThat(result.content().get(0)).isEqualTo(new McpSchema.TextContent("Error: 500"));
+        }
+
+        McpSchema.CallToolResult rejected = resilience.protect("flaky", "biz", toolPolicy, backendPolicy,
+                Mono.fromSupplier(() -> {
+                    upstreamCalls.incrementAndGet();
+                    return McpSchema.CallToolResult.builder().addTextContent("ok").build();
+                })).block();
+
+        assertThat(rejected.isError()).isTrue();
+        assertThat(((McpSchema.TextContent) rejected.content().get(0)).text()).contains("斷路器開啟");
+        assertThat(upstreamCalls.get()).isEqualTo(4);
+        assertThat(resilience.stats()).containsEntry("rejectedByCircuitBreaker", 1L)
+                .containsEntry("stateTransitions", 1L);
+    }
+
+    @Test
+    void testOpenBackendBreakerDoesNotOpenToolBreaker() {
+        ToolResilience resilience = new ToolResilience();
+        ToolResilience.ResiliencePolicy toolPolicy = ToolResilience.ResiliencePolicy.forTool(SMALL_WINDOW);
+        ToolResilience.ResiliencePolicy backendPolicy = ToolResilience.ResiliencePolicy.forBackend(SMALL_WINDOW);
+
+        // 另一個工具的 5xx 讓後端斷路器開啟
+        for (int i = 0; i < 4; i++) {
+            resilience.protect("broken", "biz", toolPolicy, backendPolicy,
+                    Mono.error(new ToolResilience.UpstreamFailureException(500, failure()))).block();
+        }
+        assertThat(resilience.getCircuitBreakerRegistry().circuitBreaker("backend:biz").getState())
+                .isEqualTo(CircuitBreaker.State.OPEN);
+
+        for (int i = 0; i < 4; i++) {
+            McpSchema.CallToolResult rejected = resilience.protect("healthy", "biz", toolPolicy, backendPolicy,
+                    Mono.just(McpSchema.CallToolResult.builder().addTextContent("ok").build())).block();
+            assertThat(((McpSchema.TextContent) rejected.content().get(0)).text()).contains("backend:biz");
+        }
+
+        CircuitBreaker healthy = resilience.getCircuitBreakerRegistry().circuitBreaker("tool:healthy");
+        assertThat(healthy.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(healthy.getMetrics().getNumberOfFailedCalls()).isZero();
+    }
+
+    @Test
+    void testSaturatedBulkheadRejectsImmediately() {
+        ToolResilience resilience = new ToolResilience();
+        ToolResilience.ResiliencePolicy toolPolicy = ToolResilience.ResiliencePolicy.forTool(
+                Map.of("bulkhead", Map.of("maxConcurrentCalls", 1)));
+        ToolResilience.ResiliencePolicy backendPolicy = ToolResilience.ResiliencePolicy.forBackend(Map.of());
+        Sinks.One<McpSchema.CallToolResult> upstream = Sinks.one();
+
+        var inFlight = resilience.protect("slow", "biz", toolPolicy, backendPolicy, upstream.asMono()).toFuture();
+        McpSchema.CallToolResult rejected = resilience.protect("slow", "biz", toolPolicy, backendPolicy,
+                Mono.just(McpSchema.CallToolResult.builder().addTextContent("ok").build())).block();
+
+        assertThat(rejected.isError()).isTrue();
+        assertThat(((McpSchema.TextContent) rejected.content().get(0)).text()).contains("已達上限");
+
+        upstream.tryEmitValue(McpSchema.CallToolResult.builder().addTextContent("ok").build());
+        assertThat(inFlight.join().isError()).isNotEqualTo(Boolean.TRUE);
+        assertThat(resilience.stats()).containsEntry("rejectedByBulkhead", 1L);
+    }
+}
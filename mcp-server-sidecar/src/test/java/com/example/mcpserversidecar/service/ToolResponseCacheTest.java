@@ -0,0 +1,164 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.util.RequestKeys;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolResponseCacheTest {
+
+    private final ToolResponseCache.CachePolicy policy = ToolResponseCache.CachePolicy.from(
+            Map.of("cache", Map.of("ttlSeconds", 30, "maxEntries", 10)));
+
+    @Test
+    void testStoreAndHit() {
+        ToolResponseCache cache = new ToolResponseCache();
+        String key = RequestKeys.of("get_enterprise_info", Map.of("level", "vip"), "Bearer a");
+
+        assertThat(cache.lookup("get_enterprise_info", policy, key)).isNull();
+
+        cache.store("get_enterprise_info", policy, key, textResult("{\"level\":\"vip\"}"), new HttpHeaders());
+        ToolResponseCache.CachedResponse cached = cache.lookup("get_enterprise_info", policy, key);
+
+        assertThat(cached).isNotNull();
+        assertThat(cached.isFresh()).isTrue();
+        assertThat(cache.stats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void testNoStoreIsNotCached() {
+        ToolResponseCache cache = new ToolResponseCache();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("no-store");
+
+        cache.store("get_enterprise_info", policy, "k", textResult("x"), headers);
+
+        assertThat(cache.lookup("get_enterprise_info", policy, "k")).isNull();
+    }
+
+    @Test
+    void testNoCacheWithETagRequiresRevalidation() {
+        ToolResponseCache cache = new ToolResponseCache();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("no-cache");
+        headers.setETag("\"v1\"");
+
+        cache.store("get_enterprise_info", policy, "k", textResult("x"), headers);
+        ToolResponseCache.CachedResponse cached = cache.lookup("get_enterprise_info", policy, "k");
+
+        assertThat(cached).isNotNull();
+        assertThat(cached.isFresh()).isFalse();
+        assertThat(cached.etag()).isEqualTo("\"v1\"");
+
+        cache.revalidated("get_enterprise_info", policy, "k", cached, new HttpHeaders());
+        assertThat(cache.lookup("get_enterprise_info", policy, "k").isFresh()).isTrue();
+    }
+
+    @Test
+    void testRevalidationHonorsNotModifiedCacheControl() {
+        ToolResponseCache cache = new ToolResponseCache();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v1\"");
+        cache.store("get_enterprise_info", policy, "k", textResult("x"), headers);
+        ToolResponseCache.CachedResponse cached = cache.lookup("get_enterprise_info", policy, "k");
+
+        // 304 的 no-cache：仍需每次重新驗證
+        HttpHeaders noCache = new HttpHeaders();
+        noCache.setCacheControl("no-cache");
+        cache.revalidated("get_enterprise_info", policy, "k", cached, noCache);
+        assertThat(cache.lookup("get_enterprise_info", policy, "k").isFresh()).isFalse();
+
+        // 304 的 max-age 短於工具 ttl 時以 max-age 為準，並採用新的 ETag
+        HttpHeaders shortLived = new HttpHeaders();
+        shortLived.setCacheControl("max-age=5");
+        shortLived.setETag("\"v2\"");
+        cache.revalidated("get_enterprise_info", policy, "k", cached, shortLived);
+        ToolResponseCache.CachedResponse refreshed = cache.lookup("get_enterprise_info", policy, "k");
+        assertThat(refreshed.isFresh()).isTrue();
+        assertThat(refreshed.freshUntilNanos() - System.nanoTime()).isLessThanOrEqualTo(5_000_000_000L);
+        assertThat(refreshed.etag()).isEqualTo("\"v2\"");
+
+        // 304 的 no-store：移除項目
+        HttpHeaders noStore = new HttpHeaders();
+        noStore.setCacheControl("no-store");
+        cache.revalidated("get_enterprise_info", policy, "k", refreshed, noStore);
+        assertThat(cache.lookup("get_enterprise_info", policy, "k")).isNull();
+    }
+
+    @Test
+    void testErrorResultIsNotCached() {
+        ToolResponseCache cache = new ToolResponseCache();
+        McpSchema.CallToolResult error = McpSchema.CallToolResult.builder()
+                .addTextContent("Error: boom")
+                .isError(true)
+                .build();
+
+        cache.store("get_enterprise_info", policy, "k", error, new HttpHeaders());
+
+        assertThat(cache.lookup("get_enterprise_info", policy, "k")).isNull();
+    }
+
+    @Test
+    void testParseCacheControl() {
+        ToolResponseCache.CacheDirectives directives = ToolResponseCache.CacheDirectives
+                .parse("public, max-age=5, no-cache");
+
+        assertThat(directives.noCache()).isTrue();
+        assertThat(directives.noStore()).isFalse();
+        assertThat(directives.maxAgeSeconds()).isEqualTo(5);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testMaxEntriesStillAppliesWhenMaxBytesIsSet() {
+        ToolResponseCache cache = new ToolResponseCache();
+        ToolResponseCache.CachePolicy bounded = ToolResponseCache.CachePolicy.from(
+                Map.of("cache", Map.of("ttlSeconds", 30, "maxEntries", 3, "maxBytes", 1048576)));
+
+        for (int i = 0; i < 20; i++) {
+            cache.store("get_enterprise_info", bounded, "k" + i, textResult("x"), new HttpHeaders());
+        }
+
+        // 小項目遠低於 maxBytes，仍須依 maxEntries 淘汰 (Caffeine 非同步維護，等待淘汰完成)
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (((Map<String, Long>) cache.stats().get("entries")).get("get_enterprise_info") > 3) {
+            assertThat(System.nanoTime()).as("等待淘汰逾時").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    void testRequestKeyIsOrderIndependentAndAuthScoped() {
+        String k1 = RequestKeys.of("calculate_sum", Map.of("a", 1, "b", 2), "Bearer x");
+        String k2 = RequestKeys.of("calculate_sum", Map.of("b", 2, "a", 1), "Bearer x");
+        String k3 = RequestKeys.of("calculate_sum", Map.of("a", 1, "b", 2), "Bearer y");
+
+        assertThat(k1).isEqualTo(k2);
+        assertThat(k1).isNotEqualTo(k3);
+        assertThat(k1).doesNotContain("Bearer");
+    }
+
+    @Test
+    void testRequestKeyCannotBeForgedWithSeparatorsInValues() {
+        String forged = RequestKeys.of("lookup", Map.of("a", "1\",b=\"2"), null);
+        String genuine = RequestKeys.of("lookup", Map.of("a", "1", "b", "2"), null);
+        assertThat(forged).isNotEqualTo(genuine);
+
+        // key 內的分隔符號、字串與數字、跳脫字元本身也不能互相冒充
+        assertThat(RequestKeys.of("lookup", Map.of("a=1,b", 2), null))
+                .isNotEqualTo(RequestKeys.of("lookup", Map.of("a", 1, "b", 2), null));
+        assertThat(RequestKeys.of("lookup", Map.of("a", "1"), null))
+                .isNotEqualTo(RequestKeys.of("lookup", Map.of("a", 1), null));
+        assertThat(RequestKeys.of("lookup", Map.of("a", "x\\\",\"b\"=\"y"), null))
+                .isNotEqualTo(RequestKeys.of("lookup", Map.of("a", "x\\", "b", "y"), null));
+    }
+
+    private static McpSchema.CallToolResult textResult(String text) {
+        return McpSchema.CallToolResult.builder().addTextContent(text).build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Flux;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolResponseHandlerTest {
+
+    private final ToolResponseHandler handler = new ToolResponseHandler();
+
+    @Test
+    void testJsonIsPassedThroughVerbatim() {
+        ClientResponse response = jsonResponse("{\"result\": 3, \"items\": [1, 2]}");
+
+        McpSchema.CallToolResult result = handler.handle(response, ToolResponseHandler.ResponsePolicy.DEFAULT)
+                .block();
+
+        assertThat(result.isError()).isNotEqualTo(Boolean.TRUE);
+        assertThat(((McpSchema.TextContent) result.content().get(0)).text())
+                .isEqualTo("{\"result\": 3, \"items\": [1, 2]}");
+    }
+
+    @Test
+    void testResponseOverLimitIsError() {
+        ToolResponseHandler.ResponsePolicy policy = ToolResponseHandler.ResponsePolicy.from(
+                Map.of("response", Map.of("maxBytes", 8)));
+
+        McpSchema.CallToolResult result = handler.handle(jsonResponse("{\"result\": 12345}"), policy).block();
+
+        assertThat(result.isError()).isTrue();
+        assertThat(((McpSchema.TextContent) result.content().get(0)).text()).contains("8 bytes");
+    }
+
+    @Test
+    void testJsonIsShapedWhenRulesAreConfigured() {
+        ToolResponseHandler.ResponsePolicy policy = ToolResponseHandler.ResponsePolicy.from(
+                Map.of("response", Map.of("include", List.of("/items/*/id"), "maxArrayLength", 2)));
+        long[] shapedBytes = {-1};
+
+        McpSchema.CallToolResult result = handler.handle(
+                jsonResponse("{\"items\": [{\"id\": 1, \"x\": 1}, {\"id\": 2}, {\"id\": 3}], \"extra\": true}"),
+                policy, "list_items", bytes -> shapedBytes[0] = bytes).block();
+
+        String text = ((McpSchema.TextContent) result.content().get(0)).text();
+        assertThat(text).isEqualTo("{\"items\":[{\"id\":1},{\"id\":2},{\"truncated\":true,\"omitted\":1}]}");
+        assertThat(shapedBytes[0]).isEqualTo(text.length());
+    }
+
+    @Test
+    void testOversizedImageIsThumbnailed() throws IOException {
+        ToolResponseHandler.ResponsePolicy policy = ToolResponseHandler.ResponsePolicy.from(Map.of("response",
+                Map.of("maxBytes", 64, "oversizedImage", "thumbnail", "thumbnailMaxDimension", 16)));
+
+        McpSchema.CallToolResult result = handler.handle(pngResponse(png(200, 100)), policy).block();
+
+        McpSchema.ImageContent image = (McpSchema.ImageContent) result.content().get(0);
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(image.data())));
+        assertThat(thumbnail.getWidth()).isEqualTo(16);
+        assertThat(thumbnail.getHeight()).isEqualTo(8);
+    }
+
+    @Test
+    void testChunkedOversizedImageIsThumbnailed() throws IOException {
+        ToolResponseHandler.ResponsePolicy policy = ToolResponseHandler.ResponsePolicy.from(Map.of("response",
+                Map.of("maxBytes", 64, "oversizedImage", "thumbnail", "thumbnailMaxDimension", 16)));
+
+        McpSchema.CallToolResult result = handler.handle(chunkedPngResponse(png(200, 100)), policy).block();
+
+        McpSchema.ImageContent image = (McpSchema.ImageContent) result.content().get(0);
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(image.data())));
+        assertThat(thumbnail.getWidth()).isEqualTo(16);
+    }
+
+    @Test
+    void testChunkedImageWithinLimitIsReturnedAsIs() throws IOException {
+        ToolResponseHandler.ResponsePolicy policy = ToolResponseHandler.ResponsePolicy.from(Map.of("response",
+                Map.of("maxBytes", 65536, "oversizedImage", "thumbnail", "thumbnailMaxDimension", 16)));
+        byte[] png = png(200, 100);
+
+        McpSchema.CallToolResult result = handler.handle(chunkedPngResponse(png), policy).block();
+
+        McpSchema.ImageContent image = (McpSchema.ImageContent) result.content().get(0);
+        assertThat(Base64.getDecoder().decode(image.data())).isEqualTo(png);
+    }
+
+    @Test
+    void testImageDeclaringHugeDimensionsIsRejectedBeforeDecoding() throws IOException {
+        ToolResponseHandler.ResponsePolicy policy = ToolResponseHandler.ResponsePolicy.from(Map.of("response",
+                Map.of("maxBytes", 64, "oversizedImage", "thumbnail")));
+        byte[] bomb = png(200, 100);
+        // IHDR 的寬高 (第 16-23 bytes) 改為 100000x100000，解碼需約 40GB
+        ByteBuffer.wrap(bomb, 16, 8).putInt(100_000).putInt(100_000);
+
+        McpSchema.CallToolResult result = handler.handle(pngResponse(bomb), policy).block();
+
+        assertThat(result.isError()).isTrue();
+        assertThat(((McpSchema.TextContent) result.content().get(0)).text()).contains("像素上限");
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static ClientResponse pngResponse(byte[] body) {
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(body);
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "image/png")
+                .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.length))
+                .body(Flux.just(buffer))
+                .build();
+    }
+
+    /**
+     * 不帶 Content-Length、分成兩塊送出的圖片 (Transfer-Encoding: chunked)
+     */
+    private static ClientResponse chunkedPngResponse(byte[] body) {
+        int half = body.length / 2;
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "image/png")
+                .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(body, 0, half)),
+                        DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(body, half, body.length))))
+                .build();
+    }
+
+    private static ClientResponse jsonResponse(String body) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .body(body)
+                .build();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.mcpserversidecar.service;
+
+import com.example.mcpserversidecar.AuthenticationFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.util.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ToolResultCursorsTest {
+
+    private static final ToolResponseHandler.ResponsePolicy PAGED = ToolResponseHandler.ResponsePolicy.from(
+            Map.of("response", Map.of("pageSize", 2)));
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ToolResultCursors cursors;
+
+    private ToolResultCursors cursors() {
+        cursors = new ToolResultCursors(directory.toString(), Duration.ofMinutes(10), 1024 * 1024);
+        return cursors;
+    }
+
+    @AfterEach
+    void stop() {
+        if (cursors != null) {
+            cursors.stop();
+        }
+    }
+
+    private JsonNode call(ToolResponseHandler handler, String body, String principal) throws Exception {
+        ClientResponse response = ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .body(body)
+                .build();
+        McpSchema.CallToolResult result = handler.handle(response, PAGED, "list_items", bytes -> {
+        }).contextWrite(Context.of(AuthenticationFilter.PRINCIPAL_KEY, principal)).block();
+        assertThat(result.isError()).isNotEqualTo(Boolean.TRUE);
+        return objectMapper.readTree(((McpSchema.TextContent) result.content().get(0)).text());
+    }
+
+    @Test
+    void testLargeArrayIsPagedThroughCursor() throws Exception {
+        ToolResultCursors cursors = cursors();
+        JsonNode first = call(new ToolResponseHandler(cursors),
+                "[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4},{\"id\":5}]", "sub:alice");
+
+        assertThat(first.get("items")).hasSize(2);
+        assertThat(first.get("remaining").asInt()).isEqualTo(3);
+        assertThat(first.get("nextTool").asText()).isEqualTo("list_items_next_page");
+
+        String cursor = first.get("nextCursor").asText();
+        JsonNode second = objectMapper.readTree(cursors.page(cursor, "list_items", "sub:alice"));
+        assertThat(second.get("items")).isEqualTo(objectMapper.readTree("[{\"id\":3},{\"id\":4}]"));
+        assertThat(second.get("remaining").asInt()).isEqualTo(1);
+        // 同一 cursor 可重複取得同一頁
+        assertThat(objectMapper.readTree(cursors.page(cursor, "list_items", "sub:alice"))).isEqualTo(second);
+
+        JsonNode last = objectMapper.readTree(
+                cursors.page(second.get("nextCursor").asText(), "list_items", "sub:alice"));
+        assertThat(last.get("items")).isEqualTo(objectMapper.readTree("[{\"id\":5}]"));
+        assertThat(last.has("nextCursor")).isFalse();
+        assertThat(last.get("remaining").asInt()).isZero();
+        assertThat(cursors.stats()).containsEntry("entries", 1L).containsEntry("pagesServed", 3L);
+    }
+
+    @Test
+    void testCursorIsBoundToToolAndCaller() throws Exception {
+        ToolResultCursors cursors = cursors();
+        String cursor = call(new ToolResponseHandler(cursors), "[1,2,3]", "sub:alice").get("nextCursor").asText();
+
+        assertThatThrownBy(() -> cursors.page(cursor, "list_items", "sub:bob"))
+                .isInstanceOf(ToolResultCursors.CursorException.class);
+        assertThatThrownBy(() -> cursors.page(cursor, "other_tool", "sub:alice"))
+                .isInstanceOf(ToolResultCursors.CursorException.class);
+        assertThatThrownBy(() -> cursors.page("unknown.0", "list_items", "sub:alice"))
+                .isInstanceOf(ToolResultCursors.CursorException.class);
+        assertThatThrownBy(() -> cursors.page(null, "list_items", "sub:alice"))
+                .isInstanceOf(ToolResultCursors.CursorException.class);
+    }
+
+    @Test
+    void testSmallOrNonArrayResponsesAreReturnedAsIsWithoutSpilling() throws Exception {
+        ToolResultCursors cursors = cursors();
+        ToolResponseHandler handler = new ToolResponseHandler(cursors);
+
+        assertThat(call(handler, "[1, 2]", "sub:alice")).isEqualTo(objectMapper.readTree("[1,2]"));
+        assertThat(call(handler, "{\"items\": [1, 2, 3]}", "sub:alice"))
+                .isEqualTo(objectMapper.readTree("{\"items\":[1,2,3]}"));
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void testDiscardedSpillDeletesFile() throws Exception {
+        ToolResultCursors.Spill spill = cursors().open(2);
+        spill.write("1\n2\n3".getBytes(StandardCharsets.US_ASCII));
+        assertThat(files()).hasSize(1);
+
+        spill.discard();
+
+        assertThat(files()).isEmpty();
+    }
+
+    @Test
+    void testCompanionToolIsAddedAfterPagedTool() {
+        McpSchema.Tool tool = McpSchema.Tool.builder()
+                .name("list_items")
+                .description("列出項目")
+                .inputSchema(new McpSchema.JsonSchema("object", Map.of(), null, null, null, null))
+                .build();
+        OpenApiScannerService.ToolDefinition paged = new OpenApiScannerService.ToolDefinition(tool, "/items", "GET",
+                Map.of("response", Map.of("pageSize", 50)), Map.of());
+        OpenApiScannerService.ToolDefinition plain = new OpenApiScannerService.ToolDefinition(tool, "/items", "GET");
+
+        List<OpenApiScannerService.ToolDefinition> tools = ToolResultCursors.withCompanions(List.of(paged, plain));
+
+        assertThat(tools).hasSize(3);
+        assertThat(tools.get(1).tool().name()).isEqualTo("list_items_next_page");
+        assertThat(tools.get(1).tool().inputSchema().required()).containsExactly("cursor");
+        assertThat(ToolResultCursors.cursorFor(tools.get(1))).isEqualTo("list_items");
+        assertThat(ToolResultCursors.cursorFor(paged)).isNull();
+    }
+
+    @Test
+    void testCompanionIsRenamedWhenNameIsTaken() {
+        McpSchema.JsonSchema schema = new McpSchema.JsonSchema("object", Map.of(), null, null, null, null);
+        OpenApiScannerService.ToolDefinition paged = new OpenApiScannerService.ToolDefinition(
+                McpSchema.Tool.builder().name("list_orders").description("列出訂單").inputSchema(schema).build(),
+                "/orders", "GET", Map.of("response", Map.of("pageSize", 50)), Map.of());
+        OpenApiScannerService.ToolDefinition upstream = new OpenApiScannerService.ToolDefinition(
+                McpSchema.Tool.builder().name("list_orders_next_page").description("上游工具").inputSchema(schema)
+                        .build(),
+                "/orders/next", "GET");
+
+        List<OpenApiScannerService.ToolDefinition> tools =
+                ToolResultCursors.withCompanions(List.of(paged, upstream));
+
+        assertThat(tools).extracting(def -> def.tool().name())
+                .containsExactly("list_orders", "list_orders_next_page_2", "list_orders_next_page");
+        assertThat(ToolResultCursors.cursorFor(tools.get(1))).isEqualTo("list_orders");
+        assertThat(ToolResultCursors.cursorFor(tools.get(2))).isNull();
+        assertThat(ToolResponseHandler.ResponsePolicy.from(tools.get(0).mapping()).nextTool())
+                .isEqualTo("list_orders_next_page_2");
+    }
+
+    private List<Path> files() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.mcpserversidecar.service;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ToolRetryExecutorTest {
+
+    private static final Map<String, Object> RETRY = Map.of("retry", Map.of("maxRetries", 2, "backoffMs", 1));
+
+    private static McpSchema.CallToolResult ok(String text) {
+        return McpSchema.CallToolResult.builder().addTextContent(text).build();
+    }
+
+    private static ToolResilience.UpstreamFailureException failure(int status) {
+        return new ToolResilience.UpstreamFailureException(status,
+                McpSchema.CallToolResult.builder().addTextContent("Error: " + status).isError(true).build());
+    }
+
+    @Test
+    void testRetriesTransientFailureForIdempotentTool() {
+        ToolRetryExecutor executor = new ToolRetryExecutor(new RetryBudget(0.1, 5));
+        AtomicInteger attempts = new AtomicInteger();
+
+        McpSchema.CallToolResult result = executor.execute("get_tool", ToolRetryExecutor.AttemptPolicy.from(RETRY),
+                true, () -> Mono.defer(() -> attempts.incrementAndGet() < 3
+                        ? Mono.error(failure(503))
+                        : Mono.just(ok("ok")))).block();
+
+        assertThat(result.content().get(0)).isEqualTo(new McpSchema.TextContent("ok"));
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    void testDoesNotRetryNonIdempotentOrNonTransientFailures() {
+        ToolRetryExecutor executor = new ToolRetryExecutor(new RetryBudget(0.1, 5));
+        ToolRetryExecutor.AttemptPolicy policy = ToolRetryExecutor.AttemptPolicy.from(RETRY);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> executor.execute("post_tool", policy, false,
+                () -> Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(failure(503));
+                })).block()).isInstanceOf(ToolResilience.UpstreamFailureException.class);
+        assertThatThrownBy(() -> executor.execute("get_tool", policy, true,
+                () -> Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(failure(500));
+                })).block()).isInstanceOf(ToolResilience.UpstreamFailureException.class);
+
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testRetryBudgetCapsRetries() {
+        RetryBudget budget = new RetryBudget(0, 0);
+        ToolRetryExecutor executor = new ToolRetryExecutor(budget);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> executor.execute("get_tool", ToolRetryExecutor.AttemptPolicy.from(RETRY), true,
+                () -> Mono.defer(() -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(failure(503));
+                })).block()).isInstanceOf(ToolResilience.UpstreamFailureException.class);
+
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(budget.stats()).containsEntry("deniedRetries", 1L);
+    }
+
+    @Test
+    void testRetriesStayWithinRatioOfOriginalRequests() {
+        RetryBudget budget = new RetryBudget(0.5, 0);
+        ToolRetryExecutor executor = new ToolRetryExecutor(budget);
+        ToolRetryExecutor.AttemptPolicy policy = ToolRetryExecutor.AttemptPolicy.from(RETRY);
+        AtomicInteger attempts = new AtomicInteger();
+        int calls = 20;
+
+        for (int i = 0; i < calls; i++) {
+            assertThatThrownBy(() -> executor.execute("get_tool", policy, true,
+                    () -> Mono.defer(() -> {
+                        attempts.incrementAndGet();
+                        return Mono.error(failure(503));
+                    })).block()).isInstanceOf(ToolResilience.UpstreamFailureException.class);
+        }
+
+        // 重試不算原始請求，N 個失敗呼叫最多 ratio × N 次重試
+        assertThat(attempts.get() - calls).isLessThanOrEqualTo(calls / 2);
+        assertThat((Long) budget.stats().get("retries")).isLessThanOrEqualTo(calls / 2L);
+    }
+
+    @Test
+    void testExhaustedRetriesDoNotConsumeBudget() {
+        RetryBudget budget = new RetryBudget(0.1, 5);
+        ToolRetryExecutor executor = new ToolRetryExecutor(budget);
+
+        assertThatThrownBy(() -> executor.execute("get_tool", ToolRetryExecutor.AttemptPolicy.from(RETRY), true,
+                () -> Mono.error(failure(503))).block())
+                .isInstanceOf(ToolResilience.UpstreamFailureException.class);
+
+        // maxRetries = 2：第三次失敗已用盡重試，不應再扣預算
+        assertThat(budget.stats()).containsEntry("retries", 2L).containsEntry("deniedRetries", 0L);
+    }
+
+    @Test
+    void testHedgeRequestWinsWhenPrimaryIsSlow() {
+        ToolRetryExecutor executor = new ToolRetryExecutor(new RetryBudget(0.1, 5));
+        ToolRetryExecutor.AttemptPolicy policy = ToolRetryExecutor.AttemptPolicy.from(
+                Map.of("hedge", Map.of("percentile", 0.95, "minDelayMs", 20)));
+
+        // 先累積足夠的快速樣本
+        for (int i = 0; i < 64; i++) {
+            executor.execute("get_tool", policy, true, () -> Mono.just(ok("fast"))).block();
+        }
+
+        AtomicInteger attempts = new AtomicInteger();
+        McpSchema.CallToolResult result = executor.execute("get_tool", policy, true,
+                () -> Mono.defer(() -> attempts.incrementAndGet() == 1
+                        ? Mono.delay(Duration.ofSeconds(5)).thenReturn(ok("primary"))
+                        : Mono.just(ok("hedge")))).block(Duration.ofSeconds(2));
+
+        assertThat(result.content().get(0)).isEqualTo(new McpSchema.TextContent("hedge"));
+        assertThat(executor.stats()).containsEntry("hedgesFired", 1L).containsEntry("hedgesWon", 1L);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.mcpserversidecar.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolViewsTest {
+
+    private static final List<String> TOOLS =
+            List.of("get_enterprise_info", "get_manga_image", "calculate_sum", "delete_account");
+
+    private static Map<String, Object> settings() {
+        return Map.of(
+                "default", List.of("get_*"),
+                "views", List.of(
+                        Map.of("name", "reporting", "scopes", List.of("reports:read"),
+                                "tools", List.of("get_enterprise_info")),
+                        Map.of("name", "calculator", "scopes", "calc:invoke", "clients", List.of("calc-agent"),
+                                "tools", "calculate_sum"),
+                        Map.of("name", "admin", "claims", Map.of("role", "admin"), "tools", List.of("*"))));
+    }
+
+    @Test
+    void testNoRulesMeansUnrestricted() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(null, TOOLS);
+
+        ToolViews.ToolView view = views.resolve(Map.of("scope", "reports:read"), "calc-agent");
+        assertThat(view.isUnrestricted()).isTrue();
+        assertThat(view.allows("delete_account")).isTrue();
+    }
+
+    @Test
+    void testMatchingRulesAreUnionedAndDefaultAppliesOtherwise() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(settings(), TOOLS);
+
+        assertThat(views.resolve(null, null).tools())
+                .containsExactlyInAnyOrder("get_enterprise_info", "get_manga_image");
+        assertThat(views.resolve(Map.of("scope", "openid reports:read"), null).tools())
+                .containsExactly("get_enterprise_info");
+        assertThat(views.resolve(Map.of("scp", List.of("reports:read", "calc:invoke")), "calc-agent").tools())
+                .containsExactlyInAnyOrder("get_enterprise_info", "calculate_sum");
+        assertThat(views.resolve(Map.of("scp", List.of("calc:invoke")), "other-agent").allows("calculate_sum"))
+                .isFalse();
+        assertThat(views.resolve(Map.of("role", List.of("user", "admin")), null).tools())
+                .containsExactlyInAnyOrderElementsOf(TOOLS);
+        assertThat(views.resolve(Map.of("role", "user"), "other-agent").allows("calculate_sum")).isFalse();
+    }
+
+    @Test
+    void testDefaultAppliesWithoutViews() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(Map.of("default", List.of("get_*")), TOOLS);
+
+        ToolViews.ToolView view = views.resolve(Map.of("role", "admin"), null);
+        assertThat(view.isUnrestricted()).isFalse();
+        assertThat(view.tools()).containsExactlyInAnyOrder("get_enterprise_info", "get_manga_image");
+    }
+
+    @Test
+    void testClientsOnlyRuleCannotGrantBeyondDefault() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(Map.of(
+                "default", List.of("get_*"),
+                "views", List.of(
+                        Map.of("name", "calculator", "clients", "calc-agent", "tools", "calculate_sum"),
+                        Map.of("name", "manga", "clients", "manga-agent", "tools", "get_manga_image"))), TOOLS);
+
+        // clients 是用戶端自行宣告的 Header：只能精簡工具清單，不能開放 default 以外的工具
+        assertThat(views.resolve(null, "calc-agent").allows("calculate_sum")).isFalse();
+        assertThat(views.resolve(null, "manga-agent").tools()).containsExactly("get_manga_image");
+    }
+
+    @Test
+    void testMalformedSettingsKeepThePreviousRules() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(settings(), TOOLS);
+
+        for (Map<String, Object> broken : List.<Map<String, Object>>of(
+                Map.of("views", "admin"),
+                Map.of("views", List.of("admin")),
+                Map.of("default", Map.of("tools", "*")),
+                Map.of("views", List.of(Map.of("name", "admin", "claims", "admin", "tools", "*"))))) {
+            views.update(broken, TOOLS);
+
+            assertThat(views.resolve(null, null).tools())
+                    .containsExactlyInAnyOrder("get_enterprise_info", "get_manga_image");
+            assertThat(views.resolve(Map.of("role", "admin"), null).tools())
+                    .containsExactlyInAnyOrderElementsOf(TOOLS);
+        }
+    }
+
+    @Test
+    void testMalformedSettingsWithoutPreviousRulesFailClosed() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(Map.of("views", List.of("admin")), TOOLS);
+
+        ToolViews.ToolView view = views.resolve(Map.of("role", "admin"), null);
+        assertThat(view.isUnrestricted()).isFalse();
+        assertThat(view.tools()).isEmpty();
+        assertThat(view.allows("get_enterprise_info")).isFalse();
+    }
+
+    @Test
+    void testSameRuleCombinationSharesOneView() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(settings(), TOOLS);
+
+        ToolViews.ToolView first = views.resolve(Map.of("sub", "alice", "scope", "reports:read"), null);
+        ToolViews.ToolView second = views.resolve(Map.of("sub", "bob", "scope", "reports:read"), null);
+        assertThat(second).isSameAs(first);
+
+        // 規則或工具目錄更新後重新計算，檢視識別也隨之改變
+        views.update(settings(), List.of("get_enterprise_info", "get_report"));
+        ToolViews.ToolView updated = views.resolve(null, null);
+        assertThat(updated.tools()).containsExactlyInAnyOrder("get_enterprise_info", "get_report");
+        assertThat(updated.key()).isNotEqualTo(first.key());
+    }
+
+    @Test
+    void testCompanionVisibilityFollowsCursorForNotName() {
+        ToolViews views = new ToolViews("X-MCP-Client");
+        views.update(Map.of("views", List.of(Map.of("name", "lists", "tools", List.of("list_orders", "list_items")))),
+                List.of("list_orders", "list_orders_next_page", "list_items", "list_items_next_page"),
+                Map.of("list_items_next_page", "list_items"));
+
+        // 上游本身的 list_orders_next_page 不因名稱後綴而跟著 list_orders 可見
+        assertThat(views.resolve(null, null).tools())
+                .containsExactlyInAnyOrder("list_orders", "list_items", "list_items_next_page");
+        assertThat(views.resolve(null, null).allows("list_orders_next_page")).isFalse();
+    }
+}
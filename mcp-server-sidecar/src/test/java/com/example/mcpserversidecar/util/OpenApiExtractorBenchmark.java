@@ -0,0 +1,110 @@
+package com.example.mcpserversidecar.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * OpenAPIV3Parser (整份建模) 與 StreamingOpenApiExtractor (只取出 mapping 中的 operation) 的耗時與配置量比較。
+ * 規格含數千個 operation 與共用的 component schema，mapping 只對應其中少數 operation。
+ *
+ * 執行方式: mvn test -Dtest=OpenApiExtractorBenchmark -Dbenchmark=true [-Doperations=5000 -Dmapped=50]
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class OpenApiExtractorBenchmark {
+
+    private static final int OPERATIONS = Integer.getInteger("operations", 5000);
+    private static final int MAPPED = Integer.getInteger("mapped", 50);
+    private static final int SCHEMAS = 200;
+    private static final int RUNS = 5;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void compareParsers() throws Exception {
+        byte[] spec = objectMapper.writeValueAsBytes(spec());
+        Set<String> mapped = new HashSet<>();
+        for (int i = 0; i < MAPPED; i++) {
+            mapped.add("op" + (i * (OPERATIONS / MAPPED)));
+        }
+
+        Result swagger = measure(() -> new OpenAPIV3Parser()
+                .readContents(new String(spec, StandardCharsets.UTF_8)).getOpenAPI());
+        Result streaming = measure(() -> StreamingOpenApiExtractor.extract(spec, mapped).getOpenAPI());
+
+        System.out.println("========================================");
+        System.out.printf("operations: %d, mapped: %d, 規格大小: %,d bytes%n", OPERATIONS, MAPPED, spec.length);
+        System.out.printf("OpenAPIV3Parser            耗時中位數: %6d ms, 配置量: %,15d bytes%n",
+                swagger.millis(), swagger.allocatedBytes());
+        System.out.printf("StreamingOpenApiExtractor  耗時中位數: %6d ms, 配置量: %,15d bytes%n",
+                streaming.millis(), streaming.allocatedBytes());
+        System.out.println("========================================");
+    }
+
+    private record Result(long millis, long allocatedBytes) {
+    }
+
+    private static Result measure(Callable<OpenAPI> parse) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        parse.call(); // 暖機
+        long[] nanos = new long[RUNS];
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            parse.call();
+            nanos[i] = System.nanoTime() - start;
+            allocated += threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        }
+        Arrays.sort(nanos);
+        return new Result(nanos[RUNS / 2] / 1_000_000, allocated / RUNS);
+    }
+
+    private ObjectNode spec() {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("openapi", "3.0.1");
+        root.putObject("info").put("title", "benchmark").put("version", "1.0");
+        ObjectNode paths = root.putObject("paths");
+        for (int i = 0; i < OPERATIONS; i++) {
+            ObjectNode op = paths.putObject("/api/resource" + i + "/{id}").putObject(i % 2 == 0 ? "get" : "post");
+            op.put("operationId", "op" + i);
+            op.put("summary", "操作資源 " + i);
+            op.putArray("parameters").addObject().put("name", "id").put("in", "path").put("required", true)
+                    .putObject("schema").put("type", "string");
+            if (i % 2 == 1) {
+                op.putObject("requestBody").putObject("content").putObject("application/json")
+                        .putObject("schema").put("$ref", "#/components/schemas/Dto" + (i % SCHEMAS));
+            }
+            op.putObject("responses").putObject("200").put("description", "OK")
+                    .putObject("content").putObject("application/json")
+                    .putObject("schema").put("$ref", "#/components/schemas/Dto" + ((i + 1) % SCHEMAS));
+        }
+        ObjectNode schemas = root.putObject("components").putObject("schemas");
+        for (int i = 0; i < SCHEMAS; i++) {
+            ObjectNode schema = schemas.putObject("Dto" + i);
+            schema.put("type", "object");
+            ArrayNode required = schema.putArray("required");
+            ObjectNode props = schema.putObject("properties");
+            for (int f = 0; f < 20; f++) {
+                props.putObject("field" + f).put("type", f % 3 == 0 ? "integer" : "string")
+                        .put("description", "欄位 " + f);
+                required.add("field" + f);
+            }
+            if (i % 10 != 9) {
+                props.putObject("child").put("$ref", "#/components/schemas/Dto" + (i + 1));
+            }
+        }
+        return root;
+    }
+}
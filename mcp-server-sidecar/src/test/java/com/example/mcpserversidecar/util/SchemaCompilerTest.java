@@ -0,0 +1,122 @@
+package com.example.mcpserversidecar.util;
+
+import io.modelcontextprotocol.spec.McpSchema;
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.media.ArraySchema;
+import io.swagger.v3.oas.models.media.ComposedSchema;
+import io.swagger.v3.oas.models.media.Content;
+import io.swagger.v3.oas.models.media.MediaType;
+import io.swagger.v3.oas.models.media.ObjectSchema;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.media.StringSchema;
+import io.swagger.v3.oas.models.parameters.RequestBody;
+import io.swagger.v3.oas.models.responses.ApiResponse;
+import io.swagger.v3.oas.models.responses.ApiResponses;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SchemaCompilerTest {
+
+    private static Schema<?> ref(String name) {
+        return new Schema<>().$ref("#/components/schemas/" + name);
+    }
+
+    private static Components components() {
+        return new Components()
+                .addSchemas("Order", new ObjectSchema()
+                        .addProperty("id", new StringSchema().format("uuid"))
+                        .addProperty("status", new StringSchema()._enum(List.of("OPEN", "CLOSED")))
+                        .addProperty("lines", new ArraySchema().items(ref("OrderLine")))
+                        .required(List.of("id")))
+                .addSchemas("OrderLine", new ObjectSchema()
+                        .addProperty("sku", new StringSchema())
+                        .addProperty("order", ref("Order")))
+                .addSchemas("Payment", new ComposedSchema()
+                        .oneOf(List.of(ref("Card"), ref("Transfer"))))
+                .addSchemas("Card", new ObjectSchema().addProperty("number", new StringSchema()))
+                .addSchemas("Transfer", new ObjectSchema().addProperty("iban", new StringSchema()));
+    }
+
+    private static Operation operation(String bodyRef, String responseRef) {
+        return new Operation()
+                .requestBody(new RequestBody().content(new Content().addMediaType("application/json",
+                        new MediaType().schema(ref(bodyRef)))))
+                .responses(new ApiResponses().addApiResponse("200", new ApiResponse().content(
+                        new Content().addMediaType("application/json", new MediaType().schema(ref(responseRef))))));
+    }
+
+    @Test
+    void testComponentsAreCompiledOnceAndShared() {
+        SchemaCompiler compiler = new SchemaCompiler(components());
+
+        Map<String, Object> first = compiler.compile(ref("Card"), new HashSet<>());
+        Map<String, Object> second = compiler.compile(ref("Card"), new HashSet<>());
+
+        assertThat(first).isSameAs(second);
+        assertThat(compiler.size()).isEqualTo(1);
+        assertThatThrownBy(() -> first.put("type", "string")).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void testCyclesBecomeDefsReferences() {
+        SchemaCompiler compiler = new SchemaCompiler(components());
+        Set<String> defs = new HashSet<>();
+
+        Map<String, Object> order = compiler.compile(ref("Order"), defs);
+
+        Map<String, Object> lines = (Map<String, Object>) ((Map<String, Object>) order.get("properties")).get("lines");
+        Map<String, Object> line = (Map<String, Object>) lines.get("items");
+        assertThat(((Map<String, Object>) line.get("properties")).get("order"))
+                .isEqualTo(Map.of("$ref", "#/$defs/Order"));
+        assertThat(defs).containsExactly("Order");
+        assertThat(compiler.defs(defs)).containsEntry("Order", order);
+
+        // 之後直接引用 OrderLine 的工具也需要附上 Order 的定義
+        Set<String> lineDefs = new HashSet<>();
+        assertThat(compiler.compile(ref("OrderLine"), lineDefs)).isSameAs(line);
+        assertThat(lineDefs).containsExactly("Order");
+    }
+
+    @Test
+    void testCarriesFormatEnumAndComposition() {
+        SchemaCompiler compiler = new SchemaCompiler(components());
+
+        Map<String, Object> order = compiler.compile(ref("Order"), new HashSet<>());
+        Map<String, Object> properties = (Map<String, Object>) order.get("properties");
+        assertThat(properties.get("id")).isEqualTo(Map.of("type", "string", "format", "uuid"));
+        assertThat(properties.get("status")).isEqualTo(Map.of("type", "string", "enum", List.of("OPEN", "CLOSED")));
+        assertThat(order.get("required")).isEqualTo(List.of("id"));
+
+        Map<String, Object> payment = compiler.compile(ref("Payment"), new HashSet<>());
+        assertThat(payment).doesNotContainKey("type");
+        assertThat((List<Object>) payment.get("oneOf")).containsExactly(
+                compiler.compile(ref("Card"), new HashSet<>()),
+                compiler.compile(ref("Transfer"), new HashSet<>()));
+    }
+
+    @Test
+    void testOperationsShareCompiledBodyAndResponseSchemas() {
+        SchemaCompiler compiler = new SchemaCompiler(components());
+
+        McpSchema.JsonSchema input = OpenApiToMcpMapper.mapOperationToInputSchema(operation("Order", "Order"), compiler);
+        McpSchema.JsonSchema other = OpenApiToMcpMapper.mapOperationToInputSchema(operation("Order", "Card"), compiler);
+
+        // Request Body 的 $ref 解析後攤平為頂層參數，屬性 schema 為同一個實例
+        assertThat(input.properties()).containsOnlyKeys("id", "status", "lines");
+        assertThat(input.properties().get("lines")).isSameAs(other.properties().get("lines"));
+        assertThat(input.required()).containsExactly("id");
+        assertThat(input.defs()).containsOnlyKeys("Order");
+        assertThat(OpenApiToMcpMapper.mapParameterLocations(operation("Order", "Card"), compiler))
+                .containsEntry("lines", "body");
+        assertThat(OpenApiToMcpMapper.mapOperationToOutputSchema(operation("Card", "Order"), compiler))
+                .isSameAs(compiler.compile(ref("Order"), new HashSet<>()));
+    }
+}
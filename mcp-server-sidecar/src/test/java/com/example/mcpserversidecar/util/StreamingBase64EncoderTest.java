@@ -0,0 +1,59 @@
+package com.example.mcpserversidecar.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingBase64EncoderTest {
+
+    private final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+
+    @Test
+    void testMatchesJdkEncoderAcrossChunkBoundaries() {
+        Random random = new Random(42);
+        for (int size : new int[] { 0, 1, 2, 3, 4, 8190, 8191, 20000, 100_003 }) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+
+            // 以不對齊 3 bytes 的塊大小切分，驗證 carry 處理
+            StreamingBase64Encoder encoder = new StreamingBase64Encoder(Long.MAX_VALUE);
+            for (int offset = 0; offset < size; offset += 7001) {
+                byte[] chunk = Arrays.copyOfRange(data, offset, Math.min(size, offset + 7001));
+                encoder.append(factory.wrap(chunk));
+            }
+
+            assertThat(encoder.finish()).isEqualTo(Base64.getEncoder().encodeToString(data));
+            assertThat(encoder.totalBytes()).isEqualTo(size);
+        }
+    }
+
+    @Test
+    void testOutputSpanningSeveralSegments() {
+        Random random = new Random(7);
+        byte[] data = new byte[300_001];
+        random.nextBytes(data);
+
+        // 編碼結果約 400KB，跨越多個 64KB 輸出區段
+        StreamingBase64Encoder encoder = new StreamingBase64Encoder(Long.MAX_VALUE);
+        for (int offset = 0; offset < data.length; offset += 65_537) {
+            encoder.append(factory.wrap(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + 65_537))));
+        }
+
+        assertThat(encoder.finish()).isEqualTo(Base64.getEncoder().encodeToString(data));
+    }
+
+    @Test
+    void testLimitExceeded() {
+        StreamingBase64Encoder encoder = new StreamingBase64Encoder(10);
+        encoder.append(factory.wrap(new byte[6]));
+
+        assertThatThrownBy(() -> encoder.append(factory.wrap(new byte[6])))
+                .isInstanceOf(StreamingBase64Encoder.LimitExceededException.class);
+    }
+}
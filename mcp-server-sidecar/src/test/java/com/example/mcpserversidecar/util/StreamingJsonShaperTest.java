@@ -0,0 +1,124 @@
+package com.example.mcpserversidecar.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StreamingJsonShaperTest {
+
+    private static final String BODY = """
+            {"data": {"total": 3, "items": [
+              {"id": 1, "name": "甲", "detail": {"notes": "x", "tags": ["a", "b"]}},
+              {"id": 2, "name": "乙", "detail": {"notes": "y", "tags": []}},
+              {"id": 3, "name": "丙", "detail": {"notes": "z", "tags": ["c"]}}
+            ]}, "debug": {"trace": "..."}, "price": 12.3400}
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+
+    private String shape(StreamingJsonShaper.Rules rules, String body, int chunkSize) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        StreamingJsonShaper shaper = new StreamingJsonShaper(rules, Long.MAX_VALUE);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            shaper.append(factory.wrap(Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + chunkSize))));
+        }
+        return shaper.finish();
+    }
+
+    @Test
+    void testIncludeKeepsOnlyMatchingPathsAcrossChunkBoundaries() throws Exception {
+        StreamingJsonShaper.Rules rules = StreamingJsonShaper.Rules.compile(
+                List.of("/data/items/*/id", "$.data.items[*].name"), List.of(), 0, 0);
+
+        // 逐 byte 餵入，驗證多位元組字元與 token 被切開時的處理
+        for (int chunkSize : new int[] {1, 7, 4096}) {
+            JsonNode shaped = objectMapper.readTree(shape(rules, BODY, chunkSize));
+            assertThat(shaped).isEqualTo(objectMapper.readTree(
+                    "{\"data\":{\"items\":[{\"id\":1,\"name\":\"甲\"},{\"id\":2,\"name\":\"乙\"},"
+                            + "{\"id\":3,\"name\":\"丙\"}]}}"));
+        }
+    }
+
+    @Test
+    void testExcludeAndNumbersAreKeptVerbatim() {
+        StreamingJsonShaper.Rules rules = StreamingJsonShaper.Rules.compile(
+                List.of(), List.of("$.debug", "/data/items/*/detail"), 0, 0);
+
+        String shaped = shape(rules, BODY, 16);
+        assertThat(shaped).doesNotContain("debug", "detail", "notes");
+        assertThat(shaped).contains("\"price\":12.3400", "\"total\":3");
+    }
+
+    @Test
+    void testArraysAndStringsAreTruncatedWithMarkers() throws Exception {
+        StreamingJsonShaper.Rules rules = StreamingJsonShaper.Rules.compile(List.of(), List.of(), 2, 3);
+
+        JsonNode shaped = objectMapper.readTree(shape(rules,
+                "{\"items\": [1, 2, 3, 4, 5], \"text\": \"abcdefg\", \"short\": \"abc\"}", 5));
+
+        assertThat(shaped.get("items")).hasSize(3);
+        assertThat(shaped.at("/items/2/truncated").asBoolean()).isTrue();
+        assertThat(shaped.at("/items/2/omitted").asInt()).isEqualTo(3);
+        assertThat(shaped.get("text").asText()).isEqualTo("abc…[truncated 4 chars]");
+        assertThat(shaped.get("short").asText()).isEqualTo("abc");
+    }
+
+    @Test
+    void testArrayLimitCountsOnlyElementsThatWouldBeKept() throws Exception {
+        StreamingJsonShaper.Rules rules = StreamingJsonShaper.Rules.compile(
+                List.of("/data/items/*/id"), List.of("/data/items/0"), 1, 0);
+
+        JsonNode shaped = objectMapper.readTree(shape(rules, BODY, 64));
+
+        assertThat(shaped.at("/data/items/0/id").asInt()).isEqualTo(2);
+        assertThat(shaped.at("/data/items/1/omitted").asInt()).isEqualTo(1);
+    }
+
+    @Test
+    void testRootArrayBeyondPageSizeGoesToOverflow() {
+        StreamingJsonShaper.Rules rules = StreamingJsonShaper.Rules.compile(List.of(), List.of("/*/x"), 1, 0);
+        ByteArrayOutputStream overflow = new ByteArrayOutputStream();
+        StreamingJsonShaper shaper = new StreamingJsonShaper(rules, Long.MAX_VALUE, 2, overflow);
+
+        byte[] body = "[{\"id\":1,\"x\":0},{\"id\":2},\"a\\nb\",[3,4],5]".getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < body.length; offset += 3) {
+            shaper.append(factory.wrap(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + 3))));
+        }
+
+        // 根陣列不套用 maxArrayLength；巢狀陣列仍會截斷
+        assertThat(shaper.finish()).isEqualTo("[{\"id\":1},{\"id\":2}]");
+        assertThat(shaper.overflowElements()).isEqualTo(3);
+        assertThat(overflow.toString(StandardCharsets.UTF_8))
+                .isEqualTo("\"a\\nb\"\n[3,{\"truncated\":true,\"omitted\":1}]\n5");
+    }
+
+    @Test
+    void testPathSyntax() {
+        assertThat(StreamingJsonShaper.segments("/a~1b/~0c/0")).containsExactly("a/b", "~c", "0");
+        assertThat(StreamingJsonShaper.segments("$.a['b.c'][*].d")).containsExactly("a", "b.c", "*", "d");
+        assertThat(StreamingJsonShaper.segments("$")).isEmpty();
+        assertThatThrownBy(() -> StreamingJsonShaper.segments("a.b")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testInvalidJsonAndLimit() {
+        StreamingJsonShaper.Rules rules = StreamingJsonShaper.Rules.compile(List.of(), List.of(), 0, 10);
+        assertThatThrownBy(() -> shape(rules, "{\"a\": [1, 2", 4)).isInstanceOf(UncheckedIOException.class);
+
+        StreamingJsonShaper shaper = new StreamingJsonShaper(rules, 8);
+        assertThatThrownBy(() -> shaper.append(factory.wrap("{\"a\": 12345}".getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(DataBufferLimitException.class);
+    }
+}
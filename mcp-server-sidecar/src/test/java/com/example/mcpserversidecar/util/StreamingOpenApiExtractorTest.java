@@ -0,0 +1,93 @@
+package com.example.mcpserversidecar.util;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingOpenApiExtractorTest {
+
+    private static final String SPEC = """
+            {
+              "openapi": "3.0.1",
+              "info": {"title": "biz", "version": "1.0"},
+              "tags": [{"name": "business"}],
+              "paths": {
+                "/api/orders/{id}": {
+                  "parameters": [{"$ref": "#/components/parameters/TenantHeader"}],
+                  "get": {
+                    "operationId": "getOrder",
+                    "summary": "查詢訂單",
+                    "parameters": [{"name": "id", "in": "path", "required": true, "schema": {"type": "string"}}],
+                    "responses": {"200": {"description": "OK", "content": {"application/json":
+                        {"schema": {"$ref": "#/components/schemas/Order"}}}}}
+                  },
+                  "delete": {
+                    "operationId": "deleteOrder",
+                    "responses": {"204": {"description": "No Content"}}
+                  }
+                },
+                "/api/invoices": {
+                  "post": {
+                    "operationId": "createInvoice",
+                    "requestBody": {"content": {"application/json": {"schema": {"$ref": "#/components/schemas/Invoice"}}}},
+                    "responses": {"200": {"description": "OK"}}
+                  }
+                }
+              },
+              "components": {
+                "parameters": {
+                  "TenantHeader": {"name": "X-Tenant", "in": "header", "schema": {"type": "string"}}
+                },
+                "schemas": {
+                  "Order": {"type": "object", "properties": {
+                    "id": {"type": "string"},
+                    "lines": {"type": "array", "items": {"$ref": "#/components/schemas/OrderLine"}}}},
+                  "OrderLine": {"type": "object", "properties": {
+                    "sku": {"type": "string"}, "order": {"$ref": "#/components/schemas/Order"}}},
+                  "Invoice": {"type": "object", "properties": {"amount": {"type": "number"}}}
+                }
+              }
+            }
+            """;
+
+    private static final byte[] SPEC_BYTES = SPEC.getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testExtractsOnlyMappedOperationsAndReferencedComponents() throws Exception {
+        OpenAPI openAPI = StreamingOpenApiExtractor.extract(SPEC_BYTES, Set.of("getOrder")).getOpenAPI();
+
+        assertThat(openAPI.getInfo().getTitle()).isEqualTo("biz");
+        assertThat(openAPI.getPaths()).containsOnlyKeys("/api/orders/{id}");
+        assertThat(openAPI.getPaths().get("/api/orders/{id}").getDelete()).isNull();
+        assertThat(openAPI.getPaths().get("/api/orders/{id}").getParameters()).hasSize(1);
+        // Order -> OrderLine -> Order 的循環引用只讀入一次，未使用的 Invoice 不會建模
+        assertThat(openAPI.getComponents().getSchemas()).containsOnlyKeys("Order", "OrderLine");
+        assertThat(openAPI.getComponents().getParameters()).containsOnlyKeys("TenantHeader");
+    }
+
+    @Test
+    void testOperationMatchesFullParse() throws Exception {
+        OpenAPI full = new OpenAPIV3Parser().readContents(SPEC).getOpenAPI();
+        OpenAPI extracted = StreamingOpenApiExtractor.extract(SPEC_BYTES, Set.of("getOrder", "createInvoice"))
+                .getOpenAPI();
+
+        Operation expected = full.getPaths().get("/api/invoices").getPost();
+        Operation actual = extracted.getPaths().get("/api/invoices").getPost();
+        assertThat(OpenApiToMcpMapper.mapOperationToInputSchema(actual))
+                .isEqualTo(OpenApiToMcpMapper.mapOperationToInputSchema(expected));
+        assertThat(OpenApiToMcpMapper.mapOperationToOutputSchema(extracted.getPaths().get("/api/orders/{id}").getGet()))
+                .isEqualTo(OpenApiToMcpMapper.mapOperationToOutputSchema(full.getPaths().get("/api/orders/{id}").getGet()));
+    }
+
+    @Test
+    void testSupportsOnlyJson() {
+        assertThat(StreamingOpenApiExtractor.supports(SPEC_BYTES)).isTrue();
+        assertThat(StreamingOpenApiExtractor.supports("openapi: 3.0.1\n".getBytes(StandardCharsets.UTF_8))).isFalse();
+    }
+}